@@ -2,10 +2,10 @@ package com.santicodev.gestorinventarioproductos;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
-@EnableCaching // Habilita el soporte de caching de Spring
+@EnableScheduling // Tareas periódicas (volcado del stock en memoria a la base de datos)
 public class GestorinventarioproductosApplication {
 
 	public static void main(String[] args) {
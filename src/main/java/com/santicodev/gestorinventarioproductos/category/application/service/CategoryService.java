@@ -2,30 +2,57 @@ package com.santicodev.gestorinventarioproductos.category.application.service;
 
 import com.santicodev.gestorinventarioproductos.category.domain.Category;
 import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CategoryDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CursorPageDTO;
 import com.santicodev.gestorinventarioproductos.category.infraestructure.repository.CategoryRepository;
 import com.santicodev.gestorinventarioproductos.shared.domain.exception.DuplicateResourceException;
+import com.santicodev.gestorinventarioproductos.shared.domain.exception.PreconditionFailedException;
 import com.santicodev.gestorinventarioproductos.shared.domain.exception.ResourceNotFoundException;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.CacheTags;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.IdBloomFilter;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.RedisBatchCache;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.BatchGetResponseDTO;
 import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CategoryPartialUpdateDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.outbox.OutboxWriter;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.repository.ConstraintViolations;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.repository.SparseFields;
 import lombok.RequiredArgsConstructor;
 import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
-@CacheConfig(cacheNames = "categories")
+@CacheConfig(cacheNames = CategoryService.CACHE_NAME)
 public class CategoryService {
+    // Regiones de caché de este servicio, una por tipo de valor (CacheRegions): categorías por ID y listados
+    public static final String CACHE_NAME = "category-by-id";
+    public static final String LIST_CACHE_NAME = "category-list";
+    // Tamaño máximo de página permitido en la paginación por cursor
+    public static final int MAX_PAGE_SIZE = 500;
+    // Campos admitidos en '?fields=' (sparse fieldsets), en el orden en que se devuelven
+    public static final List<String> SPARSE_FIELDS = List.of("id", "name", "description", "version");
+
     private final CategoryRepository categoryRepository;
+    private final RedisBatchCache redisBatchCache;
+    private final OutboxWriter outboxWriter;
+    private final CacheTags cacheTags;
+    private final IdBloomFilter idBloomFilter;
 
     // --- Métodos de Mapeo (Entidad <-> DTO) ---
     private CategoryDTO mapToDTO(Category category) {
-        return new CategoryDTO(category.getId(), category.getName(), category.getDescription());
+        return new CategoryDTO(category.getId(), category.getName(), category.getDescription(), category.getVersion());
     }
 
     private Category mapToEntity(CategoryDTO categoryDTO) {
@@ -34,70 +61,134 @@ public class CategoryService {
 
     // --- Métodos de Lógica de Negocio (CRUD) ---
 
+    // Un solo INSERT: el nombre repetido lo detecta su restricción única (saveChecked)
     @CachePut(key = "#result.id")
     @Transactional
     public CategoryDTO createCategory(CategoryDTO categoryDTO) {
-        if (categoryRepository.existsByName(categoryDTO.name())) {
-            throw new DuplicateResourceException("La categoría con el nombre '" + categoryDTO.name() + "' ya existe.");
-        }
         Category category = mapToEntity(categoryDTO);
-        Category savedCategory = categoryRepository.save(category);
-        return mapToDTO(savedCategory);
+        Category savedCategory = saveChecked(category);
+        CategoryDTO created = mapToDTO(savedCategory);
+        outboxWriter.record(OutboxWriter.CATEGORY, created.id(), "CategoryCreated", created);
+        cacheTags.invalidate(CacheTags.ALL_CATEGORIES);
+        return created;
     }
 
-    @Cacheable
+    // Listados: la clave lleva la versión de su etiqueta (CacheTags); cualquier alta, cambio o baja la invalida.
+    @Cacheable(cacheNames = LIST_CACHE_NAME, sync = true, key = "'all:' + @cacheTags.versionOf('categories:all')")
     @Transactional(readOnly = true)
     public List<CategoryDTO> getAllCategories() {
-        return categoryRepository.findAll().stream()
-                .map(this::mapToDTO)
-                .collect(Collectors.toList());
+        // Proyección DTO: no se hidratan entidades para una lectura
+        return categoryRepository.findAllAsDTO();
+    }
+
+    // Cachea cada página por separado. El prefijo 'page:' la separa del listado completo.
+    @Cacheable(cacheNames = LIST_CACHE_NAME, sync = true, key = "'page:' + #after + ':' + #limit + ':' + @cacheTags.versionOf('categories:all')")
+    @Transactional(readOnly = true)
+    public CursorPageDTO<CategoryDTO> getCategoriesPage(long after, int limit) {
+        // Se pide una fila de más para saber si existe una página siguiente. Proyección DTO, sin entidades.
+        List<CategoryDTO> rows = categoryRepository.findDTOsByIdGreaterThan(after, Limit.of(limit + 1));
+        return CursorPageDTO.of(rows, limit, CategoryDTO::id);
+    }
+
+    // Sparse fieldsets: 'fields' ya viene validado y en orden canónico (SparseFields.resolve).
+    // El prefijo 'fields:' y el conjunto de campos en la clave separan las vistas parciales de las completas.
+    @Cacheable(cacheNames = LIST_CACHE_NAME, sync = true, key = "'fields:' + T(String).join(',', #fields) + ':all:' + @cacheTags.versionOf('categories:all')")
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getAllCategoryFields(List<String> fields) {
+        return categoryRepository.findFieldsBy(fields, 0L, null);
     }
 
-    @Cacheable(key = "#id")
+    @Cacheable(cacheNames = LIST_CACHE_NAME, sync = true, key = "'fields:' + T(String).join(',', #fields) + ':page:' + #after + ':' + #limit + ':' + @cacheTags.versionOf('categories:all')")
+    @Transactional(readOnly = true)
+    public CursorPageDTO<Map<String, Object>> getCategoryFieldsPage(List<String> fields, long after, int limit) {
+        // Se pide una fila de más para saber si existe una página siguiente
+        List<Map<String, Object>> rows = categoryRepository.findFieldsBy(fields, after, limit + 1);
+        return CursorPageDTO.of(rows, limit, SparseFields::idOf);
+    }
+
+    // sync: las lecturas simultáneas de una clave que no está en caché comparten una sola consulta (TwoTierCache).
+    // Los IDs que el filtro de Bloom descarta (IdBloomFilter) no llegan a la base de datos.
+    @Cacheable(sync = true, key = "#id")
     @Transactional(readOnly = true)
     public CategoryDTO getCategoryById(Long id) {
-        Category category = categoryRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Categoría no encontrada con ID: " + id));
-        return mapToDTO(category);
+        if (idBloomFilter.isDefinitelyAbsent(IdBloomFilter.CATEGORIES, id)) {
+            throw new ResourceNotFoundException("Categoría no encontrada con ID: " + id);
+        }
+        return categoryRepository.findDTOById(id)
+                .orElseThrow(() -> {
+                    idBloomFilter.recordFalsePositive(IdBloomFilter.CATEGORIES);
+                    return new ResourceNotFoundException("Categoría no encontrada con ID: " + id);
+                });
+    }
+
+    // Lectura por lotes: los aciertos salen de la caché con un solo MGET, los fallos con una sola consulta IN.
+    // Los fallos encontrados se guardan en la caché (en pipeline) para las siguientes lecturas.
+    @Transactional(readOnly = true)
+    public BatchGetResponseDTO<CategoryDTO> batchGetCategories(List<Long> ids) {
+        List<Long> uniqueIds = ids.stream().distinct().toList();
+        Map<Long, CategoryDTO> found = new HashMap<>(redisBatchCache.multiGet(CACHE_NAME, uniqueIds, CategoryDTO.class));
+
+        List<Long> misses = uniqueIds.stream().filter(id -> !found.containsKey(id)).toList();
+        if (!misses.isEmpty()) {
+            Map<Long, CategoryDTO> loaded = categoryRepository.findDTOsByIdIn(misses).stream()
+                    .collect(Collectors.toMap(CategoryDTO::id, Function.identity()));
+            redisBatchCache.multiPut(CACHE_NAME, loaded);
+            found.putAll(loaded);
+        }
+
+        // Respuesta en el orden de la petición, separando los IDs inexistentes
+        List<CategoryDTO> items = new ArrayList<>();
+        List<Long> notFound = new ArrayList<>();
+        for (Long id : uniqueIds) {
+            CategoryDTO category = found.get(id);
+            if (category != null) {
+                items.add(category);
+            } else {
+                notFound.add(id);
+            }
+        }
+        return new BatchGetResponseDTO<>(items, notFound);
     }
 
     @CachePut(key = "#id")
     @Transactional
-    public CategoryDTO updateCategory(Long id, CategoryDTO categoryDTO) {
+    public CategoryDTO updateCategory(Long id, CategoryDTO categoryDTO, Long expectedVersion) {
         Category existingCategory = categoryRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Categoría no encontrada con ID: " + id));
-
-        if (!existingCategory.getName().equals(categoryDTO.name()) && categoryRepository.existsByName(categoryDTO.name())) {
-            throw new DuplicateResourceException("La categoría con el nombre '" + categoryDTO.name() + "' ya existe.");
-        }
+        checkVersion(existingCategory, expectedVersion);
 
         existingCategory.setName(categoryDTO.name());
         existingCategory.setDescription(categoryDTO.description());
 
-        Category updatedCategory = categoryRepository.save(existingCategory);
-        return mapToDTO(updatedCategory);
+        // saveAndFlush: el UPDATE se ejecuta ya, así la versión devuelta (y cacheada) es la nueva
+        Category updatedCategory = saveChecked(existingCategory);
+        CategoryDTO updated = mapToDTO(updatedCategory);
+        outboxWriter.record(OutboxWriter.CATEGORY, id, "CategoryUpdated", updated);
+        cacheTags.invalidate(CacheTags.ALL_CATEGORIES);
+        return updated;
     }
 
     @CacheEvict(key = "#id")
     @Transactional
     public void deleteCategory(Long id) {
-        if (!categoryRepository.existsById(id)) {
+        // Un solo DELETE: si no borra ninguna fila, la categoría no existía
+        if (categoryRepository.deleteRowById(id) == 0) {
             throw new ResourceNotFoundException("Categoría no encontrada con ID: " + id);
         }
-        categoryRepository.deleteById(id);
+        outboxWriter.record(OutboxWriter.CATEGORY, id, "CategoryDeleted", Map.of("id", id));
+        cacheTags.invalidate(CacheTags.ALL_CATEGORIES, CacheTags.category(id));
     }
 
     @CachePut(key = "#id")
     @Transactional
-    public CategoryDTO patchCategory(Long id, CategoryPartialUpdateDTO patchDTO) {
+    public CategoryDTO patchCategory(Long id, CategoryPartialUpdateDTO patchDTO, Long expectedVersion) {
         Category existingCategory = categoryRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Categoría no encontrada con ID: " + id));
+        checkVersion(existingCategory, expectedVersion);
 
         // Aplicar cambios solo si los campos están presentes en el DTO de PATCH
+        // El nombre repetido lo detecta su restricción única en el UPDATE (saveChecked)
         if (patchDTO.getName() != null && !patchDTO.getName().trim().isEmpty()) {
-            if (!existingCategory.getName().equals(patchDTO.getName()) && categoryRepository.existsByName(patchDTO.getName())) {
-                throw new DuplicateResourceException("La categoría con el nombre '" + patchDTO.getName() + "' ya existe.");
-            }
             existingCategory.setName(patchDTO.getName());
         }
 
@@ -105,7 +196,31 @@ public class CategoryService {
             existingCategory.setDescription(patchDTO.getDescription());
         }
 
-        Category updatedCategory = categoryRepository.save(existingCategory);
-        return mapToDTO(updatedCategory);
+        // saveAndFlush: el UPDATE se ejecuta ya, así la versión devuelta (y cacheada) es la nueva
+        Category updatedCategory = saveChecked(existingCategory);
+        CategoryDTO updated = mapToDTO(updatedCategory);
+        outboxWriter.record(OutboxWriter.CATEGORY, id, "CategoryUpdated", updated);
+        cacheTags.invalidate(CacheTags.ALL_CATEGORIES);
+        return updated;
+    }
+
+    // INSERT o UPDATE inmediato (saveAndFlush) que traduce la violación del nombre único, sin consultarlo antes
+    private Category saveChecked(Category category) {
+        try {
+            return categoryRepository.saveAndFlush(category);
+        } catch (DataIntegrityViolationException e) {
+            if (ConstraintViolations.isUniqueViolation(e)) {
+                throw new DuplicateResourceException("La categoría con el nombre '" + category.getName() + "' ya existe.");
+            }
+            throw e;
+        }
+    }
+
+    // Compara la versión esperada (If-Match) con la actual; null significa escritura incondicional
+    private void checkVersion(Category category, Long expectedVersion) {
+        if (expectedVersion != null && !expectedVersion.equals(category.getVersion())) {
+            throw new PreconditionFailedException("La categoría con ID " + category.getId() + " está en la versión "
+                    + category.getVersion() + ", no en la " + expectedVersion + ".");
+        }
     }
 }
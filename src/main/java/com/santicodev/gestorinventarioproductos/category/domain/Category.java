@@ -2,9 +2,10 @@ package com.santicodev.gestorinventarioproductos.category.domain;
 
 import jakarta.persistence.Entity;
 import jakarta.persistence.*;
-import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.DynamicUpdate;
 
 /**
  * Ver exlipcacion y anotaciones en el notion
@@ -12,9 +13,10 @@ import lombok.NoArgsConstructor;
  */
 @Entity
 @Table(name = "categories")
+// UPDATE solo con las columnas modificadas (y la versión), no la fila entera
+@DynamicUpdate
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 public class Category {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -26,4 +28,16 @@ public class Category {
     @Column(length = 255)
     private String description;
 
+    // Bloqueo optimista: Hibernate lo incrementa en cada UPDATE. También sirve de ETag de la categoría.
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private Long version;
+
+    // La versión la gestiona Hibernate, por eso no forma parte del constructor
+    public Category(Long id, String name, String description) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+    }
 }
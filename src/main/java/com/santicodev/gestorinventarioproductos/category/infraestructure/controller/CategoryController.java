@@ -1,15 +1,26 @@
 package com.santicodev.gestorinventarioproductos.category.infraestructure.controller;
 
 import com.santicodev.gestorinventarioproductos.category.application.service.CategoryService;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.controller.CursorParams;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.controller.ETags;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.BatchGetRequestDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.BatchGetResponseDTO;
 import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CategoryDTO;
 import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CategoryPartialUpdateDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CursorPageDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.repository.SparseFields;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.PositiveOrZero;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/v1/categories")
@@ -28,30 +39,81 @@ public class CategoryController {
 
     // Mapea solicitudes GET a "/api/v1/categories".
     // Permitir a usuarios con rol ADMIN o USER ver todas las categorias
-    @GetMapping
+    @GetMapping(params = {"!limit", "!fields"})
     @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
-    public ResponseEntity<List<CategoryDTO>> getAllCategories() {
+    public ResponseEntity<List<CategoryDTO>> getAllCategories(@RequestParam(required = false) Long after) {
+        CursorParams.requireLimitWith(after); // 'after' sin 'limit': 400
         List<CategoryDTO> categories = categoryService.getAllCategories();
+        return ResponseEntity.ok().eTag(ETags.weak(categories)).body(categories);
+    }
+
+    // Mapea solicitudes GET a "/api/v1/categories?after={ultimoId}&limit={N}".
+    // Paginación por cursor: la respuesta incluye 'nextCursor' para pedir la siguiente página.
+    @GetMapping(params = {"limit", "!fields"})
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
+    public ResponseEntity<CursorPageDTO<CategoryDTO>> getCategoriesPage(
+            @RequestParam(defaultValue = "0") @PositiveOrZero long after,
+            @RequestParam @Min(1) @Max(CategoryService.MAX_PAGE_SIZE) int limit) {
+        CursorPageDTO<CategoryDTO> page = categoryService.getCategoriesPage(after, limit);
+        return ResponseEntity.ok().eTag(ETags.weak(page.items(), page.nextCursor())).body(page);
+    }
+
+    // Mapea solicitudes GET a "/api/v1/categories?fields=id,name".
+    // Sparse fieldsets: solo las columnas pedidas se leen de la base de datos (el 'id' siempre se incluye).
+    @GetMapping(params = {"fields", "!limit"})
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
+    public ResponseEntity<List<Map<String, Object>>> getAllCategoryFields(
+            @RequestParam List<String> fields,
+            @RequestParam(required = false) Long after) {
+        CursorParams.requireLimitWith(after);
+        List<Map<String, Object>> categories =
+                categoryService.getAllCategoryFields(SparseFields.resolve(fields, CategoryService.SPARSE_FIELDS));
         return ResponseEntity.ok(categories);
     }
 
+    // Mapea solicitudes GET a "/api/v1/categories?fields=id,name&after={ultimoId}&limit={N}".
+    @GetMapping(params = {"fields", "limit"})
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
+    public ResponseEntity<CursorPageDTO<Map<String, Object>>> getCategoryFieldsPage(
+            @RequestParam List<String> fields,
+            @RequestParam(defaultValue = "0") @PositiveOrZero long after,
+            @RequestParam @Min(1) @Max(CategoryService.MAX_PAGE_SIZE) int limit) {
+        CursorPageDTO<Map<String, Object>> page = categoryService.getCategoryFieldsPage(
+                SparseFields.resolve(fields, CategoryService.SPARSE_FIELDS), after, limit);
+        return ResponseEntity.ok(page);
+    }
+
     // Mapea solicitudes GET a "/api/v1/categories/{id}".
     // Permitir a usuarios con rol ADMIN o USER ver una categoria especifica
+    // Con If-None-Match igual al ETag devuelve 304 sin cuerpo.
     @GetMapping("/{id}")
     @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
     // {id}: Es una variable de ruta.
     public ResponseEntity<CategoryDTO> getCategoryById(@PathVariable Long id) {
         CategoryDTO category = categoryService.getCategoryById(id);
-        return ResponseEntity.ok(category);
+        return ResponseEntity.ok().eTag(ETags.strong(category)).body(category);
+    }
+
+    // Mapea solicitudes POST a "/api/v1/categories/batch-get".
+    // Lectura por lotes: devuelve las categorías en el orden pedido y, aparte, los IDs que no existen.
+    @PostMapping("/batch-get")
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
+    public ResponseEntity<BatchGetResponseDTO<CategoryDTO>> batchGetCategories(@Valid @RequestBody BatchGetRequestDTO request) {
+        BatchGetResponseDTO<CategoryDTO> result = categoryService.batchGetCategories(request.ids());
+        return ResponseEntity.ok(result);
     }
 
     // Mapea solicitudes PUT a "/api/v1/categories/{id}".
     // Solo permitir a usuarios con rol ADMIN actualizar categorias
     @PutMapping("/{id}")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<CategoryDTO> updateCategory(@PathVariable Long id, @Valid @RequestBody CategoryDTO categoryDTO) {
-        CategoryDTO updatedCategory = categoryService.updateCategory(id, categoryDTO);
-        return ResponseEntity.ok(updatedCategory);
+    // Con If-Match la escritura es condicional: 412 si la categoría cambió desde que se leyó.
+    public ResponseEntity<CategoryDTO> updateCategory(
+            @PathVariable Long id,
+            @Valid @RequestBody CategoryDTO categoryDTO,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        CategoryDTO updatedCategory = categoryService.updateCategory(id, categoryDTO, ETags.expectedVersion(ifMatch, id));
+        return ResponseEntity.ok().eTag(ETags.strong(updatedCategory)).body(updatedCategory);
     }
 
     // Mapea solicitudes DELETE a "/api/v1/categories/{id}".
@@ -67,8 +129,11 @@ public class CategoryController {
     // Solo permitir a usuarios con rol ADMIN actualizar parcialmente
     @PatchMapping("/{id}")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<CategoryDTO> patchCategory(@PathVariable Long id, @Valid @RequestBody CategoryPartialUpdateDTO patchDTO) {
-        CategoryDTO updatedCategory = categoryService.patchCategory(id, patchDTO);
-        return ResponseEntity.ok(updatedCategory);
+    public ResponseEntity<CategoryDTO> patchCategory(
+            @PathVariable Long id,
+            @Valid @RequestBody CategoryPartialUpdateDTO patchDTO,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        CategoryDTO updatedCategory = categoryService.patchCategory(id, patchDTO, ETags.expectedVersion(ifMatch, id));
+        return ResponseEntity.ok().eTag(ETags.strong(updatedCategory)).body(updatedCategory);
     }
 }
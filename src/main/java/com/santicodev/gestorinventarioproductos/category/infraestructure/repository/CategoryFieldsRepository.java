@@ -0,0 +1,14 @@
+package com.santicodev.gestorinventarioproductos.category.infraestructure.repository;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fragmento de repositorio para sparse fieldsets (?fields=) de categorías.
+ * Spring Data lo combina con CategoryRepository a través de CategoryFieldsRepositoryImpl.
+ */
+public interface CategoryFieldsRepository {
+
+    // Solo los campos pedidos de las categorías con id > after, ordenadas por ID (limit null = sin límite)
+    List<Map<String, Object>> findFieldsBy(List<String> fields, long after, Integer limit);
+}
@@ -0,0 +1,21 @@
+package com.santicodev.gestorinventarioproductos.category.infraestructure.repository;
+
+import com.santicodev.gestorinventarioproductos.category.domain.Category;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.repository.SparseFields;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.Map;
+
+@RequiredArgsConstructor
+public class CategoryFieldsRepositoryImpl implements CategoryFieldsRepository {
+    private final EntityManager entityManager;
+
+    @Override
+    public List<Map<String, Object>> findFieldsBy(List<String> fields, long after, Integer limit) {
+        Specification<Category> afterCursor = (root, query, cb) -> cb.greaterThan(root.get("id"), after);
+        return SparseFields.select(entityManager, Category.class, Map.of(), fields, afterCursor, limit);
+    }
+}
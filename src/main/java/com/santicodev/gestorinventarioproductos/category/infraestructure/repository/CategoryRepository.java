@@ -1,15 +1,57 @@
 package com.santicodev.gestorinventarioproductos.category.infraestructure.repository;
 
 import com.santicodev.gestorinventarioproductos.category.domain.Category;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CategoryDTO;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
 /**
  * Ver exlipcacion y anotaciones en el notion
  * - Proyecto: Gestor Inventario de Productos
  */
 @Repository
-public interface CategoryRepository extends JpaRepository<Category, Long> {
+public interface CategoryRepository extends JpaRepository<Category, Long>, CategoryFieldsRepository {
 
     boolean existsByName(String name);
+
+    // Borrado en una sola sentencia (deleteById hace SELECT + DELETE). Devuelve las filas borradas.
+    @Modifying
+    @Query("DELETE FROM Category c WHERE c.id = :id")
+    int deleteRowById(@Param("id") Long id);
+
+    // Cuáles de los IDs dados existen, en una sola consulta (alta masiva de productos)
+    @Query("SELECT c.id FROM Category c WHERE c.id IN :ids")
+    Set<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    // Todos los IDs de categoría (la tabla es pequeña): validación de importaciones masivas en memoria
+    @Query("SELECT c.id FROM Category c")
+    Set<Long> findAllIds();
+
+    // --- Proyecciones DTO (constructor expression) para las lecturas ---
+    @Query("SELECT new com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CategoryDTO(" +
+            "c.id, c.name, c.description, c.version) FROM Category c")
+    List<CategoryDTO> findAllAsDTO();
+
+    // Paginación por cursor (keyset): recorre la PK en orden, sin OFFSET.
+    @Query("SELECT new com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CategoryDTO(" +
+            "c.id, c.name, c.description, c.version) FROM Category c WHERE c.id > :after ORDER BY c.id")
+    List<CategoryDTO> findDTOsByIdGreaterThan(@Param("after") Long after, Limit limit);
+
+    @Query("SELECT new com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CategoryDTO(" +
+            "c.id, c.name, c.description, c.version) FROM Category c WHERE c.id = :id")
+    Optional<CategoryDTO> findDTOById(@Param("id") Long id);
+
+    // Una sola consulta IN para resolver los fallos de caché de una lectura por lotes
+    @Query("SELECT new com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CategoryDTO(" +
+            "c.id, c.name, c.description, c.version) FROM Category c WHERE c.id IN :ids")
+    List<CategoryDTO> findDTOsByIdIn(@Param("ids") Collection<Long> ids);
 }
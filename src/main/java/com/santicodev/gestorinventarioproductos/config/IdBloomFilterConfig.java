@@ -0,0 +1,48 @@
+package com.santicodev.gestorinventarioproductos.config;
+
+import com.santicodev.gestorinventarioproductos.category.domain.Category;
+import com.santicodev.gestorinventarioproductos.product.domain.Product;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.IdBloomFilter;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Añade al filtro de IDs existentes (IdBloomFilter) cada producto y categoría que inserta Hibernate, sea
+ * cual sea el camino (servicios, repositorios, cargas de datos): un ID que faltase daría 404 aunque exista.
+ * Las altas por JDBC (altas masivas, importación CSV) los añaden ellas mismas.
+ */
+@Configuration
+public class IdBloomFilterConfig {
+
+    @Bean
+    public PostInsertEventListener idBloomFilterInsertListener(EntityManagerFactory entityManagerFactory,
+                                                               IdBloomFilter idBloomFilter) {
+        PostInsertEventListener listener = new PostInsertEventListener() {
+            @Override
+            public void onPostInsert(PostInsertEvent event) {
+                if (event.getEntity() instanceof Product) {
+                    idBloomFilter.add(IdBloomFilter.PRODUCTS, (Long) event.getId());
+                } else if (event.getEntity() instanceof Category) {
+                    idBloomFilter.add(IdBloomFilter.CATEGORIES, (Long) event.getId());
+                }
+            }
+
+            // addAll ya espera a la confirmación para escribir en Redis
+            @Override
+            public boolean requiresPostCommitHandling(EntityPersister persister) {
+                return false;
+            }
+        };
+        entityManagerFactory.unwrap(SessionFactoryImplementor.class).getServiceRegistry()
+                .requireService(EventListenerRegistry.class)
+                .appendListeners(EventType.POST_INSERT, listener);
+        return listener;
+    }
+}
@@ -1,28 +1,137 @@
 package com.santicodev.gestorinventarioproductos.config;
 
+import com.santicodev.gestorinventarioproductos.category.application.service.CategoryService;
+import com.santicodev.gestorinventarioproductos.product.application.service.ProductService;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.BinaryCacheSerializer;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.BinaryCodec;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.BinaryCodecs;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.CacheRefreshPolicy;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.CacheRegions;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.CacheTags;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.RefreshingCacheInterceptor;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.TwoTierCacheManager;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CategoryDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.interceptor.CacheInterceptor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext.SerializationPair;
 
 import java.time.Duration;
+import java.util.Map;
 
 @Configuration
-@EnableCaching // Asegura que la capacidad de caché esté habilitada
+// Asegura que la capacidad de caché esté habilitada; por fuera de @Transactional (LOWEST_PRECEDENCE), para que
+// un acierto no abra transacción y un refresco en segundo plano sí la abra al volver a ejecutar el metodo
+@EnableCaching(order = Ordered.LOWEST_PRECEDENCE - 1)
 public class RedisCacheConfig {
 
+    // Sustituye el CacheInterceptor de @EnableCaching por uno que refresca las entradas a través del proxy
     @Bean
-    public RedisCacheConfiguration cacheConfiguration() {
+    public static BeanPostProcessor refreshingCacheInterceptorPostProcessor(BeanFactory beanFactory) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean.getClass() != CacheInterceptor.class) {
+                    return bean;
+                }
+                RefreshingCacheInterceptor interceptor = RefreshingCacheInterceptor.from((CacheInterceptor) bean);
+                interceptor.setBeanFactory(beanFactory);
+                interceptor.afterPropertiesSet();
+                return interceptor;
+            }
+        };
+    }
+
+    // Caducidad con jitter y refresco anticipado de las entradas (por defecto 60 minutos menos hasta un 10 %)
+    @Bean
+    public CacheRefreshPolicy cacheRefreshPolicy(@Value("${app.cache.ttl:60m}") Duration ttl,
+                                                 @Value("${app.cache.ttl-jitter:0.1}") double jitter,
+                                                 @Value("${app.cache.stale-grace:5m}") Duration staleGrace,
+                                                 @Value("${app.cache.early-refresh-beta:1.0}") double beta) {
+        return new CacheRefreshPolicy(ttl, jitter, staleGrace, beta);
+    }
+
+    @Bean
+    public RedisCacheConfiguration cacheConfiguration(CacheRefreshPolicy cacheRefreshPolicy) {
         return RedisCacheConfiguration.defaultCacheConfig()
-                .entryTtl(Duration.ofMinutes(60)) // Tiempo de vida por defecto para las entradas de caché: 60 minutos
+                .entryTtl(cacheRefreshPolicy::timeToLive) // Caducidad de cada entrada (CacheEntry) más el margen para servirla caducada
                 .disableCachingNullValues() // No cachear valores nulos (opcional, pero común)
                 .serializeValuesWith(SerializationPair.fromSerializer(new GenericJackson2JsonRedisSerializer()));
                 // Usa Jackson para serializar los objetos a JSON en Redis.
                 // Esto hace que los datos en Redis sean legibles y interoperables.
     }
 
+    /**
+     * Regiones tipadas: cada una guarda un solo tipo de DTO (él mismo, listas o páginas) y lo serializa en
+     * binario con su esquema (BinaryCacheSerializer) en lugar de en JSON con metadatos de tipo.
+     */
+    @Bean
+    public CacheRegions cacheRegions(RedisCacheConfiguration cacheConfiguration, MeterRegistry meterRegistry) {
+        GenericJackson2JsonRedisSerializer json = new GenericJackson2JsonRedisSerializer();
+        return new CacheRegions(cacheConfiguration, Map.of(
+                ProductService.CACHE_NAME, binary(cacheConfiguration, ProductService.CACHE_NAME, ProductDTO.class, BinaryCodecs.PRODUCT, json, meterRegistry),
+                ProductService.LIST_CACHE_NAME, binary(cacheConfiguration, ProductService.LIST_CACHE_NAME, ProductDTO.class, BinaryCodecs.PRODUCT, json, meterRegistry),
+                ProductService.CATEGORY_CACHE_NAME, binary(cacheConfiguration, ProductService.CATEGORY_CACHE_NAME, ProductDTO.class, BinaryCodecs.PRODUCT, json, meterRegistry),
+                CategoryService.CACHE_NAME, binary(cacheConfiguration, CategoryService.CACHE_NAME, CategoryDTO.class, BinaryCodecs.CATEGORY, json, meterRegistry),
+                CategoryService.LIST_CACHE_NAME, binary(cacheConfiguration, CategoryService.LIST_CACHE_NAME, CategoryDTO.class, BinaryCodecs.CATEGORY, json, meterRegistry)));
+    }
+
+    /**
+     * CacheManager de @Cacheable: caché local (L1, Caffeine) delante de las regiones de Redis (L2).
+     * Al declararlo, Spring Boot no crea su RedisCacheManager; el de L2 se construye aquí con la misma configuración.
+     */
+    @Bean
+    public TwoTierCacheManager cacheManager(RedisConnectionFactory connectionFactory,
+                                            RedisCacheConfiguration cacheConfiguration,
+                                            CacheRegions cacheRegions,
+                                            StringRedisTemplate redisTemplate,
+                                            MeterRegistry meterRegistry,
+                                            @Value("${app.cache.local.max-weight:10000}") long localMaximumWeight,
+                                            @Value("${app.cache.local.ttl:5m}") Duration localTtl,
+                                            @Value("${app.cache.load-lock.ttl:3s}") Duration loadLockTtl,
+                                            CacheRefreshPolicy cacheRefreshPolicy) {
+        RedisCacheManager remoteCacheManager = RedisCacheManager.builder(connectionFactory)
+                .cacheDefaults(cacheConfiguration)
+                .withInitialCacheConfigurations(cacheRegions.configurations())
+                .build();
+        remoteCacheManager.afterPropertiesSet();
+        return new TwoTierCacheManager(remoteCacheManager, redisTemplate, meterRegistry, localMaximumWeight, localTtl,
+                loadLockTtl, cacheRefreshPolicy);
+    }
+
+    private static <T> RedisCacheConfiguration binary(RedisCacheConfiguration cacheConfiguration, String cacheName,
+                                                      Class<T> type, BinaryCodec<T> codec,
+                                                      GenericJackson2JsonRedisSerializer json, MeterRegistry meterRegistry) {
+        return cacheConfiguration.serializeValuesWith(SerializationPair.fromSerializer(
+                new BinaryCacheSerializer<>(cacheName, type, codec, json, meterRegistry)));
+    }
+
+    // Recibe las invalidaciones de L1 y de versiones de etiquetas que publican las demás instancias
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                            TwoTierCacheManager cacheManager,
+                                                                            CacheTags cacheTags) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(cacheManager, new ChannelTopic(TwoTierCacheManager.INVALIDATION_CHANNEL));
+        container.addMessageListener(cacheTags, new ChannelTopic(CacheTags.INVALIDATION_CHANNEL));
+        return container;
+    }
+
     // Si necesitas caches con configuraciones TTL diferentes:
     // @Bean
     // public RedisCacheManagerBuilderCustomizer redisCacheManagerBuilderCustomizer() {
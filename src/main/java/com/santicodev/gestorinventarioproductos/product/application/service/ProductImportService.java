@@ -0,0 +1,308 @@
+package com.santicodev.gestorinventarioproductos.product.application.service;
+
+import com.santicodev.gestorinventarioproductos.category.infraestructure.repository.CategoryRepository;
+import com.santicodev.gestorinventarioproductos.product.infraestructure.repository.ProductJdbcRepository;
+import com.santicodev.gestorinventarioproductos.shared.domain.exception.InvalidFieldException;
+import com.santicodev.gestorinventarioproductos.shared.domain.exception.ResourceNotFoundException;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.CacheTags;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.IdBloomFilter;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.csv.CsvReader;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ImportRejectionDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductImportJobDTO;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Importación masiva de productos desde un CSV con COPY de PostgreSQL.
+ * El fichero se lee y valida fila a fila, y las filas válidas se envían según se leen a un COPY sobre una
+ * tabla temporal; después un único INSERT ... SELECT las fusiona en 'products'. Todo va en una transacción:
+ * se importan todas las filas válidas o ninguna. Los trabajos se ejecutan de uno en uno en segundo plano y
+ * su progreso se consulta con getJob.
+ */
+@Service
+@RequiredArgsConstructor
+public class ProductImportService {
+    // Cabecera obligatoria del CSV, en este orden
+    public static final List<String> CSV_HEADER = List.of("name", "description", "price", "stock", "categoryId");
+    // Rechazos que se detallan por trabajo; a partir de aquí solo se cuentan
+    public static final int MAX_REPORTED_REJECTIONS = 1000;
+    // Trabajos cuyo estado se conserva en memoria (los más antiguos se olvidan)
+    private static final int MAX_TRACKED_JOBS = 100;
+    // Precisión de la columna 'price' (numeric(10, 2)): un valor mayor haría fallar el COPY entero
+    private static final int PRICE_PRECISION = 10;
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductImportService.class);
+
+    private final ProductJdbcRepository productJdbcRepository;
+    private final CategoryRepository categoryRepository;
+    private final ProductSuggestionIndex suggestionIndex;
+    private final CacheTags cacheTags;
+    private final IdBloomFilter idBloomFilter;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "product-import");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, ImportJob> jobs = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ImportJob> eldest) {
+            return size() > MAX_TRACKED_JOBS;
+        }
+    });
+
+    /**
+     * Copia el fichero recibido a un temporal (en disco, no en memoria) y encola su importación.
+     * Devuelve el trabajo en estado QUEUED; el progreso se consulta con getJob.
+     */
+    public ProductImportJobDTO startImport(String fileName, InputStream content) throws IOException {
+        Path file = Files.createTempFile("products-import-", ".csv");
+        try {
+            Files.copy(content, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        ImportJob job = new ImportJob(UUID.randomUUID().toString(), fileName);
+        jobs.put(job.id, job);
+        executor.submit(() -> run(job, file));
+        return job.toDTO();
+    }
+
+    public ProductImportJobDTO getJob(String jobId) {
+        ImportJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new ResourceNotFoundException("Importación no encontrada con ID: " + jobId);
+        }
+        return job.toDTO();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        // Una importación interrumpida se revierte entera (su transacción no llega a confirmarse)
+        executor.shutdownNow();
+    }
+
+    private void run(ImportJob job, Path file) {
+        job.status = ProductImportJobDTO.Status.RUNNING;
+        try {
+            Set<Long> categoryIds = categoryRepository.findAllIds();
+            transactionTemplate.executeWithoutResult(status -> {
+                productJdbcRepository.createImportStagingTable();
+                long staged = productJdbcRepository.copyIntoImportStaging(writer -> stageRows(file, categoryIds, job, writer));
+
+                AtomicLong conflicts = new AtomicLong();
+                productJdbcRepository.findImportConflicts((line, name) -> {
+                    conflicts.incrementAndGet();
+                    job.reject(line, "El producto con el nombre '" + name + "' ya existe.");
+                });
+                List<Long> insertedIds = new ArrayList<>();
+                int merged = productJdbcRepository.mergeImportStaging(insertedIds::add);
+                idBloomFilter.addAll(IdBloomFilter.PRODUCTS, insertedIds);
+                // Filas cuyo nombre creó otra petición entre la comprobación y el INSERT
+                long raced = staged - conflicts.get() - merged;
+                for (long i = 0; i < raced; i++) {
+                    job.reject(0, "El producto se creó concurrentemente durante la importación.");
+                }
+                job.rowsImported = merged;
+            });
+            if (job.rowsImported > 0) {
+                suggestionIndex.rebuild();
+                // Listados en caché del catálogo y de las categorías que han recibido filas
+                List<String> tags = new ArrayList<>(List.of(CacheTags.ALL_PRODUCTS));
+                job.categoryIds.forEach(categoryId -> tags.add(CacheTags.category(categoryId)));
+                cacheTags.invalidate(tags);
+            }
+            job.finish(ProductImportJobDTO.Status.COMPLETED, null);
+            logger.info("Importación {} terminada: {} productos importados, {} filas rechazadas.",
+                    job.id, job.rowsImported, job.rowsRejected.get());
+        } catch (RuntimeException e) {
+            job.rowsImported = 0;
+            job.finish(ProductImportJobDTO.Status.FAILED, e.getMessage());
+            logger.warn("Importación {} fallida: {}", job.id, e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.warn("No se pudo borrar el fichero temporal {}", file);
+            }
+        }
+    }
+
+    // Lee el CSV, valida cada fila y escribe las válidas en el COPY
+    private void stageRows(Path file, Set<Long> categoryIds, ImportJob job, Writer copy) {
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            CsvReader csv = new CsvReader(in);
+            checkHeader(csv.next());
+            Set<String> names = new HashSet<>();
+            List<String> record;
+            while ((record = csv.next()) != null) {
+                if (record.size() == 1 && record.get(0) == null) {
+                    continue; // Línea en blanco
+                }
+                job.rowsRead.incrementAndGet();
+                try {
+                    ProductDTO product = parseRow(record, categoryIds, names);
+                    writeCopyRow(copy, csv.recordLine(), product);
+                    job.categoryIds.add(product.categoryId());
+                } catch (InvalidFieldException e) {
+                    job.reject(csv.recordLine(), e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error leyendo el CSV: " + e.getMessage(), e);
+        }
+    }
+
+    private static void checkHeader(List<String> header) {
+        List<String> normalized = header == null ? List.of() : header.stream()
+                .map(column -> column == null ? "" : column.replace("\uFEFF", "").trim()) // Sin BOM de UTF-8
+                .toList();
+        if (!CSV_HEADER.equals(normalized)) {
+            throw new InvalidFieldException("La cabecera del CSV debe ser: " + String.join(",", CSV_HEADER));
+        }
+    }
+
+    // Convierte y valida una fila con las mismas reglas que el alta por la API
+    private ProductDTO parseRow(List<String> record, Set<Long> categoryIds, Set<String> names) {
+        if (record.size() != CSV_HEADER.size()) {
+            throw new InvalidFieldException("Se esperaban " + CSV_HEADER.size() + " columnas y hay " + record.size() + ".");
+        }
+        ProductDTO product = new ProductDTO(null, record.get(0), record.get(1),
+                parse(record.get(2), "price", BigDecimal::new),
+                parse(record.get(3), "stock", Integer::valueOf),
+                parse(record.get(4), "categoryId", Long::valueOf));
+
+        Set<ConstraintViolation<ProductDTO>> violations = validator.validate(product);
+        if (!violations.isEmpty()) {
+            throw new InvalidFieldException(violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining("; ")));
+        }
+        if (product.price().setScale(2, RoundingMode.HALF_UP).precision() > PRICE_PRECISION) {
+            throw new InvalidFieldException("El precio excede el máximo admitido.");
+        }
+        if (!categoryIds.contains(product.categoryId())) {
+            throw new InvalidFieldException("Categoría no encontrada con ID: " + product.categoryId());
+        }
+        if (!names.add(product.name())) {
+            throw new InvalidFieldException("El nombre '" + product.name() + "' está repetido en el fichero.");
+        }
+        return product;
+    }
+
+    private static <T> T parse(String value, String column, Function<String, T> parser) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return parser.apply(value.trim());
+        } catch (NumberFormatException e) {
+            throw new InvalidFieldException("Valor no válido en '" + column + "': " + value);
+        }
+    }
+
+    // Fila en CSV para el COPY: los textos siempre entre comillas; un campo vacío sin comillas es NULL
+    private static void writeCopyRow(Writer copy, long line, ProductDTO product) {
+        try {
+            copy.write(Long.toString(line));
+            copy.write(',');
+            copy.write(quote(product.name()));
+            copy.write(',');
+            if (product.description() != null) {
+                copy.write(quote(product.description()));
+            }
+            copy.write(',');
+            copy.write(product.price().toPlainString());
+            copy.write(',');
+            copy.write(product.stock().toString());
+            copy.write(',');
+            copy.write(product.categoryId().toString());
+            copy.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String quote(String value) {
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    // Estado mutable de un trabajo: lo escribe el hilo de importación y lo leen las peticiones de estado
+    private static final class ImportJob {
+        final String id;
+        final String fileName;
+        final Instant createdAt = Instant.now();
+        final AtomicLong rowsRead = new AtomicLong();
+        final AtomicLong rowsRejected = new AtomicLong();
+        final List<ImportRejectionDTO> rejections = Collections.synchronizedList(new ArrayList<>());
+        // Categorías de las filas enviadas al COPY (solo las usa el hilo de importación)
+        final Set<Long> categoryIds = new HashSet<>();
+        volatile ProductImportJobDTO.Status status = ProductImportJobDTO.Status.QUEUED;
+        volatile long rowsImported;
+        volatile String error;
+        volatile Instant finishedAt;
+
+        ImportJob(String id, String fileName) {
+            this.id = id;
+            this.fileName = fileName;
+        }
+
+        void reject(long line, String reason) {
+            if (rowsRejected.incrementAndGet() <= MAX_REPORTED_REJECTIONS) {
+                rejections.add(new ImportRejectionDTO(line, reason));
+            }
+        }
+
+        void finish(ProductImportJobDTO.Status finalStatus, String failure) {
+            error = failure;
+            finishedAt = Instant.now();
+            status = finalStatus;
+        }
+
+        ProductImportJobDTO toDTO() {
+            List<ImportRejectionDTO> reported;
+            synchronized (rejections) {
+                reported = List.copyOf(rejections);
+            }
+            return new ProductImportJobDTO(id, status, fileName, rowsRead.get(), rowsImported, rowsRejected.get(),
+                    reported, error, createdAt, finishedAt);
+        }
+    }
+}
@@ -1,31 +1,97 @@
 package com.santicodev.gestorinventarioproductos.product.application.service;
 
-import com.santicodev.gestorinventarioproductos.category.domain.Category;
 import com.santicodev.gestorinventarioproductos.category.infraestructure.repository.CategoryRepository;
 import com.santicodev.gestorinventarioproductos.product.domain.Product;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CursorPageDTO;
 import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductDTO;
+import com.santicodev.gestorinventarioproductos.product.infraestructure.repository.ProductJdbcRepository;
 import com.santicodev.gestorinventarioproductos.product.infraestructure.repository.ProductRepository;
+import com.santicodev.gestorinventarioproductos.product.infraestructure.repository.ProductSearchView;
+import com.santicodev.gestorinventarioproductos.product.infraestructure.repository.ProductSpecifications;
 import com.santicodev.gestorinventarioproductos.shared.domain.exception.DuplicateResourceException;
+import com.santicodev.gestorinventarioproductos.shared.domain.exception.InvalidFieldException;
+import com.santicodev.gestorinventarioproductos.shared.domain.exception.PreconditionFailedException;
 import com.santicodev.gestorinventarioproductos.shared.domain.exception.ResourceNotFoundException;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.CacheTags;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.IdBloomFilter;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.RedisBatchCache;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.outbox.OutboxWriter;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.BatchGetResponseDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.BulkCreateResponseDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.BulkItemResultDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductFacetsDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductFilterDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductFilterResultDTO;
 import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductPartialUpdateDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductSuggestionDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.SearchPageDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.StockAdjustmentDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.StockAdjustmentResponseDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.StockAdjustmentResultDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.repository.ConstraintViolations;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.repository.SparseFields;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
 import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
-// Define el nombre del caché para esta clase
-@CacheConfig(cacheNames = "products")
+// Región de caché por defecto de esta clase: los productos por ID
+@CacheConfig(cacheNames = ProductService.CACHE_NAME)
 public class ProductService {
+    // Regiones de caché de este servicio, una por tipo de valor (CacheRegions): productos por ID,
+    // listados y páginas del catálogo, y listados y páginas de una categoría
+    public static final String CACHE_NAME = "product-by-id";
+    public static final String LIST_CACHE_NAME = "product-list";
+    public static final String CATEGORY_CACHE_NAME = "products-by-category";
+    // Tamaño máximo de página permitido en la paginación por cursor
+    public static final int MAX_PAGE_SIZE = 500;
+    // Campos admitidos en '?fields=' (sparse fieldsets), en el orden en que se devuelven
+    public static final List<String> SPARSE_FIELDS =
+            List.of("id", "name", "description", "price", "stock", "categoryId", "version");
+    // Tamaño máximo de página permitido en la búsqueda
+    public static final int MAX_SEARCH_PAGE_SIZE = 100;
+
     private final ProductRepository productRepository;
     private final CategoryRepository categoryRepository;
+    private final EntityManager entityManager;
+    private final RedisBatchCache redisBatchCache;
+    private final ProductSuggestionIndex suggestionIndex;
+    private final ProductJdbcRepository productJdbcRepository;
+    private final Validator validator;
+    private final StockEngine stockEngine;
+    private final OutboxWriter outboxWriter;
+    private final CacheTags cacheTags;
+    private final IdBloomFilter idBloomFilter;
 
     // --- Métodos de Mapeo (Entidad <-> DTO) ---
     private ProductDTO mapToDTO(Product product) {
@@ -34,118 +100,523 @@ public class ProductService {
                 product.getName(),
                 product.getDescription(),
                 product.getPrice(),
-                product.getStock(),
-                product.getCategory() != null ? product.getCategory().getId() : null
+                // El stock vivo está en StockEngine; la columna puede ir por detrás hasta el siguiente volcado
+                product.getId() != null ? stockEngine.stockOf(product.getId(), product.getStock()) : product.getStock(),
+                product.getCategory() != null ? product.getCategory().getId() : null,
+                product.getVersion()
         );
         return dto;
     }
 
+    /**
+     * Un listado recién leído de la base de datos ya trae cada producto: se guardan también por ID (sin pisar
+     * entradas existentes), para que la lectura individual que suele seguir a un listado sea un acierto.
+     * Se escribe en segundo plano y solo mientras la etiqueta siga en 'version', la que tenía antes de la
+     * consulta: si entretanto (incluso durante la consulta) se borra o modifica uno de sus productos, no se
+     * cachean datos anteriores al cambio.
+     */
+    private void cacheByIdInBackground(List<ProductDTO> products, String tag, String version) {
+        Map<Long, ProductDTO> byId = new HashMap<>();
+        products.forEach(product -> byId.put(product.id(), withLiveStock(product)));
+        redisBatchCache.putAllIfAbsentInBackground(CACHE_NAME, byId, () -> Objects.equals(version, cacheTags.versionOf(tag)));
+    }
+
+    // Sustituye el stock de una proyección DTO (leído de la columna) por el de StockEngine
+    private ProductDTO withLiveStock(ProductDTO dto) {
+        int stock = stockEngine.stockOf(dto.id(), dto.stock());
+        return stock == dto.stock() ? dto : withStock(dto, stock);
+    }
+
     // --- Métodos de Lógica de Negocio (CRUD) ---
-    // Siempre ejecuta el metodo y actualiza la caché con el ID del producto creado
-    @CachePut(key = "#result.id")
+    // Alta masiva: en lugar de existsByName + findById + INSERT por producto, se hace
+    // una consulta de nombres, una de categorías y los INSERT en lotes JDBC, todo en una transacción.
+    // Los elementos rechazados no impiden crear el resto; cada uno tiene su resultado.
     @Transactional
-    public ProductDTO createProduct(ProductDTO productDTO) {
-        if (productRepository.existsByName(productDTO.name())) {
-            throw new DuplicateResourceException("El producto con el nombre '" + productDTO.name() + "' ya existe.");
+    public BulkCreateResponseDTO bulkCreateProducts(List<ProductDTO> items) {
+        BulkItemResultDTO[] results = new BulkItemResultDTO[items.size()];
+
+        // 1. Validación de cada elemento y nombres repetidos dentro de la propia petición
+        List<Integer> candidates = new ArrayList<>();
+        Set<String> requestNames = new HashSet<>();
+        for (int i = 0; i < items.size(); i++) {
+            ProductDTO item = items.get(i);
+            Set<ConstraintViolation<ProductDTO>> violations = item == null ? Set.of() : validator.validate(item);
+            if (item == null || !violations.isEmpty()) {
+                String error = item == null ? "El producto no puede ser nulo" : violations.stream()
+                        .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining("; "));
+                results[i] = BulkItemResultDTO.rejected(i, BulkItemResultDTO.Status.INVALID, error);
+            } else if (!requestNames.add(item.name())) {
+                results[i] = BulkItemResultDTO.rejected(i, BulkItemResultDTO.Status.DUPLICATE,
+                        "El nombre '" + item.name() + "' está repetido en la petición.");
+            } else {
+                candidates.add(i);
+            }
+        }
+
+        // 2. Una consulta para los nombres existentes y otra para las categorías
+        Set<String> existingNames = productJdbcRepository.findExistingNames(requestNames);
+        Set<Long> categoryIds = candidates.stream().map(i -> items.get(i).categoryId()).collect(Collectors.toSet());
+        Set<Long> existingCategories = categoryIds.isEmpty() ? Set.of() : categoryRepository.findExistingIds(categoryIds);
+
+        List<Integer> toInsert = new ArrayList<>();
+        for (int i : candidates) {
+            ProductDTO item = items.get(i);
+            if (existingNames.contains(item.name())) {
+                results[i] = BulkItemResultDTO.rejected(i, BulkItemResultDTO.Status.DUPLICATE,
+                        "El producto con el nombre '" + item.name() + "' ya existe.");
+            } else if (!existingCategories.contains(item.categoryId())) {
+                results[i] = BulkItemResultDTO.rejected(i, BulkItemResultDTO.Status.CATEGORY_NOT_FOUND,
+                        "Categoría no encontrada con ID: " + item.categoryId());
+            } else {
+                toInsert.add(i);
+            }
+        }
+
+        // 3. INSERT en lotes JDBC
+        List<ProductDTO> inserted;
+        try {
+            inserted = productJdbcRepository.batchInsert(toInsert.stream().map(items::get).toList());
+        } catch (DuplicateKeyException e) {
+            // Otro proceso creó alguno de los nombres entre la comprobación y el INSERT: se revierte el lote
+            throw new DuplicateResourceException("Alguno de los productos se creó concurrentemente; reintente la petición.");
+        }
+
+        // 4. Resultados y caché por ID de los productos creados, con el ID y la versión de la base de datos
+        Map<Long, ProductDTO> created = new LinkedHashMap<>();
+        for (int k = 0; k < toInsert.size(); k++) {
+            ProductDTO product = inserted.get(k);
+            results[toInsert.get(k)] = BulkItemResultDTO.created(toInsert.get(k), product.id());
+            created.put(product.id(), product);
         }
+        if (!created.isEmpty()) {
+            // Memoria, filtro de IDs y caché solo si el lote se confirma: si se revierte no quedan productos
+            // que no existen. Los eventos van en la transacción y los listados se invalidan al confirmar (CacheTags).
+            afterCommit(() -> {
+                created.values().forEach(product -> {
+                    stockEngine.loadIfAbsent(product.id(), product.stock());
+                    suggestionIndex.put(product.id(), product.name());
+                });
+                idBloomFilter.addAll(IdBloomFilter.PRODUCTS, created.keySet());
+                redisBatchCache.multiPut(CACHE_NAME, created);
+            });
+            outboxWriter.recordAll(OutboxWriter.PRODUCT, "ProductCreated", created);
+            invalidateListings(created.values());
+        }
+        return new BulkCreateResponseDTO(created.size(), items.size() - created.size(), Arrays.asList(results));
+    }
 
-        Category category = categoryRepository.findById(productDTO.categoryId())
-                .orElseThrow(() -> new ResourceNotFoundException("Categoría no encontrada con ID: " + productDTO.categoryId()));
+    // Ajustes de stock contra StockEngine: cada línea se comprueba y aplica en memoria de forma atómica
+    // (nunca deja el stock en negativo), sin bloquear filas de 'products'. StockFlusher escribe el resultado
+    // en la base de datos; aquí solo se lee, por eso la transacción es de solo lectura.
+    @Transactional(readOnly = true)
+    public StockAdjustmentResponseDTO adjustStock(List<StockAdjustmentDTO> adjustments) {
+        // Productos que aún no están en memoria (p. ej. insertados fuera de la aplicación): una sola consulta
+        Set<Long> unknownIds = adjustments.stream().map(StockAdjustmentDTO::productId)
+                .filter(id -> !stockEngine.contains(id))
+                .collect(Collectors.toSet());
+        productJdbcRepository.findStocks(unknownIds).forEach(stockEngine::loadIfAbsent);
+
+        // En el orden de la petición: las líneas de un mismo producto se aplican una tras otra
+        List<StockAdjustmentResultDTO> results = new ArrayList<>(adjustments.size());
+        Set<Long> appliedIds = new HashSet<>();
+        for (int i = 0; i < adjustments.size(); i++) {
+            StockAdjustmentDTO adjustment = adjustments.get(i);
+            int outcome = stockEngine.tryAdjust(adjustment.productId(), adjustment.delta());
+            StockAdjustmentResultDTO.Status status;
+            if (outcome >= 0) {
+                status = StockAdjustmentResultDTO.Status.APPLIED;
+                appliedIds.add(adjustment.productId());
+            } else if (outcome == StockEngine.INSUFFICIENT_STOCK) {
+                status = StockAdjustmentResultDTO.Status.INSUFFICIENT_STOCK;
+            } else {
+                status = StockAdjustmentResultDTO.Status.NOT_FOUND;
+            }
+            results.add(new StockAdjustmentResultDTO(i, adjustment.productId(), status));
+        }
+        int appliedCount = (int) results.stream()
+                .filter(result -> result.status() == StockAdjustmentResultDTO.Status.APPLIED)
+                .count();
+
+        // Estado final de los productos modificados: una consulta y una sola escritura en la caché para todo el lote
+        List<ProductDTO> products = appliedIds.isEmpty() ? List.of() : productRepository.findDTOsByIdIn(appliedIds).stream()
+                .map(this::withLiveStock)
+                .toList();
+        if (!products.isEmpty()) {
+            // Al terminar la transacción, como las demás escrituras en la caché; los listados los invalida
+            // CacheTags también entonces
+            Map<Long, ProductDTO> entries = products.stream()
+                    .collect(Collectors.toMap(ProductDTO::id, Function.identity()));
+            afterCommit(() -> redisBatchCache.multiPut(CACHE_NAME, entries));
+            invalidateListings(products);
+        }
+        return new StockAdjustmentResponseDTO(appliedCount, adjustments.size() - appliedCount, results, products);
+    }
 
+    // Tras un volcado de StockFlusher ya confirmado: reescribe las entradas por ID de los productos volcados
+    // con la fila actual y el stock vivo, e invalida sus listados. withLiveStock solo conoce los ajustes hechos
+    // en esta instancia: las demás leen la columna, y sus listados no deben seguir con el stock anterior al volcado
+    @Transactional(readOnly = true)
+    public void refreshFlushedProducts(Collection<Long> ids) {
+        Map<Long, ProductDTO> products = productRepository.findDTOsByIdIn(ids).stream()
+                .map(this::withLiveStock)
+                .collect(Collectors.toMap(ProductDTO::id, Function.identity()));
+        if (!products.isEmpty()) {
+            redisBatchCache.multiPut(CACHE_NAME, products);
+            invalidateListings(products.values());
+        }
+    }
+
+    // Siempre ejecuta el metodo y actualiza la caché con el ID del producto creado.
+    // Un solo INSERT: el nombre repetido y la categoría inexistente los detectan sus restricciones (saveChecked).
+    @CachePut(key = "#result.id")
+    @Transactional
+    public ProductDTO createProduct(ProductDTO productDTO) {
         // 4. Mapeo de DTO a Entidad.
         Product product = new Product();
         product.setName(productDTO.name());
         product.setDescription(productDTO.description());
         product.setPrice(productDTO.price());
         product.setStock(productDTO.stock());
-        product.setCategory(category); // Asigna el objeto Category completo.
+        // Referencia sin cargar: solo aporta la FK, sin SELECT de la categoría
+        product.setCategory(categoryRepository.getReferenceById(productDTO.categoryId()));
 
-        Product savedProduct = productRepository.save(product);
-        return mapToDTO(savedProduct);
+        Product savedProduct = saveChecked(product);
+        afterCommit(() -> {
+            stockEngine.loadIfAbsent(savedProduct.getId(), savedProduct.getStock());
+            suggestionIndex.put(savedProduct.getId(), savedProduct.getName());
+        });
+        ProductDTO created = mapToDTO(savedProduct);
+        outboxWriter.record(OutboxWriter.PRODUCT, created.id(), "ProductCreated", created);
+        cacheTags.invalidate(CacheTags.ALL_PRODUCTS, CacheTags.category(created.categoryId()));
+        return created;
     }
 
-    // Cachea el resultado de este metodo La clave por defecto son los argumentos.
-    @Cacheable
+    // Listados: la clave lleva la versión de su etiqueta (CacheTags); cualquier alta, cambio o baja la invalida.
+    @Cacheable(cacheNames = LIST_CACHE_NAME, sync = true, key = "'all:' + @cacheTags.versionOf('products:all')")
     @Transactional(readOnly = true)
     public List<ProductDTO> getAllProducts() {
         System.out.println("Fetching all products from DB...");
-        return productRepository.findAll().stream()
-                .map(this::mapToDTO)
+        String version = cacheTags.versionOf(CacheTags.ALL_PRODUCTS);
+        // Proyección DTO: no se hidratan entidades para una lectura
+        List<ProductDTO> products = productRepository.findAllAsDTO().stream()
+                .map(this::withLiveStock)
+                .toList();
+        cacheByIdInBackground(products, CacheTags.ALL_PRODUCTS, version);
+        return products;
+    }
+
+    // Cachea cada página por separado. El prefijo 'page:' la separa del listado completo.
+    @Cacheable(cacheNames = LIST_CACHE_NAME, sync = true, key = "'page:' + #after + ':' + #limit + ':' + @cacheTags.versionOf('products:all')")
+    @Transactional(readOnly = true)
+    public CursorPageDTO<ProductDTO> getProductsPage(long after, int limit) {
+        String version = cacheTags.versionOf(CacheTags.ALL_PRODUCTS);
+        // Se pide una fila de más para saber si existe una página siguiente. Proyección DTO, sin entidades.
+        List<ProductDTO> rows = productRepository.findDTOsByIdGreaterThan(after, Limit.of(limit + 1)).stream()
+                .map(this::withLiveStock)
                 .collect(Collectors.toList());
+        CursorPageDTO<ProductDTO> page = CursorPageDTO.of(rows, limit, ProductDTO::id);
+        cacheByIdInBackground(page.items(), CacheTags.ALL_PRODUCTS, version);
+        return page;
+    }
+
+    // Sparse fieldsets: 'fields' ya viene validado y en orden canónico (SparseFields.resolve).
+    // El prefijo 'fields:' y el conjunto de campos en la clave separan las vistas parciales de las completas.
+    @Cacheable(cacheNames = LIST_CACHE_NAME, sync = true, key = "'fields:' + T(String).join(',', #fields) + ':all:' + @cacheTags.versionOf('products:all')")
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getAllProductFields(List<String> fields) {
+        return withLiveStockFields(productRepository.findFieldsBy(Specification.allOf(), fields, null));
     }
 
-    // Cachea el resultado usando el 'id' como clave
-    @Cacheable(key = "#id")
+    @Cacheable(cacheNames = LIST_CACHE_NAME, sync = true, key = "'fields:' + T(String).join(',', #fields) + ':page:' + #after + ':' + #limit + ':' + @cacheTags.versionOf('products:all')")
+    @Transactional(readOnly = true)
+    public CursorPageDTO<Map<String, Object>> getProductFieldsPage(List<String> fields, long after, int limit) {
+        // Se pide una fila de más para saber si existe una página siguiente
+        List<Map<String, Object>> rows = withLiveStockFields(
+                productRepository.findFieldsBy(ProductSpecifications.idGreaterThan(after), fields, limit + 1));
+        return CursorPageDTO.of(rows, limit, SparseFields::idOf);
+    }
+
+    // Listado filtrado con facetas. No se cachea: las combinaciones de filtros son demasiadas.
+    // Las facetas solo se calculan en la primera página; al avanzar con el cursor no cambian.
+    @Transactional(readOnly = true)
+    public ProductFilterResultDTO<ProductDTO> filterProducts(ProductFilterDTO filter, long after, int limit) {
+        Specification<Product> spec = ProductSpecifications.fromFilter(filter);
+        // Se pide una fila de más para saber si existe una página siguiente
+        List<ProductDTO> rows = productRepository.findDTOsBy(spec, after, limit + 1).stream()
+                .map(this::withLiveStock)
+                .toList();
+        CursorPageDTO<ProductDTO> page = CursorPageDTO.of(rows, limit, ProductDTO::id);
+        ProductFacetsDTO facets = after == 0 ? productRepository.countFacets(spec) : null;
+        return new ProductFilterResultDTO<>(page.items(), page.nextCursor(), facets);
+    }
+
+    // Listado filtrado con sparse fieldsets: mismas filas y facetas que filterProducts, solo con los campos pedidos
+    @Transactional(readOnly = true)
+    public ProductFilterResultDTO<Map<String, Object>> filterProductFields(ProductFilterDTO filter, List<String> fields,
+                                                                         long after, int limit) {
+        Specification<Product> spec = ProductSpecifications.fromFilter(filter);
+        List<Map<String, Object>> rows = withLiveStockFields(productRepository.findFieldsBy(
+                spec.and(ProductSpecifications.idGreaterThan(after)), fields, limit + 1));
+        CursorPageDTO<Map<String, Object>> page = CursorPageDTO.of(rows, limit, SparseFields::idOf);
+        ProductFacetsDTO facets = after == 0 ? productRepository.countFacets(spec) : null;
+        return new ProductFilterResultDTO<>(page.items(), page.nextCursor(), facets);
+    }
+
+    // Exporta el catálogo completo fila a fila sin construir la lista en memoria (no se cachea).
+    // Cada entidad se desacopla del contexto de persistencia tras mapearla para que este no crezca.
+    @Transactional(readOnly = true)
+    public long exportProducts(Consumer<ProductDTO> consumer) {
+        long exported = 0;
+        try (Stream<Product> products = productRepository.streamAllBy()) {
+            for (Product product : (Iterable<Product>) products::iterator) {
+                consumer.accept(mapToDTO(product));
+                entityManager.detach(product);
+                exported++;
+            }
+        }
+        return exported;
+    }
+
+    // Búsqueda por texto completo y similitud sobre nombre y descripción, ordenada por relevancia.
+    // No se cachea: el espacio de consultas es abierto y los índices GIN ya responden en milisegundos.
+    @Transactional(readOnly = true)
+    public SearchPageDTO<ProductDTO> searchProducts(String query, int page, int size) {
+        // Se pide una fila de más para saber si existe una página siguiente
+        List<ProductSearchView> rows = productRepository.search(query.trim(), size + 1, (long) page * size);
+        List<ProductDTO> items = rows.stream()
+                .limit(size)
+                .map(row -> new ProductDTO(row.getId(), row.getName(), row.getDescription(),
+                        row.getPrice(), row.getStock(), row.getCategoryId(), row.getVersion()))
+                .map(this::withLiveStock)
+                .collect(Collectors.toList());
+        return new SearchPageDTO<>(items, page, size, rows.size() > size);
+    }
+
+    // Autocompletado: sugerencias desde el índice en memoria, sin ir a la base de datos ni a Redis
+    public List<ProductSuggestionDTO> suggestProducts(String prefix, int limit) {
+        return suggestionIndex.suggest(prefix, limit);
+    }
+
+    // Cachea el resultado usando el 'id' como clave. Con sync, las lecturas simultáneas de una clave que no está
+    // en caché comparten una sola consulta (TwoTierCache); igual en el resto de @Cacheable de los servicios.
+    // Los IDs que el filtro de Bloom descarta (IdBloomFilter) no llegan a la base de datos.
+    @Cacheable(sync = true, key = "#id")
     @Transactional(readOnly = true)
     public ProductDTO getProductById(Long id) {
-        Product product = productRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Producto no encontrado con ID: " + id));
-        return mapToDTO(product);
+        if (idBloomFilter.isDefinitelyAbsent(IdBloomFilter.PRODUCTS, id)) {
+            throw new ResourceNotFoundException("Producto no encontrado con ID: " + id);
+        }
+        return productRepository.findDTOById(id)
+                .map(this::withLiveStock)
+                .orElseThrow(() -> {
+                    idBloomFilter.recordFalsePositive(IdBloomFilter.PRODUCTS);
+                    return new ResourceNotFoundException("Producto no encontrado con ID: " + id);
+                });
     }
 
-    // Siempre ejecuta el metodo y actualiza la caché con el 'id'
+    // Lectura por lotes: los aciertos salen de la caché con un solo MGET, los fallos con una sola consulta IN.
+    // Los fallos encontrados se guardan en la caché (en pipeline) para las siguientes lecturas.
+    @Transactional(readOnly = true)
+    public BatchGetResponseDTO<ProductDTO> batchGetProducts(List<Long> ids) {
+        List<Long> uniqueIds = ids.stream().distinct().toList();
+        Map<Long, ProductDTO> found = new HashMap<>(redisBatchCache.multiGet(CACHE_NAME, uniqueIds, ProductDTO.class));
+
+        List<Long> misses = uniqueIds.stream().filter(id -> !found.containsKey(id)).toList();
+        if (!misses.isEmpty()) {
+            Map<Long, ProductDTO> loaded = productRepository.findDTOsByIdIn(misses).stream()
+                    .map(this::withLiveStock)
+                    .collect(Collectors.toMap(ProductDTO::id, Function.identity()));
+            redisBatchCache.multiPut(CACHE_NAME, loaded);
+            found.putAll(loaded);
+        }
+
+        // Respuesta en el orden de la petición, separando los IDs inexistentes
+        List<ProductDTO> items = new ArrayList<>();
+        List<Long> notFound = new ArrayList<>();
+        for (Long id : uniqueIds) {
+            ProductDTO product = found.get(id);
+            if (product != null) {
+                items.add(product);
+            } else {
+                notFound.add(id);
+            }
+        }
+        return new BatchGetResponseDTO<>(items, notFound);
+    }
+
+    // Siempre ejecuta el metodo y actualiza la caché con el 'id'.
+    // expectedRevision (If-Match) es opcional: si llega y no coincide con la revisión actual, 412.
     @CachePut(key = "#id")
     @Transactional
-    public ProductDTO updateProduct(Long id, ProductDTO productDTO) {
+    public ProductDTO updateProduct(Long id, ProductDTO productDTO, String expectedRevision) {
         Product existingProduct = productRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Producto no encontrado con ID: " + id));
+        checkRevision(existingProduct, expectedRevision);
+        stockEngine.loadIfAbsent(id, existingProduct.getStock());
+        Long previousCategoryId = existingProduct.getCategory().getId();
+        Long previousVersion = existingProduct.getVersion();
+        boolean stockChanges = stockChanges(existingProduct, productDTO.stock());
 
-        // 5. Lógica de Negocio: Evitar duplicados al actualizar.
-        if (!existingProduct.getName().equals(productDTO.name()) && productRepository.existsByName(productDTO.name())) {
-            throw new DuplicateResourceException("El producto con el nombre '" + productDTO.name() + "' ya existe.");
-        }
-
-        // 6. Validación de Relaciones: Asegurarse de que la categoría asociada exista (si cambia).
-        Category category = categoryRepository.findById(productDTO.categoryId())
-                .orElseThrow(() -> new ResourceNotFoundException("Categoría no encontrada con ID: " + productDTO.categoryId()));
-
-        // 7. Actualiza los campos.
+        // 7. Actualiza los campos. El nombre único y la categoría los valida la base de datos en el UPDATE.
         existingProduct.setName(productDTO.name());
         existingProduct.setDescription(productDTO.description());
         existingProduct.setPrice(productDTO.price());
         existingProduct.setStock(productDTO.stock());
-        existingProduct.setCategory(category);
+        existingProduct.setCategory(categoryRepository.getReferenceById(productDTO.categoryId()));
 
-        Product updatedProduct = productRepository.save(existingProduct);
-        return mapToDTO(updatedProduct);
+        // saveAndFlush: el UPDATE se ejecuta ya, así la versión devuelta (y cacheada) es la nueva
+        Product updatedProduct = bumpVersionIfOnlyStockChanged(saveChecked(existingProduct), previousVersion, stockChanges);
+        // El stock no viaja en el UPDATE de Hibernate: se fija en memoria al confirmarse el resto,
+        // igual que el nombre en el índice de sugerencias
+        String name = updatedProduct.getName();
+        afterCommit(() -> {
+            stockEngine.set(id, productDTO.stock());
+            suggestionIndex.put(id, name);
+        });
+        ProductDTO updated = withStock(mapToDTO(updatedProduct), productDTO.stock());
+        outboxWriter.record(OutboxWriter.PRODUCT, id, "ProductUpdated", updated);
+        invalidateListings(previousCategoryId, updated.categoryId());
+        return updated;
     }
 
     // Elimina la entrada de la caché asociada con este 'id'
     @CacheEvict(key = "#id")
     @Transactional
     public void deleteProduct(Long id) {
-        if (!productRepository.existsById(id)) {
-            throw new ResourceNotFoundException("Producto no encontrado con ID: " + id);
-        }
-        productRepository.deleteById(id);
+        // Un solo DELETE: si no borra ninguna fila, el producto no existía
+        Long categoryId = productRepository.deleteRowById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Producto no encontrado con ID: " + id));
+        outboxWriter.record(OutboxWriter.PRODUCT, id, "ProductDeleted", Map.of("id", id));
+        cacheTags.invalidate(CacheTags.ALL_PRODUCTS, CacheTags.category(categoryId));
+        afterCommit(() -> {
+            stockEngine.remove(id);
+            suggestionIndex.remove(id);
+        });
     }
 
-    // Cachea el resultado de este metodo La clave por defecto son los argumentos.
-    @Cacheable
+    // Región propia (products-by-category): el listado de la categoría 5 no comparte clave con el producto 5
+    @Cacheable(cacheNames = CATEGORY_CACHE_NAME, sync = true, key = "'category:' + #categoryId + ':all:' + @cacheTags.versionOf('category:' + #categoryId)")
     @Transactional(readOnly = true)
     public List<ProductDTO> getProductsByCategoryId(Long categoryId) {
         // 8. Validación: Verificar que la categoría exista antes de buscar productos.
         if (!categoryRepository.existsById(categoryId)) {
             throw new ResourceNotFoundException("Categoría no encontrada con ID: " + categoryId);
         }
-        return productRepository.findByCategoryId(categoryId).stream()
-                .map(this::mapToDTO)
+        String version = cacheTags.versionOf(CacheTags.category(categoryId));
+        List<ProductDTO> products = productRepository.findDTOsByCategoryId(categoryId).stream()
+                .map(this::withLiveStock)
+                .toList();
+        cacheByIdInBackground(products, CacheTags.category(categoryId), version);
+        return products;
+    }
+
+    // Cachea cada página de la categoría por separado
+    @Cacheable(cacheNames = CATEGORY_CACHE_NAME, sync = true, key = "'category:' + #categoryId + ':page:' + #after + ':' + #limit + ':' + @cacheTags.versionOf('category:' + #categoryId)")
+    @Transactional(readOnly = true)
+    public CursorPageDTO<ProductDTO> getProductsByCategoryIdPage(Long categoryId, long after, int limit) {
+        if (!categoryRepository.existsById(categoryId)) {
+            throw new ResourceNotFoundException("Categoría no encontrada con ID: " + categoryId);
+        }
+        String version = cacheTags.versionOf(CacheTags.category(categoryId));
+        List<ProductDTO> rows = productRepository
+                .findDTOsByCategoryIdAndIdGreaterThan(categoryId, after, Limit.of(limit + 1)).stream()
+                .map(this::withLiveStock)
                 .collect(Collectors.toList());
+        CursorPageDTO<ProductDTO> page = CursorPageDTO.of(rows, limit, ProductDTO::id);
+        cacheByIdInBackground(page.items(), CacheTags.category(categoryId), version);
+        return page;
+    }
+
+    // Sparse fieldsets dentro de una categoría; el prefijo 'fields:' separa estas vistas de los listados completos
+    @Cacheable(cacheNames = CATEGORY_CACHE_NAME, sync = true, key = "'category:' + #categoryId + ':fields:' + T(String).join(',', #fields) + ':all:' + @cacheTags.versionOf('category:' + #categoryId)")
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getProductFieldsByCategoryId(Long categoryId, List<String> fields) {
+        if (!categoryRepository.existsById(categoryId)) {
+            throw new ResourceNotFoundException("Categoría no encontrada con ID: " + categoryId);
+        }
+        return withLiveStockFields(productRepository.findFieldsBy(ProductSpecifications.hasCategory(categoryId), fields, null));
+    }
+
+    @Cacheable(cacheNames = CATEGORY_CACHE_NAME, sync = true, key = "'category:' + #categoryId + ':fields:' + T(String).join(',', #fields) + ':page:' + #after + ':' + #limit + ':' + @cacheTags.versionOf('category:' + #categoryId)")
+    @Transactional(readOnly = true)
+    public CursorPageDTO<Map<String, Object>> getProductFieldsByCategoryIdPage(Long categoryId, List<String> fields,
+                                                                               long after, int limit) {
+        if (!categoryRepository.existsById(categoryId)) {
+            throw new ResourceNotFoundException("Categoría no encontrada con ID: " + categoryId);
+        }
+        List<Map<String, Object>> rows = withLiveStockFields(productRepository.findFieldsBy(
+                ProductSpecifications.hasCategory(categoryId).and(ProductSpecifications.idGreaterThan(after)), fields, limit + 1));
+        return CursorPageDTO.of(rows, limit, SparseFields::idOf);
     }
 
     // Siempre ejecuta el metodo y actualiza la caché con el 'id'
     @CachePut(key = "#id")
     @Transactional
-    public ProductDTO patchProduct(Long id, ProductPartialUpdateDTO patchDTO) {
+    public ProductDTO patchProduct(Long id, ProductPartialUpdateDTO patchDTO, String expectedRevision) {
+        return applyPatch(id, patchDTO, expectedRevision);
+    }
+
+    // INSERT o UPDATE inmediato (saveAndFlush) que traduce las violaciones de restricciones: el nombre único
+    // y la FK de la categoría se comprueban en la misma sentencia, sin consultas previas
+    private Product saveChecked(Product product) {
+        try {
+            return productRepository.saveAndFlush(product);
+        } catch (DataIntegrityViolationException e) {
+            if (ConstraintViolations.isUniqueViolation(e)) {
+                throw new DuplicateResourceException("El producto con el nombre '" + product.getName() + "' ya existe.");
+            }
+            if (ConstraintViolations.isForeignKeyViolation(e)) {
+                throw new ResourceNotFoundException("Categoría no encontrada con ID: " + product.getCategory().getId());
+            }
+            throw e;
+        }
+    }
+
+    // Compara la revisión esperada (If-Match) con la actual ("versión.stock", ver ProductDTO.revision);
+    // null significa escritura incondicional
+    private void checkRevision(Product product, String expectedRevision) {
+        String revision = product.getVersion() + "." + stockEngine.stockOf(product.getId(), product.getStock());
+        if (expectedRevision != null && !expectedRevision.equals(revision)) {
+            throw new PreconditionFailedException("El producto con ID " + product.getId() + " está en la revisión "
+                    + revision + ", no en la " + expectedRevision + ".");
+        }
+    }
+
+    private boolean stockChanges(Product product, int newStock) {
+        return stockEngine.stockOf(product.getId(), product.getStock()) != newStock;
+    }
+
+    // 'stock' no viaja en el UPDATE de Hibernate: si se fija un stock distinto, la versión tiene que cambiar
+    // para que dos PUT/PATCH condicionales con el mismo If-Match no puedan aplicarse ambos. Si Hibernate ya
+    // emitió su UPDATE (cambió otro campo) la versión viene incrementada; si no, se incrementa con una única
+    // sentencia condicionada a la versión leída. Los deltas conmutativos (stockDelta, ajustes por lote) no la
+    // tocan, y StockFlusher tampoco: el ETag ya cambia con el stock (ProductDTO.revision).
+    private Product bumpVersionIfOnlyStockChanged(Product saved, Long previousVersion, boolean stockChanges) {
+        if (!stockChanges || !Objects.equals(saved.getVersion(), previousVersion)) {
+            return saved;
+        }
+        Long version = productRepository.incrementVersion(saved.getId(), previousVersion)
+                .orElseThrow(() -> new ObjectOptimisticLockingFailureException(Product.class, saved.getId()));
+        // La entidad gestionada no sabe de ese UPDATE: se separa del contexto antes de ajustar su versión
+        entityManager.detach(saved);
+        saved.setVersion(version);
+        return saved;
+    }
+
+    private ProductDTO applyPatch(Long id, ProductPartialUpdateDTO patchDTO, String expectedRevision) {
         Product existingProduct = productRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Producto no encontrado con ID: " + id));
+        checkRevision(existingProduct, expectedRevision);
+        stockEngine.loadIfAbsent(id, existingProduct.getStock());
+        Long previousCategoryId = existingProduct.getCategory().getId();
+        Long previousVersion = existingProduct.getVersion();
+        boolean stockChanges = patchDTO.getStock() != null && stockChanges(existingProduct, patchDTO.getStock());
 
         // Aplicar cambios solo si los campos están presentes en el DTO de PATCH
+        // El nombre repetido y la categoría inexistente los detectan sus restricciones en el UPDATE (saveChecked)
         if (patchDTO.getName() != null && !patchDTO.getName().trim().isEmpty()) {
-            // Lógica de Negocio: Evitar duplicados al actualizar.
-            if (!existingProduct.getName().equals(patchDTO.getName()) && productRepository.existsByName(patchDTO.getName())) {
-                throw new DuplicateResourceException("El producto con el nombre '" + patchDTO.getName() + "' ya existe.");
-            }
             existingProduct.setName(patchDTO.getName());
         }
 
@@ -157,18 +628,100 @@ public class ProductService {
             existingProduct.setPrice(patchDTO.getPrice());
         }
 
+
+        if (patchDTO.getCategoryId() != null) {
+            existingProduct.setCategory(categoryRepository.getReferenceById(patchDTO.getCategoryId()));
+        }
+
+        // saveAndFlush: el UPDATE se ejecuta ya, así la versión devuelta (y cacheada) es la nueva
+        Product updatedProduct = bumpVersionIfOnlyStockChanged(saveChecked(existingProduct), previousVersion, stockChanges);
+        String name = updatedProduct.getName();
+        afterCommit(() -> suggestionIndex.put(id, name));
+
+        // StockEngine no es transaccional: los cambios de stock se aplican al confirmarse la transacción,
+        // salvo las retiradas (delta negativo), que se reservan ya para que nadie más venda esas unidades
+        // y se devuelven si la transacción se revierte (p. ej. conflicto de versión y reintento)
+        ProductDTO updated = mapToDTO(updatedProduct);
         if (patchDTO.getStock() != null) {
-            existingProduct.setStock(patchDTO.getStock());
+            afterCommit(() -> stockEngine.set(id, patchDTO.getStock()));
+            updated = withStock(updated, patchDTO.getStock());
         }
+        Integer delta = patchDTO.getStockDelta();
+        if (delta != null && delta < 0) {
+            int reserved = stockEngine.tryAdjust(id, delta);
+            if (reserved == StockEngine.INSUFFICIENT_STOCK) {
+                throw new InvalidFieldException("Stock insuficiente: el producto con ID " + id + " tiene "
+                        + stockEngine.stockOf(id, existingProduct.getStock()) + " unidades.");
+            }
+            if (reserved == StockEngine.NOT_FOUND) { // Borrado concurrentemente
+                throw new ResourceNotFoundException("Producto no encontrado con ID: " + id);
+            }
+            onRollback(() -> stockEngine.tryAdjust(id, -delta));
+            updated = withStock(updated, reserved);
+        } else if (delta != null && delta > 0) {
+            long expected = (long) stockEngine.stockOf(id, existingProduct.getStock()) + delta;
+            if (expected > Integer.MAX_VALUE) {
+                throw new InvalidFieldException("El stock del producto con ID " + id + " superaría el máximo admitido.");
+            }
+            afterCommit(() -> stockEngine.tryAdjust(id, delta));
+            updated = withStock(updated, (int) expected);
+        }
+        outboxWriter.record(OutboxWriter.PRODUCT, id, "ProductUpdated", updated);
+        invalidateListings(previousCategoryId, updated.categoryId());
+        return updated;
+    }
 
-        if (patchDTO.getCategoryId() != null) {
-            // Validar si la nueva categoría existe
-            Category category = categoryRepository.findById(patchDTO.getCategoryId())
-                    .orElseThrow(() -> new ResourceNotFoundException("Categoría no encontrada con ID: " + patchDTO.getCategoryId()));
-            existingProduct.setCategory(category);
+    // withLiveStock para las filas de '?fields=' que incluyen 'stock' (el 'id' viene siempre)
+    private List<Map<String, Object>> withLiveStockFields(List<Map<String, Object>> rows) {
+        rows.forEach(row -> row.computeIfPresent("stock",
+                (field, stock) -> stockEngine.stockOf(SparseFields.idOf(row), ((Number) stock).intValue())));
+        return rows;
+    }
+
+    private static ProductDTO withStock(ProductDTO dto, int stock) {
+        return new ProductDTO(dto.id(), dto.name(), dto.description(), dto.price(), stock, dto.categoryId(), dto.version());
+    }
+
+    // Ejecuta 'action' al confirmarse la transacción actual (o en el momento, si no hay ninguna activa),
+    // para que los estados en memoria (StockEngine) no reflejen cambios que la base de datos acabe revirtiendo
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    // Compensa un cambio en memoria ya aplicado si la transacción actual se revierte
+    private static void onRollback(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_ROLLED_BACK) {
+                        action.run();
+                    }
+                }
+            });
         }
+    }
+
+    // Invalida el listado completo y los de las categorías indicadas (la anterior y la nueva si el producto cambió de una a otra)
+    private void invalidateListings(Long... categoryIds) {
+        Set<String> tags = new HashSet<>();
+        tags.add(CacheTags.ALL_PRODUCTS);
+        for (Long categoryId : categoryIds) {
+            tags.add(CacheTags.category(categoryId));
+        }
+        cacheTags.invalidate(tags);
+    }
 
-        Product updatedProduct = productRepository.save(existingProduct);
-        return mapToDTO(updatedProduct);
+    private void invalidateListings(Collection<ProductDTO> products) {
+        invalidateListings(products.stream().map(ProductDTO::categoryId).distinct().toArray(Long[]::new));
     }
 }
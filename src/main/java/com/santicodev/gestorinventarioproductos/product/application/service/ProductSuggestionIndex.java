@@ -0,0 +1,107 @@
+package com.santicodev.gestorinventarioproductos.product.application.service;
+
+import com.santicodev.gestorinventarioproductos.product.infraestructure.repository.ProductRepository;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductSuggestionDTO;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Índice en memoria de nombres de producto para el autocompletado.
+ * Los nombres normalizados (minúsculas, sin tildes) se guardan ordenados, así que todas las
+ * sugerencias de un prefijo son un rango contiguo: O(log n + k) por consulta, sin ir a la base de datos.
+ * Se construye al arrancar (ProductSuggestionIndexLoader) y ProductService lo mantiene en cada escritura.
+ */
+@Component
+public class ProductSuggestionIndex {
+    // Separa el nombre del ID en la clave para que dos nombres que normalizan igual no se pisen
+    private static final char KEY_SEPARATOR = '\u0000';
+    // Estimación del coste fijo por entrada: nodo del skip list, entrada del mapa por ID, DTO y cabeceras de String
+    private static final long ENTRY_OVERHEAD_BYTES = 200;
+
+    private final ProductRepository productRepository;
+    private final ConcurrentSkipListMap<String, ProductSuggestionDTO> entries = new ConcurrentSkipListMap<>();
+    private final Map<Long, String> keysById = new ConcurrentHashMap<>();
+    private final AtomicLong estimatedBytes = new AtomicLong();
+
+    public ProductSuggestionIndex(ProductRepository productRepository, MeterRegistry meterRegistry) {
+        this.productRepository = productRepository;
+        // Expuestos en /actuator/metrics
+        Gauge.builder("products.suggest.index.entries", keysById, Map::size)
+                .description("Productos en el índice de autocompletado")
+                .register(meterRegistry);
+        Gauge.builder("products.suggest.index.bytes", estimatedBytes, AtomicLong::get)
+                .description("Memoria estimada del índice de autocompletado")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    // Reconstruye el índice completo leyendo solo (id, name) con un cursor de la base de datos
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        clear();
+        try (Stream<ProductSuggestionDTO> suggestions = productRepository.streamSuggestionsBy()) {
+            suggestions.forEach(suggestion -> put(suggestion.id(), suggestion.name()));
+        }
+    }
+
+    // Alta o cambio de nombre de un producto
+    public synchronized void put(Long id, String name) {
+        remove(id);
+        String key = normalize(name) + KEY_SEPARATOR + id;
+        entries.put(key, new ProductSuggestionDTO(id, name));
+        keysById.put(id, key);
+        estimatedBytes.addAndGet(entrySize(key, name));
+    }
+
+    public synchronized void remove(Long id) {
+        String key = keysById.remove(id);
+        if (key != null) {
+            ProductSuggestionDTO removed = entries.remove(key);
+            estimatedBytes.addAndGet(-entrySize(key, removed.name()));
+        }
+    }
+
+    // Devuelve como máximo 'limit' productos cuyo nombre empieza por el prefijo, en orden alfabético
+    public List<ProductSuggestionDTO> suggest(String prefix, int limit) {
+        String normalizedPrefix = normalize(prefix);
+        NavigableMap<String, ProductSuggestionDTO> range =
+                entries.subMap(normalizedPrefix, true, normalizedPrefix + Character.MAX_VALUE, false);
+        List<ProductSuggestionDTO> result = new ArrayList<>(limit);
+        for (ProductSuggestionDTO suggestion : range.values()) {
+            if (result.size() == limit) {
+                break;
+            }
+            result.add(suggestion);
+        }
+        return result;
+    }
+
+    private synchronized void clear() {
+        entries.clear();
+        keysById.clear();
+        estimatedBytes.set(0);
+    }
+
+    // Minúsculas, sin tildes y con los espacios colapsados: "Lámpara  LED" -> "lampara led"
+    static String normalize(String text) {
+        String withoutAccents = Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return withoutAccents.toLowerCase(Locale.ROOT).trim().replaceAll("\\s+", " ");
+    }
+
+    private static long entrySize(String key, String name) {
+        return ENTRY_OVERHEAD_BYTES + key.length() + name.length();
+    }
+}
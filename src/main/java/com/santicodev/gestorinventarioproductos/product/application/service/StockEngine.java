@@ -0,0 +1,362 @@
+package com.santicodev.gestorinventarioproductos.product.application.service;
+
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.PendingStockDTO;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stock de los productos en memoria, delante de la columna 'products.stock'.
+ * Cada reserva o ajuste es una operación en memoria bajo el cerrojo de una franja (hay STRIPES franjas,
+ * repartidas por ID), en lugar de un bloqueo de fila en 'products'. Los cambios se acumulan como un delta
+ * pendiente por producto (o como un valor absoluto tras un PUT/PATCH con 'stock'), y StockFlusher los
+ * escribe coalescidos en la base de datos cada pocos milisegundos y al apagar la aplicación.
+ * <p>
+ * Con varias instancias, cada una comprueba "nunca por debajo de cero" contra su propia copia, así que esa
+ * comprobación es optimista: la que manda es la de la base de datos (el volcado suma el delta solo si el
+ * resultado no es negativo, y la restricción CHECK (stock >= 0) lo garantiza en cualquier caso). Tras cada
+ * volcado, y periódicamente para el resto, la copia se resincroniza con la columna (resync).
+ */
+@Component
+public class StockEngine {
+    // Resultados especiales de tryAdjust (el stock nunca es negativo)
+    public static final int NOT_FOUND = -1;
+    public static final int INSUFFICIENT_STOCK = -2;
+
+    // Potencia de dos: la franja se elige con una máscara
+    private static final int STRIPES = 64;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public StockEngine(MeterRegistry meterRegistry) {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+        // Expuestos en /actuator/metrics
+        Gauge.builder("products.stock.engine.entries", this, StockEngine::size)
+                .description("Productos con stock en memoria")
+                .register(meterRegistry);
+        Gauge.builder("products.stock.engine.pending", this, StockEngine::pendingCount)
+                .description("Productos con cambios de stock pendientes de volcar a la base de datos")
+                .register(meterRegistry);
+    }
+
+    // Stock leído de la base de datos (arranque o alta): sin cambios pendientes
+    public void load(long id, int stock) {
+        Stripe stripe = stripeOf(id);
+        stripe.lock.lock();
+        try {
+            int slot = stripe.insert(id);
+            stripe.stock[slot] = stock;
+            stripe.pending[slot] = 0;
+            stripe.absolute[slot] = false;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // Igual que load, pero sin pisar un stock que ya está en memoria (y que puede tener cambios pendientes)
+    public void loadIfAbsent(long id, int stock) {
+        Stripe stripe = stripeOf(id);
+        stripe.lock.lock();
+        try {
+            if (stripe.find(id) < 0) {
+                int slot = stripe.insert(id);
+                stripe.stock[slot] = stock;
+                stripe.pending[slot] = 0;
+                stripe.absolute[slot] = false;
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public void remove(long id) {
+        Stripe stripe = stripeOf(id);
+        stripe.lock.lock();
+        try {
+            stripe.delete(id);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public boolean contains(long id) {
+        Stripe stripe = stripeOf(id);
+        stripe.lock.lock();
+        try {
+            return stripe.find(id) >= 0;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // Stock actual, o 'fallback' si el producto no está en memoria
+    public int stockOf(long id, int fallback) {
+        Stripe stripe = stripeOf(id);
+        stripe.lock.lock();
+        try {
+            int slot = stripe.find(id);
+            return slot < 0 ? fallback : stripe.stock[slot];
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Suma 'delta' al stock si el resultado no queda en negativo. Comprobación y escritura son atómicas.
+     * Devuelve el nuevo stock, NOT_FOUND o INSUFFICIENT_STOCK.
+     */
+    public int tryAdjust(long id, int delta) {
+        Stripe stripe = stripeOf(id);
+        stripe.lock.lock();
+        try {
+            int slot = stripe.find(id);
+            if (slot < 0) {
+                return NOT_FOUND;
+            }
+            long newStock = (long) stripe.stock[slot] + delta;
+            if (newStock < 0 || newStock > Integer.MAX_VALUE) {
+                return INSUFFICIENT_STOCK;
+            }
+            stripe.stock[slot] = (int) newStock;
+            stripe.pending[slot] += delta;
+            return (int) newStock;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // Fija el stock (PUT/PATCH con 'stock'). Se vuelca como valor absoluto, no como la diferencia con la copia
+    // local: otra instancia puede haber cambiado la columna y esa diferencia se aplicaría sobre otra base
+    public boolean set(long id, int stock) {
+        Stripe stripe = stripeOf(id);
+        stripe.lock.lock();
+        try {
+            int slot = stripe.find(id);
+            if (slot < 0) {
+                return false;
+            }
+            stripe.stock[slot] = stock;
+            stripe.pending[slot] = 0;
+            stripe.absolute[slot] = true;
+            return true;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Ajusta la copia en memoria al stock leído de la base de datos, conservando los deltas aún sin volcar.
+     * No hace nada si el producto tiene un valor fijado pendiente (se volcará tal cual) o si la columna más
+     * los deltas pendientes quedaría en negativo (el siguiente volcado los rechazará y se volverá a llamar).
+     * Solo es correcto si ningún delta extraído está a medio volcar: lo llama StockFlusher.
+     */
+    public boolean resync(long id, int stock) {
+        Stripe stripe = stripeOf(id);
+        stripe.lock.lock();
+        try {
+            int slot = stripe.find(id);
+            if (slot < 0 || stripe.absolute[slot]) {
+                return false;
+            }
+            long resynced = (long) stock + stripe.pending[slot];
+            if (resynced < 0 || resynced > Integer.MAX_VALUE) {
+                return false;
+            }
+            stripe.stock[slot] = (int) resynced;
+            return true;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // Extrae los cambios pendientes (uno por producto, ya coalescidos) y los deja a cero
+    public List<PendingStockDTO> drainPending() {
+        List<PendingStockDTO> drained = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                for (int slot = 0; slot < stripe.keys.length; slot++) {
+                    if (stripe.keys[slot] == Stripe.EMPTY) {
+                        continue;
+                    }
+                    if (stripe.absolute[slot]) {
+                        drained.add(PendingStockDTO.setTo(stripe.keys[slot], stripe.stock[slot]));
+                    } else if (stripe.pending[slot] != 0) {
+                        drained.add(PendingStockDTO.delta(stripe.keys[slot], stripe.pending[slot]));
+                    }
+                    stripe.pending[slot] = 0;
+                    stripe.absolute[slot] = false;
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return drained;
+    }
+
+    // Devuelve cambios extraídos cuyo volcado falló, para reintentarlos en el siguiente ciclo
+    public void restorePending(List<PendingStockDTO> changes) {
+        for (PendingStockDTO change : changes) {
+            Stripe stripe = stripeOf(change.productId());
+            stripe.lock.lock();
+            try {
+                int slot = stripe.find(change.productId());
+                if (slot < 0 || stripe.absolute[slot]) {
+                    // Borrado mientras tanto, o fijado de nuevo: el nuevo valor ya cubre este cambio
+                    continue;
+                }
+                if (change.setTo() != null) {
+                    // El stock actual es el fijado más los deltas posteriores: se vuelca tal cual
+                    stripe.absolute[slot] = true;
+                    stripe.pending[slot] = 0;
+                } else {
+                    stripe.pending[slot] += change.delta();
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.size;
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    public int pendingCount() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                for (int slot = 0; slot < stripe.keys.length; slot++) {
+                    if (stripe.keys[slot] != Stripe.EMPTY && (stripe.pending[slot] != 0 || stripe.absolute[slot])) {
+                        count++;
+                    }
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return count;
+    }
+
+    private Stripe stripeOf(long id) {
+        return stripes[Stripe.mix(id) & (STRIPES - 1)];
+    }
+
+    /**
+     * Mapa long -> (stock, delta pendiente, stock fijado pendiente) con direccionamiento abierto y sondeo lineal, sobre arrays
+     * primitivos: sin un objeto por producto. Solo se accede con 'lock' adquirido.
+     */
+    private static final class Stripe {
+        // Los IDs de producto son positivos, así que 0 marca una celda libre
+        static final long EMPTY = 0L;
+        private static final int INITIAL_CAPACITY = 64;
+
+        final ReentrantLock lock = new ReentrantLock();
+        long[] keys = new long[INITIAL_CAPACITY];
+        int[] stock = new int[INITIAL_CAPACITY];
+        int[] pending = new int[INITIAL_CAPACITY];
+        boolean[] absolute = new boolean[INITIAL_CAPACITY];
+        int size;
+
+        // Dispersa los bits del ID: IDs consecutivos acaban en franjas y celdas distintas
+        static int mix(long id) {
+            long h = id * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        int find(long id) {
+            int mask = keys.length - 1;
+            for (int slot = (mix(id) >>> 6) & mask; ; slot = (slot + 1) & mask) {
+                if (keys[slot] == id) {
+                    return slot;
+                }
+                if (keys[slot] == EMPTY) {
+                    return -1;
+                }
+            }
+        }
+
+        // Devuelve la celda del ID, creándola si no existe
+        int insert(long id) {
+            int existing = find(id);
+            if (existing >= 0) {
+                return existing;
+            }
+            // Factor de carga máximo 0,5: los sondeos se mantienen cortos
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            int slot = (mix(id) >>> 6) & mask;
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = id;
+            size++;
+            return slot;
+        }
+
+        // Borrado con desplazamiento hacia atrás: no deja lápidas que alarguen los sondeos
+        void delete(long id) {
+            int slot = find(id);
+            if (slot < 0) {
+                return;
+            }
+            int mask = keys.length - 1;
+            int hole = slot;
+            for (int next = (hole + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+                int home = (mix(keys[next]) >>> 6) & mask;
+                // La entrada de 'next' puede ocupar el hueco si su celda natural no está entre el hueco y ella
+                boolean canMove = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+                if (canMove) {
+                    keys[hole] = keys[next];
+                    stock[hole] = stock[next];
+                    pending[hole] = pending[next];
+                    absolute[hole] = absolute[next];
+                    hole = next;
+                }
+            }
+            keys[hole] = EMPTY;
+            stock[hole] = 0;
+            pending[hole] = 0;
+            absolute[hole] = false;
+            size--;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldStock = stock;
+            int[] oldPending = pending;
+            boolean[] oldAbsolute = absolute;
+            keys = new long[capacity];
+            stock = new int[capacity];
+            pending = new int[capacity];
+            absolute = new boolean[capacity];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = insert(oldKeys[i]);
+                    stock[slot] = oldStock[i];
+                    pending[slot] = oldPending[i];
+                    absolute[slot] = oldAbsolute[i];
+                }
+            }
+        }
+    }
+}
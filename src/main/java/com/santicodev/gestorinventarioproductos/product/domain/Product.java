@@ -3,9 +3,11 @@ package com.santicodev.gestorinventarioproductos.product.domain;
 import com.santicodev.gestorinventarioproductos.category.domain.Category;
 import jakarta.persistence.Entity;
 import jakarta.persistence.*;
-import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Check;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.math.BigDecimal;
 
@@ -14,11 +16,23 @@ import java.math.BigDecimal;
  * - Proyecto: Gestor Inventario de Productos
  */
 @Entity
-@Table(name = "products")
+@Table(name = "products", indexes = {
+        // Soporta el filtro por categoría y la paginación por cursor dentro de una categoría
+        @Index(name = "idx_products_category_id_id", columnList = "category_id, id"),
+        // Listado filtrado: cubren los predicados (categoría, rango de precio, stock) y las columnas
+        // que lee la consulta de facetas, así el conteo se resuelve con un index-only scan
+        @Index(name = "idx_products_category_id_price_stock", columnList = "category_id, price, stock"),
+        @Index(name = "idx_products_price_stock_category_id", columnList = "price, stock, category_id")
+})
+// UPDATE solo con las columnas modificadas (y la versión), no la fila entera
+@DynamicUpdate
+// El stock nunca es negativo, lo escriba quien lo escriba (en tablas ya creadas la añade ProductStockSchemaLoader)
+@Check(name = Product.STOCK_CHECK, constraints = "stock >= 0")
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 public class Product {
+    public static final String STOCK_CHECK = "chk_products_stock_non_negative";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -32,10 +46,29 @@ public class Product {
     @Column(nullable = false, precision = 10, scale = 2)
     private BigDecimal price;
 
-    @Column(nullable = false)
-    private Integer stock; // Cantidad de productos en stock
+    // Cantidad de productos en stock. Hibernate solo la escribe al insertar: después la fuente de verdad
+    // es StockEngine, que vuelca sus cambios a esta columna con StockFlusher.
+    @Column(nullable = false, updatable = false)
+    private Integer stock;
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "category_id", nullable = false)
     private Category category;
+
+    // Bloqueo optimista: Hibernate lo incrementa en cada UPDATE. También sirve de ETag del producto.
+    // El valor por defecto permite añadir la columna a una tabla con filas existentes.
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private Long version;
+
+    // La versión la gestiona Hibernate, por eso no forma parte del constructor
+    public Product(Long id, String name, String description, BigDecimal price, Integer stock, Category category) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.price = price;
+        this.stock = stock;
+        this.category = category;
+    }
 }
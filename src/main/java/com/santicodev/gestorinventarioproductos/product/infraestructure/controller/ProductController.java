@@ -1,21 +1,61 @@
 package com.santicodev.gestorinventarioproductos.product.infraestructure.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.santicodev.gestorinventarioproductos.product.application.service.ProductImportService;
 import com.santicodev.gestorinventarioproductos.product.application.service.ProductService;
+import com.santicodev.gestorinventarioproductos.shared.domain.exception.InvalidFieldException;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.controller.CursorParams;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.controller.ETags;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.BatchGetRequestDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.BatchGetResponseDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.BulkCreateRequestDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.BulkCreateResponseDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CursorPageDTO;
 import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductFilterDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductFilterResultDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductImportJobDTO;
 import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductPartialUpdateDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductSuggestionDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.SearchPageDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.StockAdjustmentRequestDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.StockAdjustmentResponseDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.repository.SparseFields;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.PositiveOrZero;
+import jakarta.validation.constraints.Size;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/v1/products")
 @RequiredArgsConstructor
 public class ProductController {
     private final ProductService productService;
+    private final ProductImportService productImportService;
+    private final ObjectMapper objectMapper;
 
     // Solo permitir a usuarios con rol ADMIN crear productos
     @PostMapping
@@ -25,28 +65,203 @@ public class ProductController {
         return new ResponseEntity<>(createdProduct, HttpStatus.CREATED);
     }
 
+    // Alta masiva: POST /api/v1/products/bulk con {"items": [ ... ]}
+    // Devuelve un resultado por elemento (creado con su ID, o el motivo del rechazo) en el orden de la petición.
+    @PostMapping("/bulk")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<BulkCreateResponseDTO> bulkCreateProducts(@Valid @RequestBody BulkCreateRequestDTO request) {
+        BulkCreateResponseDTO result = productService.bulkCreateProducts(request.items());
+        return ResponseEntity.ok(result);
+    }
+
+    // Importación CSV: POST /api/v1/products/import (multipart, campo 'file') con cabecera
+    // name,description,price,stock,categoryId. Responde 202 con el trabajo; su estado se consulta en Location.
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ProductImportJobDTO> importProducts(@RequestParam("file") MultipartFile file) throws IOException {
+        if (file.isEmpty()) {
+            throw new InvalidFieldException("El fichero CSV está vacío.");
+        }
+        ProductImportJobDTO job;
+        try (InputStream content = file.getInputStream()) {
+            job = productImportService.startImport(file.getOriginalFilename(), content);
+        }
+        return ResponseEntity.accepted()
+                .location(ServletUriComponentsBuilder.fromCurrentRequest().path("/{jobId}").buildAndExpand(job.id()).toUri())
+                .body(job);
+    }
+
+    // Progreso de una importación: filas leídas, importadas y rechazadas (con el motivo de cada rechazo)
+    @GetMapping("/import/{jobId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ProductImportJobDTO> getImportJob(@PathVariable String jobId) {
+        return ResponseEntity.ok(productImportService.getJob(jobId));
+    }
+
+    // Ajustes de stock por lote: POST /api/v1/products/stock-adjustments con {"adjustments": [{"productId": 1, "delta": -2}, ...]}
+    // Cada línea se aplica de forma atómica en StockEngine (en memoria) y nunca deja el stock en negativo.
+    @PostMapping("/stock-adjustments")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StockAdjustmentResponseDTO> adjustStock(@Valid @RequestBody StockAdjustmentRequestDTO request) {
+        StockAdjustmentResponseDTO result = productService.adjustStock(request.adjustments());
+        return ResponseEntity.ok(result);
+    }
+
     // Permitir a usuarios con rol ADMIN o USER ver todos los productos
-    @GetMapping
+    // Sin filtros ni 'limit'; si llega algún filtro la petición la atiende getFilteredProducts.
+    // Un 'after' sin 'limit' es un 400, no el listado completo (CursorParams).
+    @GetMapping(params = {"!limit", "!fields", "!categoryId", "!minPrice", "!maxPrice", "!inStock"})
     @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
-    public ResponseEntity<List<ProductDTO>> getAllProducts() {
+    public ResponseEntity<List<ProductDTO>> getAllProducts(@RequestParam(required = false) Long after) {
+        CursorParams.requireLimitWith(after);
         List<ProductDTO> products = productService.getAllProducts();
+        return ResponseEntity.ok().eTag(ETags.weak(products)).body(products);
+    }
+
+    // Paginación por cursor: GET /api/v1/products?after={ultimoId}&limit={N}
+    // La respuesta incluye 'nextCursor' para pedir la siguiente página.
+    @GetMapping(params = {"limit", "!fields", "!categoryId", "!minPrice", "!maxPrice", "!inStock"})
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
+    public ResponseEntity<CursorPageDTO<ProductDTO>> getProductsPage(
+            @RequestParam(defaultValue = "0") @PositiveOrZero long after,
+            @RequestParam @Min(1) @Max(ProductService.MAX_PAGE_SIZE) int limit) {
+        CursorPageDTO<ProductDTO> page = productService.getProductsPage(after, limit);
+        return ResponseEntity.ok().eTag(ETags.weak(page.items(), page.nextCursor())).body(page);
+    }
+
+    // Sparse fieldsets: GET /api/v1/products?fields=id,name,stock
+    // Solo las columnas pedidas se leen de la base de datos y se devuelven (el 'id' siempre se incluye).
+    @GetMapping(params = {"fields", "!limit", "!categoryId", "!minPrice", "!maxPrice", "!inStock"})
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
+    public ResponseEntity<List<Map<String, Object>>> getAllProductFields(
+            @RequestParam List<String> fields,
+            @RequestParam(required = false) Long after) {
+        CursorParams.requireLimitWith(after);
+        List<Map<String, Object>> products =
+                productService.getAllProductFields(SparseFields.resolve(fields, ProductService.SPARSE_FIELDS));
         return ResponseEntity.ok(products);
     }
 
+    // Sparse fieldsets con paginación por cursor: GET /api/v1/products?fields=id,name&after={ultimoId}&limit={N}
+    @GetMapping(params = {"fields", "limit", "!categoryId", "!minPrice", "!maxPrice", "!inStock"})
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
+    public ResponseEntity<CursorPageDTO<Map<String, Object>>> getProductFieldsPage(
+            @RequestParam List<String> fields,
+            @RequestParam(defaultValue = "0") @PositiveOrZero long after,
+            @RequestParam @Min(1) @Max(ProductService.MAX_PAGE_SIZE) int limit) {
+        CursorPageDTO<Map<String, Object>> page = productService.getProductFieldsPage(
+                SparseFields.resolve(fields, ProductService.SPARSE_FIELDS), after, limit);
+        return ResponseEntity.ok(page);
+    }
+
+    // Listado filtrado con facetas:
+    // GET /api/v1/products?categoryId={id}&minPrice={min}&maxPrice={max}&inStock={true|false}&after={id}&limit={N}
+    // Sin condición de parámetros: Spring elige los handlers anteriores (más específicos) cuando no hay filtros.
+    @GetMapping
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
+    public ResponseEntity<ProductFilterResultDTO<ProductDTO>> getFilteredProducts(
+            @Valid ProductFilterDTO filter,
+            @RequestParam(defaultValue = "0") @PositiveOrZero long after,
+            @RequestParam(defaultValue = "50") @Min(1) @Max(ProductService.MAX_PAGE_SIZE) int limit) {
+        ProductFilterResultDTO<ProductDTO> result = productService.filterProducts(filter, after, limit);
+        return ResponseEntity.ok(result);
+    }
+
+    // Listado filtrado con sparse fieldsets: GET /api/v1/products?categoryId={id}&fields=id,name&after={id}&limit={N}
+    // Sin filtros, las peticiones con 'fields' las atienden los dos handlers de sparse fieldsets anteriores.
+    @GetMapping(params = "fields")
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
+    public ResponseEntity<ProductFilterResultDTO<Map<String, Object>>> getFilteredProductFields(
+            @Valid ProductFilterDTO filter,
+            @RequestParam List<String> fields,
+            @RequestParam(defaultValue = "0") @PositiveOrZero long after,
+            @RequestParam(defaultValue = "50") @Min(1) @Max(ProductService.MAX_PAGE_SIZE) int limit) {
+        ProductFilterResultDTO<Map<String, Object>> result = productService.filterProductFields(
+                filter, SparseFields.resolve(fields, ProductService.SPARSE_FIELDS), after, limit);
+        return ResponseEntity.ok(result);
+    }
+
+    // Exportación del catálogo completo en formato NDJSON (un producto JSON por línea).
+    // Cada fila se escribe en la respuesta a medida que se lee del cursor, sin construir la lista en memoria.
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
+    public void exportProducts(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        // Sin flush por cada fila: el buffer del generador y del contenedor agrupan las escrituras
+        ObjectWriter writer = objectMapper.writerFor(ProductDTO.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.setRootValueSeparator(new SerializedString("\n"));
+            long exported = productService.exportProducts(product -> {
+                try {
+                    boolean first = generator.getOutputContext().getEntryCount() == 0;
+                    writer.writeValue(generator, product);
+                    if (first) {
+                        generator.flush(); // El cliente recibe el primer byte sin esperar a llenar el buffer
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (exported > 0) {
+                generator.writeRaw('\n');
+            }
+        }
+    }
+
+    // Búsqueda por texto: GET /api/v1/products/search?q={texto}&page={n}&size={m}
+    // Resultados ordenados por relevancia; tolera errores tipográficos en el nombre.
+    @GetMapping("/search")
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
+    public ResponseEntity<SearchPageDTO<ProductDTO>> searchProducts(
+            @RequestParam @NotBlank @Size(max = 200) String q,
+            @RequestParam(defaultValue = "0") @PositiveOrZero int page,
+            @RequestParam(defaultValue = "20") @Min(1) @Max(ProductService.MAX_SEARCH_PAGE_SIZE) int size) {
+        SearchPageDTO<ProductDTO> result = productService.searchProducts(q, page, size);
+        return ResponseEntity.ok(result);
+    }
+
+    // Autocompletado: GET /api/v1/products/suggest?prefix={texto}&limit={k}
+    // Devuelve los primeros k productos (id y nombre) cuyo nombre empieza por el prefijo.
+    @GetMapping("/suggest")
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
+    public ResponseEntity<List<ProductSuggestionDTO>> suggestProducts(
+            @RequestParam @NotBlank @Size(max = 200) String prefix,
+            @RequestParam(defaultValue = "10") @Min(1) @Max(50) int limit) {
+        List<ProductSuggestionDTO> suggestions = productService.suggestProducts(prefix, limit);
+        return ResponseEntity.ok(suggestions);
+    }
+
     // Permitir a usuarios con rol ADMIN o USER ver un producto específico
+    // Con If-None-Match igual al ETag devuelve 304 sin cuerpo; el DTO suele salir de Redis, sin tocar PostgreSQL.
     @GetMapping("/{id}")
     @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
     public ResponseEntity<ProductDTO> getProductById(@PathVariable Long id) {
         ProductDTO product = productService.getProductById(id);
-        return ResponseEntity.ok(product);
+        return ResponseEntity.ok().eTag(ETags.strong(product)).body(product);
+    }
+
+    // Lectura por lotes: resuelve muchos IDs en una sola petición (en lugar de un GET por ID).
+    // Devuelve los productos en el orden pedido y, aparte, los IDs que no existen.
+    @PostMapping("/batch-get")
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
+    public ResponseEntity<BatchGetResponseDTO<ProductDTO>> batchGetProducts(@Valid @RequestBody BatchGetRequestDTO request) {
+        BatchGetResponseDTO<ProductDTO> result = productService.batchGetProducts(request.ids());
+        return ResponseEntity.ok(result);
     }
 
-    // Solo permitir a usuarios con rol ADMIN actualizar productos
+    // Solo permitir a usuarios con rol ADMIN actualizar productos.
+    // Con If-Match (ETag fuerte de un GET previo) la escritura es condicional: 412 si el producto cambió.
     @PutMapping("/{id}")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<ProductDTO> updateProduct(@PathVariable Long id, @Valid @RequestBody ProductDTO productDTO) {
-        ProductDTO updatedProduct = productService.updateProduct(id, productDTO);
-        return ResponseEntity.ok(updatedProduct);
+    public ResponseEntity<ProductDTO> updateProduct(
+            @PathVariable Long id,
+            @Valid @RequestBody ProductDTO productDTO,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        ProductDTO updatedProduct = productService.updateProduct(id, productDTO, ETags.expectedRevision(ifMatch, id));
+        return ResponseEntity.ok().eTag(ETags.strong(updatedProduct)).body(updatedProduct);
     }
 
     // Solo permitir a usuarios con rol ADMIN eliminar productos
@@ -58,18 +273,64 @@ public class ProductController {
     }
 
     // Permitir a usuarios con rol ADMIN o USER poder filtrar productos por categoria
-    @GetMapping("/category/{categoryId}") // 1. Nuevo endpoint para filtrar productos por ID de categoría.
+    @GetMapping(value = "/category/{categoryId}", params = {"!limit", "!fields"}) // 1. Nuevo endpoint para filtrar productos por ID de categoría.
     @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
-    public ResponseEntity<List<ProductDTO>> getProductsByCategoryId(@PathVariable Long categoryId) {
+    public ResponseEntity<List<ProductDTO>> getProductsByCategoryId(
+            @PathVariable Long categoryId,
+            @RequestParam(required = false) Long after) {
+        CursorParams.requireLimitWith(after);
         List<ProductDTO> products = productService.getProductsByCategoryId(categoryId);
+        return ResponseEntity.ok().eTag(ETags.weak(products)).body(products);
+    }
+
+    // Paginación por cursor dentro de una categoría
+    @GetMapping(value = "/category/{categoryId}", params = {"limit", "!fields"})
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
+    public ResponseEntity<CursorPageDTO<ProductDTO>> getProductsByCategoryIdPage(
+            @PathVariable Long categoryId,
+            @RequestParam(defaultValue = "0") @PositiveOrZero long after,
+            @RequestParam @Min(1) @Max(ProductService.MAX_PAGE_SIZE) int limit) {
+        CursorPageDTO<ProductDTO> page = productService.getProductsByCategoryIdPage(categoryId, after, limit);
+        return ResponseEntity.ok().eTag(ETags.weak(page.items(), page.nextCursor())).body(page);
+    }
+
+    // Sparse fieldsets dentro de una categoría: GET /api/v1/products/category/{categoryId}?fields=id,name,stock
+    @GetMapping(value = "/category/{categoryId}", params = {"fields", "!limit"})
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
+    public ResponseEntity<List<Map<String, Object>>> getProductFieldsByCategoryId(
+            @PathVariable Long categoryId,
+            @RequestParam List<String> fields,
+            @RequestParam(required = false) Long after) {
+        CursorParams.requireLimitWith(after);
+        List<Map<String, Object>> products = productService.getProductFieldsByCategoryId(
+                categoryId, SparseFields.resolve(fields, ProductService.SPARSE_FIELDS));
         return ResponseEntity.ok(products);
     }
 
-    // Solo permitir a usuarios con rol ADMIN actualizar parcialmente un producto
+    // Sparse fieldsets con paginación por cursor dentro de una categoría
+    @GetMapping(value = "/category/{categoryId}", params = {"fields", "limit"})
+    @PreAuthorize("hasAnyRole('ADMIN', 'USER')")
+    public ResponseEntity<CursorPageDTO<Map<String, Object>>> getProductFieldsByCategoryIdPage(
+            @PathVariable Long categoryId,
+            @RequestParam List<String> fields,
+            @RequestParam(defaultValue = "0") @PositiveOrZero long after,
+            @RequestParam @Min(1) @Max(ProductService.MAX_PAGE_SIZE) int limit) {
+        CursorPageDTO<Map<String, Object>> page = productService.getProductFieldsByCategoryIdPage(
+                categoryId, SparseFields.resolve(fields, ProductService.SPARSE_FIELDS), after, limit);
+        return ResponseEntity.ok(page);
+    }
+
+    // Solo permitir a usuarios con rol ADMIN actualizar parcialmente un producto.
+    // If-Match hace el PATCH condicional. Un 'stockDelta' no escribe ninguna columna (va a StockEngine), así que
+    // no puede chocar con otra escritura: no necesita If-Match ni reintentos.
     @PatchMapping("/{id}")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<ProductDTO> patchProduct(@PathVariable Long id, @Valid @RequestBody ProductPartialUpdateDTO patchDTO) {
-        ProductDTO updatedProduct = productService.patchProduct(id, patchDTO);
-        return ResponseEntity.ok(updatedProduct);
+    public ResponseEntity<ProductDTO> patchProduct(
+            @PathVariable Long id,
+            @Valid @RequestBody ProductPartialUpdateDTO patchDTO,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        String expectedRevision = ETags.expectedRevision(ifMatch, id);
+        ProductDTO updatedProduct = productService.patchProduct(id, patchDTO, expectedRevision);
+        return ResponseEntity.ok().eTag(ETags.strong(updatedProduct)).body(updatedProduct);
     }
 }
@@ -0,0 +1,185 @@
+package com.santicodev.gestorinventarioproductos.product.infraestructure.data;
+
+import com.santicodev.gestorinventarioproductos.category.application.service.CategoryService;
+import com.santicodev.gestorinventarioproductos.category.infraestructure.repository.CategoryRepository;
+import com.santicodev.gestorinventarioproductos.product.application.service.ProductService;
+import com.santicodev.gestorinventarioproductos.product.application.service.StockEngine;
+import com.santicodev.gestorinventarioproductos.product.infraestructure.repository.ProductJdbcRepository;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.CacheTags;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.RedisBatchCache;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CategoryDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Precarga al arrancar las entradas por ID de productos y categorías en Redis: tras un despliegue o un
+ * reinicio de Redis, las primeras lecturas irían si no todas a PostgreSQL.
+ * Un hilo recorre las tablas (con cursor) y reparte lotes de BATCH_SIZE entradas entre 'threads' hilos
+ * que las escriben en pipeline (RedisBatchCache.putAllIfAbsent). Si los escritores no dan abasto, el hilo
+ * lector escribe él mismo el lote (y deja de leer mientras tanto).
+ * <p>
+ * Las filas se leen de una instantánea y se escriben con SET NX, que no pisa lo escrito por el tráfico real,
+ * pero sí puede volver a crear una entrada que un borrado acaba de quitar. Por eso cada lote se escribe solo
+ * si la etiqueta de la tabla (CacheTags) sigue en la versión de antes de leerla, como los listados de
+ * ProductService; tras cualquier alta, cambio o baja se deja de precargar y esas entradas se cargan al leerlas.
+ * <p>
+ * Spring Boot no pasa la aplicación a ACCEPTING_TRAFFIC (sonda /actuator/health/readiness) hasta que
+ * terminan los CommandLineRunner: este espera a la precarga como mucho 'timeout' y después deja que
+ * continúe en segundo plano.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.cache.warm-up.enabled", havingValue = "true", matchIfMissing = true)
+public class CacheWarmUpLoader {
+    // Entradas por escritura en pipeline
+    private static final int BATCH_SIZE = 500;
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheWarmUpLoader.class);
+
+    @Bean
+    public CommandLineRunner warmUpCaches(ProductJdbcRepository productJdbcRepository,
+                                          CategoryRepository categoryRepository,
+                                          RedisBatchCache redisBatchCache,
+                                          CacheTags cacheTags,
+                                          StockEngine stockEngine,
+                                          PlatformTransactionManager transactionManager,
+                                          @Value("${app.cache.warm-up.threads:4}") int threads,
+                                          @Value("${app.cache.warm-up.timeout:30s}") Duration timeout,
+                                          @Value("${app.cache.warm-up.max-products:0}") int maxProducts) {
+        return args -> {
+            logger.info("Precargando la caché de productos y categorías...");
+            long start = System.currentTimeMillis();
+            // Solo lectura y en una transacción: PostgreSQL sirve los productos con un cursor
+            TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+            readOnly.setReadOnly(true);
+
+            ThreadPoolExecutor writers = newWriterPool(threads);
+            BatchWriter<CategoryDTO> categories = new BatchWriter<>(CategoryService.CACHE_NAME, CacheTags.ALL_CATEGORIES,
+                    cacheTags, redisBatchCache, writers);
+            BatchWriter<ProductDTO> products = new BatchWriter<>(ProductService.CACHE_NAME, CacheTags.ALL_PRODUCTS,
+                    cacheTags, redisBatchCache, writers);
+            CompletableFuture<Void> warmUp = CompletableFuture.runAsync(() -> {
+                categories.beforeReading();
+                categoryRepository.findAllAsDTO().forEach(category -> categories.add(category.id(), category));
+                categories.flush();
+                products.beforeReading();
+                readOnly.executeWithoutResult(status ->
+                        productJdbcRepository.forEachProduct(maxProducts, BATCH_SIZE, product -> products.add(product.id(), withLiveStock(product, stockEngine))));
+                products.flush();
+                categories.await();
+                products.await();
+            }, runnable -> daemon(runnable, "cache-warm-up").start());
+            warmUp.whenComplete((result, error) -> writers.shutdown());
+
+            try {
+                warmUp.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+                logger.info("Caché precargada en {} ms: {} categorías y {} productos ({} y {} descartados por cambios durante la precarga).",
+                        System.currentTimeMillis() - start, categories.written.get(), products.written.get(),
+                        categories.skipped.get(), products.skipped.get());
+            } catch (TimeoutException e) {
+                logger.warn("La precarga de la caché no ha terminado en {}; continúa en segundo plano.", timeout);
+            } catch (ExecutionException e) {
+                // Sin caché precargada la aplicación funciona igual (las lecturas van a PostgreSQL)
+                logger.warn("Precarga de la caché interrumpida: {}", e.getCause().getMessage());
+            }
+        };
+    }
+
+    // Mismo stock que devuelve ProductService: el de StockEngine, no el de la columna
+    private static ProductDTO withLiveStock(ProductDTO product, StockEngine stockEngine) {
+        int stock = stockEngine.stockOf(product.id(), product.stock());
+        return stock == product.stock() ? product : new ProductDTO(product.id(), product.name(), product.description(),
+                product.price(), stock, product.categoryId(), product.version());
+    }
+
+    // Cola acotada: si se llena, el hilo que envía el lote lo escribe él mismo (contrapresión sobre la lectura)
+    private static ThreadPoolExecutor newWriterPool(int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads * 2),
+                runnable -> daemon(runnable, "cache-warm-up-writer-" + threadCount.incrementAndGet()),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    // Agrupa las entradas de una región en lotes y los envía a los escritores
+    private static final class BatchWriter<T> {
+        private final String cacheName;
+        private final String tag;
+        private final CacheTags cacheTags;
+        private final RedisBatchCache redisBatchCache;
+        private final ThreadPoolExecutor writers;
+        private final List<CompletableFuture<Void>> pending = new ArrayList<>();
+        private final AtomicLong written = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private Map<Long, T> batch = new HashMap<>();
+        private volatile String version;
+
+        BatchWriter(String cacheName, String tag, CacheTags cacheTags, RedisBatchCache redisBatchCache,
+                    ThreadPoolExecutor writers) {
+            this.cacheName = cacheName;
+            this.tag = tag;
+            this.cacheTags = cacheTags;
+            this.redisBatchCache = redisBatchCache;
+            this.writers = writers;
+        }
+
+        // Versión de la etiqueta antes de la consulta: lo que cambie después invalida lo leído
+        void beforeReading() {
+            version = cacheTags.versionOf(tag);
+        }
+
+        void add(Long id, T value) {
+            batch.put(id, value);
+            if (batch.size() >= BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            Map<Long, T> entries = batch;
+            batch = new HashMap<>();
+            pending.add(CompletableFuture.runAsync(() -> {
+                if (!Objects.equals(version, cacheTags.versionOf(tag))) {
+                    skipped.addAndGet(entries.size());
+                    return;
+                }
+                redisBatchCache.putAllIfAbsent(cacheName, entries);
+                written.addAndGet(entries.size());
+            }, writers));
+        }
+
+        void await() {
+            CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+        }
+    }
+}
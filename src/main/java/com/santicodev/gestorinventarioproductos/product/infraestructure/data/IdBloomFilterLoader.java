@@ -0,0 +1,68 @@
+package com.santicodev.gestorinventarioproductos.product.infraestructure.data;
+
+import com.santicodev.gestorinventarioproductos.category.infraestructure.repository.CategoryRepository;
+import com.santicodev.gestorinventarioproductos.product.infraestructure.repository.ProductJdbcRepository;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.IdBloomFilter;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Carga al arrancar los filtros de Bloom de IDs existentes con los IDs de productos y categorías, y los
+ * reconstruye cuando IdBloomFilter lo pide (antigüedad o demasiados falsos positivos por los borrados).
+ */
+@Configuration
+@RequiredArgsConstructor
+public class IdBloomFilterLoader {
+    // Filas por lectura del cursor de IDs de producto
+    private static final int FETCH_SIZE = 10_000;
+
+    private static final Logger logger = LoggerFactory.getLogger(IdBloomFilterLoader.class);
+
+    private final IdBloomFilter idBloomFilter;
+    private final ProductJdbcRepository productJdbcRepository;
+    private final CategoryRepository categoryRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    @Bean
+    public CommandLineRunner initIdBloomFilter() {
+        return args -> {
+            logger.info("Cargando los filtros de IDs existentes...");
+            long start = System.currentTimeMillis();
+            load(IdBloomFilter.CATEGORIES);
+            load(IdBloomFilter.PRODUCTS);
+            logger.info("Filtros de IDs existentes cargados en {} ms.", System.currentTimeMillis() - start);
+        };
+    }
+
+    // Hasta la carga inicial needsRebuild es false: esto no la adelanta
+    @Scheduled(fixedDelayString = "${app.cache.bloom.check-interval-ms:60000}")
+    public void rebuildIfNeeded() {
+        for (String region : List.of(IdBloomFilter.CATEGORIES, IdBloomFilter.PRODUCTS)) {
+            if (idBloomFilter.needsRebuild(region)) {
+                long start = System.currentTimeMillis();
+                load(region);
+                logger.info("Filtro de IDs de {} reconstruido en {} ms.", region, System.currentTimeMillis() - start);
+            }
+        }
+    }
+
+    public void load(String region) {
+        if (IdBloomFilter.CATEGORIES.equals(region)) {
+            idBloomFilter.load(region, ids -> categoryRepository.findAllIds().forEach(ids::accept));
+            return;
+        }
+        // Solo lectura y en una transacción: PostgreSQL sirve los IDs con un cursor
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        idBloomFilter.load(region, ids -> readOnly.executeWithoutResult(status -> productJdbcRepository.forEachId(FETCH_SIZE, ids)));
+    }
+}
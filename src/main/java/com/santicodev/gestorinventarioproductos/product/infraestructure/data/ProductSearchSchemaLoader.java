@@ -0,0 +1,38 @@
+package com.santicodev.gestorinventarioproductos.product.infraestructure.data;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+// Prepara en PostgreSQL las estructuras de búsqueda que JPA no sabe declarar:
+// la columna generada 'search_vector' (tsvector), su índice GIN y el índice de trigramas sobre 'name'.
+// Todas las sentencias son idempotentes, así que es seguro ejecutarlas en cada arranque.
+@Configuration
+public class ProductSearchSchemaLoader {
+    private static final Logger logger = LoggerFactory.getLogger(ProductSearchSchemaLoader.class);
+
+    private static final List<String> SEARCH_SCHEMA_STATEMENTS = List.of(
+            // Extensión para la búsqueda tolerante a errores tipográficos (operador % y similarity())
+            "CREATE EXTENSION IF NOT EXISTS pg_trgm",
+            // El nombre pesa más (A) que la descripción (B) en el ranking
+            "ALTER TABLE products ADD COLUMN IF NOT EXISTS search_vector tsvector GENERATED ALWAYS AS ("
+                    + "setweight(to_tsvector('spanish', coalesce(name, '')), 'A') || "
+                    + "setweight(to_tsvector('spanish', coalesce(description, '')), 'B')) STORED",
+            "CREATE INDEX IF NOT EXISTS idx_products_search_vector ON products USING GIN (search_vector)",
+            "CREATE INDEX IF NOT EXISTS idx_products_name_trgm ON products USING GIN (name gin_trgm_ops)"
+    );
+
+    @Bean
+    public CommandLineRunner initProductSearchSchema(JdbcTemplate jdbcTemplate) {
+        return args -> {
+            logger.info("Verificando el esquema de búsqueda de productos...");
+            SEARCH_SCHEMA_STATEMENTS.forEach(jdbcTemplate::execute);
+            logger.info("Esquema de búsqueda de productos listo.");
+        };
+    }
+}
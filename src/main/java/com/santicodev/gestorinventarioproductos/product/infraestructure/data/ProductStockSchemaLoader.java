@@ -0,0 +1,31 @@
+package com.santicodev.gestorinventarioproductos.product.infraestructure.data;
+
+import com.santicodev.gestorinventarioproductos.product.domain.Product;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+// Añade la restricción CHECK (stock >= 0) a una tabla 'products' creada antes de existir: 'ddl-auto=update' solo
+// la crea con la tabla. NOT VALID no revisa las filas existentes (que podrían tener stock negativo de volcados
+// anteriores), pero la restricción se aplica a todas las escrituras nuevas. Es idempotente.
+@Configuration
+public class ProductStockSchemaLoader {
+    private static final Logger logger = LoggerFactory.getLogger(ProductStockSchemaLoader.class);
+
+    private static final String ADD_STOCK_CHECK_SQL =
+            "DO $$ BEGIN "
+                    + "IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conname = '" + Product.STOCK_CHECK + "') THEN "
+                    + "ALTER TABLE products ADD CONSTRAINT " + Product.STOCK_CHECK + " CHECK (stock >= 0) NOT VALID; "
+                    + "END IF; END $$";
+
+    @Bean
+    public CommandLineRunner initProductStockSchema(JdbcTemplate jdbcTemplate) {
+        return args -> {
+            jdbcTemplate.execute(ADD_STOCK_CHECK_SQL);
+            logger.info("Restricción {} verificada en 'products'.", Product.STOCK_CHECK);
+        };
+    }
+}
@@ -0,0 +1,24 @@
+package com.santicodev.gestorinventarioproductos.product.infraestructure.data;
+
+import com.santicodev.gestorinventarioproductos.product.application.service.ProductSuggestionIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Construye el índice de autocompletado de productos al arrancar la aplicación
+@Configuration
+public class ProductSuggestionIndexLoader {
+    private static final Logger logger = LoggerFactory.getLogger(ProductSuggestionIndexLoader.class);
+
+    @Bean
+    public CommandLineRunner initProductSuggestionIndex(ProductSuggestionIndex suggestionIndex) {
+        return args -> {
+            logger.info("Construyendo el índice de autocompletado de productos...");
+            long start = System.currentTimeMillis();
+            suggestionIndex.rebuild();
+            logger.info("Índice de autocompletado listo en {} ms.", System.currentTimeMillis() - start);
+        };
+    }
+}
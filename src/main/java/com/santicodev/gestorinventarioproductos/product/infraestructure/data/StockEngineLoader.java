@@ -0,0 +1,26 @@
+package com.santicodev.gestorinventarioproductos.product.infraestructure.data;
+
+import com.santicodev.gestorinventarioproductos.product.application.service.StockEngine;
+import com.santicodev.gestorinventarioproductos.product.infraestructure.repository.ProductJdbcRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Carga el stock de todos los productos en StockEngine al arrancar la aplicación
+@Configuration
+public class StockEngineLoader {
+    private static final Logger logger = LoggerFactory.getLogger(StockEngineLoader.class);
+
+    @Bean
+    public CommandLineRunner initStockEngine(StockEngine stockEngine, ProductJdbcRepository productJdbcRepository) {
+        return args -> {
+            logger.info("Cargando el stock de los productos en memoria...");
+            long start = System.currentTimeMillis();
+            // loadIfAbsent: no pisa un producto que ya haya recibido cambios mientras se cargaba
+            productJdbcRepository.forEachStock(stockEngine::loadIfAbsent);
+            logger.info("Stock de {} productos en memoria en {} ms.", stockEngine.size(), System.currentTimeMillis() - start);
+        };
+    }
+}
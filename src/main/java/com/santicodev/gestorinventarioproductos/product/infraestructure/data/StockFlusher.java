@@ -0,0 +1,116 @@
+package com.santicodev.gestorinventarioproductos.product.infraestructure.data;
+
+import com.santicodev.gestorinventarioproductos.product.application.service.ProductService;
+import com.santicodev.gestorinventarioproductos.product.application.service.StockEngine;
+import com.santicodev.gestorinventarioproductos.product.infraestructure.repository.ProductJdbcRepository;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.PendingStockDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.outbox.OutboxWriter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind del stock: cada 'app.stock.flush-interval-ms' escribe en 'products' los cambios acumulados
+ * en StockEngine, uno por producto por muchas reservas que haya recibido, en lotes JDBC.
+ * La base de datos tiene la última palabra: un delta que dejaría el stock en negativo (otra instancia vendió
+ * esas unidades) se rechaza, se informa y el producto se recarga en el motor. Tras cada volcado la copia en
+ * memoria de los productos volcados se resincroniza con la columna, y cada 'app.stock.resync-interval-ms'
+ * la de todos, para recoger los cambios hechos por otras instancias.
+ * Al apagar la aplicación vuelca lo que quede antes de que se cierre el pool de conexiones.
+ */
+@Component
+@RequiredArgsConstructor
+public class StockFlusher {
+    private static final Logger logger = LoggerFactory.getLogger(StockFlusher.class);
+
+    private final StockEngine stockEngine;
+    private final ProductJdbcRepository productJdbcRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final OutboxWriter outboxWriter;
+    private final ProductService productService;
+    private final MeterRegistry meterRegistry;
+
+    // synchronized: el volcado programado, el del apagado y la resincronización no se solapan
+    @Scheduled(fixedDelayString = "${app.stock.flush-interval-ms:200}")
+    public synchronized void flush() {
+        List<PendingStockDTO> changes = stockEngine.drainPending();
+        if (changes.isEmpty()) {
+            return;
+        }
+        Set<Long> notApplied;
+        try {
+            // Todo el lote en una transacción: o se escriben todos los cambios (y sus eventos) o ninguno
+            notApplied = transactionTemplate.execute(status -> {
+                Set<Long> rejected = productJdbcRepository.batchApplyStockChanges(changes);
+                Map<Long, PendingStockDTO> events = changes.stream()
+                        .filter(change -> !rejected.contains(change.productId()))
+                        .collect(Collectors.toMap(PendingStockDTO::productId, Function.identity()));
+                outboxWriter.recordAll(OutboxWriter.PRODUCT, "ProductStockAdjusted", events);
+                return rejected;
+            });
+        } catch (DataAccessException e) {
+            // Se devuelven al motor y se reintentan en el siguiente ciclo, coalescidos con los nuevos
+            stockEngine.restorePending(changes);
+            logger.warn("No se pudo volcar el stock de {} productos; se reintentará: {}", changes.size(), e.getMessage());
+            return;
+        }
+        Set<Long> ids = changes.stream().map(PendingStockDTO::productId).collect(Collectors.toSet());
+        try {
+            // Ya confirmado: la copia en memoria parte del stock de la columna, que incluye lo volcado por las
+            // demás instancias. Los rechazados se recargan así, sin el delta que no cabía.
+            Map<Long, Integer> stocks = productJdbcRepository.findStocks(ids);
+            stocks.forEach(stockEngine::resync);
+            reportRejected(changes, notApplied, stocks);
+            // Las entradas cacheadas de esos productos se reescriben con el estado volcado
+            productService.refreshFlushedProducts(stocks.keySet());
+        } catch (RuntimeException e) {
+            logger.warn("No se pudo resincronizar ni refrescar la caché de {} productos tras el volcado de stock: {}",
+                    ids.size(), e.getMessage());
+        }
+    }
+
+    // Cambios de otras instancias en productos que esta no ha tocado: se recogen periódicamente
+    @Scheduled(fixedDelayString = "${app.stock.resync-interval-ms:30000}",
+            initialDelayString = "${app.stock.resync-interval-ms:30000}")
+    public synchronized void resync() {
+        try {
+            productJdbcRepository.forEachStock(stockEngine::resync);
+        } catch (DataAccessException e) {
+            logger.warn("No se pudo resincronizar el stock en memoria con la base de datos: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+        int pending = stockEngine.pendingCount();
+        if (pending > 0) {
+            logger.error("Quedan cambios de stock sin volcar en {} productos al apagar la aplicación.", pending);
+        }
+    }
+
+    // Los no aplicados que siguen existiendo son deltas rechazados por dejar el stock en negativo
+    private void reportRejected(List<PendingStockDTO> changes, Set<Long> notApplied, Map<Long, Integer> stocks) {
+        List<PendingStockDTO> rejected = changes.stream()
+                .filter(change -> notApplied.contains(change.productId()) && stocks.containsKey(change.productId()))
+                .toList();
+        if (rejected.isEmpty()) {
+            return;
+        }
+        meterRegistry.counter("products.stock.flush.rejected").increment(rejected.size());
+        logger.warn("La base de datos rechazó el cambio de stock de {} productos (quedaría en negativo); "
+                + "se recargan desde la base de datos: {}", rejected.size(), rejected);
+    }
+}
@@ -0,0 +1,25 @@
+package com.santicodev.gestorinventarioproductos.product.infraestructure.repository;
+
+import com.santicodev.gestorinventarioproductos.product.domain.Product;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductFacetsDTO;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fragmento de repositorio con consultas Criteria dinámicas para el listado filtrado.
+ * Spring Data lo combina con ProductRepository a través de ProductFilterRepositoryImpl.
+ */
+public interface ProductFilterRepository {
+
+    // Página por cursor (id > after) de los productos que cumplen el filtro, proyectada a DTO
+    List<ProductDTO> findDTOsBy(Specification<Product> spec, long after, int limit);
+
+    // Todas las facetas en una sola consulta agregada (GROUP BY categoría con sumas condicionales)
+    ProductFacetsDTO countFacets(Specification<Product> spec);
+
+    // Sparse fieldsets: solo los campos pedidos, ordenados por ID (limit null = sin límite)
+    List<Map<String, Object>> findFieldsBy(Specification<Product> spec, List<String> fields, Integer limit);
+}
@@ -0,0 +1,119 @@
+package com.santicodev.gestorinventarioproductos.product.infraestructure.repository;
+
+import com.santicodev.gestorinventarioproductos.product.domain.Product;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductFacetsDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.repository.SparseFields;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RequiredArgsConstructor
+public class ProductFilterRepositoryImpl implements ProductFilterRepository {
+    // Límites de los tramos de precio: [0, 25), [25, 50), [50, 100), [100, 500), [500, ∞)
+    private static final List<BigDecimal> PRICE_BOUNDS = List.of(
+            new BigDecimal("25"), new BigDecimal("50"), new BigDecimal("100"), new BigDecimal("500"));
+    // Campos del DTO cuya ruta en la entidad es distinta: se lee la FK sin JOIN
+    private static final Map<String, String> FIELD_PATHS = Map.of("categoryId", "category.id");
+
+    private final EntityManager entityManager;
+
+    @Override
+    public List<ProductDTO> findDTOsBy(Specification<Product> spec, long after, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<ProductDTO> query = cb.createQuery(ProductDTO.class);
+        Root<Product> root = query.from(Product.class);
+
+        Predicate afterCursor = cb.greaterThan(root.get("id"), after);
+        Predicate filter = spec.toPredicate(root, query, cb);
+        query.select(cb.construct(ProductDTO.class,
+                        root.get("id"), root.get("name"), root.get("description"),
+                        root.get("price"), root.get("stock"), root.get("category").get("id"), root.get("version")))
+                .where(filter == null ? afterCursor : cb.and(filter, afterCursor))
+                .orderBy(cb.asc(root.get("id")));
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+
+    @Override
+    public ProductFacetsDTO countFacets(Specification<Product> spec) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> query = cb.createQuery(Object[].class);
+        Root<Product> root = query.from(Product.class);
+        Path<Long> categoryId = root.get("category").get("id");
+        Path<BigDecimal> price = root.get("price");
+
+        // Una fila por categoría: [categoryId, total, tramo_0, ..., tramo_n, conStock]
+        List<Selection<?>> selections = new ArrayList<>();
+        selections.add(categoryId);
+        selections.add(cb.count(root));
+        BigDecimal lower = null;
+        for (BigDecimal upper : PRICE_BOUNDS) {
+            selections.add(countIf(cb, lower == null
+                    ? cb.lessThan(price, upper)
+                    : cb.and(cb.greaterThanOrEqualTo(price, lower), cb.lessThan(price, upper))));
+            lower = upper;
+        }
+        selections.add(countIf(cb, cb.greaterThanOrEqualTo(price, lower)));
+        selections.add(countIf(cb, cb.greaterThan(root.get("stock"), 0)));
+
+        query.multiselect(selections).groupBy(categoryId);
+        Predicate filter = spec.toPredicate(root, query, cb);
+        if (filter != null) {
+            query.where(filter);
+        }
+
+        Map<Long, Long> categories = new LinkedHashMap<>();
+        long[] priceCounts = new long[PRICE_BOUNDS.size() + 1];
+        long total = 0;
+        long inStock = 0;
+        for (Object[] row : entityManager.createQuery(query).getResultList()) {
+            long count = toLong(row[1]);
+            categories.put((Long) row[0], count);
+            total += count;
+            for (int i = 0; i < priceCounts.length; i++) {
+                priceCounts[i] += toLong(row[2 + i]);
+            }
+            inStock += toLong(row[2 + priceCounts.length]);
+        }
+        return new ProductFacetsDTO(categories, priceRangeCounts(priceCounts), inStock, total - inStock);
+    }
+
+    @Override
+    public List<Map<String, Object>> findFieldsBy(Specification<Product> spec, List<String> fields, Integer limit) {
+        return SparseFields.select(entityManager, Product.class, FIELD_PATHS, fields, spec, limit);
+    }
+
+    // SUM(CASE WHEN condición THEN 1 ELSE 0 END)
+    private static Expression<Integer> countIf(CriteriaBuilder cb, Predicate condition) {
+        return cb.sum(cb.<Integer>selectCase().when(condition, 1).otherwise(0));
+    }
+
+    private static Map<String, Long> priceRangeCounts(long[] counts) {
+        Map<String, Long> ranges = new LinkedHashMap<>();
+        String lower = "0";
+        for (int i = 0; i < PRICE_BOUNDS.size(); i++) {
+            String upper = PRICE_BOUNDS.get(i).toPlainString();
+            ranges.put(lower + "-" + upper, counts[i]);
+            lower = upper;
+        }
+        ranges.put(lower + "+", counts[PRICE_BOUNDS.size()]);
+        return ranges;
+    }
+
+    private static long toLong(Object value) {
+        return value == null ? 0 : ((Number) value).longValue();
+    }
+}
@@ -0,0 +1,283 @@
+package com.santicodev.gestorinventarioproductos.product.infraestructure.repository;
+
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.PendingStockDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductDTO;
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Operaciones masivas sobre 'products' con JDBC directo, para los casos en los que JPA
+ * (una sentencia y un contexto de persistencia por entidad) es el cuello de botella.
+ * Participa en la transacción de Spring del servicio que lo invoca.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ProductJdbcRepository {
+    // Filas por lote JDBC; con reWriteBatchedInserts el driver envía cada lote como INSERT multi-fila
+    static final int BATCH_SIZE = 1000;
+
+    private static final String INSERT_SQL =
+            "INSERT INTO products (name, description, price, stock, category_id, version) VALUES (?, ?, ?, ?, ?, 0)";
+
+    // Volcado de StockEngine. La comprobación en memoria es por instancia, así que el delta solo se suma si
+    // el resultado no queda en negativo (con varias instancias, dos pueden vender la última unidad).
+    // No toca 'version': el stock visible ya cambió al aplicarse en memoria (y con él el ETag, ver ProductDTO),
+    // y cambiarla aquí haría fallar con 412 las escrituras que usan la versión leída antes del volcado
+    private static final String APPLY_STOCK_DELTA_SQL =
+            "UPDATE products SET stock = stock + ? WHERE id = ? AND stock + ? >= 0";
+    // Stock fijado con PUT/PATCH: se escribe el valor, no la diferencia con la copia de una instancia
+    private static final String SET_STOCK_SQL =
+            "UPDATE products SET stock = ? WHERE id = ?";
+
+    // Importación CSV: tabla temporal de la transacción, cargada con COPY y fusionada después en 'products'
+    private static final String CREATE_IMPORT_STAGING_SQL =
+            "CREATE TEMPORARY TABLE products_import_staging (line_no bigint NOT NULL, name varchar(200) NOT NULL, "
+                    + "description varchar(500), price numeric(10, 2) NOT NULL, stock integer NOT NULL, "
+                    + "category_id bigint NOT NULL) ON COMMIT DROP";
+    private static final String COPY_IMPORT_STAGING_SQL =
+            "COPY products_import_staging (line_no, name, description, price, stock, category_id) FROM STDIN WITH (FORMAT csv)";
+    private static final String FIND_IMPORT_CONFLICTS_SQL =
+            "SELECT s.line_no, s.name FROM products_import_staging s JOIN products p ON p.name = s.name ORDER BY s.line_no";
+    // ON CONFLICT: un nombre creado por otra petición después de buscar los conflictos no aborta la importación
+    private static final String MERGE_IMPORT_STAGING_SQL =
+            "INSERT INTO products (name, description, price, stock, category_id, version) "
+                    + "SELECT name, description, price, stock, category_id, 0 FROM products_import_staging ORDER BY line_no "
+                    + "ON CONFLICT (name) DO NOTHING RETURNING id";
+    // Bytes que acumula el stream de COPY antes de enviarlos al servidor
+    private static final int COPY_BUFFER_SIZE = 1 << 16;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Nombres que ya existen, en una sola consulta: el array viaja como un único parámetro (name = ANY(?))
+    public Set<String> findExistingNames(Collection<String> names) {
+        if (names.isEmpty()) {
+            return Set.of();
+        }
+        List<String> existing = jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement("SELECT name FROM products WHERE name = ANY(?)");
+            statement.setArray(1, connection.createArrayOf("text", names.toArray()));
+            return statement;
+        }, (rs, rowNum) -> rs.getString(1));
+        return new HashSet<>(existing);
+    }
+
+    // IDs que existen, en una sola consulta (id = ANY(?))
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Set.of();
+        }
+        List<Long> existing = jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement("SELECT id FROM products WHERE id = ANY(?)");
+            statement.setArray(1, connection.createArrayOf("bigint", ids.toArray()));
+            return statement;
+        }, (rs, rowNum) -> rs.getLong(1));
+        return new HashSet<>(existing);
+    }
+
+    // Stock actual de los productos indicados, en una sola consulta (id = ANY(?))
+    public Map<Long, Integer> findStocks(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, Integer> stocks = new HashMap<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement("SELECT id, stock FROM products WHERE id = ANY(?)");
+            statement.setArray(1, connection.createArrayOf("bigint", ids.toArray()));
+            return statement;
+        }, (RowCallbackHandler) rs -> stocks.put(rs.getLong(1), rs.getInt(2)));
+        return stocks;
+    }
+
+    // Recorre (id, stock) de todos los productos fila a fila, sin materializar la tabla en una lista
+    public void forEachStock(BiConsumer<Long, Integer> consumer) {
+        jdbcTemplate.query("SELECT id, stock FROM products",
+                (RowCallbackHandler) rs -> consumer.accept(rs.getLong(1), rs.getInt(2)));
+    }
+
+    // Todos los IDs de producto, leídos de 'fetchSize' en 'fetchSize' filas (con cursor dentro de una transacción)
+    public void forEachId(int fetchSize, LongConsumer consumer) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement("SELECT id FROM products");
+            statement.setFetchSize(fetchSize);
+            return statement;
+        }, (RowCallbackHandler) rs -> consumer.accept(rs.getLong(1)));
+    }
+
+    /**
+     * Recorre los productos como DTO en orden de ID (los 'limit' primeros; 0 = todos), leyendo de
+     * 'fetchSize' en 'fetchSize' filas. PostgreSQL solo usa un cursor dentro de una transacción: sin ella
+     * carga el resultado entero en memoria.
+     */
+    public void forEachProduct(int limit, int fetchSize, Consumer<ProductDTO> consumer) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                    "SELECT id, name, description, price, stock, category_id, version FROM products ORDER BY id"
+                            + (limit > 0 ? " LIMIT " + limit : ""));
+            statement.setFetchSize(fetchSize);
+            return statement;
+        }, (RowCallbackHandler) rs -> consumer.accept(new ProductDTO(rs.getLong(1), rs.getString(2), rs.getString(3),
+                rs.getBigDecimal(4), rs.getInt(5), rs.getLong(6), rs.getLong(7))));
+    }
+
+    /**
+     * Aplica los cambios de stock de StockEngine en dos lotes JDBC (deltas y valores fijados) y devuelve los IDs
+     * que no actualizaron ninguna fila: productos ya borrados, o deltas rechazados porque dejarían el stock
+     * en negativo.
+     */
+    public Set<Long> batchApplyStockChanges(List<PendingStockDTO> changes) {
+        List<PendingStockDTO> deltas = changes.stream().filter(change -> change.setTo() == null).toList();
+        List<PendingStockDTO> sets = changes.stream().filter(change -> change.setTo() != null).toList();
+        Set<Long> notApplied = new HashSet<>();
+        collectNotApplied(deltas, jdbcTemplate.batchUpdate(APPLY_STOCK_DELTA_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                PendingStockDTO delta = deltas.get(i);
+                ps.setInt(1, delta.delta());
+                ps.setLong(2, delta.productId());
+                ps.setInt(3, delta.delta());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return deltas.size();
+            }
+        }), notApplied);
+        collectNotApplied(sets, jdbcTemplate.batchUpdate(SET_STOCK_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                PendingStockDTO set = sets.get(i);
+                ps.setInt(1, set.setTo());
+                ps.setLong(2, set.productId());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return sets.size();
+            }
+        }), notApplied);
+        return notApplied;
+    }
+
+    // Filas afectadas por sentencia del lote: 0 = no se aplicó (SUCCESS_NO_INFO cuenta como aplicada)
+    private static void collectNotApplied(List<PendingStockDTO> changes, int[] counts, Set<Long> notApplied) {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                notApplied.add(changes.get(i).productId());
+            }
+        }
+    }
+
+    // --- Importación CSV (debe ejecutarse dentro de una transacción: la tabla temporal vive en su conexión) ---
+
+    public void createImportStagingTable() {
+        jdbcTemplate.execute(CREATE_IMPORT_STAGING_SQL);
+    }
+
+    /**
+     * Carga la tabla temporal con COPY ... FROM STDIN a través del CopyManager de pgjdbc. 'rows' escribe las filas
+     * en CSV (line_no, name, description, price, stock, category_id) y se envían según se escriben, sin
+     * acumular el fichero en memoria. Devuelve las filas cargadas.
+     */
+    public long copyIntoImportStaging(Consumer<Writer> rows) {
+        Long copied = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_IMPORT_STAGING_SQL);
+            PGCopyOutputStream out = new PGCopyOutputStream(copyIn, COPY_BUFFER_SIZE);
+            try {
+                Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                rows.accept(writer);
+                writer.flush();
+                return out.endCopy();
+            } catch (IOException | RuntimeException e) {
+                // Deja la conexión utilizable: el COPY a medias se cancela antes de propagar el error
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+                if (e instanceof IOException) {
+                    throw new SQLException("Error enviando las filas del COPY", e);
+                }
+                throw (RuntimeException) e;
+            }
+        });
+        return copied != null ? copied : 0L;
+    }
+
+    // Filas de la importación cuyo nombre ya existe en 'products': (número de línea, nombre)
+    public void findImportConflicts(BiConsumer<Long, String> consumer) {
+        jdbcTemplate.query(FIND_IMPORT_CONFLICTS_SQL,
+                (RowCallbackHandler) rs -> consumer.accept(rs.getLong(1), rs.getString(2)));
+    }
+
+    // Inserta en 'products' las filas de la tabla temporal con un único INSERT ... SELECT; devuelve las insertadas
+    // y pasa sus IDs (RETURNING) a 'insertedIds'
+    public int mergeImportStaging(LongConsumer insertedIds) {
+        int[] merged = {0};
+        jdbcTemplate.query(MERGE_IMPORT_STAGING_SQL, (RowCallbackHandler) rs -> {
+            insertedIds.accept(rs.getLong(1));
+            merged[0]++;
+        });
+        return merged[0];
+    }
+
+    // Inserta los productos en lotes y los devuelve con el ID y la versión que les asignó la base de datos,
+    // en el mismo orden que 'products'
+    public List<ProductDTO> batchInsert(List<ProductDTO> products) {
+        List<ProductDTO> inserted = new ArrayList<>(products.size());
+        for (int from = 0; from < products.size(); from += BATCH_SIZE) {
+            List<ProductDTO> chunk = products.subList(from, Math.min(from + BATCH_SIZE, products.size()));
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            jdbcTemplate.batchUpdate(
+                    connection -> connection.prepareStatement(INSERT_SQL, new String[]{"id", "version"}),
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            ProductDTO product = chunk.get(i);
+                            ps.setString(1, product.name());
+                            ps.setString(2, product.description());
+                            ps.setBigDecimal(3, product.price());
+                            ps.setInt(4, product.stock());
+                            ps.setLong(5, product.categoryId());
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return chunk.size();
+                        }
+                    },
+                    keyHolder);
+            List<Map<String, Object>> keyList = keyHolder.getKeyList();
+            for (int i = 0; i < keyList.size(); i++) {
+                ProductDTO product = chunk.get(i);
+                Map<String, Object> keys = keyList.get(i);
+                inserted.add(new ProductDTO(((Number) keys.get("id")).longValue(), product.name(), product.description(),
+                        product.price(), product.stock(), product.categoryId(), ((Number) keys.get("version")).longValue()));
+            }
+        }
+        return inserted;
+    }
+}
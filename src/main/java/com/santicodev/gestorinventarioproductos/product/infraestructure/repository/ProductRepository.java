@@ -1,18 +1,106 @@
 package com.santicodev.gestorinventarioproductos.product.infraestructure.repository;
 
 import com.santicodev.gestorinventarioproductos.product.domain.Product;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductSuggestionDTO;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Ver exlipcacion y anotaciones en el notion
  * - Proyecto: Gestor Inventario de Productos
  */
 @Repository
-public interface ProductRepository extends JpaRepository<Product, Long> {
+public interface ProductRepository extends JpaRepository<Product, Long>, ProductFilterRepository {
 
     boolean existsByName(String name);
-    List<Product> findByCategoryId(Long categoryId);
+
+    // Borrado en una sola sentencia (deleteById hace SELECT + DELETE). Devuelve la categoría del producto
+    // borrado (sus listados en caché quedan invalidados) o vacío si no existía.
+    @Query(value = "DELETE FROM products WHERE id = :id RETURNING category_id", nativeQuery = true)
+    Optional<Long> deleteRowById(@Param("id") Long id);
+
+    // Incrementa la versión en una sola sentencia condicionada a la leída, sin SELECT ... FOR UPDATE previo.
+    // Devuelve la nueva versión o vacío si otra escritura la cambió entretanto.
+    @Query(value = "UPDATE products SET version = version + 1 WHERE id = :id AND version = :version RETURNING version",
+            nativeQuery = true)
+    Optional<Long> incrementVersion(@Param("id") Long id, @Param("version") Long version);
+
+    // Paginación por cursor (keyset): recorre la PK en orden, sin OFFSET, y proyecta directamente al DTO.
+    @Query("SELECT new com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductDTO(" +
+            "p.id, p.name, p.description, p.price, p.stock, p.category.id, p.version) FROM Product p " +
+            "WHERE p.id > :after ORDER BY p.id")
+    List<ProductDTO> findDTOsByIdGreaterThan(@Param("after") Long after, Limit limit);
+
+    // Usa el índice compuesto (category_id, id) definido en la entidad Product.
+    @Query("SELECT new com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductDTO(" +
+            "p.id, p.name, p.description, p.price, p.stock, p.category.id, p.version) FROM Product p " +
+            "WHERE p.category.id = :categoryId AND p.id > :after ORDER BY p.id")
+    List<ProductDTO> findDTOsByCategoryIdAndIdGreaterThan(@Param("categoryId") Long categoryId,
+                                                          @Param("after") Long after, Limit limit);
+
+    // Cursor JDBC de solo avance para la exportación en streaming.
+    // Con fetchSize el driver de PostgreSQL trae las filas por bloques en lugar de cargar todo el resultado.
+    // Debe consumirse dentro de una transacción y cerrarse (try-with-resources).
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    @Query("SELECT p FROM Product p ORDER BY p.id")
+    Stream<Product> streamAllBy();
+
+    // Solo (id, name) para construir el índice de autocompletado, leído también con cursor
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    @Query("SELECT new com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductSuggestionDTO(p.id, p.name) " +
+            "FROM Product p")
+    Stream<ProductSuggestionDTO> streamSuggestionsBy();
+
+    // --- Proyecciones DTO (constructor expression) para las lecturas ---
+    // Devuelven ProductDTO directamente desde SQL: sin entidades gestionadas, sin snapshots de dirty-checking
+    // y sin proxies de 'category' (p.category.id se resuelve con la FK, sin JOIN).
+    @Query("SELECT new com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductDTO(" +
+            "p.id, p.name, p.description, p.price, p.stock, p.category.id, p.version) FROM Product p")
+    List<ProductDTO> findAllAsDTO();
+
+    @Query("SELECT new com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductDTO(" +
+            "p.id, p.name, p.description, p.price, p.stock, p.category.id, p.version) FROM Product p WHERE p.id = :id")
+    Optional<ProductDTO> findDTOById(@Param("id") Long id);
+
+    @Query("SELECT new com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductDTO(" +
+            "p.id, p.name, p.description, p.price, p.stock, p.category.id, p.version) FROM Product p WHERE p.category.id = :categoryId")
+    List<ProductDTO> findDTOsByCategoryId(@Param("categoryId") Long categoryId);
+
+    // Una sola consulta IN para resolver los fallos de caché de una lectura por lotes
+    @Query("SELECT new com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductDTO(" +
+            "p.id, p.name, p.description, p.price, p.stock, p.category.id, p.version) FROM Product p WHERE p.id IN :ids")
+    List<ProductDTO> findDTOsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Búsqueda de texto completo (GIN sobre search_vector) combinada con similitud de trigramas sobre 'name'
+    // (GIN gin_trgm_ops) para tolerar errores tipográficos. Ver ProductSearchSchemaLoader.
+    @Query(value = """
+            SELECT p.id AS id, p.name AS name, p.description AS description,
+                   p.price AS price, p.stock AS stock, p.category_id AS "categoryId",
+                   p.version AS version
+            FROM products p
+            WHERE p.search_vector @@ websearch_to_tsquery('spanish', :q)
+               OR p.name % :q
+            ORDER BY ts_rank(p.search_vector, websearch_to_tsquery('spanish', :q)) + similarity(p.name, :q) DESC, p.id
+            LIMIT :limit OFFSET :offset
+            """, nativeQuery = true)
+    List<ProductSearchView> search(@Param("q") String q, @Param("limit") int limit, @Param("offset") long offset);
 }
@@ -0,0 +1,22 @@
+package com.santicodev.gestorinventarioproductos.product.infraestructure.repository;
+
+import java.math.BigDecimal;
+
+/**
+ * Proyección de interfaz para el resultado de la búsqueda de texto completo (consulta nativa).
+ */
+public interface ProductSearchView {
+    Long getId();
+
+    String getName();
+
+    String getDescription();
+
+    BigDecimal getPrice();
+
+    Integer getStock();
+
+    Long getCategoryId();
+
+    Long getVersion();
+}
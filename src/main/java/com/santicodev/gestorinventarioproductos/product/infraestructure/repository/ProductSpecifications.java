@@ -0,0 +1,60 @@
+package com.santicodev.gestorinventarioproductos.product.infraestructure.repository;
+
+import com.santicodev.gestorinventarioproductos.product.domain.Product;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductFilterDTO;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Predicados reutilizables para el listado filtrado de productos.
+ * Solo se añaden los filtros presentes, así la consulta generada es tan simple como la petición.
+ */
+public final class ProductSpecifications {
+
+    private ProductSpecifications() {
+    }
+
+    public static Specification<Product> fromFilter(ProductFilterDTO filter) {
+        List<Specification<Product>> specs = new ArrayList<>();
+        if (filter.categoryId() != null) {
+            specs.add(hasCategory(filter.categoryId()));
+        }
+        if (filter.minPrice() != null) {
+            specs.add(priceAtLeast(filter.minPrice()));
+        }
+        if (filter.maxPrice() != null) {
+            specs.add(priceAtMost(filter.maxPrice()));
+        }
+        if (filter.inStock() != null) {
+            specs.add(inStock(filter.inStock()));
+        }
+        return Specification.allOf(specs);
+    }
+
+    // Paginación por cursor (keyset)
+    public static Specification<Product> idGreaterThan(long after) {
+        return (root, query, cb) -> cb.greaterThan(root.get("id"), after);
+    }
+
+    // Compara con la FK directamente (p.category.id), sin JOIN a categories
+    public static Specification<Product> hasCategory(Long categoryId) {
+        return (root, query, cb) -> cb.equal(root.get("category").get("id"), categoryId);
+    }
+
+    public static Specification<Product> priceAtLeast(BigDecimal minPrice) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("price"), minPrice);
+    }
+
+    public static Specification<Product> priceAtMost(BigDecimal maxPrice) {
+        return (root, query, cb) -> cb.lessThanOrEqualTo(root.get("price"), maxPrice);
+    }
+
+    public static Specification<Product> inStock(boolean inStock) {
+        return (root, query, cb) -> inStock
+                ? cb.greaterThan(root.get("stock"), 0)
+                : cb.lessThanOrEqualTo(root.get("stock"), 0);
+    }
+}
@@ -0,0 +1,48 @@
+package com.santicodev.gestorinventarioproductos.shared.domain;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Evento de cambio pendiente de publicar (patrón transactional outbox).
+ * Se inserta en la misma transacción que el cambio que describe, así que existe si y solo si ese cambio
+ * se confirmó. OutboxRelay lo publica en Redis Streams y lo borra.
+ */
+@Entity
+@Table(name = "outbox_events")
+@Data
+@NoArgsConstructor
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Tipo de agregado ("product", "category"): decide el stream de destino
+    @Column(nullable = false, length = 50)
+    private String aggregateType;
+
+    @Column(nullable = false)
+    private Long aggregateId;
+
+    // Nombre del evento, p. ej. "ProductUpdated"
+    @Column(nullable = false, length = 100)
+    private String eventType;
+
+    // Estado del agregado (o los datos del cambio) en JSON
+    @Column(nullable = false, columnDefinition = "text")
+    private String payload;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    public OutboxEvent(String aggregateType, Long aggregateId, String eventType, String payload, Instant createdAt) {
+        this.aggregateType = aggregateType;
+        this.aggregateId = aggregateId;
+        this.eventType = eventType;
+        this.payload = payload;
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,12 @@
+package com.santicodev.gestorinventarioproductos.shared.domain.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// Mapea esta excepción a un código de estado HTTP 400 Bad Request (p. ej. un campo desconocido en '?fields=').
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidFieldException extends RuntimeException {
+    public InvalidFieldException(String message) {
+        super(message);
+    }
+}
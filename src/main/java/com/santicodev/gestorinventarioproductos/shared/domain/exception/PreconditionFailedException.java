@@ -0,0 +1,12 @@
+package com.santicodev.gestorinventarioproductos.shared.domain.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// Mapea esta excepción a un código de estado HTTP 412 Precondition Failed (If-Match con una versión obsoleta).
+@ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+public class PreconditionFailedException extends RuntimeException {
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
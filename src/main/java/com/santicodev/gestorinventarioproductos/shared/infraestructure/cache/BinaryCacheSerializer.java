@@ -0,0 +1,191 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.cache;
+
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CursorPageDTO;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializador de los valores de una región de caché con un tipo conocido (p. ej. ProductDTO en product-by-id).
+ * Escribe el CacheEntry en binario según el esquema del tipo (BinaryCodec), sin nombres de campo ni los
+ * metadatos de tipo que añade GenericJackson2JsonRedisSerializer:
+ * <pre>
+ * [formato: 1 byte][expiresAt: 8][computeMillis: 8][valor: un DTO, una lista o una página por cursor de DTOs]
+ * </pre>
+ * Lo que el esquema no cubre (p. ej. las vistas '?fields=', mapas con campos variables) se escribe en JSON
+ * con el serializador genérico tras el byte de formato JSON.
+ * <p>
+ * Por región registra los bytes de cada entrada (cache.serialized.bytes, por formato) y el tiempo de
+ * serialización y deserialización (cache.serialization), para compararlos con los del JSON.
+ */
+public class BinaryCacheSerializer<T> implements RedisSerializer<Object> {
+    private static final byte JSON = 0;
+    private static final byte ITEM = 1;
+    private static final byte LIST = 2;
+    private static final byte PAGE = 3;
+
+    private final Class<T> type;
+    private final BinaryCodec<T> codec;
+    private final RedisSerializer<Object> fallback;
+    private final DistributionSummary binaryBytes;
+    private final DistributionSummary jsonBytes;
+    private final Timer writeTimer;
+    private final Timer readTimer;
+
+    public BinaryCacheSerializer(String cacheName, Class<T> type, BinaryCodec<T> codec,
+                                 RedisSerializer<Object> fallback, MeterRegistry meterRegistry) {
+        this.type = type;
+        this.codec = codec;
+        this.fallback = fallback;
+        this.binaryBytes = bytesSummary(meterRegistry, cacheName, "binary");
+        this.jsonBytes = bytesSummary(meterRegistry, cacheName, "json");
+        this.writeTimer = serializationTimer(meterRegistry, cacheName, "write");
+        this.readTimer = serializationTimer(meterRegistry, cacheName, "read");
+    }
+
+    @Override
+    public byte[] serialize(Object stored) throws SerializationException {
+        long start = System.nanoTime();
+        try {
+            byte format = formatOf(stored);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            bytes.write(format);
+            if (format == JSON) {
+                bytes.writeBytes(fallback.serialize(stored));
+            } else {
+                CacheEntry entry = (CacheEntry) stored;
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeLong(entry.expiresAt());
+                out.writeLong(entry.computeMillis());
+                writeValue(format, entry.value(), out);
+                out.flush();
+            }
+            byte[] serialized = bytes.toByteArray();
+            (format == JSON ? jsonBytes : binaryBytes).record(serialized.length);
+            return serialized;
+        } catch (IOException e) {
+            throw new SerializationException("No se pudo serializar el valor de la caché", e);
+        } finally {
+            writeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            byte format = bytes[0];
+            if (format == JSON) {
+                return fallback.deserialize(Arrays.copyOfRange(bytes, 1, bytes.length));
+            }
+            if (format != ITEM && format != LIST && format != PAGE) {
+                // Sin byte de formato: entrada escrita en JSON antes de existir este serializador
+                return fallback.deserialize(bytes);
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1));
+            long expiresAt = in.readLong();
+            long computeMillis = in.readLong();
+            return new CacheEntry(readValue(format, in), expiresAt, computeMillis);
+        } catch (IOException e) {
+            throw new SerializationException("No se pudo leer el valor de la caché", e);
+        } finally {
+            readTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // Formato binario solo si el esquema cubre el valor entero: un DTO del tipo, o una lista o página de ellos
+    private byte formatOf(Object stored) {
+        if (!(stored instanceof CacheEntry entry)) {
+            return JSON;
+        }
+        return switch (entry.value()) {
+            case Object value when type.isInstance(value) -> ITEM;
+            case List<?> items when allOfType(items) -> LIST;
+            case CursorPageDTO<?> page when allOfType(page.items()) -> PAGE;
+            case null, default -> JSON;
+        };
+    }
+
+    private void writeValue(byte format, Object value, DataOutputStream out) throws IOException {
+        switch (format) {
+            case ITEM -> codec.write(type.cast(value), out);
+            case LIST -> writeItems((List<?>) value, out);
+            default -> {
+                CursorPageDTO<?> page = (CursorPageDTO<?>) value;
+                writeItems(page.items(), out);
+                // 0 = sin página siguiente; los IDs son positivos
+                BinaryCodecs.writeVarLong(out, page.nextCursor() == null ? 0 : page.nextCursor());
+            }
+        }
+    }
+
+    private Object readValue(byte format, DataInputStream in) throws IOException {
+        return switch (format) {
+            case ITEM -> codec.read(in);
+            case LIST -> readItems(in);
+            default -> {
+                List<T> items = readItems(in);
+                long nextCursor = BinaryCodecs.readVarLong(in);
+                yield new CursorPageDTO<>(items, nextCursor == 0 ? null : nextCursor);
+            }
+        };
+    }
+
+    private void writeItems(List<?> items, DataOutputStream out) throws IOException {
+        BinaryCodecs.writeVarLong(out, items.size());
+        for (Object item : items) {
+            codec.write(type.cast(item), out);
+        }
+    }
+
+    // ArrayList, como las listas que devuelven los servicios (CursorPageDTO.of)
+    private List<T> readItems(DataInputStream in) throws IOException {
+        int size = (int) BinaryCodecs.readVarLong(in);
+        List<T> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(codec.read(in));
+        }
+        return items;
+    }
+
+    private boolean allOfType(List<?> items) {
+        for (Object item : items) {
+            if (!type.isInstance(item)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static DistributionSummary bytesSummary(MeterRegistry meterRegistry, String cacheName, String format) {
+        return DistributionSummary.builder("cache.serialized.bytes")
+                .description("Tamaño en Redis de cada entrada de caché serializada")
+                .baseUnit("bytes")
+                .tag("cache", cacheName)
+                .tag("format", format)
+                .register(meterRegistry);
+    }
+
+    private static Timer serializationTimer(MeterRegistry meterRegistry, String cacheName, String operation) {
+        return Timer.builder("cache.serialization")
+                .description("Tiempo de serialización (write) y deserialización (read) de las entradas de caché")
+                .tag("cache", cacheName)
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+}
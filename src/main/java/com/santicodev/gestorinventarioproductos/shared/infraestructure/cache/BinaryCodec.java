@@ -0,0 +1,16 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.cache;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Esquema binario de un tipo de valor cacheado: sus campos en un orden fijo, sin nombres ni metadatos de tipo.
+ * BinaryCacheSerializer lo usa para los valores de ese tipo y para sus listas y páginas (BinaryCodecs).
+ */
+public interface BinaryCodec<T> {
+
+    void write(T value, DataOutputStream out) throws IOException;
+
+    T read(DataInputStream in) throws IOException;
+}
@@ -0,0 +1,160 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.cache;
+
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CategoryDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductDTO;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Esquemas binarios de los DTOs cacheados y las primitivas que comparten.
+ * Cada DTO empieza por un byte con un bit por campo presente (los null no ocupan nada); los enteros van en
+ * varint (7 bits por byte), los textos como longitud + UTF-8 y los BigDecimal como escala + valor sin escala.
+ * Cambiar el orden o el tipo de un campo hace ilegibles las entradas ya escritas: si hace falta, se cambia
+ * el nombre de la región (las entradas anteriores caducan solas).
+ */
+public final class BinaryCodecs {
+
+    public static final BinaryCodec<ProductDTO> PRODUCT = new BinaryCodec<>() {
+        @Override
+        public void write(ProductDTO product, DataOutputStream out) throws IOException {
+            out.writeByte(presence(product.id(), product.name(), product.description(), product.price(),
+                    product.stock(), product.categoryId(), product.version()));
+            writeOptionalLong(out, product.id());
+            writeOptionalString(out, product.name());
+            writeOptionalString(out, product.description());
+            if (product.price() != null) {
+                writeDecimal(out, product.price());
+            }
+            if (product.stock() != null) {
+                writeVarLong(out, zigZag(product.stock()));
+            }
+            writeOptionalLong(out, product.categoryId());
+            writeOptionalLong(out, product.version());
+        }
+
+        @Override
+        public ProductDTO read(DataInputStream in) throws IOException {
+            int presence = in.readUnsignedByte();
+            return new ProductDTO(
+                    has(presence, 0) ? readVarLong(in) : null,
+                    has(presence, 1) ? readString(in) : null,
+                    has(presence, 2) ? readString(in) : null,
+                    has(presence, 3) ? readDecimal(in) : null,
+                    has(presence, 4) ? (int) unZigZag(readVarLong(in)) : null,
+                    has(presence, 5) ? readVarLong(in) : null,
+                    has(presence, 6) ? readVarLong(in) : null);
+        }
+    };
+
+    public static final BinaryCodec<CategoryDTO> CATEGORY = new BinaryCodec<>() {
+        @Override
+        public void write(CategoryDTO category, DataOutputStream out) throws IOException {
+            out.writeByte(presence(category.id(), category.name(), category.description(), category.version()));
+            writeOptionalLong(out, category.id());
+            writeOptionalString(out, category.name());
+            writeOptionalString(out, category.description());
+            writeOptionalLong(out, category.version());
+        }
+
+        @Override
+        public CategoryDTO read(DataInputStream in) throws IOException {
+            int presence = in.readUnsignedByte();
+            return new CategoryDTO(
+                    has(presence, 0) ? readVarLong(in) : null,
+                    has(presence, 1) ? readString(in) : null,
+                    has(presence, 2) ? readString(in) : null,
+                    has(presence, 3) ? readVarLong(in) : null);
+        }
+    };
+
+    private BinaryCodecs() {
+    }
+
+    // Enteros sin signo (IDs, versiones, longitudes): 1 byte hasta 127, 2 hasta 16383...
+    public static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint demasiado largo");
+    }
+
+    public static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Campos que pueden ser null: su presencia ya está en el byte inicial del DTO
+    private static void writeOptionalLong(DataOutputStream out, Long value) throws IOException {
+        if (value != null) {
+            writeVarLong(out, value);
+        }
+    }
+
+    private static void writeOptionalString(DataOutputStream out, String value) throws IOException {
+        if (value != null) {
+            writeString(out, value);
+        }
+    }
+
+    private static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        writeVarLong(out, zigZag(value.scale()));
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        writeVarLong(out, unscaled.length);
+        out.write(unscaled);
+    }
+
+    private static BigDecimal readDecimal(DataInputStream in) throws IOException {
+        int scale = (int) unZigZag(readVarLong(in));
+        byte[] unscaled = new byte[(int) readVarLong(in)];
+        in.readFully(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    // Enteros con signo en varint: 0, -1, 1, -2... -> 0, 1, 2, 3...
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int presence(Object... fields) {
+        int presence = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] != null) {
+                presence |= 1 << i;
+            }
+        }
+        return presence;
+    }
+
+    private static boolean has(int presence, int field) {
+        return (presence & (1 << field)) != 0;
+    }
+}
@@ -0,0 +1,15 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.cache;
+
+/**
+ * Valor guardado en la caché (L1 y Redis) junto con los datos para refrescarlo antes de que caduque:
+ * - expiresAt: caducidad lógica (epoch en milisegundos). Redis lo conserva un margen más (stale-grace)
+ *   para poder servirlo mientras se recalcula.
+ * - computeMillis: lo que tardó en calcularse; cuanto más caro, antes se refresca (CacheRefreshPolicy).
+ */
+public record CacheEntry(Object value, long expiresAt, long computeMillis) {
+
+    // Valor leído sin envoltorio (escrito antes de existir CacheEntry): sin caducidad lógica, no se refresca
+    static CacheEntry of(Object stored) {
+        return stored instanceof CacheEntry entry ? entry : new CacheEntry(stored, Long.MAX_VALUE, 0);
+    }
+}
@@ -0,0 +1,62 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.cache;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Caducidad de las entradas de caché y cuándo refrescarlas por adelantado.
+ * <p>
+ * - TTL con jitter: cada entrada caduca en 'ttl' menos un porcentaje aleatorio de hasta 'jitter', así las
+ *   entradas creadas a la vez (p. ej. tras un arranque) no caducan todas en el mismo instante.
+ * - Refresco anticipado probabilístico (XFetch): una lectura refresca la entrada en segundo plano si
+ *   {@code ahora - computeMillis * beta * ln(aleatorio) >= expiresAt}. La probabilidad crece al acercarse la
+ *   caducidad y con el coste de recalcularla; con muchas lecturas, una sola lo hace poco antes de caducar.
+ * - Stale-while-revalidate: Redis guarda la entrada 'staleGrace' más allá de su caducidad lógica; en ese
+ *   margen se sigue sirviendo mientras se recalcula en segundo plano.
+ */
+public class CacheRefreshPolicy {
+    // Tiempo mínimo en Redis: un TTL de cero significaría "sin caducidad"
+    private static final Duration MIN_TTL = Duration.ofSeconds(1);
+
+    private final Duration ttl;
+    private final double jitter;
+    private final Duration staleGrace;
+    private final double beta;
+
+    public CacheRefreshPolicy(Duration ttl, double jitter, Duration staleGrace, double beta) {
+        this.ttl = ttl;
+        this.jitter = jitter;
+        this.staleGrace = staleGrace;
+        this.beta = beta;
+    }
+
+    public CacheEntry newEntry(Object value, long computeMillis) {
+        double reduction = jitter > 0 ? ThreadLocalRandom.current().nextDouble(jitter) : 0;
+        long ttlMillis = (long) (ttl.toMillis() * (1 - reduction));
+        return new CacheEntry(value, System.currentTimeMillis() + ttlMillis, computeMillis);
+    }
+
+    // TTL en Redis (RedisCacheConfiguration.entryTtl): la caducidad lógica más el margen para servirla caducada
+    public Duration timeToLive(Object key, Object value) {
+        if (!(value instanceof CacheEntry entry)) {
+            return ttl;
+        }
+        Duration remaining = Duration.ofMillis(Math.max(0, entry.expiresAt() - System.currentTimeMillis()));
+        Duration timeToLive = remaining.plus(staleGrace);
+        return timeToLive.compareTo(MIN_TTL) < 0 ? MIN_TTL : timeToLive;
+    }
+
+    public boolean isExpired(CacheEntry entry) {
+        return System.currentTimeMillis() >= entry.expiresAt();
+    }
+
+    // XFetch: true si esta lectura debe recalcular la entrada (siempre, si ya ha caducado)
+    public boolean shouldRefresh(CacheEntry entry) {
+        if (entry.expiresAt() == Long.MAX_VALUE) {
+            return false;
+        }
+        double random = 1 - ThreadLocalRandom.current().nextDouble(); // (0, 1]: ln nunca es -infinito
+        double earlyMillis = -entry.computeMillis() * beta * Math.log(random);
+        return System.currentTimeMillis() + earlyMillis >= entry.expiresAt();
+    }
+}
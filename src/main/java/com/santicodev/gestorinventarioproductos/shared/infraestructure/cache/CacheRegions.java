@@ -0,0 +1,29 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.cache;
+
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+
+import java.util.Map;
+
+/**
+ * Configuración de Redis de cada región de caché: la común (TTL, prefijo de clave) con el serializador de
+ * valores de la región (BinaryCacheSerializer). La usan el RedisCacheManager de @Cacheable y RedisBatchCache,
+ * para que las entradas escritas por una vía se lean por la otra.
+ */
+public class CacheRegions {
+    private final RedisCacheConfiguration defaults;
+    private final Map<String, RedisCacheConfiguration> configurations;
+
+    public CacheRegions(RedisCacheConfiguration defaults, Map<String, RedisCacheConfiguration> configurations) {
+        this.defaults = defaults;
+        this.configurations = Map.copyOf(configurations);
+    }
+
+    public Map<String, RedisCacheConfiguration> configurations() {
+        return configurations;
+    }
+
+    // Las regiones sin configuración propia usan la común (valores en JSON)
+    public RedisCacheConfiguration configurationFor(String cacheName) {
+        return configurations.getOrDefault(cacheName, defaults);
+    }
+}
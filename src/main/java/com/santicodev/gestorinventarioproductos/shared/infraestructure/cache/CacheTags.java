@@ -0,0 +1,117 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Etiquetas de las entradas de listado en caché ("products:all", "category:5", ...).
+ * Cada etiqueta tiene un contador de versión en Redis, y las claves de los listados llevan la versión
+ * actual de su etiqueta (p. ej. "category:5:page:0:50:v3"). Invalidar una etiqueta incrementa su
+ * contador: las claves anteriores dejan de leerse y caducan solas con el TTL de la región, sin borrar
+ * nada ni vaciar la caché.
+ * <p>
+ * Las claves de @Cacheable la usan con SpEL: {@code @cacheTags.versionOf('products:all')}.
+ * Para no ir a Redis en cada lectura, las versiones se guardan unos segundos en memoria; quien incrementa
+ * una etiqueta lo anuncia en INVALIDATION_CHANNEL para que todas las instancias olviden la suya.
+ */
+@Component
+public class CacheTags implements MessageListener {
+    public static final String INVALIDATION_CHANNEL = "cache:tags";
+    public static final String ALL_PRODUCTS = "products:all";
+    public static final String ALL_CATEGORIES = "categories:all";
+    private static final String KEY_PREFIX = "cache:tag:";
+    private static final String SEPARATOR = "\n";
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheTags.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final com.github.benmanes.caffeine.cache.Cache<String, Long> localVersions;
+
+    public CacheTags(StringRedisTemplate redisTemplate,
+                     @Value("${app.cache.tags.local-ttl:5s}") Duration localTtl) {
+        this.redisTemplate = redisTemplate;
+        this.localVersions = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(localTtl)
+                .build();
+    }
+
+    // Etiqueta de los listados de productos de una categoría
+    public static String category(Long categoryId) {
+        return "category:" + categoryId;
+    }
+
+    // Sufijo de versión para la clave de una entrada etiquetada: "v3"
+    public String versionOf(String tag) {
+        return "v" + localVersions.get(tag, this::readVersion);
+    }
+
+    public void invalidate(String... tags) {
+        invalidate(Arrays.asList(tags));
+    }
+
+    /**
+     * Incrementa la versión de las etiquetas. Dentro de una transacción se hace al confirmarla: si se
+     * hiciera antes, una lectura concurrente podría cachear los datos anteriores con la versión nueva.
+     */
+    public void invalidate(Collection<String> tags) {
+        if (tags.isEmpty()) {
+            return;
+        }
+        List<String> distinct = Set.copyOf(tags).stream().toList();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    increment(distinct);
+                }
+            });
+        } else {
+            increment(distinct);
+        }
+    }
+
+    // Versiones incrementadas por otra instancia (o por esta misma)
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        localVersions.invalidateAll(Arrays.asList(new String(message.getBody(), StandardCharsets.UTF_8).split(SEPARATOR)));
+    }
+
+    // Todas las etiquetas en una sola ida y vuelta: INCR de cada una y el aviso a las demás instancias
+    private void increment(List<String> tags) {
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                tags.forEach(tag -> stringConnection.incr(KEY_PREFIX + tag));
+                stringConnection.publish(INVALIDATION_CHANNEL, String.join(SEPARATOR, tags));
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // La escritura ya está confirmada: los listados afectados se sirven sin actualizar hasta que caduquen
+            logger.warn("No se pudieron invalidar las etiquetas de caché {}: {}", tags, e.getMessage());
+        }
+        localVersions.invalidateAll(tags);
+    }
+
+    private long readVersion(String tag) {
+        String version = redisTemplate.opsForValue().get(KEY_PREFIX + tag);
+        return version == null ? 0L : Long.parseLong(version);
+    }
+}
@@ -0,0 +1,347 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands.BitOperation;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Filtros de Bloom de los IDs existentes (uno por región: productos y categorías), para responder 404 a
+ * los IDs que no existen sin ir a PostgreSQL. Un filtro de Bloom puede dar falsos positivos (un ID que
+ * no existe pasa y se consulta como hasta ahora), nunca falsos negativos.
+ * <p>
+ * Cada filtro está en memoria y copiado en un bitmap de Redis: si el filtro local dice que un ID no
+ * existe, se confirma con el de Redis antes de descartarlo, porque el ID puede haberlo creado otra
+ * instancia. Los filtros se cargan al arrancar (IdBloomFilterLoader) y hasta entonces no descartan nada.
+ * Un filtro de Bloom no admite bajas: los IDs borrados siguen dentro hasta la siguiente carga y cuentan
+ * como falsos positivos (métrica cache.bloom.false.positive.rate). Por eso se reconstruye (needsRebuild)
+ * cada 'app.cache.bloom.rebuild-interval' o antes si la tasa observada desde la última carga dobla la pedida.
+ */
+@Component
+public class IdBloomFilter {
+    public static final String PRODUCTS = "products";
+    public static final String CATEGORIES = "categories";
+    private static final String KEY_PREFIX = "cache:bloom:";
+    // Consultas de IDs inexistentes necesarias para fiarse de la tasa de falsos positivos observada
+    private static final long MIN_FALSE_POSITIVE_SAMPLES = 100;
+
+    private static final Logger logger = LoggerFactory.getLogger(IdBloomFilter.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final boolean enabled;
+    private final double falsePositiveProbability;
+    private final Duration rebuildInterval;
+    private final Map<String, Region> regions;
+
+    public IdBloomFilter(StringRedisTemplate redisTemplate, MeterRegistry meterRegistry,
+                         @Value("${app.cache.bloom.enabled:true}") boolean enabled,
+                         @Value("${app.cache.bloom.products.expected-ids:1000000}") long expectedProducts,
+                         @Value("${app.cache.bloom.categories.expected-ids:10000}") long expectedCategories,
+                         @Value("${app.cache.bloom.false-positive-probability:0.01}") double falsePositiveProbability,
+                         @Value("${app.cache.bloom.rebuild-interval:6h}") Duration rebuildInterval) {
+        this.redisTemplate = redisTemplate;
+        this.enabled = enabled;
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.rebuildInterval = rebuildInterval;
+        this.regions = Map.of(
+                PRODUCTS, new Region(PRODUCTS, expectedProducts, falsePositiveProbability, meterRegistry),
+                CATEGORIES, new Region(CATEGORIES, expectedCategories, falsePositiveProbability, meterRegistry));
+    }
+
+    /**
+     * true solo si el ID seguro que no existe: no está en el filtro local ni en el de Redis.
+     * Si el filtro aún no está cargado o Redis no responde, devuelve false (se consulta la base de datos).
+     */
+    public boolean isDefinitelyAbsent(String regionName, long id) {
+        Region region = regions.get(regionName);
+        if (!enabled || !region.ready) {
+            return false;
+        }
+        long[] offsets = region.offsets(id);
+        if (region.bits.containsAll(offsets) || presentInRedis(region, offsets)) {
+            region.maybePresent.increment();
+            return false;
+        }
+        region.absent.increment();
+        return true;
+    }
+
+    // El filtro dejó pasar un ID que luego no existía: alimenta la tasa de falsos positivos observada
+    public void recordFalsePositive(String regionName) {
+        regions.get(regionName).falsePositives.increment();
+    }
+
+    public void add(String regionName, long id) {
+        addAll(regionName, List.of(id));
+    }
+
+    /**
+     * Añade IDs recién creados. En memoria al momento; en Redis al confirmar la transacción, para que una
+     * carga concurrente del filtro (load) no pise los bits de un alta que aún no ve en la base de datos.
+     */
+    public void addAll(String regionName, Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        Region region = regions.get(regionName);
+        long[][] offsets = ids.stream().map(region::offsets).toArray(long[][]::new);
+        for (long[] idOffsets : offsets) {
+            region.add(idOffsets);
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    setInRedis(region, offsets);
+                }
+            });
+        } else {
+            setInRedis(region, offsets);
+        }
+    }
+
+    /**
+     * Carga el filtro con todos los IDs de 'ids' (un recorrido de la tabla) en un filtro nuevo, que sustituye
+     * al local y al bitmap de Redis: así se pierden los IDs borrados. Las altas que se confirman mientras tanto
+     * no se pierden: addAll las escribe en los dos filtros locales, y se hace un segundo recorrido después de
+     * sustituir el bitmap y se suma a Redis (OR); las posteriores las escribe addAll.
+     */
+    public void load(String regionName, Consumer<LongConsumer> ids) {
+        Region region = regions.get(regionName);
+        Bits loading = new Bits(region.size);
+        region.loading = loading;
+        ids.accept(id -> loading.setAll(region.offsets(id)));
+        byte[] key = region.redisKey();
+        byte[] pendingKey = (KEY_PREFIX + region.name + ":loading:" + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8);
+        try {
+            byte[] bitmap = loading.toBitmap();
+            redisTemplate.execute((RedisCallback<Object>) connection -> connection.stringCommands().set(key, bitmap));
+            ids.accept(id -> loading.setAll(region.offsets(id)));
+            byte[] merged = loading.toBitmap();
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                connection.stringCommands().set(pendingKey, merged);
+                connection.stringCommands().bitOp(BitOperation.OR, key, key, pendingKey);
+                connection.keyCommands().del(pendingKey);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // Sin la copia en Redis el filtro local sigue valiendo: las confirmaciones irán a la base de datos
+            logger.warn("No se pudo guardar en Redis el filtro de IDs de {}: {}", region.name, e.getMessage());
+        }
+        region.loaded(loading);
+    }
+
+    /**
+     * true si el filtro cargado de la región debe reconstruirse: lleva más de 'rebuildInterval' sin cargarse,
+     * o desde la última carga deja pasar más del doble de IDs inexistentes de lo pedido (p. ej. tras muchos borrados).
+     */
+    public boolean needsRebuild(String regionName) {
+        Region region = regions.get(regionName);
+        if (!enabled || !region.ready) {
+            return false;
+        }
+        if (System.currentTimeMillis() - region.loadedAt >= rebuildInterval.toMillis()) {
+            return true;
+        }
+        double falsePositives = region.falsePositives.count() - region.falsePositivesAtLoad;
+        double samples = falsePositives + region.absent.count() - region.absentAtLoad;
+        return samples >= MIN_FALSE_POSITIVE_SAMPLES && falsePositives / samples > 2 * falsePositiveProbability;
+    }
+
+    private boolean presentInRedis(Region region, long[] offsets) {
+        try {
+            byte[] key = region.redisKey();
+            List<Object> bits = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (long offset : offsets) {
+                    connection.stringCommands().getBit(key, offset);
+                }
+                return null;
+            });
+            if (bits.stream().allMatch(Boolean.TRUE::equals)) {
+                // Lo creó otra instancia: se añade al filtro local para no volver a preguntar
+                region.add(offsets);
+                return true;
+            }
+            return false;
+        } catch (RuntimeException e) {
+            logger.warn("No se pudo consultar en Redis el filtro de IDs de {}: {}", region.name, e.getMessage());
+            return true;
+        }
+    }
+
+    private void setInRedis(Region region, long[][] offsets) {
+        try {
+            byte[] key = region.redisKey();
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (long[] idOffsets : offsets) {
+                    for (long offset : idOffsets) {
+                        connection.stringCommands().setBit(key, offset, true);
+                    }
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // Las demás instancias lo verán como inexistente hasta la siguiente carga del filtro
+            logger.warn("No se pudieron añadir IDs al filtro de {} en Redis: {}", region.name, e.getMessage());
+        }
+    }
+
+    /**
+     * Filtro de una región: 'size' bits (múltiplo de 64) y 'hashes' funciones hash, calculados para
+     * 'expectedIds' IDs con la probabilidad de falso positivo pedida.
+     * 'bits' es el filtro en uso; durante una carga, 'loading' es el que lo sustituirá.
+     */
+    private static final class Region {
+        final String name;
+        final long size;
+        final int hashes;
+        final Counter absent;
+        final Counter maybePresent;
+        final Counter falsePositives;
+        volatile Bits bits;
+        volatile Bits loading;
+        volatile boolean ready;
+        volatile long loadedAt;
+        // Contadores al terminar la última carga: la tasa observada de needsRebuild es la posterior
+        volatile double absentAtLoad;
+        volatile double falsePositivesAtLoad;
+
+        Region(String name, long expectedIds, double falsePositiveProbability, MeterRegistry meterRegistry) {
+            this.name = name;
+            long optimalBits = (long) Math.ceil(-expectedIds * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+            this.size = Math.max(64, (optimalBits + 63) / 64 * 64);
+            this.hashes = Math.max(1, (int) Math.round((double) size / expectedIds * Math.log(2)));
+            this.bits = new Bits(size);
+            this.absent = Counter.builder("cache.bloom.checks")
+                    .description("Consultas al filtro de IDs existentes")
+                    .tags("region", name, "result", "absent")
+                    .register(meterRegistry);
+            this.maybePresent = Counter.builder("cache.bloom.checks")
+                    .description("Consultas al filtro de IDs existentes")
+                    .tags("region", name, "result", "maybe")
+                    .register(meterRegistry);
+            this.falsePositives = Counter.builder("cache.bloom.false.positives")
+                    .description("IDs que el filtro dejó pasar y no existían")
+                    .tag("region", name)
+                    .register(meterRegistry);
+            // Tasa observada: de los IDs inexistentes consultados, los que el filtro no supo descartar
+            Gauge.builder("cache.bloom.false.positive.rate", this, region -> {
+                        double falsePositiveCount = region.falsePositives.count();
+                        double total = falsePositiveCount + region.absent.count();
+                        return total == 0 ? 0.0 : falsePositiveCount / total;
+                    })
+                    .description("Tasa de falsos positivos observada del filtro de IDs existentes")
+                    .tag("region", name)
+                    .register(meterRegistry);
+            // Tasa esperada según la ocupación actual: (bits a 1 / bits) ^ hashes
+            Gauge.builder("cache.bloom.expected.false.positive.rate", this,
+                            region -> Math.pow((double) region.bits.bitsSet.get() / region.size, region.hashes))
+                    .description("Tasa de falsos positivos esperada del filtro de IDs existentes según su ocupación")
+                    .tag("region", name)
+                    .register(meterRegistry);
+        }
+
+        // Posiciones de los bits de un ID: doble hash (h1 + i * h2) sobre un mezclado de 64 bits del ID
+        long[] offsets(long id) {
+            long h = id;
+            h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+            h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+            h ^= h >>> 33;
+            long h1 = h & 0xFFFFFFFFL;
+            long h2 = (h >>> 32) | 1;
+            long[] offsets = new long[hashes];
+            for (int i = 0; i < hashes; i++) {
+                offsets[i] = Math.floorMod(h1 + i * h2, size);
+            }
+            return offsets;
+        }
+
+        // Un alta va al filtro en uso y, si hay una carga en curso, también al que lo sustituirá
+        void add(long[] offsets) {
+            bits.setAll(offsets);
+            Bits next = loading;
+            if (next != null) {
+                next.setAll(offsets);
+            }
+        }
+
+        void loaded(Bits loaded) {
+            bits = loaded;
+            loading = null;
+            absentAtLoad = absent.count();
+            falsePositivesAtLoad = falsePositives.count();
+            loadedAt = System.currentTimeMillis();
+            ready = true;
+        }
+
+        // El tamaño va en la clave: si cambia la configuración, no se mezclan bitmaps incompatibles
+        byte[] redisKey() {
+            return (KEY_PREFIX + name + ":" + size + ":" + hashes).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Bits de un filtro. El bit i está en la palabra i / 64, del más significativo al menos: el mismo orden
+     * que los bitmaps de Redis (SETBIT / GETBIT).
+     */
+    private static final class Bits {
+        final AtomicLongArray words;
+        final AtomicLong bitsSet = new AtomicLong();
+
+        Bits(long size) {
+            this.words = new AtomicLongArray((int) (size / 64));
+        }
+
+        boolean containsAll(long[] offsets) {
+            for (long offset : offsets) {
+                if ((words.get((int) (offset >>> 6)) & mask(offset)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void setAll(long[] offsets) {
+            for (long offset : offsets) {
+                int word = (int) (offset >>> 6);
+                long mask = mask(offset);
+                long previous = words.getAndAccumulate(word, mask, (current, bit) -> current | bit);
+                if ((previous & mask) == 0) {
+                    bitsSet.incrementAndGet();
+                }
+            }
+        }
+
+        byte[] toBitmap() {
+            ByteBuffer buffer = ByteBuffer.allocate(words.length() * Long.BYTES);
+            for (int i = 0; i < words.length(); i++) {
+                buffer.putLong(words.get(i));
+            }
+            return buffer.array();
+        }
+
+        private static long mask(long offset) {
+            return 1L << (63 - (offset & 63));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.cache;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.util.ByteUtils;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Operaciones por lotes sobre las regiones de caché de Spring (RedisCacheManager).
+ * Usa el mismo formato de clave ("product-by-id::5") y el mismo serializador de la región que @Cacheable (CacheRegions),
+ * así que las entradas leídas o escritas aquí son intercambiables con las de la anotación.
+ * También pasa por la caché local (L1) de TwoTierCacheManager: las lecturas la consultan antes del MGET y
+ * las escrituras la actualizan e invalidan la de las demás instancias.
+ */
+@Component
+@RequiredArgsConstructor
+public class RedisBatchCache {
+    // Entradas por pipeline en las escrituras en segundo plano
+    private static final int BACKGROUND_BATCH_SIZE = 500;
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisBatchCache.class);
+
+    private final RedisConnectionFactory connectionFactory;
+    private final CacheRegions cacheRegions;
+    private final TwoTierCacheManager cacheManager;
+
+    // Lee varias entradas por ID: primero L1 y el resto con un único MGET. Solo devuelve los aciertos del tipo esperado.
+    public <T> Map<Long, T> multiGet(String cacheName, Collection<Long> ids, Class<T> type) {
+        Map<Long, T> hits = new HashMap<>();
+        List<Long> keys = new ArrayList<>();
+        for (Long id : ids) {
+            Object value = cacheManager.getLocal(cacheName, id);
+            if (type.isInstance(value)) {
+                hits.put(id, type.cast(value));
+            } else {
+                keys.add(id);
+            }
+        }
+        if (keys.isEmpty()) {
+            return hits;
+        }
+        byte[][] rawKeys = keys.stream()
+                .map(id -> rawKey(cacheName, id))
+                .toArray(byte[][]::new);
+
+        List<byte[]> rawValues;
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            rawValues = connection.stringCommands().mGet(rawKeys);
+        }
+
+        if (rawValues == null) {
+            return hits;
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] rawValue = rawValues.get(i);
+            if (rawValue == null) {
+                continue;
+            }
+            CacheEntry entry = CacheEntry.of(cacheRegions.configurationFor(cacheName).getValueSerializationPair()
+                    .read(ByteBuffer.wrap(rawValue)));
+            if (type.isInstance(entry.value())) {
+                hits.put(keys.get(i), type.cast(entry.value()));
+                cacheManager.putLocal(cacheName, keys.get(i), entry);
+            }
+        }
+        return hits;
+    }
+
+    // Escribe varias entradas en pipeline (SET con el TTL de la caché): una sola ida y vuelta a Redis.
+    public void multiPut(String cacheName, Map<Long, ?> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        Map<Long, CacheEntry> wrapped = pipelinedSet(cacheName, entries, SetOption.upsert());
+        wrapped.forEach((id, entry) -> cacheManager.putLocal(cacheName, id, entry));
+        cacheManager.publishEvict(cacheName, entries.keySet());
+    }
+
+    // Precarga: escribe solo las entradas que no existen (SET NX), sin pisar las que haya escrito el tráfico
+    // real entretanto. No toca L1 ni avisa a las demás instancias: no cambia ningún valor ya cacheado.
+    public void putAllIfAbsent(String cacheName, Map<Long, ?> entries) {
+        if (!entries.isEmpty()) {
+            pipelinedSet(cacheName, entries, SetOption.ifAbsent());
+        }
+    }
+
+    /**
+     * putAllIfAbsent fuera del hilo de la petición, en el pool de refrescos de TwoTierCacheManager y en lotes
+     * de BACKGROUND_BATCH_SIZE. Justo antes de escribir cada lote se comprueba 'stillValid' (p. ej. que el
+     * listado del que salen las entradas no se haya invalidado), para no volver a cachear un producto borrado
+     * entretanto. Si la cola del pool está llena o Redis falla, no se escribe: las entradas se cargarán al leerlas.
+     */
+    public void putAllIfAbsentInBackground(String cacheName, Map<Long, ?> entries, BooleanSupplier stillValid) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        try {
+            cacheManager.getRefreshExecutor().execute(() -> {
+                List<? extends Map.Entry<Long, ?>> pending = List.copyOf(entries.entrySet());
+                for (int from = 0; from < pending.size() && stillValid.getAsBoolean(); from += BACKGROUND_BATCH_SIZE) {
+                    Map<Long, Object> batch = new HashMap<>();
+                    pending.subList(from, Math.min(from + BACKGROUND_BATCH_SIZE, pending.size()))
+                            .forEach(entry -> batch.put(entry.getKey(), entry.getValue()));
+                    try {
+                        putAllIfAbsent(cacheName, batch);
+                    } catch (RuntimeException e) {
+                        logger.warn("No se pudieron cachear por ID las entradas de un listado de '{}': {}", cacheName, e.getMessage());
+                        return;
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.debug("Cola de escrituras en segundo plano llena: se descartan {} entradas de '{}'", entries.size(), cacheName);
+        }
+    }
+
+    // SET de cada entrada (con el TTL de la caché) en un pipeline: una sola ida y vuelta a Redis
+    private Map<Long, CacheEntry> pipelinedSet(String cacheName, Map<Long, ?> entries, SetOption option) {
+        // Mismo envoltorio (CacheEntry) y caducidad que las entradas que escribe @Cacheable
+        RedisCacheConfiguration cacheConfiguration = cacheRegions.configurationFor(cacheName);
+        Map<Long, CacheEntry> wrapped = new HashMap<>();
+        entries.forEach((id, value) -> wrapped.put(id, cacheManager.newEntry(value)));
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            connection.openPipeline();
+            try {
+                wrapped.forEach((id, entry) -> {
+                    Duration ttl = cacheConfiguration.getTtlFunction().getTimeToLive(id, entry);
+                    connection.stringCommands().set(rawKey(cacheName, id),
+                            ByteUtils.getBytes(cacheConfiguration.getValueSerializationPair().write(entry)),
+                            Expiration.from(ttl), option);
+                });
+            } finally {
+                connection.closePipeline();
+            }
+        }
+        return wrapped;
+    }
+
+    private byte[] rawKey(String cacheName, Long id) {
+        RedisCacheConfiguration cacheConfiguration = cacheRegions.configurationFor(cacheName);
+        String key = cacheConfiguration.getKeyPrefixFor(cacheName) + id;
+        return ByteUtils.getBytes(cacheConfiguration.getKeySerializationPair().write(key));
+    }
+}
@@ -0,0 +1,78 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.cache;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.cache.interceptor.CacheInterceptor;
+import org.springframework.util.ObjectUtils;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.Callable;
+
+/**
+ * CacheInterceptor que da a TwoTierCache una forma de volver a ejecutar el metodo cacheado en un refresco
+ * en segundo plano.
+ * <p>
+ * El valueLoader que Spring pasa a {@code Cache.get(key, valueLoader)} continúa la invocación AOP en curso:
+ * si se llama cuando esa invocación ya terminó (el refresco corre después, en otro hilo), salta
+ * directamente al metodo y se pierden los interceptores que van por dentro de la caché, como el de
+ * {@code @Transactional}. Mientras dura cada llamada este interceptor deja la invocación a mano del hilo;
+ * cuando la lectura es un acierto que hay que refrescar (antes de que la invocación haya avanzado),
+ * TwoTierCache pide un cargador que clona la invocación (ProxyMethodInvocation.invocableClone) y recorre
+ * de nuevo el resto de la cadena de interceptores con los mismos argumentos, es decir, con la misma clave.
+ */
+public class RefreshingCacheInterceptor extends CacheInterceptor {
+    private static final ThreadLocal<ProxyMethodInvocation> currentInvocation = new ThreadLocal<>();
+
+    /**
+     * Copia la configuración de un CacheInterceptor ya preparado (el que registra @EnableCaching).
+     * La caché se resuelve del CacheManager del contexto en afterSingletonsInstantiated.
+     */
+    public static RefreshingCacheInterceptor from(CacheInterceptor original) {
+        RefreshingCacheInterceptor interceptor = new RefreshingCacheInterceptor();
+        interceptor.setCacheOperationSource(original.getCacheOperationSource());
+        interceptor.setKeyGenerator(original.getKeyGenerator());
+        interceptor.setErrorHandler(original.getErrorHandler());
+        return interceptor;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (!(invocation instanceof ProxyMethodInvocation proxyInvocation)) {
+            return super.invoke(invocation);
+        }
+        // Se restaura la anterior: un metodo cacheado puede llamar a otro mientras se carga
+        ProxyMethodInvocation previous = currentInvocation.get();
+        currentInvocation.set(proxyInvocation);
+        try {
+            return super.invoke(invocation);
+        } finally {
+            if (previous == null) {
+                currentInvocation.remove();
+            } else {
+                currentInvocation.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Cargador para refrescar la clave que se está leyendo en este hilo, o null si la lectura no viene de
+     * un proxy de @Cacheable. Debe pedirse antes de que la invocación avance (en un acierto de caché).
+     */
+    static Callable<Object> currentRefreshLoader() {
+        ProxyMethodInvocation invocation = currentInvocation.get();
+        if (invocation == null) {
+            return null;
+        }
+        MethodInvocation template = invocation.invocableClone();
+        return () -> {
+            try {
+                // Cada clon solo puede avanzar una vez
+                return ObjectUtils.unwrapOptional(((ProxyMethodInvocation) template).invocableClone().proceed());
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new UndeclaredThrowableException(t);
+            }
+        };
+    }
+}
@@ -0,0 +1,372 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Región de caché en dos niveles: L1 local (Caffeine, en el heap de esta instancia) delante de L2
+ * compartida (Redis). Las lecturas prueban L1 y solo van a Redis si fallan; lo que se lee de Redis se
+ * copia en L1. Las escrituras y borrados van a los dos niveles y se anuncian a las demás instancias
+ * (TwoTierCacheManager) para que descarten su copia local.
+ * En L1 la clave es el texto de la clave de Spring: el mismo en todas las instancias.
+ * <p>
+ * Cargas con {@code @Cacheable(sync = true)}: ante un fallo solo un hilo por clave ejecuta el metodo y
+ * los demás esperan y comparten su resultado (o su excepción). Entre instancias, un cerrojo corto en
+ * Redis (TwoTierCacheManager.tryLoadLock) hace lo mismo: quien no lo obtiene espera a que el valor
+ * aparezca en L2 en lugar de ir también a la base de datos.
+ * <p>
+ * Los valores se guardan en un CacheEntry con su caducidad lógica. Cuando CacheRefreshPolicy decide que
+ * una lectura debe refrescar la entrada (cerca de caducar, o ya caducada dentro del margen), el metodo se
+ * vuelve a ejecutar en segundo plano a través de su proxy (RefreshingCacheInterceptor), con los
+ * interceptores que lleve como @Transactional, y quien lee recibe enseguida el valor que había.
+ */
+public class TwoTierCache implements org.springframework.cache.Cache {
+    // Frecuencia con la que se consulta L2 mientras otra instancia carga la clave
+    private static final Duration REMOTE_POLL_INTERVAL = Duration.ofMillis(20);
+
+    private static final Logger logger = LoggerFactory.getLogger(TwoTierCache.class);
+
+    private final String name;
+    private final Cache<String, CacheEntry> local;
+    private final org.springframework.cache.Cache remote;
+    private final TwoTierCacheManager manager;
+    private final CacheRefreshPolicy refreshPolicy;
+
+    private final Counter localHits;
+    private final Counter localMisses;
+    private final Counter remoteHits;
+    private final Counter remoteMisses;
+    private final Counter localCoalesced;
+    private final Counter remoteCoalesced;
+    private final Counter staleServed;
+    private final Counter refreshed;
+    private final Counter refreshFailures;
+    private final Timer loadTimer;
+    // Cargas en curso en esta instancia, por clave de L1
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    // Claves con un refresco en segundo plano en curso
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    TwoTierCache(String name, Cache<String, CacheEntry> local, org.springframework.cache.Cache remote,
+                 TwoTierCacheManager manager, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.local = local;
+        this.remote = remote;
+        this.manager = manager;
+        this.refreshPolicy = manager.getRefreshPolicy();
+        this.localHits = tierCounter(meterRegistry, name, "l1", "hit");
+        this.localMisses = tierCounter(meterRegistry, name, "l1", "miss");
+        this.remoteHits = tierCounter(meterRegistry, name, "l2", "hit");
+        this.remoteMisses = tierCounter(meterRegistry, name, "l2", "miss");
+        tierHitRatio(meterRegistry, name, "l1", localHits, localMisses);
+        tierHitRatio(meterRegistry, name, "l2", remoteHits, remoteMisses);
+        this.localCoalesced = coalescedCounter(meterRegistry, name, "local");
+        this.remoteCoalesced = coalescedCounter(meterRegistry, name, "remote");
+        this.staleServed = Counter.builder("cache.stale.served")
+                .description("Lecturas servidas con una entrada ya caducada mientras se recalcula")
+                .tag("cache", name)
+                .register(meterRegistry);
+        this.refreshed = refreshCounter(meterRegistry, name, "success");
+        this.refreshFailures = refreshCounter(meterRegistry, name, "failure");
+        this.loadTimer = Timer.builder("cache.load")
+                .description("Duración de las cargas desde el origen tras un fallo de caché")
+                .tag("cache", name)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remote.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        CacheEntry entry = lookup(key, localKey(key));
+        return entry == null ? null : new SimpleValueWrapper(entry.value());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper == null ? null : wrapper.get();
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("El valor cacheado no es de tipo " + type.getName() + ": " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String localKey = localKey(key);
+        CacheEntry entry = lookup(key, localKey);
+        if (entry != null) {
+            if (refreshPolicy.shouldRefresh(entry)) {
+                if (refreshPolicy.isExpired(entry)) {
+                    staleServed.increment();
+                }
+                // Desde un proxy de @Cacheable el valueLoader solo vale para la invocación en curso
+                Callable<?> refreshLoader = RefreshingCacheInterceptor.currentRefreshLoader();
+                refreshInBackground(key, localKey, refreshLoader != null ? refreshLoader : valueLoader);
+            }
+            return (T) entry.value();
+        }
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(localKey, flight);
+        if (existing != null) {
+            // Ya hay una carga de esta clave en curso: se espera su resultado
+            localCoalesced.increment();
+            return (T) await(existing, key, valueLoader);
+        }
+        try {
+            Object value = load(key, localKey, valueLoader, false);
+            flight.complete(value);
+            return (T) value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(localKey, flight);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        // Sin tiempo de cálculo propio (p. ej. @CachePut): se toma la media de las cargas de la región
+        CacheEntry entry = refreshPolicy.newEntry(value, (long) loadTimer.mean(TimeUnit.MILLISECONDS));
+        remote.put(key, entry);
+        putLocal(localKey(key), entry);
+        manager.publishEvict(name, localKey(key));
+    }
+
+    @Override
+    public void evict(Object key) {
+        remote.evict(key);
+        local.invalidate(localKey(key));
+        manager.publishEvict(name, localKey(key));
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean present = remote.evictIfPresent(key);
+        local.invalidate(localKey(key));
+        manager.publishEvict(name, localKey(key));
+        return present;
+    }
+
+    @Override
+    public void clear() {
+        remote.clear();
+        local.invalidateAll();
+        manager.publishClear(name);
+    }
+
+    // L1 y, si falla, L2 (copiando en L1 lo que encuentre)
+    private CacheEntry lookup(Object key, String localKey) {
+        CacheEntry entry = local.getIfPresent(localKey);
+        if (entry != null) {
+            localHits.increment();
+            return entry;
+        }
+        localMisses.increment();
+        ValueWrapper wrapper = remote.get(key);
+        if (wrapper == null || wrapper.get() == null) {
+            remoteMisses.increment();
+            return null;
+        }
+        remoteHits.increment();
+        entry = CacheEntry.of(wrapper.get());
+        local.put(localKey, entry);
+        return entry;
+    }
+
+    /**
+     * Carga desde el origen, coordinada con las demás instancias, y guarda el resultado en los dos niveles.
+     * En un refresco, si otra instancia tiene el cerrojo se deja en sus manos (devuelve null).
+     */
+    private Object load(Object key, String localKey, Callable<?> valueLoader, boolean refresh) {
+        String lockToken = manager.tryLoadLock(name, localKey);
+        if (lockToken == null) {
+            if (refresh) {
+                return null;
+            }
+            // Otra instancia está cargando la clave: se espera a que la deje en L2
+            CacheEntry loaded = awaitRemote(key, localKey);
+            if (loaded != null) {
+                remoteCoalesced.increment();
+                local.put(localKey, loaded);
+                return loaded.value();
+            }
+        }
+        try {
+            long start = System.nanoTime();
+            Object value = call(key, valueLoader);
+            long elapsedNanos = System.nanoTime() - start;
+            loadTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+            if (value != null) {
+                CacheEntry entry = refreshPolicy.newEntry(value, TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+                remote.put(key, entry);
+                local.put(localKey, entry);
+                if (refresh) {
+                    // Las demás instancias tienen la entrada anterior en su L1
+                    manager.publishEvict(name, localKey);
+                }
+            }
+            return value;
+        } finally {
+            if (lockToken != null) {
+                manager.releaseLoadLock(name, localKey, lockToken);
+            }
+        }
+    }
+
+    // Recalcula la entrada sin bloquear a quien lee; como mucho un refresco por clave a la vez
+    private void refreshInBackground(Object key, String localKey, Callable<?> valueLoader) {
+        if (!refreshing.add(localKey)) {
+            return;
+        }
+        try {
+            manager.getRefreshExecutor().execute(() -> {
+                try {
+                    load(key, localKey, valueLoader, true);
+                    refreshed.increment();
+                } catch (RuntimeException e) {
+                    // La entrada actual se sigue sirviendo hasta que caduque en Redis
+                    refreshFailures.increment();
+                    logger.warn("No se pudo refrescar la entrada '{}' de la caché '{}': {}", localKey, name, e.getMessage());
+                } finally {
+                    refreshing.remove(localKey);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Cola de refrescos llena: lo intentará una lectura posterior
+            refreshing.remove(localKey);
+        }
+    }
+
+    // Consulta L2 mientras la otra instancia conserve el cerrojo; null si lo suelta sin dejar valor
+    private CacheEntry awaitRemote(Object key, String localKey) {
+        long deadline = System.nanoTime() + manager.getLoadLockTtl().toNanos();
+        while (System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(REMOTE_POLL_INTERVAL.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            ValueWrapper wrapper = remote.get(key);
+            if (wrapper != null && wrapper.get() != null) {
+                return CacheEntry.of(wrapper.get());
+            }
+            if (!manager.isLoadLocked(name, localKey)) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static Object await(CompletableFuture<Object> flight, Object key, Callable<?> valueLoader) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            // Los que esperan reciben la misma excepción que el hilo que cargó
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new ValueRetrievalException(key, valueLoader, e.getCause());
+        }
+    }
+
+    private static Object call(Object key, Callable<?> valueLoader) {
+        try {
+            return valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    // --- Operaciones solo sobre L1 (lotes de RedisBatchCache y mensajes de otras instancias) ---
+
+    Object getLocal(String key) {
+        CacheEntry entry = local.getIfPresent(key);
+        (entry != null ? localHits : localMisses).increment();
+        return entry == null ? null : entry.value();
+    }
+
+    void putLocal(String key, CacheEntry entry) {
+        if (entry != null && entry.value() != null) {
+            local.put(key, entry);
+        }
+    }
+
+    void evictLocal(String key) {
+        local.invalidate(key);
+    }
+
+    void clearLocal() {
+        local.invalidateAll();
+    }
+
+    static String localKey(Object key) {
+        return String.valueOf(key);
+    }
+
+    // Proporción de aciertos acumulada del nivel; L2 solo cuenta las lecturas que fallaron en L1
+    private static void tierHitRatio(MeterRegistry meterRegistry, String cacheName, String tier, Counter hits, Counter misses) {
+        Gauge.builder("cache.tier.hit.ratio", () -> {
+                    double total = hits.count() + misses.count();
+                    return total == 0 ? 0 : hits.count() / total;
+                })
+                .description("Proporción de aciertos por nivel de caché")
+                .tag("cache", cacheName)
+                .tag("tier", tier)
+                .register(meterRegistry);
+    }
+
+    private static Counter refreshCounter(MeterRegistry meterRegistry, String cacheName, String result) {
+        return Counter.builder("cache.refresh")
+                .description("Refrescos anticipados en segundo plano")
+                .tag("cache", cacheName)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static Counter coalescedCounter(MeterRegistry meterRegistry, String cacheName, String scope) {
+        return Counter.builder("cache.load.coalesced")
+                .description("Fallos de caché resueltos esperando la carga de otro hilo (local) o de otra instancia (remote)")
+                .tag("cache", cacheName)
+                .tag("scope", scope)
+                .register(meterRegistry);
+    }
+
+    private static Counter tierCounter(MeterRegistry meterRegistry, String cacheName, String tier, String result) {
+        return Counter.builder("cache.tier.gets")
+                .description("Lecturas de la caché por nivel (l1 local, l2 Redis)")
+                .tag("cache", cacheName)
+                .tag("tier", tier)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,260 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CursorPageDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductFilterResultDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.SearchPageDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CacheManager de dos niveles: cada región es un TwoTierCache con su L1 Caffeine delante de la región
+ * de Redis que crea el CacheManager remoto.
+ * <p>
+ * L1 está acotada por peso (un elemento por DTO; una lista o página pesa tanto como elementos tiene) y
+ * Caffeine desaloja con W-TinyLFU: los productos más leídos se quedan en memoria.
+ * Invalidación entre instancias: cada escritura o borrado publica las claves afectadas en el canal
+ * INVALIDATION_CHANNEL de Redis y las demás instancias las quitan de su L1. Pub/sub no garantiza la
+ * entrega (p. ej. durante una reconexión), por eso L1 caduca además a los 'app.cache.local.ttl'.
+ * <p>
+ * También da el cerrojo de carga entre instancias (SET NX con TTL 'app.cache.load-lock.ttl'; 0 lo desactiva)
+ * que usa TwoTierCache para que un fallo de caché vaya una sola vez a la base de datos, y el pool de hilos
+ * de los refrescos anticipados (CacheRefreshPolicy).
+ */
+public class TwoTierCacheManager implements CacheManager, MessageListener, DisposableBean {
+    public static final String INVALIDATION_CHANNEL = "cache:invalidation";
+    // Formato del mensaje: nodo, operación, región y claves, separados por saltos de línea
+    private static final String SEPARATOR = "\n";
+    private static final String EVICT = "E";
+    private static final String CLEAR = "C";
+    private static final String LOAD_LOCK_PREFIX = "cache:load-lock:";
+    // Hilos y cola de los refrescos en segundo plano; si la cola se llena, el refresco se descarta
+    private static final int REFRESH_THREADS = 4;
+    private static final int REFRESH_QUEUE_CAPACITY = 1000;
+    // Resultado de tryLoadLock cuando se carga sin cerrojo (desactivado o Redis no disponible)
+    static final String NO_LOCK = "";
+    // Borra el cerrojo solo si sigue siendo el nuestro (no uno tomado por otro tras caducar)
+    private static final RedisScript<Long> RELEASE_LOCK = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end", Long.class);
+
+    private static final Logger logger = LoggerFactory.getLogger(TwoTierCacheManager.class);
+
+    private final CacheManager remoteCacheManager;
+    private final StringRedisTemplate redisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final long localMaximumWeight;
+    private final Duration localTtl;
+    private final Duration loadLockTtl;
+    private final CacheRefreshPolicy refreshPolicy;
+    private final ThreadPoolExecutor refreshExecutor;
+    // Identifica los mensajes propios, que se ignoran al recibirlos
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, TwoTierCache> caches = new ConcurrentHashMap<>();
+
+    public TwoTierCacheManager(CacheManager remoteCacheManager, StringRedisTemplate redisTemplate,
+                               MeterRegistry meterRegistry, long localMaximumWeight, Duration localTtl,
+                               Duration loadLockTtl, CacheRefreshPolicy refreshPolicy) {
+        this.remoteCacheManager = remoteCacheManager;
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+        this.localMaximumWeight = localMaximumWeight;
+        this.localTtl = localTtl;
+        this.loadLockTtl = loadLockTtl;
+        this.refreshPolicy = refreshPolicy;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.refreshExecutor = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(REFRESH_QUEUE_CAPACITY), runnable -> {
+                    Thread thread = new Thread(runnable, "cache-refresh-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @Override
+    public TwoTierCache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    // Vacía L1 de todas las regiones de esta instancia (p. ej. tras vaciar Redis sin pasar por la caché)
+    public void clearLocal() {
+        caches.values().forEach(TwoTierCache::clearLocal);
+    }
+
+    // Lectura solo de L1 (RedisBatchCache la consulta antes del MGET)
+    public Object getLocal(String cacheName, Object key) {
+        TwoTierCache cache = getCache(cacheName);
+        return cache == null ? null : cache.getLocal(TwoTierCache.localKey(key));
+    }
+
+    // Copia en L1 una entrada ya escrita o leída de Redis por otra vía (RedisBatchCache)
+    public void putLocal(String cacheName, Object key, CacheEntry entry) {
+        TwoTierCache cache = getCache(cacheName);
+        if (cache != null) {
+            cache.putLocal(TwoTierCache.localKey(key), entry);
+        }
+    }
+
+    // Envuelve un valor para escribirlo en la caché sin pasar por TwoTierCache (RedisBatchCache)
+    public CacheEntry newEntry(Object value) {
+        return refreshPolicy.newEntry(value, 0);
+    }
+
+    // Pide a las demás instancias que descarten estas claves de su L1
+    public void publishEvict(String cacheName, Collection<?> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        StringBuilder message = new StringBuilder(nodeId).append(SEPARATOR).append(EVICT).append(SEPARATOR).append(cacheName);
+        keys.forEach(key -> message.append(SEPARATOR).append(TwoTierCache.localKey(key)));
+        publish(message.toString());
+    }
+
+    void publishEvict(String cacheName, String key) {
+        publish(nodeId + SEPARATOR + EVICT + SEPARATOR + cacheName + SEPARATOR + key);
+    }
+
+    void publishClear(String cacheName) {
+        publish(nodeId + SEPARATOR + CLEAR + SEPARATOR + cacheName);
+    }
+
+    /**
+     * Intenta tomar el cerrojo de carga de una clave. Devuelve el token para soltarlo, NO_LOCK si hay que
+     * cargar sin cerrojo, o null si lo tiene otra instancia.
+     */
+    String tryLoadLock(String cacheName, String key) {
+        if (loadLockTtl.isZero()) {
+            return NO_LOCK;
+        }
+        String token = UUID.randomUUID().toString();
+        try {
+            Boolean acquired = redisTemplate.opsForValue().setIfAbsent(loadLockKey(cacheName, key), token, loadLockTtl);
+            return Boolean.FALSE.equals(acquired) ? null : token;
+        } catch (RuntimeException e) {
+            logger.warn("No se pudo tomar el cerrojo de carga de caché: {}", e.getMessage());
+            return NO_LOCK;
+        }
+    }
+
+    void releaseLoadLock(String cacheName, String key, String token) {
+        if (NO_LOCK.equals(token)) {
+            return;
+        }
+        try {
+            redisTemplate.execute(RELEASE_LOCK, List.of(loadLockKey(cacheName, key)), token);
+        } catch (RuntimeException e) {
+            // Caduca solo con su TTL
+            logger.warn("No se pudo soltar el cerrojo de carga de caché: {}", e.getMessage());
+        }
+    }
+
+    boolean isLoadLocked(String cacheName, String key) {
+        try {
+            return Boolean.TRUE.equals(redisTemplate.hasKey(loadLockKey(cacheName, key)));
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    Duration getLoadLockTtl() {
+        return loadLockTtl;
+    }
+
+    CacheRefreshPolicy getRefreshPolicy() {
+        return refreshPolicy;
+    }
+
+    Executor getRefreshExecutor() {
+        return refreshExecutor;
+    }
+
+    @Override
+    public void destroy() {
+        // Los refrescos pendientes se descartan: la entrada anterior sigue en caché
+        refreshExecutor.shutdownNow();
+    }
+
+    private static String loadLockKey(String cacheName, String key) {
+        return LOAD_LOCK_PREFIX + cacheName + "::" + key;
+    }
+
+    // Invalidaciones publicadas por otras instancias
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(SEPARATOR);
+        if (parts.length < 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        TwoTierCache cache = caches.get(parts[2]);
+        if (cache == null) {
+            return; // Esta instancia aún no usa la región: no tiene nada que invalidar
+        }
+        if (CLEAR.equals(parts[1])) {
+            cache.clearLocal();
+        } else {
+            for (int i = 3; i < parts.length; i++) {
+                cache.evictLocal(parts[i]);
+            }
+        }
+    }
+
+    private void publish(String message) {
+        try {
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, message);
+        } catch (RuntimeException e) {
+            // Las demás instancias verán el valor anterior hasta que caduque en su L1
+            logger.warn("No se pudo publicar la invalidación de caché: {}", e.getMessage());
+        }
+    }
+
+    private TwoTierCache createCache(String name) {
+        Cache remote = remoteCacheManager.getCache(name);
+        if (remote == null) {
+            return null;
+        }
+        com.github.benmanes.caffeine.cache.Cache<String, CacheEntry> local = Caffeine.newBuilder()
+                .maximumWeight(localMaximumWeight)
+                .weigher((String key, CacheEntry entry) -> weigh(entry.value()))
+                .expireAfterWrite(localTtl)
+                .build();
+        return new TwoTierCache(name, local, remote, this, meterRegistry);
+    }
+
+    // Peso aproximado por número de DTOs: las listas y páginas ocupan tanto como sus elementos
+    static int weigh(Object value) {
+        return Math.max(1, switch (value) {
+            case Collection<?> items -> items.size();
+            case CursorPageDTO<?> page -> page.items().size();
+            case SearchPageDTO<?> page -> page.items().size();
+            case ProductFilterResultDTO<?> result -> result.items().size();
+            default -> 1;
+        });
+    }
+}
@@ -0,0 +1,20 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.controller;
+
+import com.santicodev.gestorinventarioproductos.shared.domain.exception.InvalidFieldException;
+
+/**
+ * Parámetros de la paginación por cursor ('after' y 'limit').
+ * Sin 'limit' los listados devuelven la colección completa, así que un 'after' suelto se ignoraría en silencio:
+ * se rechaza con un 400 para que el cliente no crea que está recorriendo páginas.
+ */
+public final class CursorParams {
+
+    private CursorParams() {
+    }
+
+    public static void requireLimitWith(Long after) {
+        if (after != null) {
+            throw new InvalidFieldException("El parámetro 'after' solo se admite junto con 'limit'.");
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.controller;
+
+import com.santicodev.gestorinventarioproductos.shared.domain.exception.PreconditionFailedException;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.VersionedDTO;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cálculo de ETags a partir de la revisión de los DTOs (la versión del bloqueo optimista y, en los productos,
+ * también el stock, que cambia en StockEngine sin incrementar la versión).
+ * Se calculan sobre el valor devuelto por el servicio (normalmente desde la caché), sin consultar PostgreSQL.
+ * Al devolver un ResponseEntity con ETag en un GET, Spring compara con If-None-Match y responde
+ * 304 Not Modified sin serializar el cuerpo.
+ * <p>
+ * Cada formato de la negociación de contenido (WebConfig) es una representación distinta con sus propios
+ * bytes: los ETags de CBOR y Smile llevan el sufijo del formato ("5-3.10+cbor"); los de JSON, ninguno.
+ * El formato se deduce de la cabecera Accept de la petición en curso, como lo elige Spring: JSON salvo que
+ * el cliente prefiera explícitamente uno binario.
+ */
+public final class ETags {
+    // Formatos binarios de WebConfig y su sufijo en el ETag
+    private static final Map<MediaType, String> BINARY_FORMATS = Map.of(
+            new MediaType("application", "cbor"), "cbor",
+            new MediaType("application", "x-jackson-smile"), "smile");
+    private static final String FORMAT_SEPARATOR = "+";
+
+    private ETags() {
+    }
+
+    // ETag fuerte de un recurso: cambia exactamente cuando cambia su revisión (o el formato de la respuesta)
+    public static String strong(VersionedDTO resource) {
+        return "\"" + resource.id() + "-" + resource.revision() + formatSuffix() + "\"";
+    }
+
+    /**
+     * Revisión esperada según la cabecera If-Match de un PUT/PATCH (el ETag fuerte "id-revision").
+     * Devuelve null si no hay cabecera o es "*": la escritura no es condicional.
+     * Vale el ETag de cualquier formato: identifican la misma revisión.
+     * Un ETag que no corresponde a este recurso (o débil) nunca puede coincidir: 412.
+     */
+    public static String expectedRevision(String ifMatch, Long id) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String value = ifMatch.trim();
+        String prefix = "\"" + id + "-";
+        if (value.startsWith(prefix) && value.endsWith("\"") && value.length() > prefix.length() + 1) {
+            String revision = value.substring(prefix.length(), value.length() - 1);
+            int separator = revision.indexOf(FORMAT_SEPARATOR);
+            if (separator < 0) {
+                return revision;
+            }
+            if (separator > 0 && BINARY_FORMATS.containsValue(revision.substring(separator + 1))) {
+                return revision.substring(0, separator);
+            }
+        }
+        throw preconditionFailed(value, id);
+    }
+
+    // Variante para los recursos cuya revisión es solo la versión (categorías)
+    public static Long expectedVersion(String ifMatch, Long id) {
+        String revision = expectedRevision(ifMatch, id);
+        if (revision == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(revision);
+        } catch (NumberFormatException e) {
+            throw preconditionFailed(ifMatch.trim(), id);
+        }
+    }
+
+    private static PreconditionFailedException preconditionFailed(String ifMatch, Long id) {
+        return new PreconditionFailedException("If-Match " + ifMatch + " no corresponde a ninguna versión del recurso con ID " + id + ".");
+    }
+
+    // ETag débil de una lista: resumen de los pares (id, revisión), detecta altas, bajas y modificaciones
+    public static String weak(Collection<? extends VersionedDTO> resources) {
+        return weak(resources, null);
+    }
+
+    // Variante para páginas por cursor: el cursor siguiente también forma parte de la representación
+    public static String weak(Collection<? extends VersionedDTO> resources, Long nextCursor) {
+        long hash = 1125899906842597L;
+        for (VersionedDTO resource : resources) {
+            hash = 31 * hash + valueOf(resource.id());
+            hash = 31 * hash + resource.revision().hashCode();
+        }
+        hash = 31 * hash + valueOf(nextCursor);
+        return "W/\"" + resources.size() + "-" + Long.toHexString(hash) + formatSuffix() + "\"";
+    }
+
+    // Sufijo del formato que recibirá la petición en curso; vacío para JSON o fuera de una petición
+    private static String formatSuffix() {
+        if (!(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)) {
+            return "";
+        }
+        String accept = attributes.getRequest().getHeader(HttpHeaders.ACCEPT);
+        if (accept == null || accept.isBlank()) {
+            return "";
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = new ArrayList<>(MediaType.parseMediaTypes(accept));
+        } catch (InvalidMediaTypeException e) {
+            return "";
+        }
+        // Por preferencia (q); a igual q, en el orden de la cabecera. JSON va primero entre los conversores,
+        // así que un comodín ('*/*', 'application/*') también da JSON
+        accepted.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+        for (MediaType mediaType : accepted) {
+            if (mediaType.getQualityValue() == 0) {
+                continue;
+            }
+            if (mediaType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                return "";
+            }
+            for (Map.Entry<MediaType, String> format : BINARY_FORMATS.entrySet()) {
+                if (mediaType.isCompatibleWith(format.getKey())) {
+                    return FORMAT_SEPARATOR + format.getValue();
+                }
+            }
+        }
+        return "";
+    }
+
+    private static long valueOf(Long value) {
+        return value == null ? -1 : value;
+    }
+}
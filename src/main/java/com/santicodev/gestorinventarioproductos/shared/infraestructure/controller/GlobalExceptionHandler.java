@@ -2,7 +2,10 @@ package com.santicodev.gestorinventarioproductos.shared.infraestructure.controll
 
 import com.santicodev.gestorinventarioproductos.shared.domain.exception.DuplicateResourceException;
 import com.santicodev.gestorinventarioproductos.shared.domain.exception.ErrorResponse;
+import com.santicodev.gestorinventarioproductos.shared.domain.exception.InvalidFieldException;
+import com.santicodev.gestorinventarioproductos.shared.domain.exception.PreconditionFailedException;
 import com.santicodev.gestorinventarioproductos.shared.domain.exception.ResourceNotFoundException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authorization.AuthorizationDeniedException;
@@ -11,6 +14,7 @@ import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.method.annotation.HandlerMethodValidationException;
 
 import java.nio.file.AccessDeniedException;
 import java.time.LocalDateTime;
@@ -46,6 +50,45 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(error, HttpStatus.CONFLICT);
     }
 
+    // Mapea para PreconditionFailedException (If-Match no coincide con la versión actual).
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<ErrorResponse> handlePreconditionFailedException(
+            PreconditionFailedException ex, WebRequest request) {
+        return preconditionFailed(ex.getMessage(), request);
+    }
+
+    // Mapea para OptimisticLockingFailureException: otra escritura modificó el recurso entre la lectura y el UPDATE.
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<ErrorResponse> handleOptimisticLockingFailureException(
+            OptimisticLockingFailureException ex, WebRequest request) {
+        return preconditionFailed("El recurso fue modificado por otra petición. Vuelva a leerlo y reintente.", request);
+    }
+
+    private ResponseEntity<ErrorResponse> preconditionFailed(String message, WebRequest request) {
+        ErrorResponse error = new ErrorResponse(
+                LocalDateTime.now(),
+                HttpStatus.PRECONDITION_FAILED, // Código de estado HTTP 412
+                "Conflicto de versión",
+                message,
+                ((ServletWebRequest) request).getRequest().getRequestURI()
+        );
+        return new ResponseEntity<>(error, HttpStatus.PRECONDITION_FAILED);
+    }
+
+    // Mapea para InvalidFieldException (parámetros con valores no admitidos, p. ej. '?fields=').
+    @ExceptionHandler(InvalidFieldException.class)
+    public ResponseEntity<ErrorResponse> handleInvalidFieldException(
+            InvalidFieldException ex, WebRequest request) {
+        ErrorResponse error = new ErrorResponse(
+                LocalDateTime.now(),
+                HttpStatus.BAD_REQUEST, // Código de estado HTTP 400
+                "Solicitud incorrecta",
+                ex.getMessage(),
+                ((ServletWebRequest) request).getRequest().getRequestURI()
+        );
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
     // Mapea para MethodArgumentNotValidException (cuando @Valid falla).
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<ErrorResponse> handleValidationExceptions(
@@ -65,6 +108,26 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
     }
 
+    // Mapea para HandlerMethodValidationException (cuando falla una restricción sobre un @RequestParam, ej. 'limit').
+    @ExceptionHandler(HandlerMethodValidationException.class)
+    public ResponseEntity<ErrorResponse> handleMethodValidationExceptions(
+            HandlerMethodValidationException ex, WebRequest request) {
+
+        String errorMessage = ex.getParameterValidationResults().stream()
+                .flatMap(result -> result.getResolvableErrors().stream()
+                        .map(error -> result.getMethodParameter().getParameterName() + ": " + error.getDefaultMessage()))
+                .collect(Collectors.joining(", "));
+
+        ErrorResponse error = new ErrorResponse(
+                LocalDateTime.now(),
+                HttpStatus.BAD_REQUEST, // Código de estado HTTP 400
+                "Error de Validación",
+                errorMessage,
+                ((ServletWebRequest) request).getRequest().getRequestURI()
+        );
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
     // 9. Manejador genérico para cualquier otra excepción no controlada explícitamente.
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ErrorResponse> handleGlobalException(
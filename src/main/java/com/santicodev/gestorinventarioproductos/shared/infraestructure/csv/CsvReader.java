@@ -0,0 +1,96 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.csv;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lector CSV (RFC 4180) en streaming: devuelve un registro cada vez, sin cargar el fichero en memoria.
+ * Admite campos entre comillas con comas, saltos de línea y comillas dobles escapadas ("").
+ * Un campo vacío sin comillas se devuelve como null; uno vacío entre comillas, como "".
+ */
+public class CsvReader {
+    private final Reader reader;
+    private long line = 1;
+    private long recordLine;
+    private int pending = -2; // Carácter leído por adelantado (-2: ninguno)
+
+    public CsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    // Línea del fichero (desde 1) en la que empieza el último registro devuelto por next()
+    public long recordLine() {
+        return recordLine;
+    }
+
+    // Siguiente registro, o null al final del fichero
+    public List<String> next() throws IOException {
+        int c = read();
+        if (c == -1) {
+            return null;
+        }
+        recordLine = line;
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean inQuotes = false;
+        while (true) {
+            if (inQuotes) {
+                if (c == -1) {
+                    throw new IOException("Comillas sin cerrar en el registro de la línea " + recordLine);
+                }
+                if (c == '"') {
+                    int next = read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        inQuotes = false;
+                        c = next;
+                        continue;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.isEmpty() && !quoted) {
+                inQuotes = true;
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(toField(field, quoted));
+                field.setLength(0);
+                quoted = false;
+            } else if (c == '\n' || c == '\r' || c == -1) {
+                if (c == '\r') {
+                    int next = read();
+                    if (next != '\n') {
+                        pending = next;
+                    }
+                }
+                fields.add(toField(field, quoted));
+                return fields;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    private static String toField(StringBuilder field, boolean quoted) {
+        return field.isEmpty() && !quoted ? null : field.toString();
+    }
+
+    private int read() throws IOException {
+        int c;
+        if (pending != -2) {
+            c = pending;
+            pending = -2;
+        } else {
+            c = reader.read();
+        }
+        if (c == '\n') {
+            line++;
+        }
+        return c;
+    }
+}
@@ -0,0 +1,18 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+/**
+ * Petición de lectura por lotes: lista de IDs a resolver en una sola llamada.
+ */
+public record BatchGetRequestDTO(
+        @NotEmpty(message = "La lista de IDs no puede estar vacía")
+        @Size(max = BatchGetRequestDTO.MAX_IDS, message = "No se pueden pedir más de " + BatchGetRequestDTO.MAX_IDS + " IDs por petición")
+        List<@NotNull(message = "Los IDs no pueden ser nulos") Long> ids
+) {
+    public static final int MAX_IDS = 5000;
+}
@@ -0,0 +1,14 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.dto;
+
+import java.util.List;
+
+/**
+ * Resultado de una lectura por lotes.
+ * - items: elementos encontrados, en el mismo orden en que se pidieron.
+ * - notFound: IDs pedidos que no existen.
+ */
+public record BatchGetResponseDTO<T>(
+        List<T> items,
+        List<Long> notFound
+) {
+}
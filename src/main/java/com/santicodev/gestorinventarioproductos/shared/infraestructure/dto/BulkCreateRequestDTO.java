@@ -0,0 +1,19 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+/**
+ * Petición de alta masiva de productos.
+ * Los elementos no se validan aquí con @Valid: cada uno se valida por separado y sus errores
+ * se devuelven en su resultado, sin rechazar el lote completo.
+ */
+public record BulkCreateRequestDTO(
+        @NotEmpty(message = "La lista de productos no puede estar vacía")
+        @Size(max = BulkCreateRequestDTO.MAX_ITEMS, message = "No se pueden crear más de " + BulkCreateRequestDTO.MAX_ITEMS + " productos por petición")
+        List<ProductDTO> items
+) {
+    public static final int MAX_ITEMS = 50_000;
+}
@@ -0,0 +1,13 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.dto;
+
+import java.util.List;
+
+/**
+ * Respuesta del alta masiva: totales y un resultado por elemento, en el orden de la petición.
+ */
+public record BulkCreateResponseDTO(
+        int created,
+        int rejected,
+        List<BulkItemResultDTO> results
+) {
+}
@@ -0,0 +1,29 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.dto;
+
+/**
+ * Resultado de un elemento del alta masiva.
+ * - index: posición del elemento en la petición.
+ * - id: ID asignado (solo si status = CREATED).
+ * - error: motivo del rechazo (null si se creó).
+ */
+public record BulkItemResultDTO(
+        int index,
+        Status status,
+        Long id,
+        String error
+) {
+    public enum Status {
+        CREATED,
+        INVALID,
+        DUPLICATE,
+        CATEGORY_NOT_FOUND
+    }
+
+    public static BulkItemResultDTO created(int index, Long id) {
+        return new BulkItemResultDTO(index, Status.CREATED, id, null);
+    }
+
+    public static BulkItemResultDTO rejected(int index, Status status, String error) {
+        return new BulkItemResultDTO(index, status, null, error);
+    }
+}
@@ -11,6 +11,12 @@ public record CategoryDTO(
         @Size(min = 3, max = 100, message = "El nombre debe tener entre 3 y 100 caracteres")
         String name,
         @Size(max = 255, message = "La descripción no puede exceder los 255 caracteres")
-        String description
-) {
+        String description,
+        // Versión de la categoría (solo lectura): la asigna el servidor y se usa para el ETag
+        Long version
+) implements VersionedDTO {
+    // Sin versión: cuerpos de petición y categorías aún no persistidas
+    public CategoryDTO(Long id, String name, String description) {
+        this(id, name, description, null);
+    }
 }
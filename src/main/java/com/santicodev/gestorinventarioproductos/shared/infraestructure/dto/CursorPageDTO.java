@@ -0,0 +1,28 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Página de resultados para la paginación por cursor (keyset).
+ * - items: elementos de la página, ordenados por ID ascendente.
+ * - nextCursor: ID a enviar como '?after=' para pedir la siguiente página (null si no hay más).
+ */
+public record CursorPageDTO<T>(
+        List<T> items,
+        Long nextCursor
+) {
+    /**
+     * Construye la página a partir de una consulta que pidió 'limit + 1' filas.
+     * La fila extra solo sirve para saber si existe una página siguiente.
+     * Se usa ArrayList (y no List.copyOf) para que el serializador JSON de Redis pueda reconstruir la lista.
+     */
+    public static <T> CursorPageDTO<T> of(List<T> rows, int limit, Function<T, Long> idExtractor) {
+        if (rows.size() <= limit) {
+            return new CursorPageDTO<>(new ArrayList<>(rows), null);
+        }
+        List<T> items = new ArrayList<>(rows.subList(0, limit));
+        return new CursorPageDTO<>(items, idExtractor.apply(items.get(limit - 1)));
+    }
+}
@@ -0,0 +1,12 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.dto;
+
+/**
+ * Fila rechazada de una importación CSV.
+ * - line: línea del fichero en la que empieza la fila (la cabecera es la línea 1).
+ * - error: motivo del rechazo.
+ */
+public record ImportRejectionDTO(
+        long line,
+        String error
+) {
+}
@@ -0,0 +1,20 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.dto;
+
+/**
+ * Cambio de stock de un producto pendiente de volcar desde StockEngine: un delta a sumar, o el stock a fijar
+ * ('setTo', no null) si se fijó con PUT/PATCH desde el último volcado. El valor fijado ya incluye los deltas
+ * posteriores. Es también el contenido del evento 'ProductStockAdjusted' del outbox.
+ */
+public record PendingStockDTO(
+        Long productId,
+        int delta,
+        Integer setTo
+) {
+    public static PendingStockDTO delta(long productId, int delta) {
+        return new PendingStockDTO(productId, delta, null);
+    }
+
+    public static PendingStockDTO setTo(long productId, int stock) {
+        return new PendingStockDTO(productId, 0, stock);
+    }
+}
@@ -26,6 +26,19 @@ public record ProductDTO(
         Integer stock,
 
         @NotNull(message = "La categoría no puede ser nula")
-        Long categoryId
-) {
+        Long categoryId,
+
+        // Versión del producto (solo lectura): la asigna el servidor y se usa para el ETag
+        Long version
+) implements VersionedDTO {
+    // Sin versión: cuerpos de petición y productos aún no persistidos
+    public ProductDTO(Long id, String name, String description, BigDecimal price, Integer stock, Long categoryId) {
+        this(id, name, description, price, stock, categoryId, null);
+    }
+
+    // "versión.stock": los cambios de stock (StockEngine) no incrementan la versión, pero sí cambian el producto
+    @Override
+    public String revision() {
+        return version + "." + stock;
+    }
 }
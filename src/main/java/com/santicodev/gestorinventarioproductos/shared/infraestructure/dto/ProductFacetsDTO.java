@@ -0,0 +1,17 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.dto;
+
+import java.util.Map;
+
+/**
+ * Conteos de facetas sobre el conjunto filtrado completo (no solo la página actual).
+ * - categories: productos por ID de categoría.
+ * - priceRanges: productos por tramo de precio ("0-25", "25-50", ..., "500+").
+ * - inStock / outOfStock: productos con y sin stock.
+ */
+public record ProductFacetsDTO(
+        Map<Long, Long> categories,
+        Map<String, Long> priceRanges,
+        long inStock,
+        long outOfStock
+) {
+}
@@ -0,0 +1,28 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.dto;
+
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.PositiveOrZero;
+
+import java.math.BigDecimal;
+
+/**
+ * Filtros opcionales del listado de productos (parámetros de consulta).
+ * Un campo nulo significa "sin filtrar por ese criterio".
+ */
+public record ProductFilterDTO(
+        Long categoryId,
+
+        @PositiveOrZero(message = "El precio mínimo no puede ser negativo")
+        BigDecimal minPrice,
+
+        @PositiveOrZero(message = "El precio máximo no puede ser negativo")
+        BigDecimal maxPrice,
+
+        // true: solo con stock; false: solo agotados
+        Boolean inStock
+) {
+    @AssertTrue(message = "El precio mínimo no puede ser mayor que el precio máximo")
+    public boolean isPriceRangeValid() {
+        return minPrice == null || maxPrice == null || minPrice.compareTo(maxPrice) <= 0;
+    }
+}
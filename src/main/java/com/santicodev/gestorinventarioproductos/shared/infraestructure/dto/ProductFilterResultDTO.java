@@ -0,0 +1,15 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.dto;
+
+import java.util.List;
+
+/**
+ * Resultado del listado filtrado: una página por cursor más las facetas.
+ * Las facetas solo se calculan en la primera página (sin 'after'); en las siguientes son null.
+ * Los elementos son ProductDTO, o mapas campo -> valor cuando se piden '?fields=' (sparse fieldsets).
+ */
+public record ProductFilterResultDTO<T>(
+        List<T> items,
+        Long nextCursor,
+        ProductFacetsDTO facets
+) {
+}
@@ -0,0 +1,31 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Estado de un trabajo de importación CSV de productos.
+ * - rowsRead: filas de datos leídas hasta ahora (progreso mientras status = RUNNING).
+ * - rowsImported: filas insertadas en 'products' (solo al terminar: la carga es transaccional).
+ * - rejections: detalle de las primeras filas rechazadas; rowsRejected las cuenta todas.
+ * - error: motivo del fallo si status = FAILED (en ese caso no se importa ninguna fila).
+ */
+public record ProductImportJobDTO(
+        String id,
+        Status status,
+        String fileName,
+        long rowsRead,
+        long rowsImported,
+        long rowsRejected,
+        List<ImportRejectionDTO> rejections,
+        String error,
+        Instant createdAt,
+        Instant finishedAt
+) {
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+}
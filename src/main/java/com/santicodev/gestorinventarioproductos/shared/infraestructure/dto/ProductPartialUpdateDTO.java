@@ -1,5 +1,7 @@
 package com.santicodev.gestorinventarioproductos.shared.infraestructure.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.validation.constraints.AssertTrue;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.PositiveOrZero;
 import jakarta.validation.constraints.Size;
@@ -26,4 +28,13 @@ public class ProductPartialUpdateDTO    {
     private Integer stock;
 
     private Long categoryId; // Opcional, pero si se envía debe ser válido
+
+    // Cambio relativo de stock (p. ej. -2). Se aplica en StockEngine, sin escribir la fila ni cambiar su versión.
+    private Integer stockDelta;
+
+    @JsonIgnore
+    @AssertTrue(message = "No se pueden enviar 'stock' y 'stockDelta' a la vez")
+    public boolean isStockChangeValid() {
+        return stock == null || stockDelta == null;
+    }
 }
@@ -0,0 +1,10 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.dto;
+
+/**
+ * Sugerencia de autocompletado: solo lo necesario para mostrar y seleccionar el producto.
+ */
+public record ProductSuggestionDTO(
+        Long id,
+        String name
+) {
+}
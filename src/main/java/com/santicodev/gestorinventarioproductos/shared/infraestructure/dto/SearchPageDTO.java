@@ -0,0 +1,16 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.dto;
+
+import java.util.List;
+
+/**
+ * Página de resultados ordenados por relevancia.
+ * - page / size: página pedida (empezando en 0) y su tamaño.
+ * - hasNext: indica si existe una página siguiente.
+ */
+public record SearchPageDTO<T>(
+        List<T> items,
+        int page,
+        int size,
+        boolean hasNext
+) {
+}
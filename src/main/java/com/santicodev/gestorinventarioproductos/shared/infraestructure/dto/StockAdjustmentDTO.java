@@ -0,0 +1,15 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.dto;
+
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * Ajuste relativo de stock de un producto: delta positivo para entradas, negativo para salidas.
+ */
+public record StockAdjustmentDTO(
+        @NotNull(message = "El ID del producto no puede ser nulo")
+        Long productId,
+
+        @NotNull(message = "El delta no puede ser nulo")
+        Integer delta
+) {
+}
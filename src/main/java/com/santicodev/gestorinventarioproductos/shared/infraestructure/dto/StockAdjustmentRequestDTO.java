@@ -0,0 +1,19 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+/**
+ * Lote de ajustes de stock. Se aplican en una única transacción y un único lote JDBC.
+ */
+public record StockAdjustmentRequestDTO(
+        @NotEmpty(message = "La lista de ajustes no puede estar vacía")
+        @Size(max = StockAdjustmentRequestDTO.MAX_ADJUSTMENTS, message = "No se pueden enviar más de " + StockAdjustmentRequestDTO.MAX_ADJUSTMENTS + " ajustes por petición")
+        List<@NotNull @Valid StockAdjustmentDTO> adjustments
+) {
+    public static final int MAX_ADJUSTMENTS = 10_000;
+}
@@ -0,0 +1,15 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.dto;
+
+import java.util.List;
+
+/**
+ * Respuesta del lote de ajustes: totales, un resultado por línea (en el orden de la petición)
+ * y el estado final de los productos modificados.
+ */
+public record StockAdjustmentResponseDTO(
+        int applied,
+        int rejected,
+        List<StockAdjustmentResultDTO> results,
+        List<ProductDTO> products
+) {
+}
@@ -0,0 +1,17 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.dto;
+
+/**
+ * Resultado de una línea del lote de ajustes de stock (index = posición en la petición).
+ */
+public record StockAdjustmentResultDTO(
+        int index,
+        Long productId,
+        Status status
+) {
+    public enum Status {
+        APPLIED,
+        // El ajuste dejaría el stock en negativo: no se aplica
+        INSUFFICIENT_STOCK,
+        NOT_FOUND
+    }
+}
@@ -0,0 +1,16 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.dto;
+
+/**
+ * DTO de un recurso con bloqueo optimista: el par (id, version) identifica una representación concreta.
+ * Permite calcular ETags directamente desde el valor cacheado, sin consultar la base de datos.
+ */
+public interface VersionedDTO {
+    Long id();
+
+    Long version();
+
+    // Revisión de la representación para los ETags: por defecto, la versión
+    default String revision() {
+        return String.valueOf(version());
+    }
+}
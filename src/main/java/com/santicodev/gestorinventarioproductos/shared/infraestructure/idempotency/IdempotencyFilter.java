@@ -0,0 +1,412 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.idempotency;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.santicodev.gestorinventarioproductos.shared.domain.exception.ErrorResponse;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Cabecera 'Idempotency-Key' en los POST que crean recursos.
+ * La primera petición con una clave reserva la clave en Redis (SET NX), se ejecuta, y su respuesta se guarda
+ * con un TTL. Las repeticiones reciben esa misma respuesta sin volver a ejecutar nada (con la cabecera
+ * 'Idempotent-Replayed: true'); si llegan mientras la primera sigue en curso, esperan a que termine.
+ * La clave es por usuario y por ruta. Reutilizarla con otro cuerpo es un error (422).
+ * Sin autenticar (el registro) no hay usuario que separe las claves de cada cliente: la huella del cuerpo
+ * entra en el ámbito, así que solo se repite la respuesta a quien reenvía exactamente la misma petición.
+ * Las respuestas 5xx no se guardan: la clave se libera y el cliente puede reintentar.
+ * <p>
+ * Mientras la petición se ejecuta, su reserva se renueva cada tercio de 'lock-ttl': solo caduca si la instancia
+ * que la atiende deja de responder. La respuesta se guarda (o la reserva se libera) solo si la reserva sigue
+ * siendo suya. Un duplicado que esperaba y ve desaparecer la reserva sin respuesta recibe un 409 en lugar de
+ * ejecutar la petición otra vez.
+ * <p>
+ * Se registra como filtro de servlet después de la cadena de Spring Security, así que el usuario ya está
+ * autenticado cuando se calcula el ámbito de la clave.
+ */
+@Component
+public class IdempotencyFilter extends OncePerRequestFilter {
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    // POST que admiten la cabecera
+    static final Set<String> PATHS = Set.of(
+            "/api/v1/products",
+            "/api/v1/products/bulk",
+            "/api/v1/products/stock-adjustments",
+            "/api/v1/categories",
+            "/api/auth/register");
+
+    private static final String KEY_PREFIX = "idempotency:";
+    private static final int MAX_KEY_LENGTH = 255;
+    // Sondeo de Redis cuando la petición en curso la atiende otra instancia
+    private static final long POLL_INTERVAL_MS = 50;
+    // Operaciones sobre la reserva solo si sigue siendo la nuestra (no una tomada por otra petición tras caducar)
+    static final RedisScript<Long> RENEW_LOCK = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end",
+            Long.class);
+    static final RedisScript<Long> STORE_RESPONSE = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then redis.call('set', KEYS[1], ARGV[2], 'PX', ARGV[3]) return 1 "
+                    + "else return 0 end", Long.class);
+    static final RedisScript<Long> RELEASE_LOCK = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end", Long.class);
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyFilter.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Duration responseTtl;
+    private final Duration lockTtl;
+    private final Duration waitTimeout;
+
+    // Peticiones en curso en esta instancia: los duplicados esperan en el futuro en lugar de sondear Redis
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+    // Renueva las reservas de las peticiones en curso
+    private final ScheduledExecutorService lockRenewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "idempotency-lock-renewer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public IdempotencyFilter(StringRedisTemplate redisTemplate, ObjectMapper objectMapper,
+                             @Value("${app.idempotency.ttl:24h}") Duration responseTtl,
+                             @Value("${app.idempotency.lock-ttl:30s}") Duration lockTtl,
+                             @Value("${app.idempotency.wait-timeout:10s}") Duration waitTimeout) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.responseTtl = responseTtl;
+        this.lockTtl = lockTtl;
+        this.waitTimeout = waitTimeout;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !HttpMethod.POST.matches(request.getMethod())
+                || request.getHeader(HEADER) == null
+                || !PATHS.contains(pathOf(request));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String key = request.getHeader(HEADER).trim();
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            writeError(request, response, HttpStatus.BAD_REQUEST, "Petición no válida",
+                    "La cabecera " + HEADER + " debe tener entre 1 y " + MAX_KEY_LENGTH + " caracteres.");
+            return;
+        }
+        // El cuerpo se lee entero: hace falta su huella antes de decidir si se ejecuta la petición
+        byte[] body = request.getInputStream().readAllBytes();
+        String fingerprint = sha256(body);
+        String redisKey = KEY_PREFIX + scope(fingerprint) + ":" + pathOf(request) + ":" + key;
+
+        long deadline = System.nanoTime() + waitTimeout.toNanos();
+        boolean seenInProgress = false;
+        while (true) {
+            if (!seenInProgress) {
+                String lock = toJson(StoredResponse.inProgress(fingerprint, UUID.randomUUID().toString()));
+                if (Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(redisKey, lock, lockTtl))) {
+                    execute(new CachedBodyRequest(request, body), response, chain, redisKey, lock, fingerprint);
+                    return;
+                }
+            }
+            StoredResponse stored = read(redisKey);
+            if (stored == null) {
+                if (seenInProgress) {
+                    // La petición que se esperaba terminó sin respuesta guardable (5xx) o perdió su reserva:
+                    // puede haberse aplicado, así que no se ejecuta otra vez aquí
+                    writeError(request, response, HttpStatus.CONFLICT, "Conflicto",
+                            "La petición en curso con la clave " + key + " terminó sin respuesta; reintente más tarde.");
+                    return;
+                }
+                continue; // Liberada entre el SET NX y la lectura: se vuelve a intentar reservar
+            }
+            if (!stored.fingerprint().equals(fingerprint)) {
+                writeError(request, response, HttpStatus.UNPROCESSABLE_ENTITY, "Clave de idempotencia reutilizada",
+                        "La clave " + key + " ya se usó con un cuerpo de petición distinto.");
+                return;
+            }
+            if (stored.completed()) {
+                replay(stored, response);
+                return;
+            }
+            // En curso: se espera a que termine
+            seenInProgress = true;
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                writeError(request, response, HttpStatus.CONFLICT, "Conflicto",
+                        "Otra petición con la clave " + key + " sigue en curso; reintente más tarde.");
+                return;
+            }
+            awaitInFlight(redisKey, remaining);
+        }
+    }
+
+    private void execute(HttpServletRequest request, HttpServletResponse response, FilterChain chain,
+                         String redisKey, String lock, String fingerprint) throws ServletException, IOException {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        inFlight.put(redisKey, done);
+        long renewMillis = Math.max(1, lockTtl.toMillis() / 3);
+        ScheduledFuture<?> renewal = lockRenewer.scheduleAtFixedRate(
+                () -> renew(redisKey, lock), renewMillis, renewMillis, TimeUnit.MILLISECONDS);
+        ContentCachingResponseWrapper capture = new ContentCachingResponseWrapper(response);
+        boolean stored = false;
+        try {
+            chain.doFilter(request, capture);
+            if (capture.getStatus() < 500) {
+                StoredResponse result = new StoredResponse(fingerprint, null, true, capture.getStatus(),
+                        capture.getContentType(), capture.getHeader(HttpHeaders.LOCATION), capture.getContentAsByteArray());
+                stored = store(redisKey, lock, result);
+            }
+        } finally {
+            renewal.cancel(false);
+            if (!stored) {
+                release(redisKey, lock);
+            }
+            inFlight.remove(redisKey, done);
+            done.complete(null);
+            capture.copyBodyToResponse();
+        }
+    }
+
+    private void renew(String redisKey, String lock) {
+        try {
+            Long renewed = redisTemplate.execute(RENEW_LOCK, List.of(redisKey), lock, String.valueOf(lockTtl.toMillis()));
+            if (!Long.valueOf(1).equals(renewed)) {
+                logger.warn("La reserva de la clave de idempotencia {} se perdió durante la petición", redisKey);
+            }
+        } catch (RuntimeException e) {
+            // Se reintenta en la siguiente renovación, antes de que caduque
+            logger.warn("No se pudo renovar la clave de idempotencia {}: {}", redisKey, e.getMessage());
+        }
+    }
+
+    // Guarda la respuesta solo si la reserva sigue siendo nuestra: si no, otra petición la tiene y no se pisa
+    private boolean store(String redisKey, String lock, StoredResponse result) {
+        Long stored = redisTemplate.execute(STORE_RESPONSE, List.of(redisKey), lock, toJson(result),
+                String.valueOf(responseTtl.toMillis()));
+        if (!Long.valueOf(1).equals(stored)) {
+            logger.warn("La reserva de la clave de idempotencia {} se perdió; la respuesta no se guarda", redisKey);
+            return false;
+        }
+        return true;
+    }
+
+    private void release(String redisKey, String lock) {
+        try {
+            redisTemplate.execute(RELEASE_LOCK, List.of(redisKey), lock);
+        } catch (RuntimeException e) {
+            // La reserva caduca sola tras 'lock-ttl', ya sin renovaciones
+            logger.warn("No se pudo liberar la clave de idempotencia {}: {}", redisKey, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        lockRenewer.shutdownNow();
+    }
+
+    private void awaitInFlight(String redisKey, long remainingNanos) throws ServletException {
+        CompletableFuture<Void> local = inFlight.get(redisKey);
+        try {
+            if (local != null) {
+                local.get(remainingNanos, TimeUnit.NANOSECONDS);
+            } else {
+                TimeUnit.NANOSECONDS.sleep(Math.min(remainingNanos, TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL_MS)));
+            }
+        } catch (TimeoutException | ExecutionException e) {
+            // Se vuelve a leer Redis: el bucle decide si hay respuesta o se agotó la espera
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServletException("Espera interrumpida por la clave de idempotencia", e);
+        }
+    }
+
+    private void replay(StoredResponse stored, HttpServletResponse response) throws IOException {
+        response.setStatus(stored.status());
+        if (stored.contentType() != null) {
+            response.setContentType(stored.contentType());
+        }
+        if (stored.location() != null) {
+            response.setHeader(HttpHeaders.LOCATION, stored.location());
+        }
+        response.setHeader(REPLAYED_HEADER, "true");
+        response.setContentLength(stored.body().length);
+        response.getOutputStream().write(stored.body());
+    }
+
+    private void writeError(HttpServletRequest request, HttpServletResponse response, HttpStatus status,
+                            String error, String message) throws IOException {
+        ErrorResponse body = new ErrorResponse(LocalDateTime.now(), status, error, message, request.getRequestURI());
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), body);
+    }
+
+    private StoredResponse read(String redisKey) {
+        String json = redisTemplate.opsForValue().get(redisKey);
+        if (json == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, StoredResponse.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Respuesta idempotente ilegible en " + redisKey, e);
+        }
+    }
+
+    private String toJson(StoredResponse response) {
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar la respuesta idempotente", e);
+        }
+    }
+
+    private static String sha256(byte[] body) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Las claves de un usuario no chocan con las de otro. Sin autenticar, dos clientes pueden elegir la misma
+    // clave: con la huella en el ámbito no reciben el uno la respuesta del otro (ni un 422 por su cuerpo)
+    private static String scope(String fingerprint) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || authentication instanceof AnonymousAuthenticationToken) {
+            return "anonymous:" + fingerprint;
+        }
+        return "user:" + authentication.getName();
+    }
+
+    private static String pathOf(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    // Estado guardado por clave: la huella y quién la reservó mientras está en curso, la respuesta completa al terminar
+    record StoredResponse(String fingerprint, String owner, boolean completed, int status, String contentType,
+                          String location, byte[] body) {
+        static StoredResponse inProgress(String fingerprint, String owner) {
+            return new StoredResponse(fingerprint, owner, false, 0, null, null, null);
+        }
+    }
+
+    // Petición con el cuerpo ya leído: el controlador lo vuelve a leer de memoria
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                // El cuerpo ya está en memoria: todo está disponible en cuanto se registra el listener
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    Objects.requireNonNull(listener, "El ReadListener no puede ser null");
+                    if (!isAsyncStarted()) {
+                        throw new IllegalStateException("setReadListener solo se admite en peticiones asíncronas");
+                    }
+                    try {
+                        if (!isFinished()) {
+                            listener.onDataAvailable();
+                        }
+                        if (isFinished()) {
+                            listener.onAllDataRead();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        listener.onError(e);
+                    }
+                }
+
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) {
+                    return in.read(buffer, offset, length);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            Charset charset = getCharacterEncoding() == null
+                    ? StandardCharsets.UTF_8 : Charset.forName(getCharacterEncoding());
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return body.length;
+        }
+    }
+}
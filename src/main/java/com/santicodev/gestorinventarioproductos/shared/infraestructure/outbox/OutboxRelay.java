@@ -0,0 +1,141 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.outbox;
+
+import com.santicodev.gestorinventarioproductos.shared.domain.OutboxEvent;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStreamCommands.XAddOptions;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publica los eventos de la tabla outbox en Redis Streams (un stream por tipo de agregado, p. ej.
+ * 'inventory:events:product'). Cada lote se bloquea con SKIP LOCKED, se envía con un único pipeline de
+ * XADD y se borra en la misma transacción. Si Redis falla, la transacción se revierte y el lote se
+ * reenvía en el siguiente ciclo; si falla el COMMIT tras publicar, también: la entrega es al menos una
+ * vez, y los consumidores deben deduplicar por 'eventId'.
+ */
+@Component
+public class OutboxRelay {
+    public static final String STREAM_KEY_PREFIX = "inventory:events:";
+    // Longitud aproximada máxima de cada stream: los eventos más antiguos se recortan
+    private static final long STREAM_MAX_LENGTH = 100_000;
+    // Lotes por ciclo como máximo, para que un atasco largo no monopolice el hilo del planificador
+    private static final int MAX_BATCHES_PER_RUN = 20;
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final RedisConnectionFactory connectionFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong lagMillis = new AtomicLong();
+    private final Counter relayed;
+    private final Counter failures;
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository, RedisConnectionFactory connectionFactory,
+                       TransactionTemplate transactionTemplate, MeterRegistry meterRegistry,
+                       @Value("${app.outbox.batch-size:500}") int batchSize) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.connectionFactory = connectionFactory;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+
+        // Expuestos en /actuator/metrics
+        Gauge.builder("outbox.pending", pending, AtomicLong::get)
+                .description("Eventos en la tabla outbox pendientes de publicar")
+                .register(meterRegistry);
+        Gauge.builder("outbox.lag", lagMillis, millis -> millis.get() / 1000.0)
+                .description("Antigüedad del evento pendiente más antiguo")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        this.relayed = Counter.builder("outbox.relayed")
+                .description("Eventos publicados en Redis Streams")
+                .register(meterRegistry);
+        this.failures = Counter.builder("outbox.relay.failures")
+                .description("Ciclos de publicación fallidos")
+                .register(meterRegistry);
+    }
+
+    // synchronized: dentro de una instancia los ciclos no se solapan; entre instancias reparte SKIP LOCKED
+    @Scheduled(fixedDelayString = "${app.outbox.relay-interval-ms:500}")
+    public synchronized void relay() {
+        try {
+            for (int i = 0; i < MAX_BATCHES_PER_RUN; i++) {
+                Integer sent = transactionTemplate.execute(status -> relayBatch());
+                if (sent == null || sent < batchSize) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            failures.increment();
+            logger.warn("No se pudieron publicar los eventos del outbox; se reintentará: {}", e.getMessage());
+        } finally {
+            refreshBacklog();
+        }
+    }
+
+    private int relayBatch() {
+        List<OutboxEvent> batch = outboxEventRepository.lockNextBatch(batchSize);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        publish(batch);
+        outboxEventRepository.deleteAllByIdInBatch(batch.stream().map(OutboxEvent::getId).toList());
+        relayed.increment(batch.size());
+        return batch.size();
+    }
+
+    // Todos los XADD del lote en un pipeline: un viaje de ida y vuelta a Redis por lote
+    private void publish(List<OutboxEvent> batch) {
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            XAddOptions options = XAddOptions.maxlen(STREAM_MAX_LENGTH).approximateTrimming(true);
+            connection.openPipeline();
+            for (OutboxEvent event : batch) {
+                Map<byte[], byte[]> fields = new LinkedHashMap<>();
+                fields.put(bytes("eventId"), bytes(event.getId().toString()));
+                fields.put(bytes("type"), bytes(event.getEventType()));
+                fields.put(bytes("aggregateId"), bytes(event.getAggregateId().toString()));
+                fields.put(bytes("occurredAt"), bytes(event.getCreatedAt().toString()));
+                fields.put(bytes("payload"), bytes(event.getPayload()));
+                connection.streamCommands().xAdd(
+                        MapRecord.create(bytes(STREAM_KEY_PREFIX + event.getAggregateType()), fields), options);
+            }
+            // Lanza una excepción si alguno de los XADD falló
+            connection.closePipeline();
+        }
+    }
+
+    private void refreshBacklog() {
+        try {
+            OutboxEventRepository.OutboxBacklogView backlog = outboxEventRepository.findBacklog();
+            pending.set(backlog.getPending());
+            Instant oldest = backlog.getOldestCreatedAt();
+            lagMillis.set(oldest == null ? 0 : Math.max(0, Duration.between(oldest, Instant.now()).toMillis()));
+        } catch (RuntimeException e) {
+            logger.debug("No se pudo consultar el tamaño del outbox: {}", e.getMessage());
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,74 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.santicodev.gestorinventarioproductos.shared.domain.OutboxEvent;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.repository.OutboxEventRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+// Registra eventos de cambio en la tabla outbox dentro de la transacción del servicio que los origina
+@Component
+@RequiredArgsConstructor
+public class OutboxWriter {
+    // Tipos de agregado: cada uno se publica en su propio stream
+    public static final String PRODUCT = "product";
+    public static final String CATEGORY = "category";
+
+    // Filas por lote JDBC; con reWriteBatchedInserts el driver envía cada lote como INSERT multi-fila
+    static final int BATCH_SIZE = 1000;
+
+    private static final String INSERT_SQL =
+            "INSERT INTO outbox_events (aggregate_type, aggregate_id, event_type, payload, created_at) VALUES (?, ?, ?, ?, ?)";
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    // MANDATORY: sin transacción activa el evento podría quedar sin su cambio (o al revés), así que falla
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(String aggregateType, Long aggregateId, String eventType, Object payload) {
+        outboxEventRepository.save(new OutboxEvent(aggregateType, aggregateId, eventType, toJson(payload), Instant.now()));
+    }
+
+    /**
+     * Varios eventos del mismo tipo (altas masivas, volcados de stock), indexados por ID de agregado.
+     * Con JDBC en lotes: el ID IDENTITY impide a Hibernate agrupar inserciones y saveAll haría un INSERT por evento.
+     * Nadie lee los eventos en esta transacción, así que no pasar por el contexto de persistencia no cambia nada.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordAll(String aggregateType, String eventType, Map<Long, ?> payloads) {
+        if (payloads.isEmpty()) {
+            return;
+        }
+        OffsetDateTime now = Instant.now().atOffset(ZoneOffset.UTC);
+        // (ID de agregado, payload en JSON); se serializa antes de enviar el primer lote
+        List<Map.Entry<Long, String>> events = payloads.entrySet().stream()
+                .map(entry -> Map.entry(entry.getKey(), toJson(entry.getValue())))
+                .toList();
+        jdbcTemplate.batchUpdate(INSERT_SQL, events, BATCH_SIZE, (ps, event) -> {
+            ps.setString(1, aggregateType);
+            ps.setLong(2, event.getKey());
+            ps.setString(3, eventType);
+            ps.setString(4, event.getValue());
+            ps.setObject(5, now);
+        });
+    }
+
+    private String toJson(Object payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar el evento: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.repository;
+
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.sql.SQLException;
+
+/**
+ * Clasifica las violaciones de restricciones de PostgreSQL por su SQLState.
+ * Los servicios escriben sin comprobaciones previas (nombre repetido, categoría inexistente) y dejan que
+ * las restricciones de la tabla decidan en la misma sentencia; aquí se distingue cuál saltó.
+ */
+public final class ConstraintViolations {
+    private static final String UNIQUE_VIOLATION = "23505";
+    private static final String FOREIGN_KEY_VIOLATION = "23503";
+
+    private ConstraintViolations() {
+    }
+
+    public static boolean isUniqueViolation(DataIntegrityViolationException e) {
+        return UNIQUE_VIOLATION.equals(sqlStateOf(e));
+    }
+
+    public static boolean isForeignKeyViolation(DataIntegrityViolationException e) {
+        return FOREIGN_KEY_VIOLATION.equals(sqlStateOf(e));
+    }
+
+    // El SQLState viaja en la SQLException del driver, envuelta por Hibernate y por Spring
+    private static String sqlStateOf(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException && sqlException.getSQLState() != null) {
+                return sqlException.getSQLState();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,28 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.repository;
+
+import com.santicodev.gestorinventarioproductos.shared.domain.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+    // Siguiente lote en orden de inserción, bloqueado para esta transacción. SKIP LOCKED: dos relays
+    // concurrentes (p. ej. dos instancias) se reparten los eventos en lugar de esperarse.
+    @Query(value = "SELECT * FROM outbox_events ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<OutboxEvent> lockNextBatch(@Param("limit") int limit);
+
+    // Eventos pendientes y antigüedad del más viejo, en una consulta (métricas de retraso)
+    @Query("SELECT COUNT(e) AS pending, MIN(e.createdAt) AS oldestCreatedAt FROM OutboxEvent e")
+    OutboxBacklogView findBacklog();
+
+    interface OutboxBacklogView {
+        long getPending();
+
+        Instant getOldestCreatedAt();
+    }
+}
@@ -0,0 +1,95 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.repository;
+
+import com.santicodev.gestorinventarioproductos.shared.domain.exception.InvalidFieldException;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Soporte para 'sparse fieldsets' (?fields=id,name,stock).
+ * Solo las columnas pedidas llegan al SELECT: el resto ni se lee de PostgreSQL ni se serializa.
+ */
+public final class SparseFields {
+
+    private SparseFields() {
+    }
+
+    /**
+     * Valida los campos pedidos y los devuelve en orden canónico (el de 'allowed'), sin duplicados.
+     * El 'id' se incluye siempre: lo necesitan la paginación por cursor y el cliente para identificar filas.
+     * El orden canónico hace que "name,id" y "id,name" compartan entrada de caché.
+     */
+    public static List<String> resolve(Collection<String> requested, List<String> allowed) {
+        for (String field : requested) {
+            if (!allowed.contains(field)) {
+                throw new InvalidFieldException("Campo desconocido en 'fields': '" + field + "'. Campos válidos: " + allowed);
+            }
+        }
+        return allowed.stream()
+                .filter(field -> field.equals("id") || requested.contains(field))
+                .toList();
+    }
+
+    /**
+     * Consulta Criteria con una tupla que contiene solo los campos indicados, ordenada por ID.
+     * 'attributePaths' traduce los campos del DTO a rutas de la entidad cuando no coinciden (p. ej. categoryId -> category.id).
+     * Cada fila se devuelve como un mapa campo -> valor que conserva el orden de 'fields'.
+     */
+    public static <T> List<Map<String, Object>> select(EntityManager entityManager, Class<T> entityClass,
+                                                       Map<String, String> attributePaths, List<String> fields,
+                                                       Specification<T> spec, Integer limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<T> root = query.from(entityClass);
+
+        List<Selection<?>> selections = new ArrayList<>(fields.size());
+        for (String field : fields) {
+            selections.add(path(root, attributePaths.getOrDefault(field, field)).alias(field));
+        }
+        query.multiselect(selections).orderBy(cb.asc(root.get("id")));
+        Predicate filter = spec.toPredicate(root, query, cb);
+        if (filter != null) {
+            query.where(filter);
+        }
+
+        TypedQuery<Tuple> typedQuery = entityManager.createQuery(query);
+        if (limit != null) {
+            typedQuery.setMaxResults(limit);
+        }
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Tuple tuple : typedQuery.getResultList()) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (String field : fields) {
+                row.put(field, tuple.get(field));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    // ID de una fila devuelta por select(); desde la caché JSON puede volver como Integer
+    public static Long idOf(Map<String, Object> row) {
+        return ((Number) row.get("id")).longValue();
+    }
+
+    private static Path<?> path(Root<?> root, String attributePath) {
+        Path<?> path = root;
+        for (String attribute : attributePath.split("\\.")) {
+            path = path.get(attribute);
+        }
+        return path;
+    }
+}
@@ -1,7 +1,13 @@
 package com.santicodev.gestorinventarioproductos.category.application.service;
 
 import com.santicodev.gestorinventarioproductos.category.domain.Category;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.CacheTags;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.IdBloomFilter;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.RedisBatchCache;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.outbox.OutboxWriter;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.BatchGetResponseDTO;
 import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CategoryDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CursorPageDTO;
 import com.santicodev.gestorinventarioproductos.category.infraestructure.repository.CategoryRepository;
 import com.santicodev.gestorinventarioproductos.shared.domain.exception.DuplicateResourceException;
 import com.santicodev.gestorinventarioproductos.shared.domain.exception.ResourceNotFoundException;
@@ -13,9 +19,13 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 
+import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
@@ -33,6 +43,17 @@ public class CategoryServiceTest {
     @Mock
     private CategoryRepository categoryRepository;
 
+    @Mock
+    private RedisBatchCache redisBatchCache;
+
+    @Mock
+    private OutboxWriter outboxWriter;
+
+    @Mock
+    private CacheTags cacheTags;
+    @Mock
+    private IdBloomFilter idBloomFilter;
+
     // 4. Anotación: Inyecta los mocks (como categoryRepository) en una instancia real de CategoryService.
     @InjectMocks
     private CategoryService categoryService;
@@ -53,10 +74,8 @@ public class CategoryServiceTest {
     void shouldCreateCategorySuccessfully() {
         // Given (Dado): Configuración de los mocks y datos de entrada.
 
-        // Cuando categoryRepository.existsByName es llamado con "Electronics", debe retornar false.
-        when(categoryRepository.existsByName("Electronics")).thenReturn(false);
-        // Cuando categoryRepository.save es llamado con cualquier objeto Category, debe retornar category1.
-        when(categoryRepository.save(any(Category.class))).thenReturn(category1);
+        // Cuando categoryRepository.saveAndFlush es llamado con cualquier objeto Category, debe retornar category1.
+        when(categoryRepository.saveAndFlush(any(Category.class))).thenReturn(category1);
 
         // When (Cuando): Ejecución del método que estamos probando.
         CategoryDTO result = categoryService.createCategory(categoryDTO1);
@@ -65,17 +84,20 @@ public class CategoryServiceTest {
         assertNotNull(result); // El resultado no debe ser nulo.
         assertEquals(categoryDTO1.name(), result.name()); // El nombre del DTO de resultado debe coincidir.
         assertEquals(categoryDTO1.description(), result.description());
-        // 8. Verificación Mockito: Asegura que existsByName fue llamado una vez con "Electronics".
-        verify(categoryRepository, times(1)).existsByName("Electronics");
-        // Asegura que save fue llamado una vez con cualquier instancia de Category.
-        verify(categoryRepository, times(1)).save(any(Category.class));
+        // 8. Verificación Mockito: el nombre lo comprueba la restricción única, no una consulta previa.
+        verify(categoryRepository, never()).existsByName(anyString());
+        // Asegura que saveAndFlush fue llamado una vez con cualquier instancia de Category.
+        verify(categoryRepository, times(1)).saveAndFlush(any(Category.class));
+        // El evento de alta se registra en el outbox, en la misma transacción
+        verify(outboxWriter, times(1)).record(OutboxWriter.CATEGORY, 1L, "CategoryCreated", result);
     }
 
     @Test
     @DisplayName("Should throw DuplicateResourceException when creating category with existing name")
     void shouldThrowDuplicateResourceExceptionOnCreateExistingName() {
         // Given
-        when(categoryRepository.existsByName("Electronics")).thenReturn(true);
+        // La restricción única rechaza el INSERT (SQLState 23505 de PostgreSQL)
+        when(categoryRepository.saveAndFlush(any(Category.class))).thenThrow(uniqueViolation());
 
         // When & Then (Verifica que se lanza la excepción esperada)
         // 9. assertThrows: Verifica que el código dentro del lambda lanza una excepción de un tipo específico.
@@ -83,17 +105,16 @@ public class CategoryServiceTest {
             categoryService.createCategory(categoryDTO1);
         });
         assertEquals("La categoría con el nombre 'Electronics' ya existe.", exception.getMessage());
-        verify(categoryRepository, times(1)).existsByName("Electronics");
-        verify(categoryRepository, never()).save(any(Category.class)); // 10. never(): Verifica que save nunca fue llamado.
+        verifyNoInteractions(outboxWriter); // 10. Sin evento: el alta no se produjo.
     }
 
     @Test
     @DisplayName("Should return all categories successfully")
     void shouldReturnAllCategoriesSuccessfully() {
         // Given
-        Category category2 = new Category(2L, "Clothes", "Apparel");
-        List<Category> categories = Arrays.asList(category1, category2);
-        when(categoryRepository.findAll()).thenReturn(categories);
+        CategoryDTO categoryDTO2 = new CategoryDTO(2L, "Clothes", "Apparel");
+        List<CategoryDTO> categories = Arrays.asList(categoryDTO1, categoryDTO2);
+        when(categoryRepository.findAllAsDTO()).thenReturn(categories);
 
         // When
         List<CategoryDTO> result = categoryService.getAllCategories();
@@ -103,14 +124,49 @@ public class CategoryServiceTest {
         assertEquals(2, result.size());
         assertEquals("Electronics", result.get(0).name());
         assertEquals("Clothes", result.get(1).name());
-        verify(categoryRepository, times(1)).findAll();
+        verify(categoryRepository, times(1)).findAllAsDTO();
+        verify(categoryRepository, never()).findAll(); // No se hidratan entidades
+    }
+
+    @Test
+    @DisplayName("Should return only the requested category fields from the repository projection")
+    void shouldReturnSparseCategoryFields() {
+        // Given
+        List<String> fields = List.of("id", "name");
+        List<Map<String, Object>> rows = List.of(Map.of("id", 1L, "name", "Electronics"));
+        when(categoryRepository.findFieldsBy(fields, 0L, null)).thenReturn(rows);
+
+        // When
+        List<Map<String, Object>> result = categoryService.getAllCategoryFields(fields);
+
+        // Then
+        assertEquals(rows, result);
+        verify(categoryRepository, never()).findAllAsDTO(); // La vista parcial no lee todas las columnas
+    }
+
+    @Test
+    @DisplayName("Should return a cursor page of categories with nextCursor")
+    void shouldReturnCategoriesPageWithNextCursor() {
+        // Given: se pide 1 categoría y el repositorio devuelve 2 (limit + 1)
+        when(categoryRepository.findDTOsByIdGreaterThan(0L, Limit.of(2))).thenReturn(Arrays.asList(
+                categoryDTO1, new CategoryDTO(2L, "Clothes", "Apparel")));
+
+        // When
+        CursorPageDTO<CategoryDTO> result = categoryService.getCategoriesPage(0L, 1);
+
+        // Then
+        assertEquals(1, result.items().size());
+        assertEquals("Electronics", result.items().get(0).name());
+        assertEquals(1L, result.nextCursor());
+        verify(categoryRepository, times(1)).findDTOsByIdGreaterThan(0L, Limit.of(2));
+        verify(categoryRepository, never()).findAll(); // Sin hidratar entidades
     }
 
     @Test
     @DisplayName("Should return category by ID successfully")
     void shouldReturnCategoryByIdSuccessfully() {
         // Given
-        when(categoryRepository.findById(1L)).thenReturn(Optional.of(category1)); // Retorna un Optional con la categoría.
+        when(categoryRepository.findDTOById(1L)).thenReturn(Optional.of(categoryDTO1)); // Retorna un Optional con la categoría.
 
         // When
         CategoryDTO result = categoryService.getCategoryById(1L);
@@ -118,21 +174,39 @@ public class CategoryServiceTest {
         // Then
         assertNotNull(result);
         assertEquals("Electronics", result.name());
-        verify(categoryRepository, times(1)).findById(1L);
+        verify(categoryRepository, times(1)).findDTOById(1L);
+    }
+
+    @Test
+    @DisplayName("Should batch-get categories from cache and DB preserving request order")
+    void shouldBatchGetCategoriesFromCacheAndDatabaseInRequestOrder() {
+        // Given: la 1 está en caché, la 2 en BD y la 99 no existe
+        CategoryDTO categoryDTO2 = new CategoryDTO(2L, "Clothes", "Apparel");
+        when(categoryRepository.findDTOsByIdIn(List.of(2L, 99L))).thenReturn(List.of(categoryDTO2));
+        when(redisBatchCache.multiGet(CategoryService.CACHE_NAME, List.of(2L, 1L, 99L), CategoryDTO.class))
+                .thenReturn(Map.of(1L, categoryDTO1));
+
+        // When
+        BatchGetResponseDTO<CategoryDTO> result = categoryService.batchGetCategories(List.of(2L, 1L, 99L));
+
+        // Then
+        assertEquals(List.of(categoryDTO2, categoryDTO1), result.items());
+        assertEquals(List.of(99L), result.notFound());
+        verify(redisBatchCache, times(1)).multiPut(CategoryService.CACHE_NAME, Map.of(2L, categoryDTO2));
     }
 
     @Test
     @DisplayName("Should throw ResourceNotFoundException when getting category by non-existing ID")
     void shouldThrowResourceNotFoundExceptionOnGetNonExistingId() {
         // Given
-        when(categoryRepository.findById(99L)).thenReturn(Optional.empty()); // Retorna un Optional vacío.
+        when(categoryRepository.findDTOById(99L)).thenReturn(Optional.empty()); // Retorna un Optional vacío.
 
         // When & Then
         ResourceNotFoundException exception = assertThrows(ResourceNotFoundException.class, () -> {
             categoryService.getCategoryById(99L);
         });
         assertEquals("Categoría no encontrada con ID: 99", exception.getMessage());
-        verify(categoryRepository, times(1)).findById(99L);
+        verify(categoryRepository, times(1)).findDTOById(99L);
     }
 
     @Test
@@ -143,19 +217,18 @@ public class CategoryServiceTest {
         Category updatedCategoryEntity = new Category(1L, "Updated Electronics", "New description");
 
         when(categoryRepository.findById(1L)).thenReturn(Optional.of(category1));
-        when(categoryRepository.existsByName("Updated Electronics")).thenReturn(false);
-        when(categoryRepository.save(any(Category.class))).thenReturn(updatedCategoryEntity);
+        when(categoryRepository.saveAndFlush(any(Category.class))).thenReturn(updatedCategoryEntity);
 
         // When
-        CategoryDTO result = categoryService.updateCategory(1L, updatedCategoryDTO);
+        CategoryDTO result = categoryService.updateCategory(1L, updatedCategoryDTO, null);
 
         // Then
         assertNotNull(result);
         assertEquals("Updated Electronics", result.name());
         assertEquals("New description", result.description());
         verify(categoryRepository, times(1)).findById(1L);
-        verify(categoryRepository, times(1)).existsByName("Updated Electronics");
-        verify(categoryRepository, times(1)).save(any(Category.class));
+        verify(categoryRepository, never()).existsByName(anyString());
+        verify(categoryRepository, times(1)).saveAndFlush(any(Category.class));
     }
 
     @Test
@@ -167,41 +240,42 @@ public class CategoryServiceTest {
 
         // When & Then
         ResourceNotFoundException exception = assertThrows(ResourceNotFoundException.class, () -> {
-            categoryService.updateCategory(99L, updatedCategoryDTO);
+            categoryService.updateCategory(99L, updatedCategoryDTO, null);
         });
         assertEquals("Categoría no encontrada con ID: 99", exception.getMessage());
         verify(categoryRepository, times(1)).findById(99L);
-        verify(categoryRepository, never()).save(any(Category.class));
+        verify(categoryRepository, never()).saveAndFlush(any(Category.class));
     }
 
     @Test
     @DisplayName("Should delete an existing category successfully")
     void shouldDeleteCategorySuccessfully() {
         // Given
-        when(categoryRepository.existsById(1L)).thenReturn(true);
-        doNothing().when(categoryRepository).deleteById(1L); // 11. doNothing().when(): Para métodos void.
+        when(categoryRepository.deleteRowById(1L)).thenReturn(1); // 11. Una fila borrada
 
         // When
         categoryService.deleteCategory(1L);
 
         // Then
-        verify(categoryRepository, times(1)).existsById(1L);
-        verify(categoryRepository, times(1)).deleteById(1L);
+        verify(categoryRepository, times(1)).deleteRowById(1L);
+        verify(categoryRepository, never()).existsById(anyLong()); // Un solo DELETE
+        verify(outboxWriter, times(1)).record(OutboxWriter.CATEGORY, 1L, "CategoryDeleted", Map.of("id", 1L));
+        verify(cacheTags, times(1)).invalidate(CacheTags.ALL_CATEGORIES, CacheTags.category(1L));
     }
 
     @Test
     @DisplayName("Should throw ResourceNotFoundException when deleting non-existing category")
     void shouldThrowResourceNotFoundExceptionOnDeleteNonExisting() {
         // Given
-        when(categoryRepository.existsById(99L)).thenReturn(false);
+        when(categoryRepository.deleteRowById(99L)).thenReturn(0);
 
         // When & Then
         ResourceNotFoundException exception = assertThrows(ResourceNotFoundException.class, () -> {
             categoryService.deleteCategory(99L);
         });
         assertEquals("Categoría no encontrada con ID: 99", exception.getMessage());
-        verify(categoryRepository, times(1)).existsById(99L);
-        verify(categoryRepository, never()).deleteById(anyLong());
+        verify(categoryRepository, times(1)).deleteRowById(99L);
+        verifyNoInteractions(outboxWriter);
     }
 
     @Test
@@ -214,10 +288,9 @@ public class CategoryServiceTest {
 
         // Mockear el comportamiento del repositorio
         when(categoryRepository.findById(categoryId)).thenReturn(Optional.of(existingCategory));
-        when(categoryRepository.existsByName("New Name")).thenReturn(false); // No existe con el nuevo nombre
-        when(categoryRepository.save(any(Category.class))).thenReturn(updatedCategory);
+        when(categoryRepository.saveAndFlush(any(Category.class))).thenReturn(updatedCategory);
 
-        CategoryDTO resultDTO = categoryService.patchCategory(categoryId, patchDTO);
+        CategoryDTO resultDTO = categoryService.patchCategory(categoryId, patchDTO, null);
 
         // Verificar aserciones
         assertThat(resultDTO).isNotNull();
@@ -227,8 +300,8 @@ public class CategoryServiceTest {
 
         // Verificar que los métodos del repositorio fueron llamados correctamente
         verify(categoryRepository, times(1)).findById(categoryId);
-        verify(categoryRepository, times(1)).existsByName("New Name");
-        verify(categoryRepository, times(1)).save(existingCategory);
+        verify(categoryRepository, never()).existsByName(anyString()); // Lo comprueba la restricción única
+        verify(categoryRepository, times(1)).saveAndFlush(existingCategory);
     }
 
     @Test
@@ -240,10 +313,9 @@ public class CategoryServiceTest {
         Category updatedCategory = new Category(categoryId, "New Name Only", "Original Description");
 
         when(categoryRepository.findById(categoryId)).thenReturn(Optional.of(existingCategory));
-        when(categoryRepository.existsByName("New Name Only")).thenReturn(false);
-        when(categoryRepository.save(any(Category.class))).thenReturn(updatedCategory);
+        when(categoryRepository.saveAndFlush(any(Category.class))).thenReturn(updatedCategory);
 
-        CategoryDTO resultDTO = categoryService.patchCategory(categoryId, patchDTO);
+        CategoryDTO resultDTO = categoryService.patchCategory(categoryId, patchDTO, null);
 
         assertThat(resultDTO).isNotNull();
         assertThat(resultDTO.id()).isEqualTo(categoryId);
@@ -251,8 +323,7 @@ public class CategoryServiceTest {
         assertThat(resultDTO.description()).isEqualTo("Original Description"); // Descripción original debe permanecer
 
         verify(categoryRepository, times(1)).findById(categoryId);
-        verify(categoryRepository, times(1)).existsByName("New Name Only");
-        verify(categoryRepository, times(1)).save(existingCategory);
+        verify(categoryRepository, times(1)).saveAndFlush(existingCategory);
     }
 
     @Test
@@ -265,9 +336,9 @@ public class CategoryServiceTest {
 
         when(categoryRepository.findById(categoryId)).thenReturn(Optional.of(existingCategory));
         // No se llama existsByName si el nombre no cambia
-        when(categoryRepository.save(any(Category.class))).thenReturn(updatedCategory);
+        when(categoryRepository.saveAndFlush(any(Category.class))).thenReturn(updatedCategory);
 
-        CategoryDTO resultDTO = categoryService.patchCategory(categoryId, patchDTO);
+        CategoryDTO resultDTO = categoryService.patchCategory(categoryId, patchDTO, null);
 
         assertThat(resultDTO).isNotNull();
         assertThat(resultDTO.id()).isEqualTo(categoryId);
@@ -276,7 +347,7 @@ public class CategoryServiceTest {
 
         verify(categoryRepository, times(1)).findById(categoryId);
         verify(categoryRepository, never()).existsByName(anyString()); // Verifica que no se llamó
-        verify(categoryRepository, times(1)).save(existingCategory);
+        verify(categoryRepository, times(1)).saveAndFlush(existingCategory);
     }
 
     @Test
@@ -288,10 +359,10 @@ public class CategoryServiceTest {
         when(categoryRepository.findById(nonExistentId)).thenReturn(Optional.empty());
 
         assertThrows(ResourceNotFoundException.class, () ->
-                categoryService.patchCategory(nonExistentId, patchDTO));
+                categoryService.patchCategory(nonExistentId, patchDTO, null));
 
         verify(categoryRepository, times(1)).findById(nonExistentId);
-        verify(categoryRepository, never()).save(any(Category.class)); // No debe guardar
+        verify(categoryRepository, never()).saveAndFlush(any(Category.class)); // No debe guardar
     }
 
     @Test
@@ -302,14 +373,14 @@ public class CategoryServiceTest {
         CategoryPartialUpdateDTO patchDTO = new CategoryPartialUpdateDTO("Existing Name", null);
 
         when(categoryRepository.findById(categoryId)).thenReturn(Optional.of(existingCategory));
-        when(categoryRepository.existsByName("Existing Name")).thenReturn(true); // Ya existe este nombre
+        when(categoryRepository.saveAndFlush(existingCategory)).thenThrow(uniqueViolation()); // Ya existe este nombre
 
-        assertThrows(DuplicateResourceException.class, () ->
-                categoryService.patchCategory(categoryId, patchDTO));
+        DuplicateResourceException exception = assertThrows(DuplicateResourceException.class, () ->
+                categoryService.patchCategory(categoryId, patchDTO, null));
 
+        assertEquals("La categoría con el nombre 'Existing Name' ya existe.", exception.getMessage());
         verify(categoryRepository, times(1)).findById(categoryId);
-        verify(categoryRepository, times(1)).existsByName("Existing Name");
-        verify(categoryRepository, never()).save(any(Category.class));
+        verifyNoInteractions(outboxWriter);
     }
 
     @Test
@@ -320,9 +391,9 @@ public class CategoryServiceTest {
         CategoryPartialUpdateDTO patchDTO = new CategoryPartialUpdateDTO("Current Name", "New Desc");
 
         when(categoryRepository.findById(categoryId)).thenReturn(Optional.of(existingCategory));
-        when(categoryRepository.save(any(Category.class))).thenReturn(existingCategory); // Simula el guardado
+        when(categoryRepository.saveAndFlush(any(Category.class))).thenReturn(existingCategory); // Simula el guardado
 
-        CategoryDTO resultDTO = categoryService.patchCategory(categoryId, patchDTO);
+        CategoryDTO resultDTO = categoryService.patchCategory(categoryId, patchDTO, null);
 
         assertThat(resultDTO).isNotNull();
         assertThat(resultDTO.name()).isEqualTo("Current Name");
@@ -330,7 +401,7 @@ public class CategoryServiceTest {
 
         verify(categoryRepository, times(1)).findById(categoryId);
         verify(categoryRepository, never()).existsByName(anyString()); // No se llama si el nombre no cambia o es el mismo
-        verify(categoryRepository, times(1)).save(existingCategory);
+        verify(categoryRepository, times(1)).saveAndFlush(existingCategory);
     }
 
     @Test
@@ -341,9 +412,9 @@ public class CategoryServiceTest {
         CategoryPartialUpdateDTO patchDTO = new CategoryPartialUpdateDTO(null, null); // DTO vacío
 
         when(categoryRepository.findById(categoryId)).thenReturn(Optional.of(existingCategory));
-        when(categoryRepository.save(any(Category.class))).thenReturn(existingCategory);
+        when(categoryRepository.saveAndFlush(any(Category.class))).thenReturn(existingCategory);
 
-        CategoryDTO resultDTO = categoryService.patchCategory(categoryId, patchDTO);
+        CategoryDTO resultDTO = categoryService.patchCategory(categoryId, patchDTO, null);
 
         assertThat(resultDTO).isNotNull();
         assertThat(resultDTO.name()).isEqualTo("Electronics");
@@ -351,11 +422,16 @@ public class CategoryServiceTest {
 
         verify(categoryRepository, times(1)).findById(categoryId);
         verify(categoryRepository, never()).existsByName(anyString());
-        verify(categoryRepository, times(1)).save(existingCategory); // Se llama save porque la entidad se actualiza (aunque no cambie)
+        verify(categoryRepository, times(1)).saveAndFlush(existingCategory); // Se llama save porque la entidad se actualiza (aunque no cambie)
     }
 
     // Método de mapeo auxiliar si no está ya en tu test
     private CategoryDTO mapToDTO(Category category) {
         return new CategoryDTO(category.getId(), category.getName(), category.getDescription());
     }
+
+    // Violación de la restricción única tal como la entrega Spring, con el SQLState de PostgreSQL en la causa
+    private static DataIntegrityViolationException uniqueViolation() {
+        return new DataIntegrityViolationException("duplicate key", new SQLException("duplicate key", "23505"));
+    }
 }
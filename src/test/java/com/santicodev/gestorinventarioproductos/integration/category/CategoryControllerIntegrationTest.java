@@ -79,6 +79,16 @@ class CategoryControllerIntegrationTest extends BaseIntegrationTest {
                 .andExpect(jsonPath("$[1].name", is("Películas"))); // Verifica el nombre de la segunda categoría
     }
 
+    @Test
+    @DisplayName("GET /api/v1/categories?after= sin 'limit' debería retornar 400 Bad Request")
+    @WithMockUser(username = "user", roles = {"USER"})
+    void getAllCategories_afterWithoutLimit_shouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/api/v1/categories").param("after", "5"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/v1/categories").param("fields", "id,name").param("after", "5"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     @DisplayName("GET /api/v1/categories debería retornar 401 Unauthorized para acceso no autenticado")
     void getAllCategories_unauthenticatedUser_shouldReturnUnauthorized() throws Exception {
@@ -113,6 +123,29 @@ class CategoryControllerIntegrationTest extends BaseIntegrationTest {
                 .andExpect(status().isNotFound()); // Espera un código de estado HTTP 404 Not Found
     }
 
+    @Test
+    @DisplayName("GET /api/v1/categories con If-None-Match vigente debería retornar 304 hasta que cambie la lista")
+    @WithMockUser(username = "user", roles = {"USER"})
+    void getAllCategories_ifNoneMatch_shouldReturnNotModifiedUntilListChanges() throws Exception {
+        // ARRANGE
+        categoryRepository.save(new Category(null, "Videojuegos", "Videojuegos y consolas."));
+        String etag = mockMvc.perform(get("/api/v1/categories"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+        assertThat(etag).startsWith("W/"); // ETag débil para listas
+
+        // ACT & ASSERT
+        mockMvc.perform(get("/api/v1/categories").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+
+        // Una categoría nueva cambia el ETag de la lista (se limpia la caché como haría el alta por la API)
+        categoryRepository.save(new Category(null, "Música", "Instrumentos."));
+        super.setupBase();
+        mockMvc.perform(get("/api/v1/categories").header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)));
+    }
+
     // --- Pruebas para POST /api/categories ---
     @Test
     @DisplayName("POST /api/v1/categories debería crear una nueva categoría (usuario ADMIN autenticado)")
@@ -4,8 +4,10 @@ import com.santicodev.gestorinventarioproductos.category.application.service.Cat
 import com.santicodev.gestorinventarioproductos.category.domain.Category;
 import com.santicodev.gestorinventarioproductos.category.infraestructure.repository.CategoryRepository;
 import com.santicodev.gestorinventarioproductos.integration.config.BaseIntegrationTest;
+import com.santicodev.gestorinventarioproductos.integration.config.QueryCounter;
 import com.santicodev.gestorinventarioproductos.shared.domain.exception.ResourceNotFoundException;
 import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CategoryDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CategoryPartialUpdateDTO;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -132,7 +134,7 @@ public class CategoryServiceIntegrationTest extends BaseIntegrationTest {
                 "Descripción actualizada para la categoría");
 
         // ACT: Llamar al metodo de actualización del servicio.
-        CategoryDTO updatedCategory = categoryService.updateCategory(existingCategory.getId(), updatedDetails);
+        CategoryDTO updatedCategory = categoryService.updateCategory(existingCategory.getId(), updatedDetails, null);
 
         // ASSERT: Verificar que el objeto devuelto refleja la actualización.
         assertThat(updatedCategory).isNotNull();
@@ -172,7 +174,35 @@ public class CategoryServiceIntegrationTest extends BaseIntegrationTest {
                 "Update Desc");
         // ACT & ASSERT: Se espera una ResourceNotFoundException.
         assertThrows(ResourceNotFoundException.class,
-                () -> categoryService.updateCategory(999L, updateData),
+                () -> categoryService.updateCategory(999L, updateData, null),
                 "Se esperaba ResourceNotFoundException al intentar actualizar una categoría que no existe.");
     }
+
+    // Regresión del número de sentencias por escritura: el nombre único lo comprueba la restricción de la tabla
+    @Test
+    @DisplayName("Las escrituras de categorías deberían ejecutar el mínimo de sentencias SQL")
+    void categoryWritesShouldRunMinimalStatements() {
+        // Alta: INSERT de la categoría + INSERT del evento
+        QueryCounter.reset();
+        CategoryDTO created = categoryService.createCategory(new CategoryDTO(null, "Contada", "Descripción"));
+        assertThat(QueryCounter.statements()).hasSize(2);
+
+        // PUT: SELECT + UPDATE + INSERT del evento
+        QueryCounter.reset();
+        categoryService.updateCategory(created.id(), new CategoryDTO(null, "Recontada", "Descripción"), null);
+        assertThat(QueryCounter.statements()).hasSize(3);
+
+        // PATCH de la descripción: SELECT + UPDATE solo de 'description' (y la versión) + INSERT del evento
+        QueryCounter.reset();
+        categoryService.patchCategory(created.id(), new CategoryPartialUpdateDTO(null, "Otra descripción"), null);
+        List<String> statements = QueryCounter.statements();
+        assertThat(statements).hasSize(3);
+        String update = statements.stream().filter(sql -> sql.startsWith("update categories")).findFirst().orElseThrow();
+        assertThat(update).contains("description").doesNotContain("name");
+
+        // Borrado: DELETE + INSERT del evento
+        QueryCounter.reset();
+        categoryService.deleteCategory(created.id());
+        assertThat(QueryCounter.statements()).hasSize(2);
+    }
 }
@@ -9,6 +9,9 @@ import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import com.redis.testcontainers.RedisContainer;
+import com.santicodev.gestorinventarioproductos.product.infraestructure.data.IdBloomFilterLoader;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.IdBloomFilter;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.TwoTierCacheManager;
 
 // Necesitarás inyectar esto para limpiar Redis
 import org.springframework.data.redis.core.RedisTemplate;
@@ -34,6 +37,12 @@ public abstract class BaseIntegrationTest {
     @Autowired(required = false)
     protected RedisTemplate<String, Object> redisTemplate;
 
+    @Autowired(required = false)
+    protected TwoTierCacheManager cacheManager;
+
+    @Autowired(required = false)
+    protected IdBloomFilterLoader idBloomFilterLoader;
+
     @DynamicPropertySource
     static void dynamicProperties(DynamicPropertyRegistry registry) {
         // Propiedades para PostgreSQL
@@ -41,6 +50,8 @@ public abstract class BaseIntegrationTest {
         registry.add("spring.datasource.username", postgresContainer::getUsername);
         registry.add("spring.datasource.password", postgresContainer::getPassword);
         registry.add("spring.datasource.driver-class-name", () -> "org.postgresql.Driver");
+        // Cuenta las sentencias SQL por hilo (pruebas de número de consultas)
+        registry.add("spring.jpa.properties.hibernate.session_factory.statement_inspector", QueryCounter.class::getName);
 
         // Propiedades para Redis
         registry.add("spring.data.redis.host", redisContainer::getHost);
@@ -61,6 +72,16 @@ public abstract class BaseIntegrationTest {
                 // Considera si este error debe fallar la prueba o solo advertir.
             }
         }
+        // flushDb no pasa por la caché: la caché local (L1) conservaría entradas de la prueba anterior
+        if (cacheManager != null) {
+            cacheManager.clearLocal();
+        }
+        // flushDb también borra el bitmap del filtro de IDs: se reconstruye con las filas que hay. Las que
+        // inserten las pruebas (también con los repositorios) las añade el listener de IdBloomFilterConfig
+        if (idBloomFilterLoader != null) {
+            idBloomFilterLoader.load(IdBloomFilter.CATEGORIES);
+            idBloomFilterLoader.load(IdBloomFilter.PRODUCTS);
+        }
         // Nota: La limpieza de la base de datos SQL se hará en las clases hijas
         // que inyecten sus respectivos repositorios para un control más granular.
     }
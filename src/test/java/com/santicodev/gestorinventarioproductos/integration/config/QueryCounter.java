@@ -0,0 +1,29 @@
+package com.santicodev.gestorinventarioproductos.integration.config;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registra las sentencias SQL que Hibernate prepara en el hilo actual (StatementInspector).
+ * Se activa en BaseIntegrationTest; las tareas en segundo plano (volcado de stock, relay del outbox)
+ * corren en otros hilos y no cuentan. Las consultas de JdbcTemplate no pasan por aquí.
+ */
+public class QueryCounter implements StatementInspector {
+    private static final ThreadLocal<List<String>> STATEMENTS = ThreadLocal.withInitial(ArrayList::new);
+
+    @Override
+    public String inspect(String sql) {
+        STATEMENTS.get().add(sql);
+        return sql;
+    }
+
+    public static void reset() {
+        STATEMENTS.get().clear();
+    }
+
+    public static List<String> statements() {
+        return List.copyOf(STATEMENTS.get());
+    }
+}
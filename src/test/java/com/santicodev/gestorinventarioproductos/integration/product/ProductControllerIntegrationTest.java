@@ -1,25 +1,36 @@
 package com.santicodev.gestorinventarioproductos.integration.product;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
 import com.santicodev.gestorinventarioproductos.category.domain.Category;
 import com.santicodev.gestorinventarioproductos.category.infraestructure.repository.CategoryRepository;
 import com.santicodev.gestorinventarioproductos.integration.config.BaseIntegrationTest;
 import com.santicodev.gestorinventarioproductos.product.domain.Product;
+import com.santicodev.gestorinventarioproductos.product.infraestructure.data.StockFlusher;
 import com.santicodev.gestorinventarioproductos.product.infraestructure.repository.ProductRepository;
 import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductDTO; // Tu DTO de producto
 import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductPartialUpdateDTO; // Tu DTO de actualización parcial
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.idempotency.IdempotencyFilter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
 
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -27,6 +38,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 
 /**
  * Pruebas de integración para la capa de controlador (API REST) de Productos.
@@ -50,6 +62,12 @@ class ProductControllerIntegrationTest extends BaseIntegrationTest {
     @Autowired
     private CategoryRepository categoryRepository; // Necesario para crear categorías y asociarlas a productos
 
+    @Autowired
+    private StockFlusher stockFlusher;
+
+    @Autowired
+    private IdempotencyFilter idempotencyFilter;
+
     /**
      * Configuración inicial antes de cada prueba.
      * Limpia la base de datos de productos y categorías, y configura MockMvc.
@@ -63,6 +81,7 @@ class ProductControllerIntegrationTest extends BaseIntegrationTest {
         this.mockMvc = MockMvcBuilders
                 .webAppContextSetup(webApplicationContext)
                 .apply(springSecurity()) // Aplica la configuración de Spring Security para MockMvc
+                .addFilters(idempotencyFilter) // Después de la seguridad, como en el servidor
                 .build();
     }
 
@@ -87,6 +106,119 @@ class ProductControllerIntegrationTest extends BaseIntegrationTest {
                 .andExpect(jsonPath("$[1].name", is("Ratón Inalámbrico"))); // El orden puede variar
     }
 
+    @Test
+    @DisplayName("GET /api/v1/products?fields= debería devolver solo los campos pedidos (y siempre el id)")
+    @WithMockUser(username = "user", roles = {"USER"})
+    void getAllProductFields_shouldReturnOnlyRequestedFields() throws Exception {
+        // ARRANGE
+        Category electronics = categoryRepository.save(new Category(null, "Electrónica", "Dispositivos electrónicos."));
+        productRepository.save(
+                new Product(null, "Laptop Pro", "Portátil potente", BigDecimal.valueOf(1200.0), 10, electronics));
+
+        // ACT & ASSERT
+        mockMvc.perform(get("/api/v1/products").param("fields", "stock,name"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id").exists())
+                .andExpect(jsonPath("$[0].name", is("Laptop Pro")))
+                .andExpect(jsonPath("$[0].stock", is(10)))
+                .andExpect(jsonPath("$[0].description").doesNotExist())
+                .andExpect(jsonPath("$[0].price").doesNotExist());
+
+        // La vista completa no se ve afectada por la parcial cacheada
+        mockMvc.perform(get("/api/v1/products"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].description", is("Portátil potente")));
+    }
+
+    @Test
+    @DisplayName("GET /api/v1/products?fields= debería retornar 400 Bad Request con un campo desconocido")
+    @WithMockUser(username = "user", roles = {"USER"})
+    void getAllProductFields_unknownField_shouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/api/v1/products").param("fields", "id,password"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").exists());
+    }
+
+    @Test
+    @DisplayName("GET /api/v1/products?categoryId=&fields= debería aplicar los filtros y devolver solo los campos pedidos")
+    @WithMockUser(username = "user", roles = {"USER"})
+    void getFilteredProductFields_shouldReturnOnlyRequestedFields() throws Exception {
+        // ARRANGE
+        Category electronics = categoryRepository.save(new Category(null, "Electrónica", "Dispositivos electrónicos."));
+        Category books = categoryRepository.save(new Category(null, "Libros", "Libros de todo tipo."));
+        productRepository.save(
+                new Product(null, "Laptop Pro", "Portátil potente", BigDecimal.valueOf(1200.0), 10, electronics));
+        productRepository.save(new Product(null, "Novela", "Novela negra", BigDecimal.valueOf(15.0), 5, books));
+
+        // ACT & ASSERT
+        mockMvc.perform(get("/api/v1/products")
+                        .param("categoryId", electronics.getId().toString())
+                        .param("fields", "name"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(1)))
+                .andExpect(jsonPath("$.items[0].id").exists())
+                .andExpect(jsonPath("$.items[0].name", is("Laptop Pro")))
+                .andExpect(jsonPath("$.items[0].price").doesNotExist())
+                .andExpect(jsonPath("$.facets").exists());
+    }
+
+    @Test
+    @DisplayName("GET /api/v1/products/category/{id}?fields= debería devolver solo los campos pedidos, con y sin 'limit'")
+    @WithMockUser(username = "user", roles = {"USER"})
+    void getProductFieldsByCategoryId_shouldReturnOnlyRequestedFields() throws Exception {
+        // ARRANGE
+        Category electronics = categoryRepository.save(new Category(null, "Electrónica", "Dispositivos electrónicos."));
+        productRepository.save(
+                new Product(null, "Laptop Pro", "Portátil potente", BigDecimal.valueOf(1200.0), 10, electronics));
+        productRepository.save(
+                new Product(null, "Ratón Inalámbrico", "Ratón ergonómico", BigDecimal.valueOf(25.0), 200, electronics));
+
+        // ACT & ASSERT
+        mockMvc.perform(get("/api/v1/products/category/{categoryId}", electronics.getId()).param("fields", "stock"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].stock", is(10)))
+                .andExpect(jsonPath("$[0].name").doesNotExist());
+
+        mockMvc.perform(get("/api/v1/products/category/{categoryId}", electronics.getId())
+                        .param("fields", "name")
+                        .param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(1)))
+                .andExpect(jsonPath("$.items[0].name", is("Laptop Pro")))
+                .andExpect(jsonPath("$.items[0].stock").doesNotExist())
+                .andExpect(jsonPath("$.nextCursor").exists());
+
+        // La vista completa de la categoría no se ve afectada por la parcial cacheada
+        mockMvc.perform(get("/api/v1/products/category/{categoryId}", electronics.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].description", is("Portátil potente")));
+    }
+
+    @Test
+    @DisplayName("GET /api/v1/products con Accept: application/cbor debería devolver la lista en CBOR")
+    @WithMockUser(username = "user", roles = {"USER"})
+    void getAllProducts_acceptCbor_shouldReturnCbor() throws Exception {
+        // ARRANGE
+        Category electronics = categoryRepository.save(new Category(null, "Electrónica", "Dispositivos electrónicos."));
+        productRepository.save(
+                new Product(null, "Laptop Pro", "Portátil potente", BigDecimal.valueOf(1200.0), 10, electronics));
+
+        // ACT
+        byte[] body = mockMvc.perform(get("/api/v1/products").accept("application/cbor"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/cbor"))
+                .andExpect(header().string("Vary", containsString("Accept")))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        // ASSERT: se decodifica con Jackson CBOR al mismo DTO
+        ProductDTO[] products = new CBORMapper().readValue(body, ProductDTO[].class);
+        assertThat(products).hasSize(1);
+        assertThat(products[0].name()).isEqualTo("Laptop Pro");
+        assertThat(products[0].price()).isEqualByComparingTo("1200.0");
+    }
+
     @Test
     @DisplayName("GET /api/v1/products debería retornar 401 Unauthorized para acceso no autenticado")
     void getAllProducts_unauthenticatedUser_shouldReturnUnauthorized() throws Exception {
@@ -96,6 +228,142 @@ class ProductControllerIntegrationTest extends BaseIntegrationTest {
                 .andExpect(status().isForbidden());
     }
 
+    @Test
+    @DisplayName("GET /api/v1/products?limit= debería paginar por cursor y devolver nextCursor")
+    @WithMockUser(username = "user", roles = {"USER"})
+    void getProductsPage_shouldReturnPageWithNextCursor() throws Exception {
+        // ARRANGE
+        Category electronics = categoryRepository.save(new Category(null, "Electrónica", "Dispositivos electrónicos."));
+        Product first = productRepository.save(
+                new Product(null, "Laptop Pro", "Portátil potente", BigDecimal.valueOf(1200.0), 10, electronics));
+        Product second = productRepository.save(
+                new Product(null, "Ratón Inalámbrico", "Ratón ergonómico", BigDecimal.valueOf(25.0), 200, electronics));
+
+        // ACT & ASSERT: primera página de tamaño 1
+        mockMvc.perform(get("/api/v1/products").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(1)))
+                .andExpect(jsonPath("$.items[0].name", is("Laptop Pro")))
+                .andExpect(jsonPath("$.nextCursor", is(Math.toIntExact(first.getId()))));
+
+        // Segunda (y última) página a partir del cursor
+        mockMvc.perform(get("/api/v1/products").param("after", String.valueOf(first.getId())).param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(1)))
+                .andExpect(jsonPath("$.items[0].id", is(Math.toIntExact(second.getId()))))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+    }
+
+    @Test
+    @DisplayName("GET /api/v1/products?limit= debería retornar 400 Bad Request si el límite está fuera de rango")
+    @WithMockUser(username = "user", roles = {"USER"})
+    void getProductsPage_invalidLimit_shouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/api/v1/products").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("GET /api/v1/products?after= sin 'limit' debería retornar 400 Bad Request en lugar del listado completo")
+    @WithMockUser(username = "user", roles = {"USER"})
+    void getProducts_afterWithoutLimit_shouldReturnBadRequest() throws Exception {
+        Category electronics = categoryRepository.save(new Category(null, "Electrónica", "Dispositivos electrónicos."));
+
+        mockMvc.perform(get("/api/v1/products").param("after", "5"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/v1/products").param("fields", "id,name").param("after", "5"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/v1/products/category/{categoryId}", electronics.getId()).param("after", "5"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/v1/products/category/{categoryId}", electronics.getId())
+                        .param("fields", "id,name").param("after", "5"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("GET /api/v1/products con filtros debería devolver los productos filtrados y los conteos de facetas")
+    @WithMockUser(username = "user", roles = {"USER"})
+    void getFilteredProducts_shouldReturnItemsAndFacets() throws Exception {
+        // ARRANGE
+        Category electronics = categoryRepository.save(new Category(null, "Electrónica", "Dispositivos electrónicos."));
+        Category gaming = categoryRepository.save(new Category(null, "Gaming", "Accesorios gaming."));
+        productRepository.save(
+                new Product(null, "Laptop Pro", "Portátil potente", BigDecimal.valueOf(1200.0), 10, electronics));
+        productRepository.save(
+                new Product(null, "Ratón Inalámbrico", "Ratón ergonómico", BigDecimal.valueOf(25.0), 0, electronics));
+        productRepository.save(
+                new Product(null, "Teclado Mecánico", "Teclado RGB", BigDecimal.valueOf(150.0), 30, gaming));
+
+        // ACT & ASSERT: precio >= 20 y con stock
+        mockMvc.perform(get("/api/v1/products").param("minPrice", "20").param("inStock", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(2)))
+                .andExpect(jsonPath("$.items[0].name", is("Laptop Pro")))
+                .andExpect(jsonPath("$.items[1].name", is("Teclado Mecánico")))
+                .andExpect(jsonPath("$.facets.categories['" + electronics.getId() + "']", is(1)))
+                .andExpect(jsonPath("$.facets.categories['" + gaming.getId() + "']", is(1)))
+                .andExpect(jsonPath("$.facets.priceRanges['100-500']", is(1)))
+                .andExpect(jsonPath("$.facets.priceRanges['500+']", is(1)))
+                .andExpect(jsonPath("$.facets.inStock", is(2)))
+                .andExpect(jsonPath("$.facets.outOfStock", is(0)));
+    }
+
+    @Test
+    @DisplayName("GET /api/v1/products debería retornar 400 Bad Request si minPrice es mayor que maxPrice")
+    @WithMockUser(username = "user", roles = {"USER"})
+    void getFilteredProducts_invalidPriceRange_shouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/api/v1/products").param("minPrice", "100").param("maxPrice", "10"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("GET /api/v1/products/export debería devolver el catálogo en NDJSON, un producto por línea")
+    @WithMockUser(username = "user", roles = {"USER"})
+    void exportProducts_shouldStreamNdjson() throws Exception {
+        // ARRANGE
+        Category electronics = categoryRepository.save(new Category(null, "Electrónica", "Dispositivos electrónicos."));
+        productRepository.save(
+                new Product(null, "Laptop Pro", "Portátil potente", BigDecimal.valueOf(1200.0), 10, electronics));
+        productRepository.save(
+                new Product(null, "Ratón Inalámbrico", "Ratón ergonómico", BigDecimal.valueOf(25.0), 200, electronics));
+
+        // ACT
+        String body = mockMvc.perform(get("/api/v1/products/export"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+        // ASSERT: una línea JSON por producto
+        String[] lines = body.strip().split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(objectMapper.readValue(lines[0], ProductDTO.class).name()).isEqualTo("Laptop Pro");
+        assertThat(objectMapper.readValue(lines[1], ProductDTO.class).name()).isEqualTo("Ratón Inalámbrico");
+    }
+
+    @Test
+    @DisplayName("POST /api/v1/products/batch-get debería devolver los productos en orden y los IDs inexistentes aparte")
+    @WithMockUser(username = "user", roles = {"USER"})
+    void batchGetProducts_shouldReturnItemsInRequestOrderAndNotFoundIds() throws Exception {
+        // ARRANGE
+        Category electronics = categoryRepository.save(new Category(null, "Electrónica", "Dispositivos electrónicos."));
+        Product laptop = productRepository.save(
+                new Product(null, "Laptop Pro", "Portátil potente", BigDecimal.valueOf(1200.0), 10, electronics));
+        Product mouse = productRepository.save(
+                new Product(null, "Ratón Inalámbrico", "Ratón ergonómico", BigDecimal.valueOf(25.0), 200, electronics));
+        String body = "{\"ids\": [" + mouse.getId() + ", 999999, " + laptop.getId() + "]}";
+
+        // ACT & ASSERT: se repite la llamada para cubrir la segunda lectura desde la caché
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(post("/api/v1/products/batch-get")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(body))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.items", hasSize(2)))
+                    .andExpect(jsonPath("$.items[0].name", is("Ratón Inalámbrico")))
+                    .andExpect(jsonPath("$.items[1].name", is("Laptop Pro")))
+                    .andExpect(jsonPath("$.notFound[0]", is(999999)));
+        }
+    }
+
     // --- Pruebas para GET /api/products/{id} ---
     @Test
     @DisplayName("GET /api/v1/products/{id} debería retornar producto por ID con su categoría")
@@ -114,6 +382,65 @@ class ProductControllerIntegrationTest extends BaseIntegrationTest {
                 .andExpect(jsonPath("$.categoryId", is((Math.toIntExact(gaming.getId()))))); // Verifica la categoría anidada
     }
 
+    @Test
+    @DisplayName("POST /api/v1/products/bulk debería crear los productos válidos y devolver un resultado por elemento")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void bulkCreateProducts_shouldCreateValidItemsAndReportRejected() throws Exception {
+        // ARRANGE
+        Category electronics = categoryRepository.save(new Category(null, "Electrónica", "Dispositivos electrónicos."));
+        productRepository.save(
+                new Product(null, "Laptop Pro", "Portátil potente", BigDecimal.valueOf(1200.0), 10, electronics));
+        String body = objectMapper.writeValueAsString(Map.of("items", List.of(
+                new ProductDTO(null, "Monitor 4K", "Pantalla", BigDecimal.valueOf(300.0), 5, electronics.getId()),
+                new ProductDTO(null, "Laptop Pro", "Duplicado", BigDecimal.valueOf(10.0), 1, electronics.getId()),
+                new ProductDTO(null, "Teclado", "Sin categoría", BigDecimal.valueOf(50.0), 1, 999999L))));
+
+        // ACT & ASSERT
+        mockMvc.perform(post("/api/v1/products/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created", is(1)))
+                .andExpect(jsonPath("$.rejected", is(2)))
+                .andExpect(jsonPath("$.results[0].status", is("CREATED")))
+                .andExpect(jsonPath("$.results[0].id").exists())
+                .andExpect(jsonPath("$.results[1].status", is("DUPLICATE")))
+                .andExpect(jsonPath("$.results[2].status", is("CATEGORY_NOT_FOUND")));
+        assertThat(productRepository.count()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("POST /api/v1/products/stock-adjustments debería aplicar los deltas sin dejar el stock en negativo")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void adjustStock_shouldApplyDeltasAndRejectInsufficientStock() throws Exception {
+        // ARRANGE
+        Category electronics = categoryRepository.save(new Category(null, "Electrónica", "Dispositivos electrónicos."));
+        Product laptop = productRepository.save(
+                new Product(null, "Laptop Pro", "Portátil potente", BigDecimal.valueOf(1200.0), 10, electronics));
+        String body = "{\"adjustments\": ["
+                + "{\"productId\": " + laptop.getId() + ", \"delta\": -3},"
+                + "{\"productId\": " + laptop.getId() + ", \"delta\": -20},"
+                + "{\"productId\": 999999, \"delta\": 1},"
+                + "{\"productId\": " + laptop.getId() + ", \"delta\": 5}]}";
+
+        // ACT & ASSERT
+        mockMvc.perform(post("/api/v1/products/stock-adjustments")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.applied", is(2)))
+                .andExpect(jsonPath("$.results[0].status", is("APPLIED")))
+                .andExpect(jsonPath("$.results[1].status", is("INSUFFICIENT_STOCK")))
+                .andExpect(jsonPath("$.results[2].status", is("NOT_FOUND")))
+                .andExpect(jsonPath("$.results[3].status", is("APPLIED")))
+                .andExpect(jsonPath("$.products[0].stock", is(12)));
+
+        // La caché por ID se actualizó con el stock final
+        mockMvc.perform(get("/api/v1/products/{id}", laptop.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.stock", is(12)));
+    }
+
     @Test
     @DisplayName("GET /api/v1/products/{id} debería retornar 404 Not Found para producto inexistente")
     @WithMockUser(username = "user", roles = {"USER"})
@@ -124,6 +451,34 @@ class ProductControllerIntegrationTest extends BaseIntegrationTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    @DisplayName("GET /api/v1/products/{id} con If-None-Match vigente debería retornar 304 sin cuerpo, y 200 tras modificarlo")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void getProductById_ifNoneMatch_shouldReturnNotModifiedUntilProductChanges() throws Exception {
+        // ARRANGE
+        Category gaming = categoryRepository.save(new Category(null, "Gaming", "Accesorios gaming."));
+        Product product = productRepository.save(
+                new Product(null, "Teclado Mecánico", "Teclado RGB", BigDecimal.valueOf(150.0), 30, gaming));
+        String etag = mockMvc.perform(get("/api/v1/products/{id}", product.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        // ACT & ASSERT: mismo ETag -> 304 sin cuerpo
+        mockMvc.perform(get("/api/v1/products/{id}", product.getId()).header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        // Tras una modificación la versión cambia y el ETag anterior deja de valer
+        mockMvc.perform(patch("/api/v1/products/{id}", product.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"stock\": 31}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/v1/products/{id}", product.getId()).header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.stock", is(31)));
+    }
+
     // --- Pruebas para POST /api/products ---
     @Test
     @DisplayName("POST /api/v1/products debería crear un nuevo producto (usuario ADMIN autenticado)")
@@ -166,6 +521,40 @@ class ProductControllerIntegrationTest extends BaseIntegrationTest {
                 .andExpect(status().isForbidden()); // Espera 403 Forbidden
     }
 
+    @Test
+    @DisplayName("POST /api/v1/products con Idempotency-Key repetida debería devolver la primera respuesta sin crear otro producto")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void createProduct_sameIdempotencyKey_shouldReplayFirstResponse() throws Exception {
+        Category category = categoryRepository.save(new Category(null, "Deportes", "Artículos deportivos"));
+        String body = objectMapper.writeValueAsString(
+                new ProductDTO(null, "Raqueta", "Raqueta de tenis", BigDecimal.valueOf(80.0), 5, category.getId()));
+
+        MvcResult first = mockMvc.perform(post("/api/v1/products")
+                        .header(IdempotencyFilter.HEADER, "crear-raqueta")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isCreated())
+                .andExpect(header().doesNotExist(IdempotencyFilter.REPLAYED_HEADER))
+                .andReturn();
+
+        // Reintento del cliente: misma respuesta, sin 409 por nombre duplicado
+        mockMvc.perform(post("/api/v1/products")
+                        .header(IdempotencyFilter.HEADER, "crear-raqueta")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isCreated())
+                .andExpect(header().string(IdempotencyFilter.REPLAYED_HEADER, "true"))
+                .andExpect(content().string(first.getResponse().getContentAsString()));
+        assertThat(productRepository.count()).isEqualTo(1);
+
+        // La misma clave con otro cuerpo se rechaza
+        mockMvc.perform(post("/api/v1/products")
+                        .header(IdempotencyFilter.HEADER, "crear-raqueta")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body.replace("Raqueta de tenis", "Otra descripción")))
+                .andExpect(status().isUnprocessableEntity());
+    }
+
     @Test
     @DisplayName("POST /api/v1/products debería retornar 404 ResourceNotFoundException si la categoría no existe")
     @WithMockUser(username = "admin", roles = {"ADMIN"})
@@ -270,7 +659,8 @@ class ProductControllerIntegrationTest extends BaseIntegrationTest {
                 .andExpect(jsonPath("$.price", is(75.0)))
                 .andExpect(jsonPath("$.categoryId", is((Math.toIntExact(newCategory.getId())))));
 
-        // Verificación directa en la base de datos
+        // Verificación directa en la base de datos, una vez volcado el stock en memoria
+        stockFlusher.flush();
         Product updatedInDb = productRepository.findById(existingProduct.getId()).orElseThrow();
         Category updatedCatInDb = categoryRepository.findById(updatedInDb.getCategory().getId()).orElseThrow();
         assertThat(updatedInDb.getName()).isEqualTo("Nuevo Nombre");
@@ -322,7 +712,7 @@ class ProductControllerIntegrationTest extends BaseIntegrationTest {
         Product existingProduct = productRepository.save(new Product(null, "Artículo", "Descripción", BigDecimal.valueOf(10.0), 20, category));
 
         // Crear un DTO para la actualización parcial del stock.
-        ProductPartialUpdateDTO updateStockDTO = new ProductPartialUpdateDTO(null, null, null, 15, null); // Solo actualizamos stock
+        ProductPartialUpdateDTO updateStockDTO = new ProductPartialUpdateDTO(null, null, null, 15, null, null); // Solo actualizamos stock
 
         // ACT & ASSERT
         mockMvc.perform(patch("/api/v1/products/{id}", existingProduct.getId())
@@ -344,7 +734,7 @@ class ProductControllerIntegrationTest extends BaseIntegrationTest {
         Category category = categoryRepository.save(new Category(null, "Almacén", "Productos para el almacén"));
         Product existingProduct = productRepository.save(new Product(null, "Artículo", "Descripción", BigDecimal.valueOf(10.0), 20, category));
 
-        ProductPartialUpdateDTO updateStockDTO = new ProductPartialUpdateDTO(null, null, null, -15, null); // Stock negativo
+        ProductPartialUpdateDTO updateStockDTO = new ProductPartialUpdateDTO(null, null, null, -15, null, null); // Stock negativo
 
         // ACT & ASSERT
         mockMvc.perform(patch("/api/v1/products/{id}", existingProduct.getId())
@@ -359,7 +749,7 @@ class ProductControllerIntegrationTest extends BaseIntegrationTest {
     @WithMockUser(username = "admin", roles = {"ADMIN"})
     void updateProductStock_nonExistent_shouldReturnNotFound() throws Exception {
         // ARRANGE
-        ProductPartialUpdateDTO updateStockDTO = new ProductPartialUpdateDTO(null, null, null, null, null);
+        ProductPartialUpdateDTO updateStockDTO = new ProductPartialUpdateDTO(null, null, null, null, null, null);
 
         // ACT & ASSERT
         mockMvc.perform(patch("/api/v1/products/{id}", 999L)
@@ -368,6 +758,159 @@ class ProductControllerIntegrationTest extends BaseIntegrationTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    @DisplayName("PATCH /api/v1/products/{id} con If-Match obsoleto debería retornar 412 y no modificar el producto")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void patchProduct_staleIfMatch_shouldReturnPreconditionFailed() throws Exception {
+        Category category = categoryRepository.save(new Category(null, "Almacén", "Productos para el almacén"));
+        Product existingProduct = productRepository.save(new Product(null, "Artículo", "Descripción", BigDecimal.valueOf(10.0), 20, category));
+        String etag = mockMvc.perform(get("/api/v1/products/{id}", existingProduct.getId()))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // Primera escritura con el ETag vigente: se aplica y cambia la versión
+        mockMvc.perform(patch("/api/v1/products/{id}", existingProduct.getId())
+                        .header(HttpHeaders.IF_MATCH, etag)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new ProductPartialUpdateDTO(null, null, null, 15, null, null))))
+                .andExpect(status().isOk());
+
+        // Segunda escritura con el mismo ETag: ya está obsoleto
+        mockMvc.perform(patch("/api/v1/products/{id}", existingProduct.getId())
+                        .header(HttpHeaders.IF_MATCH, etag)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new ProductPartialUpdateDTO(null, null, null, 5, null, null))))
+                .andExpect(status().isPreconditionFailed());
+
+        stockFlusher.flush();
+        assertThat(productRepository.findById(existingProduct.getId()).orElseThrow().getStock()).isEqualTo(15);
+    }
+
+    @Test
+    @DisplayName("PUT /api/v1/products/{id} con el ETag devuelto por otro PUT debería aplicarse aunque el stock se haya volcado entre medias")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void updateProduct_ifMatchAfterStockFlush_shouldStillMatch() throws Exception {
+        Category category = categoryRepository.save(new Category(null, "Almacén", "Productos para el almacén"));
+        Product existingProduct = productRepository.save(new Product(null, "Artículo", "Descripción", BigDecimal.valueOf(10.0), 20, category));
+        ProductDTO firstUpdate = new ProductDTO(existingProduct.getId(), "Artículo", "Descripción", BigDecimal.valueOf(10.0), 12, category.getId());
+        String etag = mockMvc.perform(put("/api/v1/products/{id}", existingProduct.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(firstUpdate)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // El volcado escribe el stock en la columna sin cambiar la versión: el ETag sigue vigente
+        stockFlusher.flush();
+        mockMvc.perform(get("/api/v1/products/{id}", existingProduct.getId()).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        ProductDTO secondUpdate = new ProductDTO(existingProduct.getId(), "Artículo", "Descripción", BigDecimal.valueOf(11.0), 12, category.getId());
+        mockMvc.perform(put("/api/v1/products/{id}", existingProduct.getId())
+                        .header(HttpHeaders.IF_MATCH, etag)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(secondUpdate)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.price", is(11.0)))
+                .andExpect(jsonPath("$.stock", is(12)));
+    }
+
+    @Test
+    @DisplayName("GET /api/v1/products/{id} debería cambiar de ETag tras un stockDelta, aunque no cambie la versión")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void getProductById_afterStockDelta_shouldChangeETag() throws Exception {
+        Category category = categoryRepository.save(new Category(null, "Almacén", "Productos para el almacén"));
+        Product existingProduct = productRepository.save(new Product(null, "Artículo", "Descripción", BigDecimal.valueOf(10.0), 20, category));
+        String etag = mockMvc.perform(get("/api/v1/products/{id}", existingProduct.getId()))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(patch("/api/v1/products/{id}", existingProduct.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new ProductPartialUpdateDTO(null, null, null, null, null, -3))))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/api/v1/products/{id}", existingProduct.getId()).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.stock", is(17)));
+    }
+
+    @Test
+    @DisplayName("GET /api/v1/products/{id} debería dar un ETag distinto por formato, y cualquiera debería valer como If-Match")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void getProductById_perFormatETag_shouldNotMatchOtherFormats() throws Exception {
+        Category category = categoryRepository.save(new Category(null, "Almacén", "Productos para el almacén"));
+        Product existingProduct = productRepository.save(new Product(null, "Artículo", "Descripción", BigDecimal.valueOf(10.0), 20, category));
+        String jsonETag = mockMvc.perform(get("/api/v1/products/{id}", existingProduct.getId()))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        String cborETag = mockMvc.perform(get("/api/v1/products/{id}", existingProduct.getId()).accept("application/cbor"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // El ETag de CBOR no vale para la representación JSON (y viceversa): no hay 304 con el cuerpo equivocado
+        assertNotEquals(jsonETag, cborETag);
+        mockMvc.perform(get("/api/v1/products/{id}", existingProduct.getId()).header(HttpHeaders.IF_NONE_MATCH, cborETag))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/v1/products/{id}", existingProduct.getId()).accept("application/cbor")
+                        .header(HttpHeaders.IF_NONE_MATCH, cborETag))
+                .andExpect(status().isNotModified());
+
+        // Para escribir, los dos identifican la misma revisión
+        ProductDTO update = new ProductDTO(null, "Artículo", "Descripción", BigDecimal.valueOf(11.0), 20, category.getId());
+        mockMvc.perform(put("/api/v1/products/{id}", existingProduct.getId())
+                        .header(HttpHeaders.IF_MATCH, cborETag)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(update)))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    @DisplayName("PATCH /api/v1/products/{id} con solo stockDelta debería aplicarse sin cambiar la versión (sin conflictos)")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void patchProduct_stockDeltaOnly_shouldNotBumpVersion() throws Exception {
+        Category category = categoryRepository.save(new Category(null, "Almacén", "Productos para el almacén"));
+        Product existingProduct = productRepository.save(new Product(null, "Artículo", "Descripción", BigDecimal.valueOf(10.0), 20, category));
+
+        mockMvc.perform(patch("/api/v1/products/{id}", existingProduct.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new ProductPartialUpdateDTO(null, null, null, null, null, -3))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.stock", is(17)))
+                .andExpect(jsonPath("$.version", is(existingProduct.getVersion().intValue())));
+    }
+
+    @Test
+    @DisplayName("POST /api/v1/products/import debería cargar las filas válidas con COPY y reportar las rechazadas")
+    @WithMockUser(username = "admin", roles = {"ADMIN"})
+    void importProducts_shouldCopyValidRowsAndReportRejections() throws Exception {
+        // ARRANGE
+        Category category = categoryRepository.save(new Category(null, "Almacén", "Productos para el almacén"));
+        productRepository.save(new Product(null, "Existente", "Ya en catálogo", BigDecimal.valueOf(5.0), 1, category));
+        String csv = "name,description,price,stock,categoryId\n"
+                + "Lámpara,\"Luz cálida, 10W\",19.90,30," + category.getId() + "\n"
+                + "Existente,,5,1," + category.getId() + "\n"
+                + "Silla,,-1,3," + category.getId() + "\n";
+        MockMultipartFile file = new MockMultipartFile("file", "catalogo.csv", "text/csv", csv.getBytes(StandardCharsets.UTF_8));
+
+        // ACT
+        String location = mockMvc.perform(multipart("/api/v1/products/import").file(file))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.status", is("QUEUED")))
+                .andReturn().getResponse().getHeader(HttpHeaders.LOCATION);
+
+        // ASSERT: se consulta el estado hasta que el trabajo termina
+        String status = "QUEUED";
+        for (int i = 0; i < 100 && !status.equals("COMPLETED") && !status.equals("FAILED"); i++) {
+            Thread.sleep(100);
+            status = objectMapper.readTree(mockMvc.perform(get(location)).andReturn().getResponse().getContentAsString())
+                    .get("status").asText();
+        }
+        mockMvc.perform(get(location))
+                .andExpect(jsonPath("$.status", is("COMPLETED")))
+                .andExpect(jsonPath("$.rowsRead", is(3)))
+                .andExpect(jsonPath("$.rowsImported", is(1)))
+                .andExpect(jsonPath("$.rowsRejected", is(2)))
+                .andExpect(jsonPath("$.rejections[*].line", containsInAnyOrder(3, 4)));
+        assertThat(productRepository.existsByName("Lámpara")).isTrue();
+    }
+
     // --- Pruebas para DELETE /api/products/{id} ---
     @Test
     @DisplayName("DELETE /api/v1/products/{id} debería eliminar un producto (usuario ADMIN autenticado)")
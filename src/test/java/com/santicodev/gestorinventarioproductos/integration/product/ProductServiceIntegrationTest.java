@@ -3,15 +3,34 @@ package com.santicodev.gestorinventarioproductos.integration.product;
 import com.santicodev.gestorinventarioproductos.category.domain.Category;
 import com.santicodev.gestorinventarioproductos.category.infraestructure.repository.CategoryRepository;
 import com.santicodev.gestorinventarioproductos.integration.config.BaseIntegrationTest;
+import com.santicodev.gestorinventarioproductos.integration.config.QueryCounter;
 import com.santicodev.gestorinventarioproductos.product.application.service.ProductService;
+import com.santicodev.gestorinventarioproductos.product.application.service.StockEngine;
 import com.santicodev.gestorinventarioproductos.product.domain.Product;
+import com.santicodev.gestorinventarioproductos.product.infraestructure.data.StockFlusher;
 import com.santicodev.gestorinventarioproductos.product.infraestructure.repository.ProductRepository;
+import com.santicodev.gestorinventarioproductos.shared.domain.exception.DuplicateResourceException;
 import com.santicodev.gestorinventarioproductos.shared.domain.exception.ResourceNotFoundException;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.CacheTags;
 import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductPartialUpdateDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.SearchPageDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.outbox.OutboxRelay;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.repository.OutboxEventRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.framework.Advised;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.interceptor.BeanFactoryCacheOperationSourceAdvisor;
+import org.springframework.core.Ordered;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.interceptor.BeanFactoryTransactionAttributeSourceAdvisor;
 
 import java.math.BigDecimal;
 import java.util.List;
@@ -37,6 +56,27 @@ class ProductServiceIntegrationTest extends BaseIntegrationTest {
     @Autowired
     private CategoryRepository categoryRepository; // Para gestionar las categorías asociadas a productos
 
+    @Autowired
+    private StockFlusher stockFlusher;
+
+    @Autowired
+    private StockEngine stockEngine;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private OutboxRelay outboxRelay;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private CacheTags cacheTags;
+
     /**
      * Limpieza de la base de datos antes de cada prueba.
      * Es vital limpiar tanto productos como categorías debido a su relación.
@@ -46,11 +86,35 @@ class ProductServiceIntegrationTest extends BaseIntegrationTest {
     public void setupBase() {
         super.setupBase(); // Llama al metodo de limpieza de la clase base (para Redis)
         productRepository.deleteAll(); // Limpia la tabla de productos
+        outboxEventRepository.deleteAll(); // Eventos de pruebas anteriores aún sin publicar
         // **CRÍTICO:** Limpia la tabla de categorías también para asegurar un estado limpio
         categoryRepository.deleteAll();
         // ya que los productos tienen una relación con las categorías.
     }
 
+    @Test
+    @DisplayName("La caché debería envolver a la transacción en el proxy del servicio")
+    void cacheAdvisorShouldRunBeforeTransactionAdvisor() {
+        // Un solo @EnableCaching (RedisCacheConfig) con su orden: otro sin orden en la aplicación lo anularía
+        List<Advisor> advisors = List.of(((Advised) productService).getAdvisors());
+        int cache = indexOf(advisors, BeanFactoryCacheOperationSourceAdvisor.class);
+        int transaction = indexOf(advisors, BeanFactoryTransactionAttributeSourceAdvisor.class);
+
+        assertThat(cache).isNotNegative();
+        assertThat(transaction).isGreaterThan(cache); // Un acierto de caché no abre transacción
+        assertThat(((Ordered) advisors.get(cache)).getOrder())
+                .isLessThan(((Ordered) advisors.get(transaction)).getOrder());
+    }
+
+    private static int indexOf(List<Advisor> advisors, Class<? extends Advisor> type) {
+        for (int i = 0; i < advisors.size(); i++) {
+            if (type.isInstance(advisors.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     @Test
     @DisplayName("Debería guardar un nuevo producto correctamente con asociación de categoría")
     void shouldSaveNewProductWithCategoryAssociation() {
@@ -148,6 +212,54 @@ class ProductServiceIntegrationTest extends BaseIntegrationTest {
                 .isEqualTo(cat2.getId());
     }
 
+    @Test
+    @DisplayName("Debería invalidar solo los listados en caché afectados por un alta o una baja")
+    void shouldInvalidateOnlyAffectedListingsOnWrites() {
+        // ARRANGE: listados cacheados de dos categorías y del catálogo completo
+        Category cat1 = categoryRepository.save(new Category(null, "Jardín", "Plantas y herramientas"));
+        Category cat2 = categoryRepository.save(new Category(null, "Cocina", "Menaje"));
+        ProductDTO kept = productService.createProduct(
+                new ProductDTO(null, "Sartén", "Antiadherente", BigDecimal.valueOf(20.0), 10, cat2.getId()));
+        assertThat(productService.getAllProducts()).hasSize(1);
+        assertThat(productService.getProductsByCategoryId(cat1.getId())).isEmpty();
+        List<ProductDTO> cat2Listing = productService.getProductsByCategoryId(cat2.getId());
+        String cat2Version = cacheTags.versionOf(CacheTags.category(cat2.getId()));
+
+        // ACT: alta en la categoría 1
+        ProductDTO created = productService.createProduct(
+                new ProductDTO(null, "Maceta", "Barro cocido", BigDecimal.valueOf(5.0), 30, cat1.getId()));
+
+        // ASSERT: el catálogo y la categoría 1 se recalculan; la categoría 2 sigue con la misma entrada
+        assertThat(productService.getAllProducts()).extracting(ProductDTO::id).containsExactlyInAnyOrder(kept.id(), created.id());
+        assertThat(productService.getProductsByCategoryId(cat1.getId())).extracting(ProductDTO::id).containsExactly(created.id());
+        assertThat(cacheTags.versionOf(CacheTags.category(cat2.getId()))).isEqualTo(cat2Version);
+        assertThat(productService.getProductsByCategoryId(cat2.getId())).isEqualTo(cat2Listing);
+
+        // ACT & ASSERT: la baja invalida la categoría del producto borrado
+        productService.deleteProduct(created.id());
+        assertThat(productService.getProductsByCategoryId(cat1.getId())).isEmpty();
+        assertThat(productService.getAllProducts()).extracting(ProductDTO::id).containsExactly(kept.id());
+    }
+
+    @Test
+    @DisplayName("Debería buscar productos por texto completo y tolerar errores tipográficos en el nombre")
+    void shouldSearchProductsByFullTextAndTrigramSimilarity() {
+        // ARRANGE
+        Category category = categoryRepository.save(new Category(null, "Hogar", "Artículos para el hogar"));
+        productRepository.save(new Product(null, "Lámpara de Escritorio", "Lámpara LED regulable", BigDecimal.valueOf(30.0), 50, category));
+        productRepository.save(new Product(null, "Silla Ergonómica", "Silla de oficina con soporte lumbar", BigDecimal.valueOf(120.0), 5, category));
+
+        // ACT: coincidencia por texto completo en la descripción
+        SearchPageDTO<ProductDTO> byDescription = productService.searchProducts("oficina", 0, 10);
+        // ACT: coincidencia aproximada por nombre (error tipográfico)
+        SearchPageDTO<ProductDTO> byTypo = productService.searchProducts("Sila Ergonomica", 0, 10);
+
+        // ASSERT
+        assertThat(byDescription.items()).extracting(ProductDTO::name).containsExactly("Silla Ergonómica");
+        assertThat(byDescription.hasNext()).isFalse();
+        assertThat(byTypo.items()).extracting(ProductDTO::name).first().isEqualTo("Silla Ergonómica");
+    }
+
     @Test
     @DisplayName("Debería actualizar un producto existente incluyendo su categoría")
     void shouldUpdateProductIncludingCategory() {
@@ -170,7 +282,7 @@ class ProductServiceIntegrationTest extends BaseIntegrationTest {
                 );
 
         // ACT: Actualizar el producto a través del servicio.
-        ProductDTO updatedProduct = productService.updateProduct(existingProduct.getId(), updatedDetails);
+        ProductDTO updatedProduct = productService.updateProduct(existingProduct.getId(), updatedDetails, null);
 
         // ASSERT: Verificar que el producto devuelto refleja la actualización.
         assertThat(updatedProduct).isNotNull();
@@ -218,7 +330,7 @@ class ProductServiceIntegrationTest extends BaseIntegrationTest {
 
         // ACT & ASSERT: Se espera una ResourceNotFoundException.
         assertThrows(ResourceNotFoundException.class,
-                () -> productService.updateProduct(999L, updateData),
+                () -> productService.updateProduct(999L, updateData, null),
                 "Se esperaba ResourceNotFoundException al intentar actualizar un producto que no existe.");
     }
 
@@ -238,19 +350,44 @@ class ProductServiceIntegrationTest extends BaseIntegrationTest {
 
 
         // ACT: Actualizar el stock a través del servicio.
-        ProductDTO updatedProduct = productService.updateProduct(existingProduct.getId(), existingProductDTO);
+        ProductDTO updatedProduct = productService.updateProduct(existingProduct.getId(), existingProductDTO, null);
 
         // ASSERT: Verificar que el stock se actualizó.
         assertThat(updatedProduct).isNotNull();
         assertThat(updatedProduct.id()).isEqualTo(existingProduct.getId());
         assertThat(updatedProduct.stock()).isEqualTo(newStock);
 
-        // Verificar en la DB
+        // Verificar en la DB, una vez volcado el stock en memoria
+        stockFlusher.flush();
         Optional<Product> foundInDb = productRepository.findById(existingProduct.getId());
         assertTrue(foundInDb.isPresent());
         assertThat(foundInDb.get().getStock()).isEqualTo(newStock);
     }
 
+    @Test
+    @DisplayName("El volcado no debería dejar el stock en negativo aunque otra instancia haya vendido las unidades")
+    void flushShouldRejectDeltaThatWouldMakeStockNegative() {
+        // ARRANGE: esta instancia tiene 3 unidades en memoria
+        Category category = categoryRepository.save(new Category(null, "Almacén", "Productos en inventario"));
+        Product product = productRepository.save(
+                new Product(null, "Últimas unidades", "Descripción", BigDecimal.valueOf(10.0), 3, category));
+        Long id = product.getId();
+        stockEngine.load(id, 3);
+        // Otra instancia vende las 3 y las vuelca
+        jdbcTemplate.update("UPDATE products SET stock = 0 WHERE id = ?", id);
+
+        // ACT: esta instancia aún ve 3 unidades y vende 2
+        assertEquals(1, stockEngine.tryAdjust(id, -2));
+        stockFlusher.flush();
+
+        // ASSERT: la base de datos rechaza el delta y el motor vuelve a su stock
+        assertThat(productRepository.findById(id).orElseThrow().getStock()).isZero();
+        assertEquals(0, stockEngine.stockOf(id, -1));
+        // La restricción CHECK protege la columna de cualquier otra escritura
+        assertThrows(DataIntegrityViolationException.class,
+                () -> jdbcTemplate.update("UPDATE products SET stock = -1 WHERE id = ?", id));
+    }
+
     @Test
     @DisplayName("Debería interactuar con la caché de Redis al obtener un producto (asumiendo @Cacheable)")
     void shouldInteractWithRedisCacheWhenFetchingProduct() {
@@ -262,11 +399,11 @@ class ProductServiceIntegrationTest extends BaseIntegrationTest {
         // Limpiar la clave de caché explícitamente antes de la primera llamada si la clave es predecible
         // Esto es opcional y depende de cómo esté configurada tu caché.
         if (redisTemplate != null) {
-            redisTemplate.delete("products::" + savedProduct.getId());
-            assertThat(redisTemplate.hasKey("products::" + savedProduct.getId())).isFalse();
+            redisTemplate.delete("product-by-id::" + savedProduct.getId());
+            assertThat(redisTemplate.hasKey("product-by-id::" + savedProduct.getId())).isFalse();
         }
 
-        // ACT: Primera llamada, debería ir a la DB y cachear el resultado (asumiendo @Cacheable("products")).
+        // ACT: Primera llamada, debería ir a la DB y cachear el resultado (asumiendo @Cacheable("product-by-id")).
         productService.getProductById(savedProduct.getId());
 
         // ASSERT (verificación de caché): Si tienes acceso a RedisTemplate, puedes verificar si la clave existe.
@@ -274,7 +411,7 @@ class ProductServiceIntegrationTest extends BaseIntegrationTest {
         if (redisTemplate != null) {
             // Esperamos un breve momento para que la caché se propague, aunque en un entorno de test local es casi instantáneo
             // try { Thread.sleep(50); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
-            assertThat(redisTemplate.hasKey("products::" + savedProduct.getId())).isTrue();
+            assertThat(redisTemplate.hasKey("product-by-id::" + savedProduct.getId())).isTrue();
         }
 
         // ACT: Segunda llamada, debería obtenerse de la caché sin ir a la DB.
@@ -287,11 +424,11 @@ class ProductServiceIntegrationTest extends BaseIntegrationTest {
         int newStock = 3;
         ProductDTO existingProductDTO =
                 new ProductDTO(null,"Artículo de Stock", "Descripción", BigDecimal.valueOf(10.0), newStock, category.getId());
-        productService.updateProduct(savedProduct.getId(), existingProductDTO);
+        productService.updateProduct(savedProduct.getId(), existingProductDTO, null);
 
         // ASSERT (verificación de invalidación): La clave de caché debería haber sido eliminada.
         if (redisTemplate != null) {
-            assertThat(redisTemplate.hasKey("products::" + savedProduct.getId())).isFalse();
+            assertThat(redisTemplate.hasKey("product-by-id::" + savedProduct.getId())).isFalse();
         }
 
         // ACT: Tercera llamada, debería ir a la DB de nuevo y re-cachear.
@@ -299,8 +436,93 @@ class ProductServiceIntegrationTest extends BaseIntegrationTest {
         assertThat(updatedAndFetched.stock()).isEqualTo(newStock); // Verifica que se obtuvo el stock actualizado
 
         if (redisTemplate != null) {
-            assertThat(redisTemplate.hasKey("products::" + savedProduct.getId())).isTrue();
+            assertThat(redisTemplate.hasKey("product-by-id::" + savedProduct.getId())).isTrue();
         }
     }
-}
 
+    @Test
+    @DisplayName("Debería registrar los cambios en el outbox y publicarlos en el stream de productos")
+    void shouldRelayOutboxEventsToRedisStream() {
+        Category category = categoryRepository.save(new Category(null, "Outbox", "Eventos"));
+        ProductDTO created = productService.createProduct(
+                new ProductDTO(null, "Producto con evento", null, BigDecimal.TEN, 5, category.getId()));
+        productService.deleteProduct(created.id());
+
+        outboxRelay.relay();
+
+        // Publicados en orden y borrados del outbox
+        assertThat(outboxEventRepository.count()).isZero();
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .range(OutboxRelay.STREAM_KEY_PREFIX + "product", Range.unbounded());
+        assertThat(records).hasSize(2);
+        assertThat(records.get(0).getValue()).containsEntry("type", "ProductCreated")
+                .containsEntry("aggregateId", created.id().toString());
+        assertThat(records.get(1).getValue()).containsEntry("type", "ProductDeleted");
+    }
+
+    @Test
+    @DisplayName("Debería registrar en el outbox un evento por producto de un alta masiva")
+    void shouldRecordBulkCreatedEventsInOutbox() {
+        Category category = categoryRepository.save(new Category(null, "Outbox masivo", "Eventos en lote"));
+
+        productService.bulkCreateProducts(List.of(
+                new ProductDTO(null, "Lote 1", null, BigDecimal.TEN, 5, category.getId()),
+                new ProductDTO(null, "Lote 2", null, BigDecimal.ONE, 7, category.getId())));
+        assertThat(outboxEventRepository.count()).isEqualTo(2);
+
+        outboxRelay.relay();
+
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .range(OutboxRelay.STREAM_KEY_PREFIX + "product", Range.unbounded());
+        assertThat(records).hasSize(2).allSatisfy(record ->
+                assertThat(record.getValue()).containsEntry("type", "ProductCreated"));
+    }
+
+    // Regresión del número de sentencias por escritura: las restricciones de la tabla sustituyen a las
+    // comprobaciones previas (existsByName, findById de la categoría) y el UPDATE lleva solo lo modificado
+    @Test
+    @DisplayName("Las escrituras de productos deberían ejecutar el mínimo de sentencias SQL")
+    void productWritesShouldRunMinimalStatements() {
+        Category category = categoryRepository.save(new Category(null, "Consultas", "Recuento de sentencias"));
+        Category otherCategory = categoryRepository.save(new Category(null, "Otra", "Otra categoría"));
+
+        // Alta: INSERT del producto + INSERT del evento
+        QueryCounter.reset();
+        ProductDTO created = productService.createProduct(
+                new ProductDTO(null, "Producto contado", null, BigDecimal.TEN, 5, category.getId()));
+        assertThat(QueryCounter.statements()).hasSize(2);
+
+        // PUT (mismo stock, otra categoría): SELECT + UPDATE + INSERT del evento
+        QueryCounter.reset();
+        productService.updateProduct(created.id(),
+                new ProductDTO(null, "Producto recontado", null, BigDecimal.TEN, 5, otherCategory.getId()), null);
+        assertThat(QueryCounter.statements()).hasSize(3);
+
+        // PATCH del precio: SELECT + UPDATE solo de 'price' (y la versión) + INSERT del evento
+        QueryCounter.reset();
+        productService.patchProduct(created.id(),
+                new ProductPartialUpdateDTO(null, null, BigDecimal.ONE, null, null, null), null);
+        List<String> statements = QueryCounter.statements();
+        assertThat(statements).hasSize(3);
+        String update = statements.stream().filter(sql -> sql.startsWith("update products")).findFirst().orElseThrow();
+        assertThat(update).contains("price").doesNotContain("description").doesNotContain("category_id");
+
+        // Borrado: DELETE + INSERT del evento
+        QueryCounter.reset();
+        productService.deleteProduct(created.id());
+        assertThat(QueryCounter.statements()).hasSize(2);
+    }
+
+    @Test
+    @DisplayName("Los nombres repetidos y las categorías inexistentes deberían detectarse por las restricciones")
+    void productWritesShouldTranslateConstraintViolations() {
+        Category category = categoryRepository.save(new Category(null, "Restricciones", "Violaciones"));
+        productService.createProduct(new ProductDTO(null, "Único", null, BigDecimal.TEN, 1, category.getId()));
+
+        assertThrows(DuplicateResourceException.class, () -> productService.createProduct(
+                new ProductDTO(null, "Único", null, BigDecimal.TEN, 1, category.getId())));
+        assertThrows(ResourceNotFoundException.class, () -> productService.createProduct(
+                new ProductDTO(null, "Sin categoría", null, BigDecimal.TEN, 1, 999_999L)));
+        assertThat(productRepository.count()).isEqualTo(1);
+    }
+}
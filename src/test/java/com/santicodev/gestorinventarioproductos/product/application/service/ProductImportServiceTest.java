@@ -0,0 +1,147 @@
+package com.santicodev.gestorinventarioproductos.product.application.service;
+
+import com.santicodev.gestorinventarioproductos.category.infraestructure.repository.CategoryRepository;
+import com.santicodev.gestorinventarioproductos.product.infraestructure.repository.ProductJdbcRepository;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.CacheTags;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.IdBloomFilter;
+import com.santicodev.gestorinventarioproductos.shared.domain.exception.ResourceNotFoundException;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ImportRejectionDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductImportJobDTO;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ProductImportService Unit Tests")
+public class ProductImportServiceTest {
+    @Mock
+    private ProductJdbcRepository productJdbcRepository;
+    @Mock
+    private CategoryRepository categoryRepository;
+    @Mock
+    private ProductSuggestionIndex suggestionIndex;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Mock
+    private CacheTags cacheTags;
+    @Mock
+    private IdBloomFilter idBloomFilter;
+
+    private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+    private ProductImportService importService;
+    // Lo que el servicio envía al COPY
+    private final StringWriter copied = new StringWriter();
+
+    @BeforeEach
+    void setUp() {
+        importService = new ProductImportService(productJdbcRepository, categoryRepository, suggestionIndex,
+                cacheTags, idBloomFilter, transactionTemplate, validator);
+        lenient().doAnswer(invocation -> {
+            Consumer<TransactionStatus> action = invocation.getArgument(0);
+            action.accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        lenient().when(productJdbcRepository.copyIntoImportStaging(any())).thenAnswer(invocation -> {
+            Consumer<Writer> rows = invocation.getArgument(0);
+            rows.accept(copied);
+            return copied.toString().lines().count();
+        });
+    }
+
+    @Test
+    @DisplayName("Should stage only valid rows through COPY and report every rejected line")
+    void shouldStageValidRowsAndReportRejections() throws Exception {
+        // Given
+        when(categoryRepository.findAllIds()).thenReturn(Set.of(1L));
+        doAnswer(invocation -> {
+            BiConsumer<Long, String> conflicts = invocation.getArgument(0);
+            conflicts.accept(3L, "Mouse");
+            return null;
+        }).when(productJdbcRepository).findImportConflicts(any());
+        when(productJdbcRepository.mergeImportStaging(any())).thenAnswer(invocation -> {
+            invocation.<LongConsumer>getArgument(0).accept(10L);
+            return 1;
+        });
+        String csv = "name,description,price,stock,categoryId\n"
+                + "Laptop,\"Potente, \"\"pro\"\"\",1200.50,10,1\n"
+                + "Mouse,,25,5,1\n"
+                + "No,corto,1,1,1\n"
+                + "Teclado,,abc,1,1\n"
+                + "Monitor,,100,1,9\n"
+                + "Laptop,,1,1,1\n";
+
+        // When
+        ProductImportJobDTO job = awaitJob(importService.startImport("catalogo.csv", stream(csv)));
+
+        // Then
+        assertEquals(ProductImportJobDTO.Status.COMPLETED, job.status());
+        assertEquals("2,\"Laptop\",\"Potente, \"\"pro\"\"\",1200.50,10,1\n3,\"Mouse\",,25,5,1\n", copied.toString());
+        assertEquals(6, job.rowsRead());
+        assertEquals(1, job.rowsImported());
+        assertEquals(5, job.rowsRejected());
+        assertEquals(List.of(4L, 5L, 6L, 7L, 3L), job.rejections().stream().map(ImportRejectionDTO::line).toList());
+        assertEquals("El nombre debe tener entre 3 y 200 caracteres", job.rejections().get(0).error());
+        assertEquals("Valor no válido en 'price': abc", job.rejections().get(1).error());
+        assertEquals("Categoría no encontrada con ID: 9", job.rejections().get(2).error());
+        verify(suggestionIndex, times(1)).rebuild();
+        verify(cacheTags, times(1)).invalidate(List.of(CacheTags.ALL_PRODUCTS, CacheTags.category(1L)));
+        verify(idBloomFilter, times(1)).addAll(IdBloomFilter.PRODUCTS, List.of(10L));
+    }
+
+    @Test
+    @DisplayName("Should fail the whole job without importing when the header is wrong")
+    void shouldFailWhenHeaderIsWrong() throws Exception {
+        when(categoryRepository.findAllIds()).thenReturn(Set.of(1L));
+
+        ProductImportJobDTO job = awaitJob(importService.startImport("malo.csv", stream("nombre,precio\nLaptop,10\n")));
+
+        assertEquals(ProductImportJobDTO.Status.FAILED, job.status());
+        assertTrue(job.error().startsWith("La cabecera del CSV debe ser"));
+        verify(productJdbcRepository, never()).mergeImportStaging(any());
+        verifyNoInteractions(suggestionIndex);
+    }
+
+    @Test
+    @DisplayName("Should throw ResourceNotFoundException for an unknown job")
+    void shouldThrowForUnknownJob() {
+        assertThrows(ResourceNotFoundException.class, () -> importService.getJob("no-existe"));
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Espera a que el trabajo (en segundo plano) termine
+    private ProductImportJobDTO awaitJob(ProductImportJobDTO started) throws InterruptedException, IOException {
+        for (int i = 0; i < 500; i++) {
+            ProductImportJobDTO job = importService.getJob(started.id());
+            if (job.finishedAt() != null) {
+                return job;
+            }
+            Thread.sleep(10);
+        }
+        throw new IOException("La importación no terminó a tiempo");
+    }
+}
@@ -3,23 +3,62 @@ package com.santicodev.gestorinventarioproductos.product.application.service;
 import com.santicodev.gestorinventarioproductos.category.domain.Category;
 import com.santicodev.gestorinventarioproductos.category.infraestructure.repository.CategoryRepository;
 import com.santicodev.gestorinventarioproductos.product.domain.Product;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.CacheTags;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.IdBloomFilter;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.RedisBatchCache;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.outbox.OutboxWriter;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.BatchGetResponseDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.BulkCreateResponseDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.BulkItemResultDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CursorPageDTO;
 import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductDTO;
+import com.santicodev.gestorinventarioproductos.product.infraestructure.repository.ProductJdbcRepository;
 import com.santicodev.gestorinventarioproductos.product.infraestructure.repository.ProductRepository;
+import com.santicodev.gestorinventarioproductos.product.infraestructure.repository.ProductSearchView;
 import com.santicodev.gestorinventarioproductos.shared.domain.exception.DuplicateResourceException;
+import com.santicodev.gestorinventarioproductos.shared.domain.exception.InvalidFieldException;
+import com.santicodev.gestorinventarioproductos.shared.domain.exception.PreconditionFailedException;
 import com.santicodev.gestorinventarioproductos.shared.domain.exception.ResourceNotFoundException;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductFacetsDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductFilterDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductFilterResultDTO;
 import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductPartialUpdateDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.SearchPageDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.PendingStockDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.StockAdjustmentDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.StockAdjustmentResponseDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.StockAdjustmentResultDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Path;
+import jakarta.validation.Validator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
@@ -32,6 +71,25 @@ public class ProductServiceTest {
     private ProductRepository productRepository;
     @Mock
     private CategoryRepository categoryRepository; // También necesitamos mockear CategoryRepository
+    @Mock
+    private EntityManager entityManager;
+    @Mock
+    private RedisBatchCache redisBatchCache;
+    @Mock
+    private ProductSuggestionIndex suggestionIndex;
+    @Mock
+    private ProductJdbcRepository productJdbcRepository;
+    @Mock
+    private Validator validator;
+    @Mock
+    private OutboxWriter outboxWriter;
+    @Mock
+    private CacheTags cacheTags;
+    @Mock
+    private IdBloomFilter idBloomFilter;
+    // Motor real: los productos que no están cargados devuelven el stock de la entidad o del DTO
+    @Spy
+    private StockEngine stockEngine = new StockEngine(new SimpleMeterRegistry());
 
     @InjectMocks
     private ProductService productService;
@@ -53,9 +111,8 @@ public class ProductServiceTest {
     @DisplayName("Should create a new product successfully")
     void shouldCreateProductSuccessfully() {
         // Given
-        when(productRepository.existsByName("Laptop")).thenReturn(false);
-        when(categoryRepository.findById(1L)).thenReturn(Optional.of(category1));
-        when(productRepository.save(any(Product.class))).thenReturn(product1);
+        when(categoryRepository.getReferenceById(1L)).thenReturn(category1);
+        when(productRepository.saveAndFlush(any(Product.class))).thenReturn(product1);
 
         // When
         ProductDTO result = productService.createProduct(productDTO1);
@@ -64,51 +121,144 @@ public class ProductServiceTest {
         assertNotNull(result);
         assertEquals(productDTO1.name(), result.name());
         assertEquals(productDTO1.categoryId(), result.categoryId());
-        verify(productRepository, times(1)).existsByName("Laptop");
-        verify(categoryRepository, times(1)).findById(1L);
-        verify(productRepository, times(1)).save(any(Product.class));
+        // Solo el INSERT: sin existsByName ni SELECT de la categoría
+        verify(productRepository, never()).existsByName(anyString());
+        verify(categoryRepository, never()).findById(anyLong());
+        verify(productRepository, times(1)).saveAndFlush(any(Product.class));
+        verify(suggestionIndex, times(1)).put(1L, "Laptop"); // El autocompletado ve el nuevo producto
+        verify(outboxWriter, times(1)).record(OutboxWriter.PRODUCT, 1L, "ProductCreated", result);
+    }
+
+    @Test
+    @DisplayName("Should bulk create valid products with one name query, one category query and a batch insert")
+    @SuppressWarnings("unchecked")
+    void shouldBulkCreateProductsReportingEachRejectedItem() {
+        // Given: 0 válido, 1 nombre existente, 2 repetido en la petición, 3 categoría inexistente, 4 inválido
+        ProductDTO valid = new ProductDTO(null, "Monitor", "4K", new BigDecimal("300.00"), 5, 1L);
+        ProductDTO existing = new ProductDTO(null, "Laptop", "Dup", new BigDecimal("10.00"), 1, 1L);
+        ProductDTO repeated = new ProductDTO(null, "Monitor", "Otra vez", new BigDecimal("10.00"), 1, 1L);
+        ProductDTO noCategory = new ProductDTO(null, "Teclado", "RGB", new BigDecimal("50.00"), 1, 9L);
+        ProductDTO invalid = new ProductDTO(null, "", null, null, -1, 1L);
+        ConstraintViolation<ProductDTO> violation = mock(ConstraintViolation.class);
+        Path path = mock(Path.class);
+        when(path.toString()).thenReturn("name");
+        when(violation.getPropertyPath()).thenReturn(path);
+        when(violation.getMessage()).thenReturn("no puede estar vacío");
+        when(validator.validate(any(ProductDTO.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0) == invalid ? Set.of(violation) : Set.of());
+        when(productJdbcRepository.findExistingNames(Set.of("Monitor", "Laptop", "Teclado"))).thenReturn(Set.of("Laptop"));
+        when(categoryRepository.findExistingIds(Set.of(1L, 9L))).thenReturn(Set.of(1L));
+        ProductDTO inserted = new ProductDTO(100L, "Monitor", "4K", new BigDecimal("300.00"), 5, 1L, 0L);
+        when(productJdbcRepository.batchInsert(List.of(valid))).thenReturn(List.of(inserted));
+
+        // When
+        BulkCreateResponseDTO result;
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            result = productService.bulkCreateProducts(List.of(valid, existing, repeated, noCategory, invalid));
+            // Hasta confirmar, ni caché ni filtro de IDs
+            verify(redisBatchCache, never()).multiPut(anyString(), anyMap());
+            verify(idBloomFilter, never()).addAll(anyString(), anyCollection());
+            completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // Then
+        assertEquals(1, result.created());
+        assertEquals(4, result.rejected());
+        assertEquals(BulkItemResultDTO.created(0, 100L), result.results().get(0));
+        assertEquals(BulkItemResultDTO.Status.DUPLICATE, result.results().get(1).status());
+        assertEquals(BulkItemResultDTO.Status.DUPLICATE, result.results().get(2).status());
+        assertEquals(BulkItemResultDTO.Status.CATEGORY_NOT_FOUND, result.results().get(3).status());
+        assertEquals(BulkItemResultDTO.Status.INVALID, result.results().get(4).status());
+        assertEquals("name: no puede estar vacío", result.results().get(4).error());
+        verify(productRepository, never()).existsByName(anyString()); // Sin consultas por elemento
+        verify(categoryRepository, never()).findById(anyLong());
+        verify(redisBatchCache, times(1)).multiPut(ProductService.CACHE_NAME, Map.of(100L, inserted));
+        verify(idBloomFilter, times(1)).addAll(IdBloomFilter.PRODUCTS, Set.of(100L));
+        verify(suggestionIndex, times(1)).put(100L, "Monitor");
+    }
+
+    @Test
+    @DisplayName("Should apply stock adjustments in memory and report each failed line")
+    void shouldAdjustStockInMemoryReportingFailedLines() {
+        // Given: el producto 1 ya está en memoria; el 2 se carga de la base de datos; el 99 no existe
+        stockEngine.load(1L, 10);
+        StockAdjustmentDTO line0 = new StockAdjustmentDTO(2L, -5);
+        StockAdjustmentDTO line1 = new StockAdjustmentDTO(1L, 3);
+        StockAdjustmentDTO line2 = new StockAdjustmentDTO(99L, -1);
+        StockAdjustmentDTO line3 = new StockAdjustmentDTO(1L, -100);
+        when(productJdbcRepository.findStocks(Set.of(2L, 99L))).thenReturn(Map.of(2L, 50));
+        // La proyección trae el stock de la columna, aún sin volcar
+        when(productRepository.findDTOsByIdIn(Set.of(1L, 2L))).thenReturn(List.of(
+                new ProductDTO(1L, "Laptop", "Powerful laptop", new BigDecimal("1200.00"), 10, 1L, 0L),
+                new ProductDTO(2L, "Mouse", "Gaming mouse", new BigDecimal("50.00"), 50, 1L, 0L)));
+        ProductDTO updatedDTO1 = new ProductDTO(1L, "Laptop", "Powerful laptop", new BigDecimal("1200.00"), 13, 1L, 0L);
+        ProductDTO productDTO2 = new ProductDTO(2L, "Mouse", "Gaming mouse", new BigDecimal("50.00"), 45, 1L, 0L);
+
+        // When
+        StockAdjustmentResponseDTO result;
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            result = productService.adjustStock(List.of(line0, line1, line2, line3));
+            verify(redisBatchCache, never()).multiPut(anyString(), anyMap()); // Solo al terminar la transacción
+            completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // Then: resultados en el orden de la petición
+        assertEquals(2, result.applied());
+        assertEquals(2, result.rejected());
+        assertEquals(StockAdjustmentResultDTO.Status.APPLIED, result.results().get(0).status());
+        assertEquals(StockAdjustmentResultDTO.Status.APPLIED, result.results().get(1).status());
+        assertEquals(StockAdjustmentResultDTO.Status.NOT_FOUND, result.results().get(2).status());
+        assertEquals(StockAdjustmentResultDTO.Status.INSUFFICIENT_STOCK, result.results().get(3).status());
+        verify(productRepository, never()).findById(anyLong()); // Sin leer-modificar-escribir
+        verifyNoMoreInteractions(productJdbcRepository); // Sin escrituras síncronas: las hace StockFlusher
+        verify(redisBatchCache, times(1)).multiPut(ProductService.CACHE_NAME, Map.of(1L, updatedDTO1, 2L, productDTO2));
+        assertEquals(List.of(PendingStockDTO.delta(1L, 3), PendingStockDTO.delta(2L, -5)),
+                stockEngine.drainPending().stream().sorted((a, b) -> Long.compare(a.productId(), b.productId())).toList());
     }
 
     @Test
     @DisplayName("Should throw DuplicateResourceException when creating product with existing name")
     void shouldThrowDuplicateResourceExceptionOnCreateExistingName() {
         // Given
-        when(productRepository.existsByName("Laptop")).thenReturn(true);
+        when(categoryRepository.getReferenceById(1L)).thenReturn(category1);
+        when(productRepository.saveAndFlush(any(Product.class))).thenThrow(constraintViolation("23505"));
 
         // When & Then
         DuplicateResourceException exception = assertThrows(DuplicateResourceException.class, () -> {
             productService.createProduct(productDTO1);
         });
         assertEquals("El producto con el nombre 'Laptop' ya existe.", exception.getMessage());
-        verify(productRepository, times(1)).existsByName("Laptop");
-        verify(categoryRepository, never()).findById(anyLong()); // No debe intentar buscar categoría
-        verify(productRepository, never()).save(any(Product.class));
+        verify(suggestionIndex, never()).put(anyLong(), anyString());
+        verifyNoInteractions(outboxWriter);
     }
 
     @Test
     @DisplayName("Should throw ResourceNotFoundException when creating product with non-existing category")
     void shouldThrowResourceNotFoundExceptionOnCreateNonExistingCategory() {
         // Given
-        when(productRepository.existsByName("Laptop")).thenReturn(false);
-        when(categoryRepository.findById(1L)).thenReturn(Optional.empty());
+        when(categoryRepository.getReferenceById(1L)).thenReturn(category1);
+        when(productRepository.saveAndFlush(any(Product.class))).thenThrow(constraintViolation("23503"));
 
         // When & Then
         ResourceNotFoundException exception = assertThrows(ResourceNotFoundException.class, () -> {
             productService.createProduct(productDTO1);
         });
         assertEquals("Categoría no encontrada con ID: 1", exception.getMessage());
-        verify(productRepository, times(1)).existsByName("Laptop");
-        verify(categoryRepository, times(1)).findById(1L);
-        verify(productRepository, never()).save(any(Product.class));
+        verifyNoInteractions(outboxWriter);
     }
 
     @Test
     @DisplayName("Should return all products successfully")
     void shouldReturnAllProductsSuccessfully() {
         // Given
-        Product product2 = new Product(2L, "Mouse", "Gaming mouse", new BigDecimal("50.00"), 50, category1);
-        List<Product> products = Arrays.asList(product1, product2);
-        when(productRepository.findAll()).thenReturn(products);
+        ProductDTO productDTO2 = new ProductDTO(2L, "Mouse", "Gaming mouse", new BigDecimal("50.00"), 50, 1L);
+        when(productRepository.findAllAsDTO()).thenReturn(Arrays.asList(productDTO1, productDTO2));
 
         // When
         List<ProductDTO> result = productService.getAllProducts();
@@ -118,14 +268,71 @@ public class ProductServiceTest {
         assertEquals(2, result.size());
         assertEquals("Laptop", result.get(0).name());
         assertEquals("Mouse", result.get(1).name());
-        verify(productRepository, times(1)).findAll();
+        verify(productRepository, times(1)).findAllAsDTO();
+        verify(productRepository, never()).findAll(); // No se hidratan entidades
+        // Cada producto del listado se cachea también por ID, en segundo plano
+        verify(redisBatchCache, times(1)).putAllIfAbsentInBackground(eq(ProductService.CACHE_NAME),
+                eq(Map.of(1L, productDTO1, 2L, productDTO2)), any());
+    }
+
+    @Test
+    @DisplayName("Should not cache by ID a listing whose tag changed while it was being queried")
+    void shouldSkipCachingByIdWhenTagChangesDuringQuery() {
+        // Given: la etiqueta se invalida mientras se ejecuta la consulta
+        when(cacheTags.versionOf(CacheTags.ALL_PRODUCTS)).thenReturn("1", "2");
+        when(productRepository.findAllAsDTO()).thenReturn(List.of(productDTO1));
+
+        // When
+        productService.getAllProducts();
+
+        // Then: la escritura en segundo plano compara con la versión de antes de la consulta
+        ArgumentCaptor<BooleanSupplier> stillValid = ArgumentCaptor.forClass(BooleanSupplier.class);
+        verify(redisBatchCache).putAllIfAbsentInBackground(eq(ProductService.CACHE_NAME), any(), stillValid.capture());
+        assertFalse(stillValid.getValue().getAsBoolean());
+    }
+
+    @Test
+    @DisplayName("Should export all products row by row and detach each entity")
+    void shouldExportProductsDetachingEachEntity() {
+        // Given
+        Product product2 = new Product(2L, "Mouse", "Gaming mouse", new BigDecimal("50.00"), 50, category1);
+        when(productRepository.streamAllBy()).thenReturn(Stream.of(product1, product2));
+        List<ProductDTO> exported = new ArrayList<>();
+
+        // When
+        long count = productService.exportProducts(exported::add);
+
+        // Then
+        assertEquals(2, count);
+        assertEquals("Laptop", exported.get(0).name());
+        assertEquals("Mouse", exported.get(1).name());
+        verify(entityManager, times(1)).detach(product1);
+        verify(entityManager, times(1)).detach(product2);
+        verify(productRepository, never()).findAll();
+    }
+
+    @Test
+    @DisplayName("Should search products by relevance and report whether a next page exists")
+    void shouldSearchProductsAndReportNextPage() {
+        // Given: se piden 1 resultado y el repositorio devuelve 2 (size + 1)
+        when(productRepository.search("laptop", 2, 0L)).thenReturn(List.of(
+                searchView(1L, "Laptop"), searchView(2L, "Laptop Stand")));
+
+        // When
+        SearchPageDTO<ProductDTO> result = productService.searchProducts("  laptop ", 0, 1);
+
+        // Then
+        assertEquals(1, result.items().size());
+        assertEquals("Laptop", result.items().get(0).name());
+        assertTrue(result.hasNext());
+        verify(productRepository, times(1)).search("laptop", 2, 0L);
     }
 
     @Test
     @DisplayName("Should return product by ID successfully")
     void shouldReturnProductByIdSuccessfully() {
         // Given
-        when(productRepository.findById(1L)).thenReturn(Optional.of(product1));
+        when(productRepository.findDTOById(1L)).thenReturn(Optional.of(productDTO1));
 
         // When
         ProductDTO result = productService.getProductById(1L);
@@ -133,21 +340,72 @@ public class ProductServiceTest {
         // Then
         assertNotNull(result);
         assertEquals("Laptop", result.name());
-        verify(productRepository, times(1)).findById(1L);
+        verify(productRepository, times(1)).findDTOById(1L);
+        verify(productRepository, never()).findById(anyLong());
     }
 
     @Test
     @DisplayName("Should throw ResourceNotFoundException when getting product by non-existing ID")
     void shouldThrowResourceNotFoundExceptionOnGetNonExistingId() {
         // Given
-        when(productRepository.findById(99L)).thenReturn(Optional.empty());
+        when(productRepository.findDTOById(99L)).thenReturn(Optional.empty());
+
+        // When & Then
+        ResourceNotFoundException exception = assertThrows(ResourceNotFoundException.class, () -> {
+            productService.getProductById(99L);
+        });
+        assertEquals("Producto no encontrado con ID: 99", exception.getMessage());
+        verify(productRepository, times(1)).findDTOById(99L);
+        verify(idBloomFilter, times(1)).recordFalsePositive(IdBloomFilter.PRODUCTS);
+    }
+
+    @Test
+    @DisplayName("Should not query the database for ids the Bloom filter rules out")
+    void shouldSkipDatabaseForIdsRuledOutByBloomFilter() {
+        // Given
+        when(idBloomFilter.isDefinitelyAbsent(IdBloomFilter.PRODUCTS, 99L)).thenReturn(true);
 
         // When & Then
         ResourceNotFoundException exception = assertThrows(ResourceNotFoundException.class, () -> {
             productService.getProductById(99L);
         });
         assertEquals("Producto no encontrado con ID: 99", exception.getMessage());
-        verify(productRepository, times(1)).findById(99L);
+        verify(productRepository, never()).findDTOById(anyLong());
+    }
+
+    @Test
+    @DisplayName("Should batch-get products from cache and DB preserving request order")
+    void shouldBatchGetProductsFromCacheAndDatabaseInRequestOrder() {
+        // Given: el 2 está en caché, el 1 en BD y el 99 no existe
+        ProductDTO productDTO2 = new ProductDTO(2L, "Mouse", "Gaming mouse", new BigDecimal("50.00"), 50, 1L);
+        List<Long> ids = List.of(2L, 99L, 1L, 2L);
+        when(redisBatchCache.multiGet(ProductService.CACHE_NAME, List.of(2L, 99L, 1L), ProductDTO.class))
+                .thenReturn(Map.of(2L, productDTO2));
+        when(productRepository.findDTOsByIdIn(List.of(99L, 1L))).thenReturn(List.of(productDTO1));
+
+        // When
+        BatchGetResponseDTO<ProductDTO> result = productService.batchGetProducts(ids);
+
+        // Then
+        assertEquals(List.of(productDTO2, productDTO1), result.items());
+        assertEquals(List.of(99L), result.notFound());
+        verify(productRepository, times(1)).findDTOsByIdIn(List.of(99L, 1L)); // Una sola consulta IN para los fallos
+        verify(redisBatchCache, times(1)).multiPut(ProductService.CACHE_NAME, Map.of(1L, productDTO1)); // Relleno de la caché
+    }
+
+    @Test
+    @DisplayName("Should not query the DB when every batch-get id is cached")
+    void shouldNotQueryDatabaseWhenAllBatchIdsAreCached() {
+        // Given
+        when(redisBatchCache.multiGet(ProductService.CACHE_NAME, List.of(1L), ProductDTO.class)).thenReturn(Map.of(1L, productDTO1));
+
+        // When
+        BatchGetResponseDTO<ProductDTO> result = productService.batchGetProducts(List.of(1L));
+
+        // Then
+        assertEquals(List.of(productDTO1), result.items());
+        assertTrue(result.notFound().isEmpty());
+        verify(productRepository, never()).findDTOsByIdIn(anyCollection());
     }
 
     @Test
@@ -158,62 +416,65 @@ public class ProductServiceTest {
         Product updatedProductEntity = new Product(1L, "Laptop Pro", "New desc", new BigDecimal("1500.00"), 8, category1);
 
         when(productRepository.findById(1L)).thenReturn(Optional.of(product1));
-        when(productRepository.existsByName("Laptop Pro")).thenReturn(false);
-        when(categoryRepository.findById(1L)).thenReturn(Optional.of(category1));
-        when(productRepository.save(any(Product.class))).thenReturn(updatedProductEntity);
+        when(categoryRepository.getReferenceById(1L)).thenReturn(category1);
+        when(productRepository.saveAndFlush(any(Product.class))).thenReturn(updatedProductEntity);
+        when(productRepository.incrementVersion(1L, null)).thenReturn(Optional.of(1L));
 
         // When
-        ProductDTO result = productService.updateProduct(1L, updatedProductDTO);
+        ProductDTO result = productService.updateProduct(1L, updatedProductDTO, null);
 
         // Then
         assertNotNull(result);
         assertEquals("Laptop Pro", result.name());
         assertEquals(new BigDecimal("1500.00"), result.price());
         verify(productRepository, times(1)).findById(1L);
-        verify(productRepository, times(1)).existsByName("Laptop Pro");
-        verify(categoryRepository, times(1)).findById(1L);
-        verify(productRepository, times(1)).save(any(Product.class));
+        verify(productRepository, never()).existsByName(anyString());
+        verify(categoryRepository, never()).findById(anyLong());
+        verify(productRepository, times(1)).saveAndFlush(any(Product.class));
     }
 
     @Test
     @DisplayName("Should delete an existing product successfully")
     void shouldDeleteProductSuccessfully() {
         // Given
-        when(productRepository.existsById(1L)).thenReturn(true);
-        doNothing().when(productRepository).deleteById(1L);
+        when(productRepository.deleteRowById(1L)).thenReturn(Optional.of(1L)); // Categoría del producto borrado
 
         // When
         productService.deleteProduct(1L);
 
         // Then
-        verify(productRepository, times(1)).existsById(1L);
-        verify(productRepository, times(1)).deleteById(1L);
+        verify(productRepository, times(1)).deleteRowById(1L);
+        verify(productRepository, never()).existsById(anyLong()); // Un solo DELETE
+        verify(suggestionIndex, times(1)).remove(1L);
+        verify(outboxWriter, times(1)).record(OutboxWriter.PRODUCT, 1L, "ProductDeleted", Map.of("id", 1L));
+        verify(cacheTags, times(1)).invalidate(CacheTags.ALL_PRODUCTS, CacheTags.category(1L));
     }
 
     @Test
     @DisplayName("Should throw ResourceNotFoundException when deleting non-existing product")
     void shouldThrowResourceNotFoundExceptionOnDeleteNonExisting() {
         // Given
-        when(productRepository.existsById(99L)).thenReturn(false);
+        when(productRepository.deleteRowById(99L)).thenReturn(Optional.empty());
 
         // When & Then
         ResourceNotFoundException exception = assertThrows(ResourceNotFoundException.class, () -> {
             productService.deleteProduct(99L);
         });
         assertEquals("Producto no encontrado con ID: 99", exception.getMessage());
-        verify(productRepository, times(1)).existsById(99L);
-        verify(productRepository, never()).deleteById(anyLong());
+        verify(productRepository, times(1)).deleteRowById(99L);
+        verify(suggestionIndex, never()).remove(anyLong());
+        verifyNoInteractions(outboxWriter, cacheTags);
     }
 
     @Test
     @DisplayName("Should return products by category ID successfully")
     void shouldReturnProductsByCategoryIdSuccessfully() {
         // Given
-        Product product2 = new Product(2L, "Headphones", "Noise cancelling", new BigDecimal("200.00"), 30, category1);
-        List<Product> products = Arrays.asList(product1, product2);
+        ProductDTO productDTO2 = new ProductDTO(2L, "Headphones", "Noise cancelling", new BigDecimal("200.00"), 30, 1L);
+        List<ProductDTO> products = Arrays.asList(productDTO1, productDTO2);
 
         when(categoryRepository.existsById(1L)).thenReturn(true);
-        when(productRepository.findByCategoryId(1L)).thenReturn(products);
+        when(productRepository.findDTOsByCategoryId(1L)).thenReturn(products);
 
         // When
         List<ProductDTO> result = productService.getProductsByCategoryId(1L);
@@ -224,7 +485,137 @@ public class ProductServiceTest {
         assertEquals("Laptop", result.get(0).name());
         assertEquals("Headphones", result.get(1).name());
         verify(categoryRepository, times(1)).existsById(1L);
-        verify(productRepository, times(1)).findByCategoryId(1L);
+        verify(productRepository, times(1)).findDTOsByCategoryId(1L);
+        verify(redisBatchCache, times(1)).putAllIfAbsentInBackground(eq(ProductService.CACHE_NAME),
+                eq(Map.of(1L, products.get(0), 2L, products.get(1))), any());
+    }
+
+    @Test
+    @DisplayName("Should return a cursor page with nextCursor when more products exist")
+    void shouldReturnProductsPageWithNextCursor() {
+        // Given: se piden 2 productos y el repositorio devuelve 3 (limit + 1), ya proyectados a DTO
+        ProductDTO productDTO2 = new ProductDTO(2L, "Mouse", "Gaming mouse", new BigDecimal("50.00"), 50, 1L);
+        ProductDTO productDTO3 = new ProductDTO(3L, "Monitor", "4K monitor", new BigDecimal("300.00"), 5, 1L);
+        when(productRepository.findDTOsByIdGreaterThan(0L, Limit.of(3)))
+                .thenReturn(Arrays.asList(productDTO1, productDTO2, productDTO3));
+        stockEngine.load(2L, 48); // Stock vivo por delante de la columna
+
+        // When
+        CursorPageDTO<ProductDTO> result = productService.getProductsPage(0L, 2);
+
+        // Then
+        assertEquals(2, result.items().size());
+        assertEquals("Laptop", result.items().get(0).name());
+        assertEquals("Mouse", result.items().get(1).name());
+        assertEquals(48, result.items().get(1).stock());
+        assertEquals(2L, result.nextCursor());
+        verify(productRepository, times(1)).findDTOsByIdGreaterThan(0L, Limit.of(3));
+        verify(productRepository, never()).findAll();
+    }
+
+    @Test
+    @DisplayName("Should return a sparse fieldset page with live stock and nextCursor taken from the projected id")
+    void shouldReturnSparseProductFieldsPage() {
+        // Given: se piden 1 fila y el repositorio devuelve 2 (limit + 1); el stock vivo del 1 ya no es el de la columna
+        List<String> fields = List.of("id", "name", "stock");
+        List<Map<String, Object>> rows = List.of(
+                new LinkedHashMap<>(Map.of("id", 1L, "name", "Laptop", "stock", 10)),
+                new LinkedHashMap<>(Map.of("id", 2L, "name", "Mouse", "stock", 50)));
+        when(productRepository.findFieldsBy(any(), eq(fields), eq(2))).thenReturn(rows);
+        stockEngine.load(1L, 7);
+
+        // When
+        CursorPageDTO<Map<String, Object>> result = productService.getProductFieldsPage(fields, 0L, 1);
+
+        // Then
+        assertEquals(1, result.items().size());
+        assertEquals(7, result.items().get(0).get("stock"));
+        assertEquals(1L, result.nextCursor());
+        verify(productRepository, never()).findDTOsByIdGreaterThan(anyLong(), any(Limit.class));
+    }
+
+    @Test
+    @DisplayName("Should return the last cursor page without nextCursor")
+    void shouldReturnLastProductsPageWithoutNextCursor() {
+        // Given
+        when(productRepository.findDTOsByIdGreaterThan(0L, Limit.of(3))).thenReturn(List.of(productDTO1));
+
+        // When
+        CursorPageDTO<ProductDTO> result = productService.getProductsPage(0L, 2);
+
+        // Then
+        assertEquals(1, result.items().size());
+        assertNull(result.nextCursor());
+    }
+
+    @Test
+    @DisplayName("Should return filtered products with facets on the first page")
+    void shouldFilterProductsWithFacetsOnFirstPage() {
+        // Given: se piden 1 producto y el repositorio devuelve 2 (limit + 1)
+        ProductDTO productDTO2 = new ProductDTO(2L, "Mouse", "Gaming mouse", new BigDecimal("50.00"), 50, 1L);
+        ProductFacetsDTO facets = new ProductFacetsDTO(Map.of(1L, 2L), Map.of("50-100", 1L, "500+", 1L), 2L, 0L);
+        when(productRepository.findDTOsBy(any(), eq(0L), eq(2))).thenReturn(List.of(productDTO1, productDTO2));
+        when(productRepository.countFacets(any())).thenReturn(facets);
+
+        // When
+        ProductFilterResultDTO<ProductDTO> result = productService.filterProducts(
+                new ProductFilterDTO(1L, new BigDecimal("10"), null, true), 0L, 1);
+
+        // Then
+        assertEquals(List.of(productDTO1), result.items());
+        assertEquals(1L, result.nextCursor());
+        assertEquals(facets, result.facets());
+        verify(productRepository, times(1)).countFacets(any()); // Una sola consulta agregada para todas las facetas
+    }
+
+    @Test
+    @DisplayName("Should not recompute facets on subsequent filtered pages")
+    void shouldNotRecomputeFacetsOnSubsequentFilteredPages() {
+        // Given
+        when(productRepository.findDTOsBy(any(), eq(1L), eq(3))).thenReturn(List.of());
+
+        // When
+        ProductFilterResultDTO<ProductDTO> result = productService.filterProducts(
+                new ProductFilterDTO(null, null, null, false), 1L, 2);
+
+        // Then
+        assertTrue(result.items().isEmpty());
+        assertNull(result.nextCursor());
+        assertNull(result.facets());
+        verify(productRepository, never()).countFacets(any());
+    }
+
+    @Test
+    @DisplayName("Should return only the requested fields, with live stock and facets, in the filtered listing")
+    void shouldFilterProductFieldsWithFacets() {
+        // Given: se piden 1 fila y el repositorio devuelve 2 (limit + 1)
+        Map<String, Object> row1 = new LinkedHashMap<>(Map.of("id", 1L, "stock", 10));
+        Map<String, Object> row2 = new LinkedHashMap<>(Map.of("id", 2L, "stock", 50));
+        ProductFacetsDTO facets = new ProductFacetsDTO(Map.of(1L, 2L), Map.of("500+", 2L), 2L, 0L);
+        when(productRepository.findFieldsBy(any(), eq(List.of("id", "stock")), eq(2))).thenReturn(List.of(row1, row2));
+        when(productRepository.countFacets(any())).thenReturn(facets);
+        stockEngine.load(1L, 4);
+
+        // When
+        ProductFilterResultDTO<Map<String, Object>> result = productService.filterProductFields(
+                new ProductFilterDTO(1L, null, null, true), List.of("id", "stock"), 0L, 1);
+
+        // Then
+        assertEquals(List.of(Map.of("id", 1L, "stock", 4)), result.items());
+        assertEquals(1L, result.nextCursor());
+        assertEquals(facets, result.facets());
+        verify(productRepository, never()).findDTOsBy(any(), anyLong(), anyInt());
+    }
+
+    @Test
+    @DisplayName("Should throw ResourceNotFoundException when paging products of a non-existing category")
+    void shouldThrowResourceNotFoundExceptionOnProductsPageByNonExistingCategory() {
+        // Given
+        when(categoryRepository.existsById(99L)).thenReturn(false);
+
+        // When & Then
+        assertThrows(ResourceNotFoundException.class, () -> productService.getProductsByCategoryIdPage(99L, 0L, 10));
+        verify(productRepository, never()).findDTOsByCategoryIdAndIdGreaterThan(anyLong(), anyLong(), any(Limit.class));
     }
 
     @Test
@@ -239,7 +630,7 @@ public class ProductServiceTest {
         });
         assertEquals("Categoría no encontrada con ID: 99", exception.getMessage());
         verify(categoryRepository, times(1)).existsById(99L);
-        verify(productRepository, never()).findByCategoryId(anyLong());
+        verify(productRepository, never()).findDTOsByCategoryId(anyLong());
     }
 
     @Test
@@ -248,16 +639,16 @@ public class ProductServiceTest {
         Long productId = 101L;
         Category newCategory = new Category(3L, "Office", "Office supplies");
         Product existingProduct = new Product(productId, "Old Product Name", "Old Desc", new BigDecimal("100.00"), 5, category1);
-        ProductPartialUpdateDTO patchDTO = new ProductPartialUpdateDTO("New Name", "New Desc", new BigDecimal("150.00"), 10, newCategory.getId());
+        ProductPartialUpdateDTO patchDTO = new ProductPartialUpdateDTO("New Name", "New Desc", new BigDecimal("150.00"), 10, newCategory.getId(), null);
         Product updatedProduct = new Product(productId, "New Name", "New Desc", new BigDecimal("150.00"), 10, newCategory);
 
         // Mockear el comportamiento del repositorio
         when(productRepository.findById(productId)).thenReturn(Optional.of(existingProduct));
-        when(productRepository.existsByName("New Name")).thenReturn(false);
-        when(categoryRepository.findById(newCategory.getId())).thenReturn(Optional.of(newCategory));
-        when(productRepository.save(any(Product.class))).thenReturn(updatedProduct);
+        when(categoryRepository.getReferenceById(newCategory.getId())).thenReturn(newCategory);
+        when(productRepository.saveAndFlush(any(Product.class))).thenReturn(updatedProduct);
+        when(productRepository.incrementVersion(productId, null)).thenReturn(Optional.of(1L));
 
-        ProductDTO resultDTO = productService.patchProduct(productId, patchDTO);
+        ProductDTO resultDTO = productService.patchProduct(productId, patchDTO, null);
 
         // Verificar aserciones
         assertThat(resultDTO).isNotNull();
@@ -270,9 +661,12 @@ public class ProductServiceTest {
 
         // Verificar que los métodos del repositorio fueron llamados correctamente
         verify(productRepository, times(1)).findById(productId);
-        verify(productRepository, times(1)).existsByName("New Name");
-        verify(categoryRepository, times(1)).findById(newCategory.getId());
-        verify(productRepository, times(1)).save(existingProduct); // save recibe la entidad modificada
+        verify(productRepository, never()).existsByName(anyString()); // Lo comprueba la restricción única
+        verify(categoryRepository, never()).findById(anyLong()); // Referencia sin SELECT
+        verify(productRepository, times(1)).saveAndFlush(existingProduct); // save recibe la entidad modificada
+        assertThat(existingProduct.getCategory()).isSameAs(newCategory);
+        // Cambió de categoría: se invalidan los listados de la anterior y de la nueva
+        verify(cacheTags, times(1)).invalidate(Set.of(CacheTags.ALL_PRODUCTS, CacheTags.category(1L), CacheTags.category(3L)));
     }
 
     @Test
@@ -280,39 +674,43 @@ public class ProductServiceTest {
     void patchProduct_shouldUpdateOnlyProductStock() {
         Long productId = 101L;
         Product existingProduct = new Product(productId, "Laptop", "Powerful laptop", new BigDecimal("1200.00"), 10, category1);
-        ProductPartialUpdateDTO patchDTO = new ProductPartialUpdateDTO(null, null, null, 15, null); // Solo stock
+        ProductPartialUpdateDTO patchDTO = new ProductPartialUpdateDTO(null, null, null, 15, null, null); // Solo stock
         Product updatedProduct = new Product(productId, "Laptop", "Powerful laptop", new BigDecimal("1200.00"), 15, category1);
 
         when(productRepository.findById(productId)).thenReturn(Optional.of(existingProduct));
-        when(productRepository.save(any(Product.class))).thenReturn(updatedProduct);
+        when(productRepository.saveAndFlush(any(Product.class))).thenReturn(updatedProduct);
+        when(productRepository.incrementVersion(productId, null)).thenReturn(Optional.of(1L));
 
-        ProductDTO resultDTO = productService.patchProduct(productId, patchDTO);
+        ProductDTO resultDTO = productService.patchProduct(productId, patchDTO, null);
 
         assertThat(resultDTO).isNotNull();
         assertThat(resultDTO.id()).isEqualTo(productId);
         assertThat(resultDTO.stock()).isEqualTo(15);
+        // Sin UPDATE de Hibernate: la versión se incrementa con una sola sentencia, sin bloqueo pesimista
+        assertThat(resultDTO.version()).isEqualTo(1L);
+        verify(entityManager).detach(updatedProduct);
         assertThat(resultDTO.name()).isEqualTo("Laptop"); // Otros campos deben permanecer
         assertThat(resultDTO.price()).isEqualByComparingTo(new BigDecimal("1200.00"));
 
         verify(productRepository, times(1)).findById(productId);
-        verify(productRepository, times(1)).save(existingProduct);
-        verify(categoryRepository, never()).findById(anyLong()); // No debe buscar categoría si no se pasa
-        verify(productRepository, never()).existsByName(anyString()); // No debe verificar nombre si no cambia
+        verify(productRepository, times(1)).saveAndFlush(existingProduct);
+        verify(categoryRepository, never()).getReferenceById(anyLong()); // La categoría no cambia
+        verify(productRepository, never()).existsByName(anyString());
     }
 
     @Test
     @DisplayName("patchProduct should throw ResourceNotFoundException if product does not exist")
     void patchProduct_shouldThrowResourceNotFoundExceptionWhenProductNotFound() {
         Long nonExistentId = 999L;
-        ProductPartialUpdateDTO patchDTO = new ProductPartialUpdateDTO("Any Name", null, null, null, null);
+        ProductPartialUpdateDTO patchDTO = new ProductPartialUpdateDTO("Any Name", null, null, null, null, null);
 
         when(productRepository.findById(nonExistentId)).thenReturn(Optional.empty());
 
         assertThrows(ResourceNotFoundException.class, () ->
-                productService.patchProduct(nonExistentId, patchDTO));
+                productService.patchProduct(nonExistentId, patchDTO, null));
 
         verify(productRepository, times(1)).findById(nonExistentId);
-        verify(productRepository, never()).save(any(Product.class));
+        verify(productRepository, never()).saveAndFlush(any(Product.class));
     }
 
     @Test
@@ -320,17 +718,17 @@ public class ProductServiceTest {
     void patchProduct_shouldThrowDuplicateResourceExceptionWhenNewNameExists() {
         Long productId = 101L;
         Product existingProduct = new Product(productId, "Laptop", "Description", new BigDecimal("100.00"), 5, category1);
-        ProductPartialUpdateDTO patchDTO = new ProductPartialUpdateDTO("Existing Product Name", null, null, null, null);
+        ProductPartialUpdateDTO patchDTO = new ProductPartialUpdateDTO("Existing Product Name", null, null, null, null, null);
 
         when(productRepository.findById(productId)).thenReturn(Optional.of(existingProduct));
-        when(productRepository.existsByName("Existing Product Name")).thenReturn(true); // Nombre ya existe
+        when(productRepository.saveAndFlush(existingProduct)).thenThrow(constraintViolation("23505")); // Nombre ya existe
 
-        assertThrows(DuplicateResourceException.class, () ->
-                productService.patchProduct(productId, patchDTO));
+        DuplicateResourceException exception = assertThrows(DuplicateResourceException.class, () ->
+                productService.patchProduct(productId, patchDTO, null));
 
+        assertEquals("El producto con el nombre 'Existing Product Name' ya existe.", exception.getMessage());
         verify(productRepository, times(1)).findById(productId);
-        verify(productRepository, times(1)).existsByName("Existing Product Name");
-        verify(productRepository, never()).save(any(Product.class));
+        verify(suggestionIndex, never()).put(anyLong(), anyString());
     }
 
     @Test
@@ -339,17 +737,18 @@ public class ProductServiceTest {
         Long productId = 101L;
         Long nonExistentCategoryId = 99L;
         Product existingProduct = new Product(productId, "Laptop", "Description", new BigDecimal("100.00"), 5, category1);
-        ProductPartialUpdateDTO patchDTO = new ProductPartialUpdateDTO(null, null, null, null, nonExistentCategoryId);
+        ProductPartialUpdateDTO patchDTO = new ProductPartialUpdateDTO(null, null, null, null, nonExistentCategoryId, null);
 
         when(productRepository.findById(productId)).thenReturn(Optional.of(existingProduct));
-        when(categoryRepository.findById(nonExistentCategoryId)).thenReturn(Optional.empty());
+        when(categoryRepository.getReferenceById(nonExistentCategoryId))
+                .thenReturn(new Category(nonExistentCategoryId, null, null));
+        when(productRepository.saveAndFlush(existingProduct)).thenThrow(constraintViolation("23503")); // FK
 
-        assertThrows(ResourceNotFoundException.class, () ->
-                productService.patchProduct(productId, patchDTO));
+        ResourceNotFoundException exception = assertThrows(ResourceNotFoundException.class, () ->
+                productService.patchProduct(productId, patchDTO, null));
 
+        assertEquals("Categoría no encontrada con ID: 99", exception.getMessage());
         verify(productRepository, times(1)).findById(productId);
-        verify(categoryRepository, times(1)).findById(nonExistentCategoryId);
-        verify(productRepository, never()).save(any(Product.class));
     }
 
     @Test
@@ -357,12 +756,12 @@ public class ProductServiceTest {
     void patchProduct_shouldNotThrowDuplicateResourceExceptionIfNameToCurrentName() {
         Long productId = 101L;
         Product existingProduct = new Product(productId, "Laptop", "Description", new BigDecimal("100.00"), 5, category1);
-        ProductPartialUpdateDTO patchDTO = new ProductPartialUpdateDTO("Laptop", "New Desc", null, null, null);
+        ProductPartialUpdateDTO patchDTO = new ProductPartialUpdateDTO("Laptop", "New Desc", null, null, null, null);
 
         when(productRepository.findById(productId)).thenReturn(Optional.of(existingProduct));
-        when(productRepository.save(any(Product.class))).thenReturn(existingProduct);
+        when(productRepository.saveAndFlush(any(Product.class))).thenReturn(existingProduct);
 
-        ProductDTO resultDTO = productService.patchProduct(productId, patchDTO);
+        ProductDTO resultDTO = productService.patchProduct(productId, patchDTO, null);
 
         assertThat(resultDTO).isNotNull();
         assertThat(resultDTO.name()).isEqualTo("Laptop");
@@ -370,7 +769,7 @@ public class ProductServiceTest {
 
         verify(productRepository, times(1)).findById(productId);
         verify(productRepository, never()).existsByName(anyString()); // No se llama existsByName
-        verify(productRepository, times(1)).save(existingProduct);
+        verify(productRepository, times(1)).saveAndFlush(existingProduct);
     }
 
     @Test
@@ -378,12 +777,12 @@ public class ProductServiceTest {
     void patchProduct_shouldDoNothingIfPatchDTOIsEmpty() {
         Long productId = 101L;
         Product existingProduct = new Product(productId, "Laptop", "Powerful laptop", new BigDecimal("1200.00"), 10, category1);
-        ProductPartialUpdateDTO patchDTO = new ProductPartialUpdateDTO(null, null, null, null, null); // DTO vacío
+        ProductPartialUpdateDTO patchDTO = new ProductPartialUpdateDTO(null, null, null, null, null, null); // DTO vacío
 
         when(productRepository.findById(productId)).thenReturn(Optional.of(existingProduct));
-        when(productRepository.save(any(Product.class))).thenReturn(existingProduct); // Simula el guardado
+        when(productRepository.saveAndFlush(any(Product.class))).thenReturn(existingProduct); // Simula el guardado
 
-        ProductDTO resultDTO = productService.patchProduct(productId, patchDTO);
+        ProductDTO resultDTO = productService.patchProduct(productId, patchDTO, null);
 
         assertThat(resultDTO).isNotNull();
         assertThat(resultDTO.name()).isEqualTo("Laptop");
@@ -394,8 +793,140 @@ public class ProductServiceTest {
 
         verify(productRepository, times(1)).findById(productId);
         verify(productRepository, never()).existsByName(anyString());
-        verify(categoryRepository, never()).findById(anyLong());
-        verify(productRepository, times(1)).save(existingProduct);
+        verify(categoryRepository, never()).getReferenceById(anyLong());
+        verify(productRepository, times(1)).saveAndFlush(existingProduct);
+    }
+
+    @Test
+    @DisplayName("updateProduct should throw PreconditionFailedException when If-Match version is stale")
+    void updateProduct_shouldThrowPreconditionFailedWhenVersionIsStale() {
+        product1.setVersion(3L);
+        when(productRepository.findById(1L)).thenReturn(Optional.of(product1));
+
+        PreconditionFailedException exception = assertThrows(PreconditionFailedException.class, () ->
+                productService.updateProduct(1L, productDTO1, "2.10"));
+
+        assertTrue(exception.getMessage().contains("revisión 3.10"));
+        verify(productRepository, never()).saveAndFlush(any(Product.class));
+    }
+
+    @Test
+    @DisplayName("patchProduct should apply the change when If-Match version matches")
+    void patchProduct_shouldApplyWhenVersionMatches() {
+        product1.setVersion(3L);
+        ProductPartialUpdateDTO patchDTO = new ProductPartialUpdateDTO(null, null, null, 20, null, null);
+        when(productRepository.findById(1L)).thenReturn(Optional.of(product1));
+        when(productRepository.saveAndFlush(product1)).thenReturn(product1);
+        when(productRepository.incrementVersion(1L, 3L)).thenReturn(Optional.of(4L));
+
+        ProductDTO result = productService.patchProduct(1L, patchDTO, "3.10");
+
+        assertThat(result.stock()).isEqualTo(20);
+        assertThat(result.version()).isEqualTo(4L);
+        verify(productRepository, times(1)).saveAndFlush(product1);
+    }
+
+    @Test
+    @DisplayName("patchProduct should fail with a version conflict when another write bumped the version first")
+    void patchProduct_shouldFailWhenVersionChangedBeforeBump() {
+        product1.setVersion(3L);
+        when(productRepository.findById(1L)).thenReturn(Optional.of(product1));
+        when(productRepository.saveAndFlush(product1)).thenReturn(product1);
+        when(productRepository.incrementVersion(1L, 3L)).thenReturn(Optional.empty()); // Ya no está en la versión 3
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () ->
+                productService.patchProduct(1L, new ProductPartialUpdateDTO(null, null, null, 20, null, null), "3.10"));
+        verify(entityManager, never()).detach(product1);
+    }
+
+    @Test
+    @DisplayName("patchProduct should add stockDelta to the current stock and reject negative results")
+    void patchProduct_shouldApplyStockDelta() {
+        when(productRepository.findById(1L)).thenReturn(Optional.of(product1));
+        when(productRepository.saveAndFlush(product1)).thenReturn(product1);
+
+        ProductDTO result = productService.patchProduct(1L, new ProductPartialUpdateDTO(null, null, null, null, null, -4), null);
+        assertThat(result.stock()).isEqualTo(6);
+
+        assertThrows(InvalidFieldException.class, () ->
+                productService.patchProduct(1L, new ProductPartialUpdateDTO(null, null, null, null, null, -7), null));
+        assertEquals(6, stockEngine.stockOf(1L, -1));
+    }
+
+    @Test
+    @DisplayName("patchProduct should apply stock changes on commit and give back reserved stock on rollback")
+    void patchProduct_shouldApplyStockChangesOnlyOnCommit() {
+        when(productRepository.findById(1L)).thenReturn(Optional.of(product1));
+        when(productRepository.saveAndFlush(product1)).thenReturn(product1);
+        when(productRepository.incrementVersion(1L, null)).thenReturn(Optional.of(1L));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // Stock fijado: la respuesta ya lo refleja, el motor solo al confirmar
+            ProductDTO result = productService.patchProduct(1L, new ProductPartialUpdateDTO(null, null, null, 25, null, null), null);
+            assertThat(result.stock()).isEqualTo(25);
+            assertEquals(10, stockEngine.stockOf(1L, -1));
+            completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+            assertEquals(25, stockEngine.stockOf(1L, -1));
+
+            // Retirada: se reserva en el momento y se devuelve si la transacción se revierte
+            result = productService.patchProduct(1L, new ProductPartialUpdateDTO(null, null, null, null, null, -5), null);
+            assertThat(result.stock()).isEqualTo(20);
+            assertEquals(20, stockEngine.stockOf(1L, -1));
+            completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+            assertEquals(25, stockEngine.stockOf(1L, -1));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("Should update the suggestion index only when the transaction commits")
+    void shouldUpdateSuggestionIndexOnlyOnCommit() {
+        when(categoryRepository.getReferenceById(1L)).thenReturn(category1);
+        when(productRepository.saveAndFlush(any(Product.class))).thenReturn(product1);
+        when(productRepository.deleteRowById(1L)).thenReturn(Optional.of(1L));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // Alta revertida: el autocompletado no llega a ver el producto
+            productService.createProduct(productDTO1);
+            verify(suggestionIndex, never()).put(anyLong(), anyString());
+            completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+            verify(suggestionIndex, never()).put(anyLong(), anyString());
+
+            // Borrado confirmado: se quita del índice al confirmar, no antes
+            productService.deleteProduct(1L);
+            verify(suggestionIndex, never()).remove(anyLong());
+            completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+            verify(suggestionIndex, times(1)).remove(1L);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("refreshFlushedProducts should re-cache flushed products and invalidate their listings")
+    void refreshFlushedProducts_shouldRecacheAndInvalidateListings() {
+        when(productRepository.findDTOsByIdIn(List.of(1L))).thenReturn(List.of(productDTO1));
+        stockEngine.load(1L, 4);
+
+        productService.refreshFlushedProducts(List.of(1L));
+
+        verify(redisBatchCache, times(1)).multiPut(ProductService.CACHE_NAME,
+                Map.of(1L, new ProductDTO(1L, "Laptop", "Powerful laptop", new BigDecimal("1200.00"), 4, 1L)));
+        verify(cacheTags, times(1)).invalidate(Set.of(CacheTags.ALL_PRODUCTS, CacheTags.category(1L)));
+    }
+
+    // Implementación mínima de la proyección de búsqueda para los tests
+    private ProductSearchView searchView(Long id, String name) {
+        return new ProductSearchView() {
+            public Long getId() { return id; }
+            public String getName() { return name; }
+            public String getDescription() { return "desc"; }
+            public BigDecimal getPrice() { return new BigDecimal("10.00"); }
+            public Integer getStock() { return 1; }
+            public Long getCategoryId() { return 1L; }
+            public Long getVersion() { return 0L; }
+        };
     }
 
     // Método de mapeo auxiliar si no está ya en tu test
@@ -404,4 +935,20 @@ public class ProductServiceTest {
                 product.getPrice(), product.getStock(),
                 product.getCategory() != null ? product.getCategory().getId() : null);
     }
+
+    // Simula el final de la transacción: ejecuta las sincronizaciones registradas y deja otra abierta
+    private static void completeTransaction(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationManager.initSynchronization();
+        if (status == TransactionSynchronization.STATUS_COMMITTED) {
+            synchronizations.forEach(TransactionSynchronization::afterCommit);
+        }
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+
+    // Violación de restricción tal como la entrega Spring, con el SQLState de PostgreSQL en la causa
+    private static DataIntegrityViolationException constraintViolation(String sqlState) {
+        return new DataIntegrityViolationException("constraint", new SQLException("constraint", sqlState));
+    }
 }
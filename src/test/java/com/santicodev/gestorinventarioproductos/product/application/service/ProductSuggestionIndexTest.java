@@ -0,0 +1,85 @@
+package com.santicodev.gestorinventarioproductos.product.application.service;
+
+import com.santicodev.gestorinventarioproductos.product.infraestructure.repository.ProductRepository;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductSuggestionDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ProductSuggestionIndex Unit Tests")
+public class ProductSuggestionIndexTest {
+    @Mock
+    private ProductRepository productRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ProductSuggestionIndex suggestionIndex;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        suggestionIndex = new ProductSuggestionIndex(productRepository, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Should rebuild the index from the repository and suggest by normalized prefix")
+    void shouldRebuildAndSuggestByNormalizedPrefix() {
+        // Given
+        when(productRepository.streamSuggestionsBy()).thenReturn(Stream.of(
+                new ProductSuggestionDTO(1L, "Lámpara LED"),
+                new ProductSuggestionDTO(2L, "Laptop"),
+                new ProductSuggestionDTO(3L, "Mouse")));
+
+        // When
+        suggestionIndex.rebuild();
+        List<ProductSuggestionDTO> result = suggestionIndex.suggest("LAMP", 10);
+
+        // Then
+        assertEquals(List.of(new ProductSuggestionDTO(1L, "Lámpara LED")), result); // Sin distinguir mayúsculas ni tildes
+        assertEquals(3.0, meterRegistry.get("products.suggest.index.entries").gauge().value());
+        assertTrue(meterRegistry.get("products.suggest.index.bytes").gauge().value() > 0);
+    }
+
+    @Test
+    @DisplayName("Should return at most limit suggestions in alphabetical order")
+    void shouldLimitSuggestionsInAlphabeticalOrder() {
+        // Given
+        suggestionIndex.put(1L, "Laptop Pro");
+        suggestionIndex.put(2L, "Laptop");
+        suggestionIndex.put(3L, "Lapicero");
+
+        // When
+        List<ProductSuggestionDTO> result = suggestionIndex.suggest("la", 2);
+
+        // Then
+        assertEquals(List.of(new ProductSuggestionDTO(3L, "Lapicero"), new ProductSuggestionDTO(2L, "Laptop")), result);
+    }
+
+    @Test
+    @DisplayName("Should replace the old name on update and forget removed products")
+    void shouldReplaceRenamedProductsAndForgetRemovedOnes() {
+        // Given
+        suggestionIndex.put(1L, "Laptop");
+        suggestionIndex.put(2L, "Mouse");
+
+        // When
+        suggestionIndex.put(1L, "Notebook");
+        suggestionIndex.remove(2L);
+
+        // Then
+        assertTrue(suggestionIndex.suggest("lap", 10).isEmpty());
+        assertTrue(suggestionIndex.suggest("mou", 10).isEmpty());
+        assertEquals(List.of(new ProductSuggestionDTO(1L, "Notebook")), suggestionIndex.suggest("note", 10));
+        assertEquals(1.0, meterRegistry.get("products.suggest.index.entries").gauge().value());
+    }
+}
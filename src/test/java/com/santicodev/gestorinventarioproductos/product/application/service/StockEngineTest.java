@@ -0,0 +1,148 @@
+package com.santicodev.gestorinventarioproductos.product.application.service;
+
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.PendingStockDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("StockEngine Unit Tests")
+public class StockEngineTest {
+    private SimpleMeterRegistry meterRegistry;
+    private StockEngine stockEngine;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        stockEngine = new StockEngine(meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Should never let the stock go below zero and coalesce pending deltas per product")
+    void shouldRejectNegativeStockAndCoalesceDeltas() {
+        // Given
+        stockEngine.load(1L, 5);
+        stockEngine.load(2L, 0);
+
+        // When
+        assertEquals(3, stockEngine.tryAdjust(1L, -2));
+        assertEquals(StockEngine.INSUFFICIENT_STOCK, stockEngine.tryAdjust(1L, -4));
+        assertEquals(0, stockEngine.tryAdjust(1L, -3));
+        assertEquals(StockEngine.INSUFFICIENT_STOCK, stockEngine.tryAdjust(2L, -1));
+        assertEquals(StockEngine.NOT_FOUND, stockEngine.tryAdjust(99L, 1));
+        assertTrue(stockEngine.set(2L, 7));
+
+        // Then: un cambio por producto (el fijado, como valor absoluto), y tras extraerlos no queda nada pendiente
+        List<PendingStockDTO> drained = stockEngine.drainPending().stream()
+                .sorted(Comparator.comparing(PendingStockDTO::productId))
+                .toList();
+        assertEquals(List.of(PendingStockDTO.delta(1L, -5), PendingStockDTO.setTo(2L, 7)), drained);
+        assertEquals(0, stockEngine.pendingCount());
+        assertEquals(2.0, meterRegistry.get("products.stock.engine.entries").gauge().value());
+    }
+
+    @Test
+    @DisplayName("Should restore drained deltas when the flush fails")
+    void shouldRestoreDrainedDeltas() {
+        stockEngine.load(1L, 10);
+        stockEngine.tryAdjust(1L, -4);
+        List<PendingStockDTO> drained = stockEngine.drainPending();
+
+        // Llega otro cambio mientras el volcado falla
+        stockEngine.tryAdjust(1L, -1);
+        stockEngine.restorePending(drained);
+
+        assertEquals(List.of(PendingStockDTO.delta(1L, -5)), stockEngine.drainPending());
+        assertEquals(5, stockEngine.stockOf(1L, -1));
+    }
+
+    @Test
+    @DisplayName("Should flush a set stock as an absolute value that includes later deltas")
+    void shouldFlushSetStockAsAbsoluteValue() {
+        stockEngine.load(1L, 10);
+        stockEngine.set(1L, 25);
+        stockEngine.tryAdjust(1L, -5);
+        List<PendingStockDTO> drained = stockEngine.drainPending();
+        assertEquals(List.of(PendingStockDTO.setTo(1L, 20)), drained);
+
+        // El volcado falla y llega otro delta: se vuelca el valor actual, que ya lo incluye
+        stockEngine.tryAdjust(1L, -1);
+        stockEngine.restorePending(drained);
+
+        assertEquals(List.of(PendingStockDTO.setTo(1L, 19)), stockEngine.drainPending());
+    }
+
+    @Test
+    @DisplayName("Should resync with the database stock keeping undrained deltas")
+    void shouldResyncKeepingUndrainedDeltas() {
+        // Given: otra instancia vendió 8 unidades; aquí queda un delta de -3 sin volcar
+        stockEngine.load(1L, 10);
+        stockEngine.tryAdjust(1L, -3);
+
+        // When & Then
+        assertTrue(stockEngine.resync(1L, 5));
+        assertEquals(2, stockEngine.stockOf(1L, -1));
+        // Si el delta ya no cabe se deja como está: el volcado lo rechazará y se resincronizará después
+        assertFalse(stockEngine.resync(1L, 1));
+        assertEquals(List.of(PendingStockDTO.delta(1L, -3)), stockEngine.drainPending());
+        assertTrue(stockEngine.resync(1L, 1));
+        assertEquals(1, stockEngine.stockOf(1L, -1));
+        // Un valor fijado pendiente de volcar no se pisa
+        stockEngine.set(1L, 30);
+        assertFalse(stockEngine.resync(1L, 1));
+        assertEquals(30, stockEngine.stockOf(1L, -1));
+    }
+
+    @Test
+    @DisplayName("Should keep every entry reachable after growing and removing many products")
+    void shouldGrowAndRemoveKeepingEntriesReachable() {
+        for (long id = 1; id <= 10_000; id++) {
+            stockEngine.load(id, (int) id);
+        }
+        for (long id = 1; id <= 10_000; id += 2) {
+            stockEngine.remove(id);
+        }
+
+        assertEquals(5_000, stockEngine.size());
+        for (long id = 1; id <= 10_000; id++) {
+            assertEquals(id % 2 == 0 ? (int) id : -1, stockEngine.stockOf(id, -1), "producto " + id);
+        }
+    }
+
+    @Test
+    @DisplayName("Should not oversell under concurrent reservations of the same product")
+    void shouldNotOversellUnderConcurrentReservations() throws InterruptedException {
+        stockEngine.load(1L, 1_000);
+        AtomicInteger reserved = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < 8; t++) {
+            executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 500; i++) {
+                    if (stockEngine.tryAdjust(1L, -1) >= 0) {
+                        reserved.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(1_000, reserved.get());
+        assertEquals(0, stockEngine.stockOf(1L, -1));
+        assertEquals(List.of(PendingStockDTO.delta(1L, -1_000)), stockEngine.drainPending());
+    }
+}
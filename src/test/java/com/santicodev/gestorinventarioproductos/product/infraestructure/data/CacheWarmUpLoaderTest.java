@@ -0,0 +1,128 @@
+package com.santicodev.gestorinventarioproductos.product.infraestructure.data;
+
+import com.santicodev.gestorinventarioproductos.category.application.service.CategoryService;
+import com.santicodev.gestorinventarioproductos.category.infraestructure.repository.CategoryRepository;
+import com.santicodev.gestorinventarioproductos.product.application.service.ProductService;
+import com.santicodev.gestorinventarioproductos.product.application.service.StockEngine;
+import com.santicodev.gestorinventarioproductos.product.infraestructure.repository.ProductJdbcRepository;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.CacheTags;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.cache.RedisBatchCache;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CategoryDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("CacheWarmUpLoader Unit Tests")
+public class CacheWarmUpLoaderTest {
+    @Mock
+    private ProductJdbcRepository productJdbcRepository;
+    @Mock
+    private CategoryRepository categoryRepository;
+    @Mock
+    private RedisBatchCache redisBatchCache;
+    @Mock
+    private CacheTags cacheTags;
+    @Mock
+    private StockEngine stockEngine;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(categoryRepository.findAllAsDTO()).thenReturn(List.of(new CategoryDTO(1L, "Periféricos", null, 0L)));
+        lenient().when(stockEngine.stockOf(anyLong(), anyInt())).thenAnswer(invocation -> invocation.getArgument(1));
+        lenient().when(cacheTags.versionOf(any())).thenReturn("0");
+    }
+
+    @Test
+    @DisplayName("Should write products in batches of 500 with SET NX and categories in their own region")
+    void shouldWriteInBatches() throws Exception {
+        // Given
+        products(1200, null);
+
+        // When
+        runner(Duration.ofSeconds(10)).run();
+
+        // Then
+        ArgumentCaptor<Map<Long, ?>> batches = ArgumentCaptor.forClass(Map.class);
+        verify(redisBatchCache, times(3)).putAllIfAbsent(eq(ProductService.CACHE_NAME), batches.capture());
+        assertEquals(List.of(200, 500, 500), batches.getAllValues().stream().map(Map::size).sorted().toList());
+        assertEquals(1200, batches.getAllValues().stream().mapToInt(Map::size).sum());
+        verify(redisBatchCache).putAllIfAbsent(eq(CategoryService.CACHE_NAME), eq(Map.of(1L, new CategoryDTO(1L, "Periféricos", null, 0L))));
+    }
+
+    @Test
+    @DisplayName("Should stop waiting after the timeout and finish the warm-up in the background")
+    void shouldContinueInBackgroundAfterTimeout() throws Exception {
+        // Given: la lectura de productos no termina hasta que se libera
+        CountDownLatch release = new CountDownLatch(1);
+        products(10, release);
+
+        // When
+        long start = System.nanoTime();
+        runner(Duration.ofMillis(100)).run();
+
+        // Then: el arranque continúa sin esperar, y la precarga termina después
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        verify(redisBatchCache, never()).putAllIfAbsent(eq(ProductService.CACHE_NAME), any());
+        release.countDown();
+        verify(redisBatchCache, timeout(5000)).putAllIfAbsent(eq(ProductService.CACHE_NAME), any());
+    }
+
+    @Test
+    @DisplayName("Should skip batches read before a change to their table")
+    void shouldSkipBatchesWhenTagChanges() throws Exception {
+        // Given: un producto cambia (o se borra) mientras se leen los productos
+        when(cacheTags.versionOf(CacheTags.ALL_PRODUCTS)).thenReturn("1", "2");
+        products(10, null);
+
+        // When
+        runner(Duration.ofSeconds(10)).run();
+
+        // Then: las categorías se precargan; los productos leídos antes del cambio no
+        verify(redisBatchCache).putAllIfAbsent(eq(CategoryService.CACHE_NAME), any());
+        verify(redisBatchCache, never()).putAllIfAbsent(eq(ProductService.CACHE_NAME), any());
+    }
+
+    private CommandLineRunner runner(Duration timeout) {
+        return new CacheWarmUpLoader().warmUpCaches(productJdbcRepository, categoryRepository, redisBatchCache, cacheTags,
+                stockEngine, transactionManager, 2, timeout, 0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void products(int count, CountDownLatch release) {
+        doAnswer(invocation -> {
+            if (release != null) {
+                release.await(5, TimeUnit.SECONDS);
+            }
+            Consumer<ProductDTO> consumer = invocation.getArgument(2);
+            LongStream.rangeClosed(1, count)
+                    .forEach(id -> consumer.accept(new ProductDTO(id, "Producto " + id, null, BigDecimal.TEN, 5, 1L, 0L)));
+            return null;
+        }).when(productJdbcRepository).forEachProduct(anyInt(), anyInt(), any(Consumer.class));
+    }
+}
@@ -0,0 +1,97 @@
+package com.santicodev.gestorinventarioproductos.product.infraestructure.data;
+
+import com.santicodev.gestorinventarioproductos.product.application.service.ProductService;
+import com.santicodev.gestorinventarioproductos.product.application.service.StockEngine;
+import com.santicodev.gestorinventarioproductos.product.infraestructure.repository.ProductJdbcRepository;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.PendingStockDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.outbox.OutboxWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@DisplayName("StockFlusher Unit Tests")
+public class StockFlusherTest {
+    private StockEngine stockEngine;
+    private ProductJdbcRepository productJdbcRepository;
+    private OutboxWriter outboxWriter;
+    private ProductService productService;
+    private SimpleMeterRegistry meterRegistry;
+    private StockFlusher stockFlusher;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        stockEngine = new StockEngine(meterRegistry);
+        productJdbcRepository = mock(ProductJdbcRepository.class);
+        outboxWriter = mock(OutboxWriter.class);
+        productService = mock(ProductService.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        stockFlusher = new StockFlusher(stockEngine, productJdbcRepository, transactionTemplate, outboxWriter,
+                productService, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Should report a delta rejected by the database and reload the product from it")
+    void shouldReportRejectedDeltaAndReloadProduct() {
+        // Given: esta instancia cree que quedan 5 unidades y vende 2, pero otra ya dejó la columna en 1
+        stockEngine.load(1L, 5);
+        stockEngine.load(2L, 10);
+        stockEngine.tryAdjust(1L, -2);
+        stockEngine.tryAdjust(2L, 4);
+        when(productJdbcRepository.batchApplyStockChanges(anyList())).thenReturn(Set.of(1L));
+        when(productJdbcRepository.findStocks(Set.of(1L, 2L))).thenReturn(Map.of(1L, 1, 2L, 14));
+
+        // When
+        stockFlusher.flush();
+
+        // Then: solo el cambio aplicado genera evento; el rechazado se cuenta y el motor vuelve a la columna
+        verify(outboxWriter).recordAll(OutboxWriter.PRODUCT, "ProductStockAdjusted", Map.of(2L, PendingStockDTO.delta(2L, 4)));
+        assertEquals(1.0, meterRegistry.get("products.stock.flush.rejected").counter().count());
+        assertEquals(1, stockEngine.stockOf(1L, -1));
+        assertEquals(14, stockEngine.stockOf(2L, -1));
+        assertEquals(0, stockEngine.pendingCount());
+        verify(productService).refreshFlushedProducts(Set.of(1L, 2L));
+    }
+
+    @Test
+    @DisplayName("Should not count deleted products as rejected")
+    void shouldNotCountDeletedProductsAsRejected() {
+        stockEngine.load(3L, 5);
+        stockEngine.tryAdjust(3L, -1);
+        when(productJdbcRepository.batchApplyStockChanges(anyList())).thenReturn(Set.of(3L));
+        when(productJdbcRepository.findStocks(Set.of(3L))).thenReturn(Map.of());
+
+        stockFlusher.flush();
+
+        assertTrue(meterRegistry.find("products.stock.flush.rejected").counters().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should give the drained changes back to the engine when the flush fails")
+    void shouldRestoreChangesWhenFlushFails() {
+        stockEngine.load(1L, 5);
+        stockEngine.set(1L, 8);
+        when(productJdbcRepository.batchApplyStockChanges(anyList()))
+                .thenThrow(new DataAccessResourceFailureException("sin conexión"));
+
+        stockFlusher.flush();
+
+        assertEquals(List.of(PendingStockDTO.setTo(1L, 8)), stockEngine.drainPending());
+        verify(productJdbcRepository, never()).findStocks(any());
+    }
+}
@@ -0,0 +1,102 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.cache;
+
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CategoryDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CursorPageDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("BinaryCacheSerializer Unit Tests")
+public class BinaryCacheSerializerTest {
+    private GenericJackson2JsonRedisSerializer json;
+    private SimpleMeterRegistry meterRegistry;
+    private BinaryCacheSerializer<ProductDTO> serializer;
+
+    @BeforeEach
+    void setUp() {
+        json = new GenericJackson2JsonRedisSerializer();
+        meterRegistry = new SimpleMeterRegistry();
+        serializer = new BinaryCacheSerializer<>("product-by-id", ProductDTO.class, BinaryCodecs.PRODUCT, json, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Should round-trip a product entry in a fraction of the JSON size")
+    void shouldRoundTripProductSmallerThanJson() {
+        // Given
+        CacheEntry entry = new CacheEntry(product(42L), 1_700_000_000_000L, 12);
+
+        // When
+        byte[] binary = serializer.serialize(entry);
+        byte[] jsonBytes = json.serialize(entry);
+
+        // Then
+        assertEquals(entry, serializer.deserialize(binary));
+        assertTrue(binary.length * 3 < jsonBytes.length, "Binario: " + binary.length + " bytes, JSON: " + jsonBytes.length);
+        assertEquals(binary.length, meterRegistry.get("cache.serialized.bytes").tags("cache", "product-by-id", "format", "binary")
+                .summary().totalAmount());
+    }
+
+    @Test
+    @DisplayName("Should round-trip lists and cursor pages, keeping null fields and a null cursor")
+    void shouldRoundTripListsAndPages() {
+        // Given: un producto sin descripción ni versión
+        List<ProductDTO> items = new ArrayList<>(LongStream.rangeClosed(1, 50).mapToObj(BinaryCacheSerializerTest::product).toList());
+        items.add(new ProductDTO(51L, "Sin descripción", null, new BigDecimal("-0.5"), 0, 3L));
+        CacheEntry list = new CacheEntry(items, 1L, 2);
+        CacheEntry page = new CacheEntry(new CursorPageDTO<>(items, 51L), 1L, 2);
+        CacheEntry lastPage = new CacheEntry(new CursorPageDTO<>(new ArrayList<>(items.subList(0, 2)), null), 1L, 2);
+
+        // When & Then
+        assertEquals(list, serializer.deserialize(serializer.serialize(list)));
+        assertEquals(page, serializer.deserialize(serializer.serialize(page)));
+        assertEquals(lastPage, serializer.deserialize(serializer.serialize(lastPage)));
+        assertTrue(serializer.serialize(list).length * 3 < json.serialize(list).length);
+    }
+
+    @Test
+    @DisplayName("Should fall back to JSON for values outside the schema and read legacy JSON entries")
+    void shouldFallBackToJson() {
+        // Given: una vista '?fields=' (mapas) y una entrada escrita en JSON sin byte de formato
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", 1L);
+        row.put("name", "Laptop");
+        CacheEntry sparse = new CacheEntry(new ArrayList<>(List.of(row)), 1L, 2);
+        CacheEntry legacy = new CacheEntry(product(7L), 1L, 2);
+
+        // When
+        CacheEntry read = (CacheEntry) serializer.deserialize(serializer.serialize(sparse));
+
+        // Then
+        assertEquals(List.of(row), read.value());
+        assertEquals(legacy, serializer.deserialize(json.serialize(legacy)));
+        assertEquals(1, meterRegistry.get("cache.serialized.bytes").tags("cache", "product-by-id", "format", "json")
+                .summary().count());
+    }
+
+    @Test
+    @DisplayName("Should round-trip a category entry")
+    void shouldRoundTripCategory() {
+        BinaryCacheSerializer<CategoryDTO> categories =
+                new BinaryCacheSerializer<>("category-by-id", CategoryDTO.class, BinaryCodecs.CATEGORY, json, meterRegistry);
+        CacheEntry entry = new CacheEntry(new CategoryDTO(3L, "Periféricos", "Teclados, ratones y más", 4L), 5L, 6);
+
+        assertEquals(entry, categories.deserialize(categories.serialize(entry)));
+    }
+
+    private static ProductDTO product(long id) {
+        return new ProductDTO(id, "Teclado mecánico " + id, "Teclado RGB con switches rojos", new BigDecimal("149.99"),
+                (int) (id * 7), 2L, id % 5);
+    }
+}
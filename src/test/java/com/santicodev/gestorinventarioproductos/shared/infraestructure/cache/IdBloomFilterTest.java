@@ -0,0 +1,118 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DisplayName("IdBloomFilter Unit Tests")
+public class IdBloomFilterTest {
+    private StringRedisTemplate redisTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private IdBloomFilter idBloomFilter;
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        idBloomFilter = new IdBloomFilter(redisTemplate, meterRegistry, true, 1000, 100, 0.01, Duration.ofHours(6));
+        // Redis no tiene ningún bit a 1: solo cuenta el filtro local
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(List.of(false));
+    }
+
+    @Test
+    @DisplayName("Should never rule out loaded or added ids and rule out most of the others")
+    void shouldRuleOutOnlyMissingIds() {
+        // Given
+        idBloomFilter.load(IdBloomFilter.PRODUCTS, ids -> LongStream.rangeClosed(1, 1000).forEach(ids));
+        idBloomFilter.add(IdBloomFilter.PRODUCTS, 5000L);
+
+        // When
+        long ruledOut = LongStream.rangeClosed(1_000_001, 1_010_000)
+                .filter(id -> idBloomFilter.isDefinitelyAbsent(IdBloomFilter.PRODUCTS, id))
+                .count();
+
+        // Then: sin falsos negativos, y los falsos positivos cerca del 1 % pedido
+        assertTrue(LongStream.rangeClosed(1, 1000).noneMatch(id -> idBloomFilter.isDefinitelyAbsent(IdBloomFilter.PRODUCTS, id)));
+        assertFalse(idBloomFilter.isDefinitelyAbsent(IdBloomFilter.PRODUCTS, 5000L));
+        assertTrue(ruledOut > 9_700, "Descartados: " + ruledOut);
+        assertTrue(meterRegistry.get("cache.bloom.expected.false.positive.rate").tag("region", "products").gauge().value() < 0.02);
+    }
+
+    @Test
+    @DisplayName("Should not rule out anything until the filter is loaded")
+    void shouldNotRuleOutBeforeLoading() {
+        assertFalse(idBloomFilter.isDefinitelyAbsent(IdBloomFilter.CATEGORIES, 42L));
+    }
+
+    @Test
+    @DisplayName("Should trust ids created by other instances that are set in Redis")
+    void shouldConfirmMissesWithRedis() {
+        // Given: el filtro local no tiene el 42, pero Redis tiene todos sus bits a 1
+        idBloomFilter.load(IdBloomFilter.CATEGORIES, ids -> { });
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenReturn(Collections.nCopies(7, true));
+
+        // When & Then
+        assertFalse(idBloomFilter.isDefinitelyAbsent(IdBloomFilter.CATEGORIES, 42L));
+        assertEquals(1.0, meterRegistry.get("cache.bloom.checks").tags("region", "categories", "result", "maybe").counter().count());
+    }
+
+    @Test
+    @DisplayName("Should report the observed false positive rate")
+    void shouldReportObservedFalsePositiveRate() {
+        // Given: un ID descartado y otro que pasó el filtro pero no existía
+        idBloomFilter.load(IdBloomFilter.CATEGORIES, ids -> ids.accept(1L));
+        assertTrue(idBloomFilter.isDefinitelyAbsent(IdBloomFilter.CATEGORIES, 2L));
+        idBloomFilter.recordFalsePositive(IdBloomFilter.CATEGORIES);
+
+        // Then
+        assertEquals(0.5, meterRegistry.get("cache.bloom.false.positive.rate").tag("region", "categories").gauge().value());
+    }
+
+    @Test
+    @DisplayName("Should drop deleted ids on rebuild and ask for one when false positives pile up")
+    void shouldRebuildWithoutDeletedIds() {
+        // Given: se cargan 1000 IDs y después se borra la mitad
+        idBloomFilter.load(IdBloomFilter.PRODUCTS, ids -> LongStream.rangeClosed(1, 1000).forEach(ids));
+        assertFalse(idBloomFilter.needsRebuild(IdBloomFilter.PRODUCTS));
+
+        // When: los borrados pasan el filtro y no existen
+        for (int i = 0; i < 100; i++) {
+            assertFalse(idBloomFilter.isDefinitelyAbsent(IdBloomFilter.PRODUCTS, 501 + i));
+            idBloomFilter.recordFalsePositive(IdBloomFilter.PRODUCTS);
+        }
+
+        // Then: se pide la reconstrucción, y tras ella los borrados se descartan (salvo falsos positivos)
+        assertTrue(idBloomFilter.needsRebuild(IdBloomFilter.PRODUCTS));
+        idBloomFilter.load(IdBloomFilter.PRODUCTS, ids -> LongStream.rangeClosed(1, 500).forEach(ids));
+        assertFalse(idBloomFilter.needsRebuild(IdBloomFilter.PRODUCTS));
+        long ruledOut = LongStream.rangeClosed(501, 1000)
+                .filter(id -> idBloomFilter.isDefinitelyAbsent(IdBloomFilter.PRODUCTS, id))
+                .count();
+        assertTrue(ruledOut > 480, "Descartados: " + ruledOut);
+        assertTrue(LongStream.rangeClosed(1, 500).noneMatch(id -> idBloomFilter.isDefinitelyAbsent(IdBloomFilter.PRODUCTS, id)));
+    }
+
+    @Test
+    @DisplayName("Should ask for a rebuild once the filter is older than the rebuild interval")
+    void shouldRebuildPeriodically() {
+        IdBloomFilter expiring = new IdBloomFilter(redisTemplate, meterRegistry, true, 1000, 100, 0.01, Duration.ZERO);
+        assertFalse(expiring.needsRebuild(IdBloomFilter.CATEGORIES)); // Aún sin la carga inicial
+
+        expiring.load(IdBloomFilter.CATEGORIES, ids -> ids.accept(1L));
+
+        assertTrue(expiring.needsRebuild(IdBloomFilter.CATEGORIES));
+    }
+}
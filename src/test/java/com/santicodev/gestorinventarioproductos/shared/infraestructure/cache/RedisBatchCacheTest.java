@@ -0,0 +1,68 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.cache;
+
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializationContext.SerializationPair;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@DisplayName("RedisBatchCache Unit Tests")
+public class RedisBatchCacheTest {
+    private RedisConnection connection;
+    private RedisStringCommands stringCommands;
+    private TwoTierCacheManager cacheManager;
+    private RedisBatchCache redisBatchCache;
+
+    @BeforeEach
+    void setUp() {
+        RedisConnectionFactory connectionFactory = mock(RedisConnectionFactory.class);
+        connection = mock(RedisConnection.class);
+        stringCommands = mock(RedisStringCommands.class);
+        cacheManager = mock(TwoTierCacheManager.class);
+        when(connectionFactory.getConnection()).thenReturn(connection);
+        when(connection.stringCommands()).thenReturn(stringCommands);
+        when(cacheManager.newEntry(any())).thenAnswer(invocation -> new CacheEntry(invocation.getArgument(0), 0, 0));
+        RedisCacheConfiguration configuration = RedisCacheConfiguration.defaultCacheConfig()
+                .entryTtl(Duration.ofMinutes(10))
+                .serializeValuesWith(SerializationPair.fromSerializer(new GenericJackson2JsonRedisSerializer()));
+        redisBatchCache = new RedisBatchCache(connectionFactory, new CacheRegions(configuration, Map.of()), cacheManager);
+    }
+
+    @Test
+    @DisplayName("Should write warm-up entries in one pipeline with SET NX and leave L1 untouched")
+    void shouldPutAllIfAbsentWithSetNx() {
+        // When
+        redisBatchCache.putAllIfAbsent("product-by-id", Map.of(1L, product(1L), 2L, product(2L)));
+
+        // Then
+        verify(connection).openPipeline();
+        verify(stringCommands).set(eq("product-by-id::1".getBytes(StandardCharsets.UTF_8)), any(byte[].class),
+                eq(Expiration.from(Duration.ofMinutes(10))), eq(SetOption.ifAbsent()));
+        verify(stringCommands).set(eq("product-by-id::2".getBytes(StandardCharsets.UTF_8)), any(byte[].class),
+                eq(Expiration.from(Duration.ofMinutes(10))), eq(SetOption.ifAbsent()));
+        verify(connection).closePipeline();
+        verify(cacheManager, never()).putLocal(any(), any(), any());
+        verify(cacheManager, never()).publishEvict(any(), anyCollection());
+    }
+
+    private static ProductDTO product(Long id) {
+        return new ProductDTO(id, "Producto " + id, null, BigDecimal.TEN, 5, 1L, 0L);
+    }
+}
@@ -0,0 +1,263 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.cache;
+
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.CursorPageDTO;
+import com.santicodev.gestorinventarioproductos.shared.infraestructure.dto.ProductDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.mockito.ArgumentCaptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.annotation.AnnotationCacheOperationSource;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@DisplayName("TwoTierCache Unit Tests")
+public class TwoTierCacheTest {
+    private ConcurrentMapCacheManager remoteCacheManager;
+    private StringRedisTemplate redisTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private TwoTierCacheManager cacheManager;
+
+    @BeforeEach
+    void setUp() {
+        remoteCacheManager = new ConcurrentMapCacheManager("products");
+        redisTemplate = mock(StringRedisTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        cacheManager = new TwoTierCacheManager(remoteCacheManager, redisTemplate, meterRegistry, 100, Duration.ofMinutes(5),
+                Duration.ZERO, new CacheRefreshPolicy(Duration.ofMinutes(60), 0.1, Duration.ofMinutes(5), 1.0));
+    }
+
+    @Test
+    @DisplayName("Should fall back to L2 and keep the value in L1 for the next reads")
+    void shouldPopulateLocalTierFromRemote() {
+        // Given: el valor solo está en L2 (lo escribió otra instancia)
+        Cache remote = remoteCacheManager.getCache("products");
+        remote.put(1L, product(1L));
+        TwoTierCache cache = cacheManager.getCache("products");
+
+        // When
+        Cache.ValueWrapper first = cache.get(1L);
+        remote.evict(1L);
+        Cache.ValueWrapper second = cache.get(1L);
+
+        // Then: la segunda lectura sale de L1 aunque L2 ya no lo tenga
+        assertEquals(product(1L), first.get());
+        assertEquals(product(1L), second.get());
+        assertEquals(1.0, meterRegistry.get("cache.tier.gets").tags("tier", "l1", "result", "hit").counter().count());
+        assertEquals(1.0, meterRegistry.get("cache.tier.gets").tags("tier", "l2", "result", "hit").counter().count());
+        assertEquals(0.5, meterRegistry.get("cache.tier.hit.ratio").tags("tier", "l1").gauge().value());
+    }
+
+    @Test
+    @DisplayName("Should publish writes and drop L1 entries invalidated by other nodes only")
+    void shouldInvalidateLocalTierFromOtherNodes() {
+        // Given
+        TwoTierCache cache = cacheManager.getCache("products");
+        cache.put(1L, product(1L));
+        ArgumentCaptor<String> published = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate).convertAndSend(eq(TwoTierCacheManager.INVALIDATION_CHANNEL), published.capture());
+        assertTrue(published.getValue().endsWith("\nE\nproducts\n1"));
+        remoteCacheManager.getCache("products").evict(1L);
+
+        // When: el mensaje propio se ignora; el de otra instancia invalida L1
+        cacheManager.onMessage(message(published.getValue()), null);
+        assertNotNull(cache.get(1L));
+        cacheManager.onMessage(message("otro-nodo\nE\nproducts\n1"), null);
+
+        // Then
+        assertNull(cache.get(1L));
+    }
+
+    @Test
+    @DisplayName("Should run a single loader per key and share its result with concurrent callers")
+    void shouldCoalesceConcurrentLoads() throws Exception {
+        // Given: una carga lenta que no termina hasta que todos los hilos han pedido la clave
+        TwoTierCache cache = cacheManager.getCache("products");
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Callable<ProductDTO> loader = () -> {
+            loads.incrementAndGet();
+            release.await(5, TimeUnit.SECONDS);
+            return product(7L);
+        };
+        int callers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<ProductDTO>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> cache.get(7L, loader)));
+            }
+            // When: se espera a que los demás hilos estén esperando la carga en curso
+            Counter coalesced = meterRegistry.get("cache.load.coalesced").tags("scope", "local").counter();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (coalesced.count() < callers - 1 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            // Then
+            for (Future<ProductDTO> result : results) {
+                assertEquals(product(7L), result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(product(7L), ((CacheEntry) remoteCacheManager.getCache("products").get(7L).get()).value());
+        assertEquals(1, meterRegistry.get("cache.load").timer().count());
+    }
+
+    @Test
+    @DisplayName("Should serve an expired entry within the grace period and refresh it in the background")
+    void shouldServeStaleEntryWhileRefreshing() throws Exception {
+        // Given: una entrada que caducó hace un segundo (sigue en Redis dentro del margen)
+        TwoTierCache cache = cacheManager.getCache("products");
+        remoteCacheManager.getCache("products").put(1L, new CacheEntry(product(1L), System.currentTimeMillis() - 1000, 10));
+        CountDownLatch refreshed = new CountDownLatch(1);
+        ProductDTO fresh = new ProductDTO(1L, "Producto renovado", null, BigDecimal.ONE, 3, 1L);
+
+        // When
+        ProductDTO served = cache.get(1L, () -> {
+            refreshed.countDown();
+            return fresh;
+        });
+
+        // Then: se devuelve el valor anterior sin esperar, y el nuevo queda en caché al terminar el refresco
+        assertEquals(product(1L), served);
+        assertTrue(refreshed.await(5, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.get("cache.refresh").tags("result", "success").counter().count() < 1
+                && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(fresh, cache.get(1L).get());
+        assertEquals(1.0, meterRegistry.get("cache.stale.served").counter().count());
+    }
+
+    @Test
+    @DisplayName("Should refresh through the @Cacheable proxy, running the interceptors inside the cache")
+    void shouldRefreshThroughCacheableProxy() throws Exception {
+        // Given: un proxy con la caché por fuera de un interceptor que hace de @Transactional
+        RefreshingCacheInterceptor cacheInterceptor = new RefreshingCacheInterceptor();
+        cacheInterceptor.setCacheOperationSource(new AnnotationCacheOperationSource());
+        cacheInterceptor.setCacheManager(cacheManager);
+        cacheInterceptor.afterPropertiesSet();
+        cacheInterceptor.afterSingletonsInstantiated();
+        ThreadLocal<Boolean> inTransaction = ThreadLocal.withInitial(() -> false);
+        List<Boolean> transactionalLoads = new CopyOnWriteArrayList<>();
+        ProxyFactory proxyFactory = new ProxyFactory(new CachedProducts(inTransaction, transactionalLoads));
+        proxyFactory.addAdvice(cacheInterceptor);
+        proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+            inTransaction.set(true);
+            try {
+                return invocation.proceed();
+            } finally {
+                inTransaction.remove();
+            }
+        });
+        ProductLoader products = (ProductLoader) proxyFactory.getProxy();
+        assertEquals(product(1L), products.load(1L));
+
+        // When: la entrada caduca y la siguiente lectura la refresca en segundo plano
+        remoteCacheManager.getCache("products").put(1L, new CacheEntry(product(1L), System.currentTimeMillis() - 1000, 10));
+        cacheManager.getCache("products").evictLocal("1");
+        assertEquals(product(1L), products.load(1L));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.get("cache.refresh").tags("result", "success").counter().count() < 1
+                && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+
+        // Then: el refresco pasó por el interceptor interior, en el hilo del refresco
+        assertEquals(List.of(true, true), transactionalLoads);
+        assertTrue(((CacheEntry) remoteCacheManager.getCache("products").get(1L).get()).expiresAt() > System.currentTimeMillis());
+    }
+
+    @Test
+    @DisplayName("Should refresh early only near expiry and jitter the time to live")
+    void shouldRefreshEarlyNearExpiry() {
+        CacheRefreshPolicy policy = new CacheRefreshPolicy(Duration.ofMinutes(60), 0.1, Duration.ofMinutes(5), 1.0);
+        long now = System.currentTimeMillis();
+
+        // Lejos de caducar nunca se refresca; a un milisegundo y con un cálculo de 10 s, casi siempre
+        assertFalse(policy.shouldRefresh(new CacheEntry("v", now + Duration.ofMinutes(30).toMillis(), 50)));
+        int early = 0;
+        for (int i = 0; i < 100; i++) {
+            if (policy.shouldRefresh(new CacheEntry("v", now + 1, 10_000))) {
+                early++;
+            }
+        }
+        assertTrue(early > 90);
+
+        // Caducidad lógica entre 54 y 60 minutos; en Redis, 5 minutos más
+        CacheEntry entry = policy.newEntry("v", 0);
+        assertTrue(entry.expiresAt() - now <= Duration.ofMinutes(60).toMillis() + 100);
+        assertTrue(entry.expiresAt() - now >= Duration.ofMinutes(54).toMillis());
+        Duration ttl = policy.timeToLive("k", entry);
+        assertTrue(ttl.compareTo(Duration.ofMinutes(59)) >= 0 && ttl.compareTo(Duration.ofMinutes(65)) <= 0);
+    }
+
+    @Test
+    @DisplayName("Should weigh lists and pages by their number of items")
+    void shouldWeighByItems() {
+        assertEquals(1, TwoTierCacheManager.weigh(product(1L)));
+        assertEquals(2, TwoTierCacheManager.weigh(List.of(product(1L), product(2L))));
+        assertEquals(3, TwoTierCacheManager.weigh(new CursorPageDTO<>(List.of(product(1L), product(2L), product(3L)), null)));
+        assertEquals(1, TwoTierCacheManager.weigh(List.of()));
+    }
+
+    private static DefaultMessage message(String body) {
+        return new DefaultMessage(TwoTierCacheManager.INVALIDATION_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    interface ProductLoader {
+        ProductDTO load(Long id);
+    }
+
+    static class CachedProducts implements ProductLoader {
+        private final ThreadLocal<Boolean> inTransaction;
+        private final List<Boolean> transactionalLoads;
+
+        CachedProducts(ThreadLocal<Boolean> inTransaction, List<Boolean> transactionalLoads) {
+            this.inTransaction = inTransaction;
+            this.transactionalLoads = transactionalLoads;
+        }
+
+        @Override
+        @Cacheable(cacheNames = "products", sync = true)
+        public ProductDTO load(Long id) {
+            transactionalLoads.add(inTransaction.get());
+            return product(id);
+        }
+    }
+
+    private static ProductDTO product(Long id) {
+        return new ProductDTO(id, "Producto " + id, null, BigDecimal.TEN, 5, 1L);
+    }
+}
@@ -0,0 +1,210 @@
+package com.santicodev.gestorinventarioproductos.shared.infraestructure.idempotency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@DisplayName("IdempotencyFilter Unit Tests")
+public class IdempotencyFilterTest {
+    private StringRedisTemplate redisTemplate;
+    private ValueOperations<String, String> valueOperations;
+    // Redis simulado: SET NX, GET y los scripts que comparan el valor de la reserva
+    private final Map<String, String> redis = new ConcurrentHashMap<>();
+    private IdempotencyFilter idempotencyFilter;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class)))
+                .thenAnswer(invocation -> redis.putIfAbsent(invocation.getArgument(0), invocation.getArgument(1)) == null);
+        when(valueOperations.get(anyString())).thenAnswer(invocation -> redis.get(invocation.<String>getArgument(0)));
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenAnswer(invocation -> {
+            Object[] args = invocation.getArguments(); // script, claves y argumentos ya expandidos
+            String key = invocation.<List<String>>getArgument(1).get(0);
+            if (!Objects.equals(redis.get(key), args[2])) {
+                return 0L;
+            }
+            if (args[0] == IdempotencyFilter.STORE_RESPONSE) {
+                redis.put(key, (String) args[3]);
+            } else if (args[0] == IdempotencyFilter.RELEASE_LOCK) {
+                redis.remove(key);
+            }
+            return 1L;
+        });
+        idempotencyFilter = filter(Duration.ofSeconds(30));
+        SecurityContextHolder.clearContext();
+    }
+
+    @AfterEach
+    void tearDown() {
+        idempotencyFilter.shutdown();
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    @DisplayName("Should renew the lock while the request runs and store the response afterwards")
+    void shouldRenewLockWhileRequestRuns() throws Exception {
+        // Given: una reserva de 150 ms y una petición que tarda más
+        idempotencyFilter.shutdown();
+        idempotencyFilter = filter(Duration.ofMillis(150));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        idempotencyFilter.doFilter(register("{}"), response, (req, res) -> {
+            sleep(400);
+            ((HttpServletResponse) res).setStatus(201);
+        });
+
+        // Then: se renovó mientras se ejecutaba y la respuesta quedó guardada
+        verify(redisTemplate, atLeast(2)).execute(eq(IdempotencyFilter.RENEW_LOCK), anyList(), any(Object[].class));
+        assertEquals(201, response.getStatus());
+        assertEquals(1, redis.size());
+        assertTrue(redis.values().iterator().next().contains("\"completed\":true"));
+    }
+
+    @Test
+    @DisplayName("Should not overwrite the key when the lock was lost during the request")
+    void shouldNotStoreResponseWhenLockWasLost() throws Exception {
+        // When: mientras se ejecuta, la reserva caduca y la toma otra petición
+        idempotencyFilter.doFilter(register("{}"), new MockHttpServletResponse(), (req, res) ->
+                redis.replaceAll((key, value) -> "{\"fingerprint\":\"otra\",\"owner\":\"otra\",\"completed\":false}"));
+
+        // Then: ni se guarda la respuesta ni se borra la reserva ajena
+        assertEquals(1, redis.size());
+        assertTrue(redis.values().iterator().next().contains("\"owner\":\"otra\""));
+    }
+
+    @Test
+    @DisplayName("Should answer 409 instead of executing again when the awaited request lost its lock")
+    void shouldRejectDuplicateWhenAwaitedLockDisappears() throws Exception {
+        // Given: la misma petición, en curso en otra instancia, cuya reserva desaparece sin respuesta
+        MockHttpServletRequest request = register("{}");
+        String fingerprint = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest("{}".getBytes()));
+        String redisKey = "idempotency:anonymous:" + fingerprint + ":/api/auth/register:registro-1";
+        redis.put(redisKey, "{\"fingerprint\":\"" + fingerprint + "\",\"owner\":\"otra\",\"completed\":false}");
+        when(valueOperations.get(redisKey)).thenAnswer(invocation -> redis.remove(redisKey));
+        FilterChain chain = mock(FilterChain.class);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        idempotencyFilter.doFilter(request, response, chain);
+
+        // Then
+        assertEquals(409, response.getStatus());
+        verify(chain, never()).doFilter(any(), any());
+    }
+
+    @Test
+    @DisplayName("Should not share an anonymous key between registrations with different bodies")
+    void shouldScopeAnonymousKeysByBody() throws Exception {
+        // Given: dos clientes sin autenticar que eligen la misma clave
+        FilterChain chain = mock(FilterChain.class);
+
+        // When
+        idempotencyFilter.doFilter(register("{\"username\":\"ana\"}"), new MockHttpServletResponse(), chain);
+        idempotencyFilter.doFilter(register("{\"username\":\"luis\"}"), new MockHttpServletResponse(), chain);
+
+        // Then: cada registro reserva su propia clave y los dos se ejecutan
+        ArgumentCaptor<String> keys = ArgumentCaptor.forClass(String.class);
+        verify(valueOperations, times(2)).setIfAbsent(keys.capture(), anyString(), any(Duration.class));
+        List<String> reserved = keys.getAllValues();
+        assertNotEquals(reserved.get(0), reserved.get(1));
+        assertTrue(reserved.get(0).startsWith("idempotency:anonymous:"));
+        assertTrue(reserved.get(0).endsWith(":/api/auth/register:registro-1"));
+        verify(chain, times(2)).doFilter(any(), any());
+    }
+
+    @Test
+    @DisplayName("Should notify a ReadListener with the cached body on async requests")
+    void shouldDelegateReadListenerOnAsyncRequests() throws Exception {
+        // Given
+        MockHttpServletRequest request = register("{\"username\":\"ana\"}");
+        request.setAsyncSupported(true);
+        AtomicReference<String> body = new AtomicReference<>();
+        ReadListener listener = mock(ReadListener.class);
+
+        // When
+        idempotencyFilter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            req.startAsync();
+            ServletInputStream in = req.getInputStream();
+            doAnswer(invocation -> {
+                body.set(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                return null;
+            }).when(listener).onDataAvailable();
+            in.setReadListener(listener);
+        });
+
+        // Then
+        assertEquals("{\"username\":\"ana\"}", body.get());
+        verify(listener).onAllDataRead();
+        verify(listener, never()).onError(any());
+    }
+
+    @Test
+    @DisplayName("Should reject a ReadListener outside async processing with IllegalStateException")
+    void shouldRejectReadListenerOnBlockingRequests() throws Exception {
+        // Given
+        AtomicReference<IllegalStateException> error = new AtomicReference<>();
+
+        // When
+        idempotencyFilter.doFilter(register("{}"), new MockHttpServletResponse(), (req, res) ->
+                error.set(assertThrows(IllegalStateException.class,
+                        () -> req.getInputStream().setReadListener(mock(ReadListener.class)))));
+
+        // Then
+        assertNotNull(error.get().getMessage());
+    }
+
+    private IdempotencyFilter filter(Duration lockTtl) {
+        return new IdempotencyFilter(redisTemplate, new ObjectMapper().findAndRegisterModules(), Duration.ofHours(24), lockTtl, Duration.ofSeconds(10));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static MockHttpServletRequest register(String body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/auth/register");
+        request.addHeader(IdempotencyFilter.HEADER, "registro-1");
+        request.setContentType("application/json");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+}